@@ -0,0 +1,396 @@
+package batch;
+
+import index.CorpusLoader;
+import index.InvertedIndex;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import model.AbstractModel;
+import model.BooleanModel;
+import model.Document;
+import model.ProbabilisticModel;
+import model.TopDocuments;
+import model.VectorModel;
+
+import common.Helpers;
+import common.Metrics;
+
+
+
+/**
+ * Runs a file of queries against a corpus without the GUI, e.g. to measure
+ * the models under server load. The queries are executed on a pool of
+ * threads, one model after the other; the ranked results are written in the
+ * format of TREC runs and the throughput and latency percentiles of each
+ * model are reported.
+ * 
+ * Usage: BatchRunner [options] corpus-directory query-file [run-file]
+ * 
+ * The query file holds one query per line, either just the query text (its
+ * id is the line number) or the tab separated columns id, query text and
+ * optionally model (boolean, vector or bm25), k1, b and stem (true or false).
+ * Empty columns and "-" keep the defaults given by the options; lines
+ * starting with # are skipped.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class BatchRunner {
+    
+    public static final String BOOLEAN = "boolean";
+    public static final String VECTOR = "vector";
+    public static final String PROBABILISTIC = "bm25";
+    
+    private static final String[] MODELS = { BOOLEAN, VECTOR, PROBABILISTIC };
+    private static final double[] PERCENTILES = { 0.5, 0.95, 0.99, 0.999 };
+    
+    private static final String USAGE = "Usage: BatchRunner [options] corpus-directory query-file [run-file]\n" //
+            + "  -threads n     Queries run at the same time (default: number of processors)\n" //
+            + "  -models list   Comma separated models to run: boolean, vector, bm25 (default: all)\n" //
+            + "  -depth n       Documents ranked per query (default: 1000)\n" //
+            + "  -k1 x, -b x    BM25 parameters (default: 1.2 and 0.75)\n" //
+            + "  -stem          Stem terms\n" //
+            + "  -tfidf         Use tf-idf weights in the vector model\n" //
+            + "  -warmup n      Unmeasured runs of all queries before measuring (default: 0)\n" //
+            + "  -tag name      Run tag, followed by the model (default: irmodels)\n" //
+            + "  -metrics       Report the latencies of the stages of indexing and searching\n" //
+            + "  -charset name  Encoding of corpus and query file (default: UTF-8)";
+    
+    /**
+     * A line of the query file.
+     */
+    private static class Query {
+        
+        private String fId = null;
+        private String fText = null;
+        private String fModel = null; // Null for all models selected
+        private double fK1 = 0.0;
+        private double fB = 0.0;
+        private boolean fStem = false;
+        
+    }
+    
+    /**
+     * The models working on one analysis of the corpus. Built before the
+     * queries run and shared by the threads of the pool.
+     */
+    private static class Models {
+        
+        private final InvertedIndex fIndex;
+        private final BooleanModel fBooleanModel;
+        private final VectorModel fVectorModel;
+        private final ProbabilisticModel fProbabilisticModel;
+        
+        Models( InvertedIndex index, boolean tfidf ) {
+            fIndex = index;
+            Document[] documents = index.getDocuments( );
+            fBooleanModel = new BooleanModel( documents, index );
+            fVectorModel = new VectorModel( documents, index, tfidf );
+            fProbabilisticModel = new ProbabilisticModel( documents, index );
+        }
+        
+    }
+    
+    private int fThreads = Runtime.getRuntime( ).availableProcessors( );
+    private List<String> fModels = Arrays.asList( MODELS );
+    private int fDepth = 1000;
+    private double fK1 = 1.2;
+    private double fB = 0.75;
+    private boolean fStem = false;
+    private boolean fTfidf = false;
+    private int fWarmup = 0;
+    private String fTag = "irmodels";
+    private Charset fCharset = Helpers.DEFAULT_CHARSET;
+    
+    private InvertedIndex fIndex = null; // Unstemmed terms, the stemmed index is derived from it
+    
+    /**
+     * Runs the queries of a file.
+     * 
+     * @param args
+     *            See the class comment.
+     */
+    public static void main( String[] args ) {
+        BatchRunner runner = new BatchRunner( );
+        List<String> files = new ArrayList<String>( );
+        try {
+            for ( int i = 0; i < args.length; i++ ) {
+                if ( !args[i].startsWith( "-" ) ) {
+                    files.add( args[i] );
+                } else if ( args[i].equals( "-stem" ) ) {
+                    runner.fStem = true;
+                } else if ( args[i].equals( "-tfidf" ) ) {
+                    runner.fTfidf = true;
+                } else if ( args[i].equals( "-metrics" ) ) {
+                    Metrics.setEnabled( true );
+                } else if ( i + 1 == args.length ) {
+                    throw new IllegalArgumentException( "Missing value of " + args[i] );
+                } else {
+                    runner.setOption( args[i], args[++i] );
+                }
+            }
+            if ( files.size( ) < 2 || files.size( ) > 3 ) {
+                throw new IllegalArgumentException( "Expected a corpus directory, a query file and optionally a run file" );
+            }
+            runner.load( new File( files.get( 0 ) ) );
+            List<Query> queries = runner.readQueries( new File( files.get( 1 ) ) );
+            runner.run( queries, files.size( ) == 3 ? new File( files.get( 2 ) ) : null, System.out );
+        } catch ( IllegalArgumentException e ) {
+            System.err.println( e.getMessage( ) );
+            System.err.println( USAGE );
+            System.exit( 2 );
+        } catch ( Exception e ) {
+            e.printStackTrace( );
+            System.exit( 1 );
+        }
+    }
+    
+    private void setOption( String option, String value ) {
+        try {
+            if ( option.equals( "-threads" ) ) {
+                fThreads = Math.max( 1, Integer.parseInt( value ) );
+            } else if ( option.equals( "-models" ) ) {
+                fModels = new ArrayList<String>( );
+                for ( String model : value.split( "," ) ) {
+                    fModels.add( checkModel( model.trim( ) ) );
+                }
+            } else if ( option.equals( "-depth" ) ) {
+                fDepth = Math.max( 1, Integer.parseInt( value ) );
+            } else if ( option.equals( "-k1" ) ) {
+                fK1 = Double.parseDouble( value );
+            } else if ( option.equals( "-b" ) ) {
+                fB = Double.parseDouble( value );
+            } else if ( option.equals( "-warmup" ) ) {
+                fWarmup = Math.max( 0, Integer.parseInt( value ) );
+            } else if ( option.equals( "-tag" ) ) {
+                fTag = value;
+            } else if ( option.equals( "-charset" ) ) {
+                fCharset = Charset.forName( value );
+            } else {
+                throw new IllegalArgumentException( "Unknown option " + option );
+            }
+        } catch ( NumberFormatException e ) {
+            throw new IllegalArgumentException( "Invalid value of " + option + ": " + value );
+        }
+    }
+    
+    private static String checkModel( String model ) {
+        if ( !Arrays.asList( MODELS ).contains( model ) ) {
+            throw new IllegalArgumentException( "Unknown model " + model );
+        }
+        return model;
+    }
+    
+    /**
+     * Loads and indexes all files of a corpus directory, skipping hidden files
+     * such as the index files of the GUI.
+     */
+    private void load( File dir ) {
+        File[] listed = dir.listFiles( );
+        if ( listed == null ) {
+            throw new IllegalArgumentException( "Not a directory: " + dir );
+        }
+        List<File> files = new ArrayList<File>( );
+        for ( File file : listed ) {
+            if ( file.isFile( ) && !file.getName( ).startsWith( "." ) ) {
+                files.add( file );
+            }
+        }
+        long start = System.nanoTime( );
+        CorpusLoader loader = new CorpusLoader( files.toArray( new File[files.size( )] ), false );
+        loader.setCharset( fCharset );
+        loader.setParallelism( fThreads );
+        fIndex = loader.load( );
+        System.err.println( String.format( "Indexed %d documents in %.1f s", fIndex.getDocumentCount( ), ( System.nanoTime( ) - start ) / 1e9 ) );
+    }
+    
+    private List<Query> readQueries( File file ) throws IOException {
+        List<Query> queries = new ArrayList<Query>( );
+        BufferedReader reader = Files.newBufferedReader( file.toPath( ), fCharset );
+        try {
+            String line = null;
+            for ( int number = 1; ( line = reader.readLine( ) ) != null; number++ ) {
+                if ( line.trim( ).length( ) == 0 || line.startsWith( "#" ) ) {
+                    continue;
+                }
+                String[] columns = line.split( "\t" );
+                Query query = new Query( );
+                query.fId = columns.length == 1 ? String.valueOf( number ) : columns[0].trim( );
+                query.fText = columns.length == 1 ? columns[0] : columns[1];
+                query.fModel = isSet( columns, 2 ) ? checkModel( columns[2].trim( ) ) : null;
+                try {
+                    query.fK1 = isSet( columns, 3 ) ? Double.parseDouble( columns[3].trim( ) ) : fK1;
+                    query.fB = isSet( columns, 4 ) ? Double.parseDouble( columns[4].trim( ) ) : fB;
+                } catch ( NumberFormatException e ) {
+                    throw new IllegalArgumentException( "Invalid BM25 parameter in line " + number + " of " + file );
+                }
+                query.fStem = isSet( columns, 5 ) ? Boolean.parseBoolean( columns[5].trim( ) ) : fStem;
+                queries.add( query );
+            }
+        } finally {
+            reader.close( );
+        }
+        return queries;
+    }
+    
+    private static boolean isSet( String[] columns, int i ) {
+        return i < columns.length && columns[i].trim( ).length( ) > 0 && !columns[i].trim( ).equals( "-" );
+    }
+    
+    /**
+     * Runs the queries on each selected model in turn and reports the
+     * throughput and latencies per model.
+     * 
+     * @param queries
+     *            The queries.
+     * @param runFile
+     *            Receives the rankings, or null.
+     * @param report
+     *            Receives the report.
+     */
+    private void run( List<Query> queries, File runFile, PrintStream report ) throws IOException, InterruptedException, ExecutionException {
+        // Build the models of the analyses used before measuring, so the threads
+        // of the pool only read final fields and need no lock
+        boolean stem = false;
+        for ( Query query : queries ) {
+            stem |= query.fStem;
+        }
+        Models plain = new Models( fIndex, fTfidf );
+        Models stemmed = stem ? new Models( fIndex.getStemmedIndex( ), fTfidf ) : null;
+        
+        ExecutorService pool = Executors.newFixedThreadPool( fThreads );
+        BufferedWriter run = runFile == null ? null : Files.newBufferedWriter( runFile.toPath( ), fCharset );
+        try {
+            report.println( String.format( "%-8s %8s %10s %9s %9s %9s %9s %9s", "model", "queries", "QPS", "mean ms", "p50 ms", "p95 ms", "p99 ms", "p99.9 ms" ) );
+            for ( String model : fModels ) {
+                List<Query> selected = new ArrayList<Query>( );
+                for ( Query query : queries ) {
+                    if ( query.fModel == null || query.fModel.equals( model ) ) {
+                        selected.add( query );
+                    }
+                }
+                if ( selected.isEmpty( ) ) {
+                    continue;
+                }
+                for ( int i = 0; i < fWarmup; i++ ) {
+                    execute( pool, model, plain, stemmed, selected, new long[selected.size( )] );
+                }
+                long[] latencies = new long[selected.size( )];
+                long start = System.nanoTime( );
+                TopDocuments[] results = execute( pool, model, plain, stemmed, selected, latencies );
+                long elapsed = System.nanoTime( ) - start;
+                report.println( format( model, latencies, elapsed ) );
+                if ( run != null ) {
+                    write( run, model, selected, results );
+                }
+            }
+            if ( Metrics.isEnabled( ) ) {
+                report.println( );
+                report.print( Metrics.getReport( ) );
+            }
+        } finally {
+            pool.shutdown( );
+            if ( run != null ) {
+                run.close( );
+            }
+        }
+    }
+    
+    /**
+     * Runs queries on a model concurrently.
+     * 
+     * @param plain
+     *            The models for queries without stemming.
+     * @param stemmed
+     *            The models for stemmed queries.
+     * @return The results of the queries, in the order of the queries.
+     */
+    private TopDocuments[] execute( ExecutorService pool, final String model, Models plain, Models stemmed, List<Query> queries, final long[] latencies ) throws InterruptedException, ExecutionException {
+        List<Callable<TopDocuments>> tasks = new ArrayList<Callable<TopDocuments>>( );
+        for ( int i = 0; i < queries.size( ); i++ ) {
+            final Query query = queries.get( i );
+            final Models models = query.fStem ? stemmed : plain;
+            final int position = i;
+            tasks.add( new Callable<TopDocuments>( ) {
+                
+                @Override
+                public TopDocuments call( ) {
+                    long start = System.nanoTime( );
+                    TopDocuments result = search( model, models, query );
+                    latencies[position] = System.nanoTime( ) - start;
+                    return result;
+                }
+            } );
+        }
+        List<Future<TopDocuments>> futures = pool.invokeAll( tasks );
+        TopDocuments[] results = new TopDocuments[futures.size( )];
+        for ( int i = 0; i < results.length; i++ ) {
+            results[i] = futures.get( i ).get( );
+        }
+        return results;
+    }
+    
+    private TopDocuments search( String model, Models models, Query query ) {
+        if ( model.equals( PROBABILISTIC ) ) {
+            return models.fProbabilisticModel.getTopDocuments( query.fText, fDepth, query.fK1, query.fB, query.fStem );
+        }
+        AbstractModel single = model.equals( BOOLEAN ) ? models.fBooleanModel : models.fVectorModel;
+        return single.getTopDocuments( query.fText, fDepth, query.fStem );
+    }
+    
+    /**
+     * Writes rankings as lines "query-id Q0 document rank score tag".
+     */
+    private void write( BufferedWriter run, String model, List<Query> queries, TopDocuments[] results ) throws IOException {
+        for ( int i = 0; i < results.length; i++ ) {
+            for ( int rank = 0; rank < results[i].size( ); rank++ ) {
+                run.write( queries.get( i ).fId + " Q0 " + results[i].getDocument( rank ).getName( ) + " " + ( rank + 1 ) + " " + results[i].getScore( rank ) + " " + fTag + "-" + model );
+                run.newLine( );
+            }
+        }
+    }
+    
+    /**
+     * Formats the report line of a model.
+     * 
+     * @param latencies
+     *            The latencies of the queries in nanoseconds.
+     * @param elapsed
+     *            The time taken by all queries in nanoseconds.
+     */
+    private static String format( String model, long[] latencies, long elapsed ) {
+        long[] sorted = latencies.clone( );
+        Arrays.sort( sorted );
+        long total = 0;
+        for ( long latency : sorted ) {
+            total += latency;
+        }
+        StringBuilder line = new StringBuilder( String.format( "%-8s %8d %10.1f %9.3f", model, sorted.length, sorted.length / ( elapsed / 1e9 ), total / 1e6 / sorted.length ) );
+        for ( double percentile : PERCENTILES ) {
+            line.append( String.format( " %9.3f", getPercentile( sorted, percentile ) / 1e6 ) );
+        }
+        return line.toString( );
+    }
+    
+    /**
+     * Returns a percentile of sorted values using the nearest rank method.
+     */
+    static long getPercentile( long[] sorted, double percentile ) {
+        int rank = ( int ) Math.ceil( percentile * sorted.length );
+        return sorted[Math.max( 0, Math.min( sorted.length, rank ) - 1 )];
+    }
+    
+}
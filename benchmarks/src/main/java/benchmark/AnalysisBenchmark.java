@@ -0,0 +1,68 @@
+package benchmark;
+
+import index.TermDictionary;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import model.Document;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+
+/**
+ * Measures the construction of a document from its text: tokenizing,
+ * optionally stemming, and building the term vector.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class AnalysisBenchmark {
+    
+    private static final int TEXTS = 256;
+    
+    @Param({ "false", "true" })
+    public boolean stem;
+    
+    @Param({ "250" })
+    public int words;
+    
+    private String[] fTexts = null;
+    private TermDictionary fDictionary = null;
+    private int fNext = 0;
+    
+    @Setup
+    public void setUp( ) {
+        Random random = new Random( Corpora.SEED );
+        fTexts = new String[TEXTS];
+        for ( int i = 0; i < TEXTS; i++ ) {
+            fTexts[i] = Corpora.getText( random, words );
+        }
+        // The vocabulary is small, so the dictionary is complete after the warmup
+        fDictionary = new TermDictionary( );
+    }
+    
+    @Benchmark
+    public Document newDocument( ) {
+        String text = fTexts[fNext];
+        fNext = ( fNext + 1 ) % TEXTS;
+        return new Document( "doc", text, stem, fDictionary );
+    }
+    
+}
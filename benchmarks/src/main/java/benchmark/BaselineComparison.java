@@ -0,0 +1,152 @@
+package benchmark;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+
+
+/**
+ * Compares the results of a benchmark run against a stored baseline, both in
+ * JMH's JSON format (-rf json). A benchmark has regressed if its score is
+ * worse than the baseline by more than the threshold and the difference is
+ * larger than the combined errors of both scores, so that noise alone does
+ * not fail a build. Lower is better for time modes, higher for throughput.
+ * 
+ * Usage: BaselineComparison baseline.json current.json [threshold percent]
+ * 
+ * Exits with 1 if a benchmark has regressed, 2 on bad arguments or files.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class BaselineComparison {
+    
+    private static final double DEFAULT_THRESHOLD = 10.0;
+    
+    static final class Result {
+        
+        final String fMode;
+        final double fScore;
+        final double fError;
+        final String fUnit;
+        
+        Result( String mode, double score, double error, String unit ) {
+            fMode = mode;
+            fScore = score;
+            fError = Double.isNaN( error ) ? 0.0 : error;
+            fUnit = unit;
+        }
+        
+        boolean isHigherBetter( ) {
+            return "thrpt".equals( fMode );
+        }
+        
+    }
+    
+    public static void main( String[] args ) {
+        if ( args.length < 2 || args.length > 3 ) {
+            System.err.println( "Usage: BaselineComparison baseline.json current.json [threshold percent]" );
+            System.exit( 2 );
+        }
+        Map<String,Result> baseline = null;
+        Map<String,Result> current = null;
+        double threshold = DEFAULT_THRESHOLD;
+        try {
+            baseline = read( args[0] );
+            current = read( args[1] );
+            if ( args.length == 3 ) {
+                threshold = Double.parseDouble( args[2] );
+            }
+        } catch ( IOException e ) {
+            System.err.println( e.getMessage( ) );
+            System.exit( 2 );
+        } catch ( RuntimeException e ) {
+            System.err.println( "Invalid argument: " + e.getMessage( ) );
+            System.exit( 2 );
+        }
+        
+        System.exit( compare( baseline, current, threshold, System.out ) > 0 ? 1 : 0 );
+    }
+    
+    /**
+     * Prints the verdict on each benchmark of the current run.
+     * 
+     * @param threshold
+     *            The change in percent beyond which a benchmark has regressed
+     *            or improved.
+     * @return The number of regressed benchmarks.
+     */
+    static int compare( Map<String,Result> baseline, Map<String,Result> current, double threshold, PrintStream out ) {
+        int regressions = 0;
+        for ( Map.Entry<String,Result> entry : current.entrySet( ) ) {
+            Result now = entry.getValue( );
+            Result before = baseline.get( entry.getKey( ) );
+            if ( before == null || !before.fUnit.equals( now.fUnit ) || !before.fMode.equals( now.fMode ) ) {
+                out.printf( "NEW        %s: %.3f %s%n", entry.getKey( ), now.fScore, now.fUnit );
+                continue;
+            }
+            double change = before.fScore == 0.0 ? 0.0 : 100.0 * ( now.fScore - before.fScore ) / before.fScore;
+            double worse = now.isHigherBetter( ) ? -change : change; // Positive if worse
+            boolean significant = Math.abs( now.fScore - before.fScore ) > now.fError + before.fError;
+            String verdict = "OK";
+            if ( significant && worse > threshold ) {
+                verdict = "REGRESSION";
+                regressions++;
+            } else if ( significant && -worse > threshold ) {
+                verdict = "IMPROVED";
+            }
+            out.printf( "%-10s %s: %.3f -> %.3f %s (%+.1f%%)%n", verdict, entry.getKey( ), before.fScore, now.fScore, now.fUnit, change );
+        }
+        for ( String key : baseline.keySet( ) ) {
+            if ( !current.containsKey( key ) ) {
+                out.printf( "MISSING    %s%n", key );
+            }
+        }
+        out.printf( "%d benchmarks, %d regressions beyond %.1f%%%n", current.size( ), regressions, threshold );
+        return regressions;
+    }
+    
+    /**
+     * Reads the results of a JMH run, keyed on the benchmark and its
+     * parameters.
+     */
+    static Map<String,Result> read( String path ) throws IOException {
+        Map<String,Result> results = new LinkedHashMap<String,Result>( );
+        Reader reader = new InputStreamReader( new FileInputStream( path ), StandardCharsets.UTF_8 );
+        try {
+            JsonArray runs = JsonParser.parseReader( reader ).getAsJsonArray( );
+            for ( JsonElement element : runs ) {
+                JsonObject run = element.getAsJsonObject( );
+                StringBuilder key = new StringBuilder( run.get( "benchmark" ).getAsString( ) );
+                if ( run.has( "params" ) ) {
+                    Map<String,String> params = new TreeMap<String,String>( );
+                    for ( Map.Entry<String,JsonElement> param : run.getAsJsonObject( "params" ).entrySet( ) ) {
+                        params.put( param.getKey( ), param.getValue( ).getAsString( ) );
+                    }
+                    key.append( params );
+                }
+                JsonObject metric = run.getAsJsonObject( "primaryMetric" );
+                JsonElement error = metric.get( "scoreError" );
+                double scoreError = error == null || !error.getAsJsonPrimitive( ).isNumber( ) ? Double.NaN : error.getAsDouble( );
+                results.put( key.toString( ), new Result( run.get( "mode" ).getAsString( ), metric.get( "score" ).getAsDouble( ), scoreError, metric.get( "scoreUnit" ).getAsString( ) ) );
+            }
+        } catch ( RuntimeException e ) {
+            throw new IOException( path + ": not a JMH result file (" + e.getMessage( ) + ")" );
+        } finally {
+            reader.close( );
+        }
+        return results;
+    }
+    
+}
@@ -0,0 +1,82 @@
+package benchmark;
+
+import index.InvertedIndex;
+import index.PostingList;
+import index.PostingsCodec;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+
+/**
+ * Measures reading all postings of an index, uncompressed and compressed with
+ * each PostingsCodec, and skipping through them as a conjunctive query does.
+ * The compression ratio is reported by PostingsCodec.measure.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 2, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class CodecBenchmark {
+    
+    private static final int SKIP = 97; // Distance between the targets of advance
+    
+    @Param({ "10000" })
+    public int corpusSize;
+    
+    @Param({ "none", "vbyte", "pfor" })
+    public String codec;
+    
+    private InvertedIndex fIndex = null;
+    
+    @Setup
+    public void setUp( ) {
+        fIndex = Corpora.getIndex( corpusSize, false );
+        if ( !"none".equals( codec ) ) {
+            fIndex = fIndex.compress( PostingsCodec.forName( codec ) );
+        }
+    }
+    
+    @Benchmark
+    public long scan( ) {
+        long checksum = 0;
+        for ( int termId = 0; termId < fIndex.getTermIdLimit( ); termId++ ) {
+            PostingList postings = fIndex.getPostings( termId );
+            for ( int i = 0; i < postings.size( ); i++ ) {
+                checksum += postings.getDocId( i ) + postings.getFrequency( i );
+            }
+        }
+        return checksum;
+    }
+    
+    @Benchmark
+    public long advance( ) {
+        long checksum = 0;
+        for ( int termId = 0; termId < fIndex.getTermIdLimit( ); termId++ ) {
+            PostingList postings = fIndex.getPostings( termId );
+            int i = 0;
+            for ( int target = 0; i < postings.size( ); target += SKIP ) {
+                i = postings.advance( i, target );
+                checksum += i;
+            }
+        }
+        return checksum;
+    }
+    
+}
@@ -0,0 +1,125 @@
+package benchmark;
+
+import index.InvertedIndex;
+import index.TermDictionary;
+
+import java.util.Random;
+
+import model.Document;
+
+
+
+/**
+ * Generates synthetic corpora and queries for the benchmarks. Texts are drawn
+ * from a fixed vocabulary of inflected English-like words with a Zipfian
+ * distribution, so stemming has work to do and postings lengths are skewed
+ * as in natural language. All generators are seeded, so every run of a
+ * benchmark sees the same input.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+final class Corpora {
+    
+    static final long SEED = 20120417L;
+    
+    private static final String[] STEMS = { "connect", "relat", "general", "condition", "operat", "adjust", "differ", "agree", "measur", "observ", "report", "search", "index", "rank", "model", "document", "retriev", "query", "weight", "stem", "analyz", "compress", "merg", "sort", "scor", "match", "collect", "evaluat", "normal", "process" };
+    private static final String[] SUFFIXES = { "", "s", "ed", "ing", "ion", "ions", "er", "ers", "ive", "ly", "ment", "ness", "able", "ation", "ational" };
+    private static final String[] STOP_WORDS = { "the", "of", "and", "a", "to", "in", "is", "it", "that", "for" };
+    
+    private Corpora( ) {
+    }
+    
+    /**
+     * Returns the vocabulary, most frequent words first.
+     */
+    static String[] getVocabulary( ) {
+        String[] words = new String[STOP_WORDS.length + STEMS.length * SUFFIXES.length];
+        System.arraycopy( STOP_WORDS, 0, words, 0, STOP_WORDS.length );
+        int i = STOP_WORDS.length;
+        for ( String suffix : SUFFIXES ) {
+            for ( String stem : STEMS ) {
+                words[i++] = stem + suffix;
+            }
+        }
+        return words;
+    }
+    
+    /**
+     * Generates a text.
+     * 
+     * @param random
+     *            The source of the words.
+     * @param words
+     *            The number of words.
+     */
+    static String getText( Random random, int words ) {
+        String[] vocabulary = getVocabulary( );
+        StringBuilder text = new StringBuilder( words * 8 );
+        for ( int i = 0; i < words; i++ ) {
+            if ( i > 0 ) {
+                text.append( i % 12 == 0 ? ". " : " " );
+            }
+            text.append( vocabulary[getZipfRank( random, vocabulary.length )] );
+        }
+        return text.toString( );
+    }
+    
+    /**
+     * Generates the documents of a corpus, of 50 to 450 words each.
+     */
+    static Document[] getDocuments( int count, boolean stem, TermDictionary dictionary ) {
+        Random random = new Random( SEED );
+        Document[] documents = new Document[count];
+        for ( int i = 0; i < count; i++ ) {
+            documents[i] = new Document( "doc" + i, getText( random, 50 + random.nextInt( 400 ) ), stem, dictionary );
+        }
+        return documents;
+    }
+    
+    static InvertedIndex getIndex( int count, boolean stem ) {
+        return new InvertedIndex( getDocuments( count, stem, new TermDictionary( ) ) );
+    }
+    
+    /**
+     * Generates queries of distinct content words. Every eighth query of the
+     * boolean form contains a negation.
+     * 
+     * @param count
+     *            The number of queries.
+     * @param length
+     *            The number of terms per query.
+     * @param dnf
+     *            Generate conjunctions for the boolean model instead of
+     *            free text.
+     */
+    static String[] getQueries( int count, int length, boolean dnf ) {
+        Random random = new Random( SEED + length );
+        String[] vocabulary = getVocabulary( );
+        String[] queries = new String[count];
+        for ( int q = 0; q < count; q++ ) {
+            StringBuilder query = new StringBuilder( );
+            for ( int i = 0; i < length; i++ ) {
+                if ( i > 0 ) {
+                    query.append( dnf ? " & " : " " );
+                }
+                if ( dnf && i > 0 && q % 8 == 0 ) {
+                    query.append( '-' );
+                }
+                query.append( vocabulary[STOP_WORDS.length + getZipfRank( random, vocabulary.length - STOP_WORDS.length )] );
+            }
+            queries[q] = query.toString( );
+        }
+        return queries;
+    }
+    
+    /**
+     * Draws a rank from a Zipf distribution with exponent 1 by inverting its
+     * approximate cumulative distribution.
+     */
+    private static int getZipfRank( Random random, int size ) {
+        double harmonic = Math.log( size ) + 0.5772;
+        int rank = ( int ) Math.exp( random.nextDouble( ) * harmonic - 0.5772 );
+        return Math.min( size - 1, Math.max( 0, rank ) );
+    }
+    
+}
@@ -0,0 +1,104 @@
+package benchmark;
+
+import index.InvertedIndex;
+
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import model.AbstractModel;
+import model.BooleanModel;
+import model.Document;
+import model.ProbabilisticModel;
+import model.TopDocuments;
+import model.VectorModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+
+/**
+ * Measures the query latency of each model across corpus sizes and query
+ * lengths, for the full ranking of getDocuments and for the top 10 of
+ * getTopDocuments. The query cache is disabled, so every invocation evaluates
+ * its query; each invocation takes the next of a fixed set of queries.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 2, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class QueryBenchmark {
+    
+    private static final int QUERIES = 64;
+    private static final int TOP_K = 10;
+    
+    @Param({ "1000", "10000", "100000" })
+    public int corpusSize;
+    
+    @Param({ "1", "3", "8" })
+    public int queryLength;
+    
+    @Param({ "boolean", "vector", "probabilistic" })
+    public String model;
+    
+    private AbstractModel fModel = null;
+    private String[] fQueries = null;
+    
+    /**
+     * The position in the queries of a benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        
+        private int fNext = 0;
+        
+        String next( QueryBenchmark benchmark ) {
+            String query = benchmark.fQueries[fNext];
+            fNext = ( fNext + 1 ) % QUERIES;
+            return query;
+        }
+        
+    }
+    
+    @Setup(Level.Trial)
+    public void setUp( ) {
+        InvertedIndex index = Corpora.getIndex( corpusSize, false );
+        Document[] documents = index.getDocuments( );
+        if ( "boolean".equals( model ) ) {
+            fModel = new BooleanModel( documents, index );
+        } else if ( "vector".equals( model ) ) {
+            fModel = new VectorModel( documents, index, true );
+        } else if ( "probabilistic".equals( model ) ) {
+            fModel = new ProbabilisticModel( documents, index );
+        } else {
+            throw new IllegalArgumentException( "Unknown model: " + model );
+        }
+        fModel.setQueryCache( null );
+        fQueries = Corpora.getQueries( QUERIES, queryLength, "boolean".equals( model ) );
+    }
+    
+    @Benchmark
+    public SortedMap<Document,Double> getDocuments( Cursor cursor ) {
+        return fModel.getDocuments( cursor.next( this ), false );
+    }
+    
+    @Benchmark
+    public TopDocuments getTopDocuments( Cursor cursor ) {
+        return fModel.getTopDocuments( cursor.next( this ), TOP_K, false );
+    }
+    
+}
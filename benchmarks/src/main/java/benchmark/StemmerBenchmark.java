@@ -0,0 +1,93 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import common.Helpers;
+import common.StemCache;
+import common.Stemmer;
+
+
+
+/**
+ * Measures the stemming throughput, in words per second, of the Porter
+ * algorithm itself and of Helpers.stem, which looks stems up in the default
+ * StemCache first.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class StemmerBenchmark {
+    
+    private static final int WORDS = 4096;
+    
+    private String[] fWords = null;
+    private char[][] fChars = null;
+    private Stemmer fStemmer = new Stemmer( );
+    private StemCache fCache = null;
+    
+    @Setup
+    public void setUp( ) {
+        // Words in their natural frequencies, so the caches see realistic hit rates
+        String[] text = Corpora.getText( new Random( Corpora.SEED ), WORDS ).replace( ".", "" ).split( " " );
+        fWords = new String[WORDS];
+        fChars = new char[WORDS][];
+        for ( int i = 0; i < WORDS; i++ ) {
+            fWords[i] = text[i];
+            fChars[i] = text[i].toCharArray( );
+        }
+        fCache = new StemCache( 1 << 16 );
+    }
+    
+    /**
+     * The Porter algorithm on every word.
+     */
+    @Benchmark
+    @OperationsPerInvocation(WORDS)
+    public void stemmer( Blackhole blackhole ) {
+        for ( char[] word : fChars ) {
+            blackhole.consume( fStemmer.stem( word, 0, word.length ) );
+        }
+    }
+    
+    /**
+     * Stems as Strings through the default cache, as the models stem queries.
+     */
+    @Benchmark
+    @OperationsPerInvocation(WORDS)
+    public void helpersStem( Blackhole blackhole ) {
+        for ( String word : fWords ) {
+            blackhole.consume( Helpers.stem( word ) );
+        }
+    }
+    
+    /**
+     * Stems character ranges through a cache, as the analyzer stems tokens.
+     */
+    @Benchmark
+    @OperationsPerInvocation(WORDS)
+    public void cachedBuffer( Blackhole blackhole ) {
+        for ( char[] word : fChars ) {
+            blackhole.consume( fCache.stem( word, 0, word.length, fStemmer ) );
+        }
+    }
+    
+}
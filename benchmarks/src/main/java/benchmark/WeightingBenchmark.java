@@ -0,0 +1,64 @@
+package benchmark;
+
+import index.InvertedIndex;
+
+import java.util.concurrent.TimeUnit;
+
+import model.Document;
+import model.VectorModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+
+/**
+ * Measures setting up tf/idf weights by creating a vector space model with
+ * tf/idf weights. The model computes the document lengths along the postings
+ * for the stemmed index, whose documents carry no term vectors, and on first
+ * use otherwise.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 2, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+public class WeightingBenchmark {
+    
+    @Param({ "1000", "10000" })
+    public int corpusSize;
+    
+    private Document[] fDocuments = null;
+    private InvertedIndex fIndex = null;
+    private InvertedIndex fStemmedIndex = null;
+    
+    @Setup
+    public void setUp( ) {
+        fIndex = Corpora.getIndex( corpusSize, false );
+        fDocuments = fIndex.getDocuments( );
+        fStemmedIndex = fIndex.getStemmedIndex( );
+    }
+    
+    @Benchmark
+    public VectorModel vectorModel( ) {
+        return new VectorModel( fDocuments, fIndex, true );
+    }
+    
+    @Benchmark
+    public VectorModel stemmedVectorModel( ) {
+        return new VectorModel( fStemmedIndex.getDocuments( ), fStemmedIndex, true );
+    }
+    
+}
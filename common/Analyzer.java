@@ -0,0 +1,186 @@
+package common;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+
+
+
+/**
+ * Splits texts into terms. A term is a maximal run of ASCII letters, digits and
+ * underscores, lowercased and optionally stemmed; every other character
+ * separates terms. The text is scanned once and each term is handed to a
+ * consumer as a range of a reused buffer, so no Strings are created. Stems are
+ * looked up in the default StemCache.
+ * 
+ * An analyzer keeps its buffers between calls and must not be shared by
+ * threads working at the same time.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class Analyzer {
+    
+    /**
+     * Receives the terms of a text.
+     */
+    public interface TokenConsumer {
+        
+        /**
+         * @param buffer
+         *            Holds the term. Only valid until this method returns.
+         * @param offset
+         *            The position of the first character of the term.
+         * @param length
+         *            The number of characters of the term.
+         */
+        void token( char[] buffer, int offset, int length );
+        
+    }
+    
+    private static final int CHUNK_SIZE = 64 * 1024; // Bytes read from files at once
+    
+    private boolean fStem = false;
+    private char[] fBuffer = null;
+    private int fLength = 0; // Characters of the current term in fBuffer
+    private int fCount = 0; // Terms passed to the consumer so far
+    private Stemmer fStemmer = null;
+    private ByteBuffer fBytes = null;
+    private CharBuffer fChars = null;
+    private CharsetDecoder fDecoder = null;
+    
+    /**
+     * @param stem
+     *            Optionally stems terms.
+     */
+    public Analyzer( boolean stem ) {
+        fStem = stem;
+        fBuffer = new char[32];
+        fStemmer = stem ? new Stemmer( ) : null;
+    }
+    
+    public boolean isStemming( ) {
+        return fStem;
+    }
+    
+    /**
+     * Returns whether a character is part of terms.
+     */
+    public static boolean isTermChar( char c ) {
+        return ( c >= 'a' && c <= 'z' ) || ( c >= 'A' && c <= 'Z' ) || ( c >= '0' && c <= '9' ) || c == '_';
+    }
+    
+    /**
+     * Splits a text into terms. Like the former preprocessing by regular
+     * expressions, a text without any term yields a single empty term.
+     * 
+     * @param text
+     *            A text.
+     * @param consumer
+     *            Receives the terms in text order.
+     * @return The number of terms.
+     */
+    public int analyze( CharSequence text, TokenConsumer consumer ) {
+        fLength = 0;
+        fCount = 0;
+        for ( int i = 0, n = text.length( ); i < n; i++ ) {
+            scan( text.charAt( i ), consumer );
+        }
+        return finish( consumer );
+    }
+    
+    /**
+     * Splits the text of a file into terms. The file is read and decoded in
+     * chunks into buffers kept by this analyzer, so memory use does not depend
+     * on the size of the file. Malformed input is replaced, as by a Reader.
+     * 
+     * @param file
+     *            A text file.
+     * @param charset
+     *            The encoding of the file.
+     * @param consumer
+     *            Receives the terms in text order.
+     * @return The number of terms.
+     * @throws IOException
+     *             If the file cannot be read.
+     */
+    public int analyze( File file, Charset charset, TokenConsumer consumer ) throws IOException {
+        if ( fBytes == null ) {
+            fBytes = ByteBuffer.allocate( CHUNK_SIZE );
+            fChars = CharBuffer.allocate( CHUNK_SIZE );
+        }
+        if ( fDecoder == null || !fDecoder.charset( ).equals( charset ) ) {
+            fDecoder = charset.newDecoder( ).onMalformedInput( CodingErrorAction.REPLACE ).onUnmappableCharacter( CodingErrorAction.REPLACE );
+        }
+        fDecoder.reset( );
+        fBytes.clear( );
+        fChars.clear( );
+        fLength = 0;
+        fCount = 0;
+        FileChannel channel = FileChannel.open( file.toPath( ), StandardOpenOption.READ );
+        try {
+            boolean endOfInput = false;
+            while ( !endOfInput ) {
+                endOfInput = channel.read( fBytes ) < 0;
+                fBytes.flip( );
+                while ( fDecoder.decode( fBytes, fChars, endOfInput ).isOverflow( ) ) {
+                    scanChars( consumer );
+                }
+                scanChars( consumer );
+                fBytes.compact( );
+            }
+            while ( fDecoder.flush( fChars ).isOverflow( ) ) {
+                scanChars( consumer );
+            }
+            scanChars( consumer );
+        } finally {
+            channel.close( );
+        }
+        return finish( consumer );
+    }
+    
+    private void scanChars( TokenConsumer consumer ) {
+        char[] chars = fChars.array( );
+        for ( int i = 0, n = fChars.position( ); i < n; i++ ) {
+            scan( chars[i], consumer );
+        }
+        fChars.clear( );
+    }
+    
+    private void scan( char c, TokenConsumer consumer ) {
+        if ( isTermChar( c ) ) {
+            if ( fLength == fBuffer.length ) {
+                char[] buffer = new char[fLength * 2];
+                System.arraycopy( fBuffer, 0, buffer, 0, fLength );
+                fBuffer = buffer;
+            }
+            fBuffer[fLength++] = c <= 'Z' && c >= 'A' ? ( char ) ( c + ( 'a' - 'A' ) ) : c;
+        } else if ( fLength > 0 ) {
+            emit( consumer );
+        }
+    }
+    
+    private int finish( TokenConsumer consumer ) {
+        if ( fLength > 0 || fCount == 0 ) {
+            emit( consumer );
+        }
+        return fCount;
+    }
+    
+    private void emit( TokenConsumer consumer ) {
+        if ( fStem ) {
+            char[] stem = StemCache.getDefault( ).stem( fBuffer, 0, fLength, fStemmer );
+            consumer.token( stem, 0, stem.length );
+        } else {
+            consumer.token( fBuffer, 0, fLength );
+        }
+        fLength = 0;
+        fCount++;
+    }
+    
+}
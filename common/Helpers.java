@@ -1,10 +1,10 @@
 package common;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
-
-import model.Document;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 
 
@@ -18,70 +18,107 @@ import model.Document;
 public class Helpers {
     
     /**
-     * Stems a given word.
+     * The encoding of corpus files unless configured otherwise.
+     */
+    public static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
+    
+    /**
+     * Stems a given word. Stems are remembered by the default StemCache.
      * 
      * @param term
      *            A word.
      * @return The stemmed form of the word.
      */
     public static String stem( String term ) {
-        Stemmer stemmer = new Stemmer( );
-        char[] letters = term.toLowerCase( ).toCharArray( );
-        for ( char letter : letters ) {
-            stemmer.add( letter );
-        }
-        stemmer.stem( );
-        return stemmer.toString( );
+        Metrics.Timer timer = Metrics.start( Metrics.STEM );
+        String stem = StemCache.getDefault( ).stem( term.toLowerCase( ) );
+        Metrics.stop( timer );
+        return stem;
     }
     
     /**
-     * Reads and returns the text contained in a given file.
+     * Reads and returns the text contained in a given UTF-8 file.
      * 
      * @param path
      *            The path to a text file.
      * @return The text contained in the file.
      */
     public static String readFile( String path ) {
-        StringBuilder res = new StringBuilder( );
+        return readFile( path, DEFAULT_CHARSET );
+    }
+    
+    /**
+     * Reads and returns the text contained in a given file. Malformed input is
+     * replaced.
+     * 
+     * @param path
+     *            The path to a text file.
+     * @param charset
+     *            The encoding of the file.
+     * @return The text contained in the file.
+     */
+    public static String readFile( String path, Charset charset ) {
+        Metrics.Timer timer = Metrics.start( Metrics.READ_FILE );
         try {
-            BufferedReader in = new BufferedReader( new FileReader( path ) );
-            String line = null;
-            while ( ( line = in.readLine( ) ) != null ) {
-                res.append( new String( line.getBytes( ), "UTF-8" ) + "\n" );
-            }
-            in.close( );
+            return new String( Files.readAllBytes( Paths.get( path ) ), charset );
         } catch ( IOException e ) {
             e.printStackTrace( );
+        } finally {
+            Metrics.stop( timer );
         }
-        return res.toString( );
+        return "";
     }
     
     /**
-     * Updates the weight of a given document for a given term.
+     * Calculates the tf/idf weight of a term.
      * 
-     * @param document
-     *            The document whose weight should be updated.
-     * @param term
-     *            The term whose weight should be updated.
-     * @param documents
-     *            All documents relevant for updating the term weight.
+     * @param freq
+     *            The frequency of the term in the document.
+     * @param maxFreq
+     *            The highest frequency of any term in the document.
+     * @param documentCount
+     *            The number of documents in the corpus.
+     * @param documentFrequency
+     *            The number of documents in the corpus containing the term.
+     * @return The weight of the term.
+     */
+    public static double getTfIdfWeight( int freq, int maxFreq, int documentCount, int documentFrequency ) {
+        return getTf( freq, maxFreq ) * getIdf( documentCount, documentFrequency );
+    }
+    
+    /**
+     * Calculates the term frequency of a term relative to the most frequent
+     * term of a document.
+     * 
+     * @param freq
+     *            The frequency of the term in the document.
+     * @param maxFreq
+     *            The highest frequency of any term in the document.
+     * @return The relative term frequency.
      */
-    public static void setTfIdfWeight( Document document, String term, Document[] documents ) {
-        double tf = document.getMaxFreq( ) == 0 ? 0.0 : ( double ) document.getFrequency( term ) / document.getMaxFreq( );
+    public static double getTf( int freq, int maxFreq ) {
+        double tf = maxFreq == 0 ? 0.0 : ( double ) freq / maxFreq;
         if ( Double.isNaN( tf ) ) {
             tf = 0.0;
         }
-        int n = 0;
-        for ( Document doc : documents ) {
-            if ( doc.getFrequency( term ) > 0 ) {
-                n++;
-            }
-        }
-        double idf = Math.log( ( double ) documents.length / n ) / Math.log( 2 );
+        return tf;
+    }
+    
+    /**
+     * Calculates the inverse document frequency of a term.
+     * 
+     * @param documentCount
+     *            The number of documents in the corpus.
+     * @param documentFrequency
+     *            The number of documents in the corpus containing the term.
+     * @return The idf of the term.
+     */
+    public static double getIdf( int documentCount, int documentFrequency ) {
+        double idf = Math.log( ( double ) documentCount / documentFrequency ) / Math.log( 2 );
         if ( Double.isNaN( idf ) ) {
             idf = 0.0;
         }
-        document.setWeight( term, tf * idf );
+        return idf;
     }
     
 }
@@ -0,0 +1,116 @@
+package common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+
+/**
+ * Counts non-negative values, e.g. latencies in nanoseconds, in logarithmic
+ * buckets: each power of two is split into 8 buckets of equal width, so
+ * percentiles are reported with a relative error below 12.5% using a fixed
+ * amount of memory. Values can be recorded concurrently without locks.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class Histogram {
+    
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    
+    private AtomicLongArray fCounts = new AtomicLongArray( ( 64 - SUB_BUCKET_BITS + 1 ) * SUB_BUCKETS );
+    private AtomicLong fCount = new AtomicLong( );
+    private AtomicLong fSum = new AtomicLong( );
+    private AtomicLong fMax = new AtomicLong( );
+    
+    /**
+     * Records a value; negative values count as 0.
+     */
+    public void record( long value ) {
+        value = Math.max( 0, value );
+        fCounts.incrementAndGet( getBucket( value ) );
+        fCount.incrementAndGet( );
+        fSum.addAndGet( value );
+        long max = fMax.get( );
+        while ( value > max && !fMax.compareAndSet( max, value ) ) {
+            max = fMax.get( );
+        }
+    }
+    
+    public long getCount( ) {
+        return fCount.get( );
+    }
+    
+    public long getSum( ) {
+        return fSum.get( );
+    }
+    
+    public long getMax( ) {
+        return fMax.get( );
+    }
+    
+    public double getMean( ) {
+        long count = fCount.get( );
+        return count == 0 ? 0.0 : ( double ) fSum.get( ) / count;
+    }
+    
+    /**
+     * Returns a percentile of the values recorded (nearest rank), as the upper
+     * bound of the bucket holding it.
+     * 
+     * @param percent
+     *            The percentile, between 0 and 100.
+     * @return The percentile, or 0 if no value has been recorded.
+     */
+    public long getPercentile( double percent ) {
+        long count = 0;
+        for ( int i = 0; i < fCounts.length( ); i++ ) {
+            count += fCounts.get( i );
+        }
+        if ( count == 0 ) {
+            return 0;
+        }
+        long rank = Math.max( 1, ( long ) Math.ceil( percent / 100 * count ) );
+        long seen = 0;
+        for ( int i = 0; i < fCounts.length( ); i++ ) {
+            seen += fCounts.get( i );
+            if ( seen >= rank ) {
+                return Math.min( getLowerBound( i + 1 ) - 1, fMax.get( ) );
+            }
+        }
+        return fMax.get( );
+    }
+    
+    /**
+     * Forgets all values. Values recorded concurrently may be partly kept.
+     */
+    public void reset( ) {
+        for ( int i = 0; i < fCounts.length( ); i++ ) {
+            fCounts.set( i, 0 );
+        }
+        fCount.set( 0 );
+        fSum.set( 0 );
+        fMax.set( 0 );
+    }
+    
+    private static int getBucket( long value ) {
+        if ( value < SUB_BUCKETS ) {
+            return ( int ) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros( value );
+        int subBucket = ( int ) ( value >>> ( exponent - SUB_BUCKET_BITS ) ) & ( SUB_BUCKETS - 1 );
+        return ( exponent - SUB_BUCKET_BITS + 1 ) * SUB_BUCKETS + subBucket;
+    }
+    
+    private static long getLowerBound( int bucket ) {
+        if ( bucket < SUB_BUCKETS ) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        if ( exponent > 62 ) {
+            return Long.MAX_VALUE;
+        }
+        return ( long ) ( SUB_BUCKETS + bucket % SUB_BUCKETS ) << ( exponent - SUB_BUCKET_BITS );
+    }
+    
+}
@@ -0,0 +1,367 @@
+package common;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+
+/**
+ * Measures where the time of indexing and searching goes. The stages of the
+ * analysis and query paths are timed into a histogram per stage, and each
+ * query evaluated by a model counts the postings it touched, the documents it
+ * scored and the memory it allocated. The work of a query evaluated for
+ * another one counts towards both, but only once towards the totals of the
+ * report. Stages and queries are also committed as Java Flight Recorder
+ * events (irmodels.Stage and irmodels.Query) while a recording is running.
+ * 
+ * Metrics are disabled unless the system property irmodels.metrics is true or
+ * they are enabled with setEnabled. While disabled, start and beginQuery
+ * return null and all other methods return right away, so instrumented code
+ * costs a flag check per stage.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public final class Metrics {
+    
+    public static final int READ_FILE = 0;
+    public static final int DOCUMENT = 1; // Analyzing the text of a corpus document into a term vector
+    public static final int STEM = 2; // Helpers.stem
+    public static final int QUERY_ANALYSIS = 3;
+    public static final int SCORING = 4; // Traversing postings, boolean matching
+    public static final int RANKING = 5; // Sorting the result map
+    public static final int RESULT_ASSEMBLY = 6; // Turning results into table rows
+    
+    private static final String[] STAGE_NAMES = { "read file", "document", "stem", "query analysis", "scoring", "ranking", "result assembly" };
+    
+    private static volatile boolean sEnabled = Boolean.getBoolean( "irmodels.metrics" );
+    private static final Histogram[] STAGES = new Histogram[STAGE_NAMES.length];
+    private static final ConcurrentMap<String,Histogram> QUERIES = new ConcurrentHashMap<String,Histogram>( ); // By model
+    private static final LongAdder QUERY_COUNT = new LongAdder( );
+    private static final LongAdder POSTINGS = new LongAdder( );
+    private static final LongAdder DOCUMENTS_SCORED = new LongAdder( );
+    private static final LongAdder ALLOCATED_BYTES = new LongAdder( );
+    private static final ThreadLocal<Query> CURRENT = new ThreadLocal<Query>( );
+    
+    static {
+        for ( int stage = 0; stage < STAGES.length; stage++ ) {
+            STAGES[stage] = new Histogram( );
+        }
+    }
+    
+    /**
+     * Times a stage; committed as a flight recorder event when stopped.
+     */
+    @Name( "irmodels.Stage" )
+    @Label( "Stage" )
+    @Category( "IR Models" )
+    @Description( "A stage of indexing or searching" )
+    @StackTrace( false )
+    public static final class Timer extends Event {
+        
+        @Label( "Stage" )
+        String stage;
+        
+        private transient int fStage = 0;
+        private transient long fStart = 0;
+        private transient boolean fStopped = false;
+        
+        Timer( int stage ) {
+            this.stage = STAGE_NAMES[stage];
+            fStage = stage;
+        }
+        
+    }
+    
+    /**
+     * Counts the work of a query; committed as a flight recorder event when
+     * the query ends.
+     */
+    @Name( "irmodels.Query" )
+    @Label( "Query" )
+    @Category( "IR Models" )
+    @Description( "A query evaluated by a model" )
+    public static final class Query extends Event {
+        
+        @Label( "Model" )
+        String model;
+        
+        @Label( "Query" )
+        String query;
+        
+        @Label( "Postings Touched" )
+        long postings;
+        
+        @Label( "Documents Scored" )
+        long documentsScored;
+        
+        @Label( "Allocated" )
+        @DataAmount
+        long allocated;
+        
+        private transient long fStart = 0;
+        private transient long fAllocatedBefore = 0;
+        private transient Query fOuter = null; // The query this one is evaluated for
+        
+        Query( String model, String query ) {
+            this.model = model;
+            this.query = query;
+        }
+        
+    }
+    
+    /**
+     * Measures the memory allocated by a thread, where the JVM supports it.
+     */
+    private static final class Allocations {
+        
+        private static final com.sun.management.ThreadMXBean BEAN = getBean( );
+        
+        private static com.sun.management.ThreadMXBean getBean( ) {
+            try {
+                if ( ManagementFactory.getThreadMXBean( ) instanceof com.sun.management.ThreadMXBean ) {
+                    com.sun.management.ThreadMXBean bean = ( com.sun.management.ThreadMXBean ) ManagementFactory.getThreadMXBean( );
+                    if ( bean.isThreadAllocatedMemorySupported( ) && bean.isThreadAllocatedMemoryEnabled( ) ) {
+                        return bean;
+                    }
+                }
+            } catch ( LinkageError e ) {
+                // Not a HotSpot JVM
+            }
+            return null;
+        }
+        
+        /**
+         * Returns the bytes allocated by the current thread so far, or -1.
+         */
+        static long get( ) {
+            return BEAN == null ? -1 : BEAN.getThreadAllocatedBytes( Thread.currentThread( ).getId( ) );
+        }
+        
+    }
+    
+    private Metrics( ) {
+    }
+    
+    public static boolean isEnabled( ) {
+        return sEnabled;
+    }
+    
+    public static void setEnabled( boolean enabled ) {
+        sEnabled = enabled;
+    }
+    
+    /**
+     * Starts timing a stage.
+     * 
+     * @param stage
+     *            One of the stage constants.
+     * @return The timer to stop, or null if metrics are disabled.
+     */
+    public static Timer start( int stage ) {
+        if ( !sEnabled ) {
+            return null;
+        }
+        Timer timer = new Timer( stage );
+        timer.begin( );
+        timer.fStart = System.nanoTime( );
+        return timer;
+    }
+    
+    /**
+     * Stops timing a stage and records its duration. Stopping a timer again
+     * has no effect, so a finally block can stop the stage an exception left
+     * running.
+     * 
+     * @param timer
+     *            The timer returned by start, may be null.
+     */
+    public static void stop( Timer timer ) {
+        if ( timer == null || timer.fStopped ) {
+            return;
+        }
+        timer.fStopped = true;
+        STAGES[timer.fStage].record( System.nanoTime( ) - timer.fStart );
+        timer.end( );
+        if ( timer.shouldCommit( ) ) {
+            timer.commit( );
+        }
+    }
+    
+    /**
+     * Begins counting the work of a query on the current thread. Queries
+     * begun while another one is running on the thread, e.g. by a model
+     * evaluating another one, are part of the outer query: their latency is
+     * recorded for their model, but their work is added to the outer query
+     * instead of the totals.
+     * 
+     * @param model
+     *            The name of the model evaluating the query.
+     * @param queryString
+     *            The search query.
+     * @return The query to end, or null if metrics are disabled.
+     */
+    public static Query beginQuery( String model, String queryString ) {
+        if ( !sEnabled ) {
+            return null;
+        }
+        Query query = new Query( model, queryString );
+        query.fOuter = CURRENT.get( );
+        CURRENT.set( query );
+        query.begin( );
+        query.fAllocatedBefore = Allocations.get( );
+        query.fStart = System.nanoTime( );
+        return query;
+    }
+    
+    /**
+     * Ends counting the work of a query and records it.
+     * 
+     * @param query
+     *            The query returned by beginQuery, may be null.
+     */
+    public static void endQuery( Query query ) {
+        if ( query == null ) {
+            return;
+        }
+        long nanos = System.nanoTime( ) - query.fStart;
+        long allocated = Allocations.get( );
+        query.allocated = query.fAllocatedBefore < 0 ? 0 : allocated - query.fAllocatedBefore;
+        query.end( );
+        if ( query.fOuter == null ) {
+            CURRENT.remove( );
+        } else {
+            CURRENT.set( query.fOuter );
+        }
+        
+        Histogram histogram = QUERIES.get( query.model );
+        if ( histogram == null ) {
+            QUERIES.putIfAbsent( query.model, new Histogram( ) );
+            histogram = QUERIES.get( query.model );
+        }
+        histogram.record( nanos );
+        if ( query.fOuter == null ) {
+            QUERY_COUNT.increment( );
+            POSTINGS.add( query.postings );
+            DOCUMENTS_SCORED.add( query.documentsScored );
+            ALLOCATED_BYTES.add( query.allocated );
+        } else {
+            // The outer query's allocations already include these
+            query.fOuter.postings += query.postings;
+            query.fOuter.documentsScored += query.documentsScored;
+        }
+        if ( query.shouldCommit( ) ) {
+            query.commit( );
+        }
+    }
+    
+    /**
+     * Counts postings touched by the query running on the current thread.
+     */
+    public static void countPostings( int postings ) {
+        if ( !sEnabled ) {
+            return;
+        }
+        Query query = CURRENT.get( );
+        if ( query != null ) {
+            query.postings += postings;
+        }
+    }
+    
+    /**
+     * Counts documents scored by the query running on the current thread.
+     */
+    public static void countDocumentsScored( int documents ) {
+        if ( !sEnabled ) {
+            return;
+        }
+        Query query = CURRENT.get( );
+        if ( query != null ) {
+            query.documentsScored += documents;
+        }
+    }
+    
+    /**
+     * Returns the durations of a stage recorded so far, in nanoseconds.
+     */
+    public static Histogram getHistogram( int stage ) {
+        return STAGES[stage];
+    }
+    
+    /**
+     * Returns the durations of the queries of a model recorded so far, in
+     * nanoseconds, or null if none has been recorded.
+     */
+    public static Histogram getQueryHistogram( String model ) {
+        return QUERIES.get( model );
+    }
+    
+    public static long getQueryCount( ) {
+        return QUERY_COUNT.sum( );
+    }
+    
+    public static long getPostings( ) {
+        return POSTINGS.sum( );
+    }
+    
+    public static long getDocumentsScored( ) {
+        return DOCUMENTS_SCORED.sum( );
+    }
+    
+    public static long getAllocatedBytes( ) {
+        return ALLOCATED_BYTES.sum( );
+    }
+    
+    /**
+     * Forgets everything recorded so far.
+     */
+    public static void reset( ) {
+        for ( Histogram histogram : STAGES ) {
+            histogram.reset( );
+        }
+        QUERIES.clear( );
+        QUERY_COUNT.reset( );
+        POSTINGS.reset( );
+        DOCUMENTS_SCORED.reset( );
+        ALLOCATED_BYTES.reset( );
+    }
+    
+    /**
+     * Returns a table of the latencies of all stages and queries recorded, in
+     * microseconds, followed by the average work per query.
+     */
+    public static String getReport( ) {
+        StringBuilder report = new StringBuilder( );
+        report.append( String.format( "%-22s %9s %10s %10s %10s %10s %10s%n", "stage", "count", "mean us", "p50 us", "p95 us", "p99 us", "max us" ) );
+        for ( int stage = 0; stage < STAGES.length; stage++ ) {
+            appendRow( report, STAGE_NAMES[stage], STAGES[stage] );
+        }
+        for ( Map.Entry<String,Histogram> model : new TreeMap<String,Histogram>( QUERIES ).entrySet( ) ) {
+            appendRow( report, "query " + model.getKey( ), model.getValue( ) );
+        }
+        long queries = QUERY_COUNT.sum( );
+        if ( queries > 0 ) {
+            report.append( String.format( "%d queries, per query: %.1f postings touched, %.1f documents scored, %.1f KB allocated%n", queries, ( double ) POSTINGS.sum( ) / queries, ( double ) DOCUMENTS_SCORED.sum( ) / queries, ALLOCATED_BYTES.sum( ) / 1024.0 / queries ) );
+        }
+        return report.toString( );
+    }
+    
+    private static void appendRow( StringBuilder report, String name, Histogram histogram ) {
+        if ( histogram.getCount( ) == 0 ) {
+            return;
+        }
+        report.append( String.format( "%-22s %9d %10.1f %10.1f %10.1f %10.1f %10.1f%n", name, histogram.getCount( ), histogram.getMean( ) / 1e3, histogram.getPercentile( 50 ) / 1e3, histogram.getPercentile( 95 ) / 1e3, histogram.getPercentile( 99 ) / 1e3, histogram.getMax( ) / 1e3 ) );
+    }
+    
+}
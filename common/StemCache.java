@@ -0,0 +1,205 @@
+package common;
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+
+/**
+ * Remembers the stems of recently stemmed words. Natural language texts use a
+ * small vocabulary over and over, so most words can be looked up instead of
+ * running the Porter algorithm again.
+ * 
+ * The cache is a two-way set associative table of immutable entries: a word
+ * can only be stored in the two slots of the set its hash code selects. When
+ * both are taken, the one not hit since the last eviction in the set is
+ * replaced (second chance). Lookups and updates take no locks; a race between
+ * two threads can at worst lose an entry, never return a wrong stem. Words are
+ * expected in lower case.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class StemCache {
+    
+    private static final StemCache DEFAULT = new StemCache( 1 << 16 );
+    
+    private static final class Entry {
+        
+        final int fHash;
+        final char[] fWord;
+        final char[] fStem;
+        final String fStemString;
+        
+        Entry( int hash, char[] word, char[] stem ) {
+            fHash = hash;
+            fWord = word;
+            fStem = stem;
+            fStemString = new String( stem );
+        }
+        
+    }
+    
+    private Entry[] fEntries = null;
+    private boolean[] fReferenced = null; // Hit since the last eviction in its set
+    private LongAdder fHits = new LongAdder( );
+    private LongAdder fMisses = new LongAdder( );
+    
+    /**
+     * @param capacity
+     *            The maximum number of words kept, rounded up to a power of
+     *            two.
+     */
+    public StemCache( int capacity ) {
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit( capacity - 1 ) << 1;
+        fEntries = new Entry[size];
+        fReferenced = new boolean[size];
+    }
+    
+    /**
+     * Returns the cache used by Helpers.stem() and by stemming analyzers.
+     */
+    public static StemCache getDefault( ) {
+        return DEFAULT;
+    }
+    
+    /**
+     * Stems a word.
+     * 
+     * @param word
+     *            A word in lower case.
+     * @return The stemmed form of the word.
+     */
+    public String stem( String word ) {
+        int hash = word.hashCode( );
+        int set = getSet( hash );
+        for ( int slot = set; slot < set + 2; slot++ ) {
+            Entry entry = fEntries[slot];
+            if ( entry != null && entry.fHash == hash && equals( entry.fWord, word ) ) {
+                hit( slot );
+                return entry.fStemString;
+            }
+        }
+        return miss( set, hash, word.toCharArray( ), new Stemmer( ) ).fStemString;
+    }
+    
+    /**
+     * Stems a word given as a range of characters.
+     * 
+     * @param buffer
+     *            The characters of the word, in lower case.
+     * @param offset
+     *            The position of the first character.
+     * @param length
+     *            The number of characters.
+     * @param stemmer
+     *            Stems the word if it is not cached.
+     * @return The characters of the stem. The array is shared and must not be
+     *         modified.
+     */
+    public char[] stem( char[] buffer, int offset, int length, Stemmer stemmer ) {
+        int hash = 0;
+        for ( int i = offset; i < offset + length; i++ ) {
+            hash = 31 * hash + buffer[i];
+        }
+        int set = getSet( hash );
+        for ( int slot = set; slot < set + 2; slot++ ) {
+            Entry entry = fEntries[slot];
+            if ( entry != null && entry.fHash == hash && equals( entry.fWord, buffer, offset, length ) ) {
+                hit( slot );
+                return entry.fStem;
+            }
+        }
+        char[] word = new char[length];
+        System.arraycopy( buffer, offset, word, 0, length );
+        return miss( set, hash, word, stemmer ).fStem;
+    }
+    
+    public long getHits( ) {
+        return fHits.sum( );
+    }
+    
+    public long getMisses( ) {
+        return fMisses.sum( );
+    }
+    
+    /**
+     * Returns the share of lookups answered from the cache.
+     */
+    public double getHitRate( ) {
+        long hits = fHits.sum( );
+        long lookups = hits + fMisses.sum( );
+        return lookups == 0 ? 0.0 : ( double ) hits / lookups;
+    }
+    
+    /**
+     * Removes all words and resets the counters.
+     */
+    public void clear( ) {
+        for ( int slot = 0; slot < fEntries.length; slot++ ) {
+            fEntries[slot] = null;
+            fReferenced[slot] = false;
+        }
+        fHits.reset( );
+        fMisses.reset( );
+    }
+    
+    @Override
+    public String toString( ) {
+        return String.format( "%d hits, %d misses (hit rate %.1f%%)", getHits( ), getMisses( ), 100 * getHitRate( ) );
+    }
+    
+    private int getSet( int hash ) {
+        return ( hash ^ ( hash >>> 16 ) ) & ( fEntries.length - 2 );
+    }
+    
+    private void hit( int slot ) {
+        if ( !fReferenced[slot] ) {
+            fReferenced[slot] = true;
+        }
+        fHits.increment( );
+    }
+    
+    private Entry miss( int set, int hash, char[] word, Stemmer stemmer ) {
+        fMisses.increment( );
+        char[] stem = new char[stemmer.stem( word, 0, word.length )];
+        System.arraycopy( stemmer.getResultBuffer( ), 0, stem, 0, stem.length );
+        Entry entry = new Entry( hash, word, stem );
+        
+        // Replace a free slot or one that has not been hit, giving the others a second chance
+        int slot = set;
+        if ( fEntries[set] != null && ( fEntries[set + 1] == null || fReferenced[set] ) ) {
+            slot = set + 1;
+        }
+        if ( fEntries[slot] != null && fReferenced[slot] ) {
+            fReferenced[set] = false;
+            fReferenced[set + 1] = false;
+        }
+        fEntries[slot] = entry;
+        fReferenced[slot] = false;
+        return entry;
+    }
+    
+    private static boolean equals( char[] word, String other ) {
+        if ( word.length != other.length( ) ) {
+            return false;
+        }
+        for ( int i = 0; i < word.length; i++ ) {
+            if ( word[i] != other.charAt( i ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static boolean equals( char[] word, char[] buffer, int offset, int length ) {
+        if ( word.length != length ) {
+            return false;
+        }
+        for ( int i = 0; i < length; i++ ) {
+            if ( word[i] != buffer[offset + i] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+}
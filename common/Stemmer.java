@@ -44,6 +44,11 @@ import java.io.*;
  * The Stemmer class transforms a word into its root form. The input word can be
  * provided a character at time (by calling add()), or at once by calling one of
  * the various stem(something) methods.
+ * 
+ * A Stemmer reuses its buffer for every word and must be confined to one
+ * thread. stem(char[], int, int) and stem(CharSequence, int, int) stem a range
+ * of characters without creating any objects once the buffer is large enough;
+ * the result is read from getResultBuffer() and getResultLength().
  */
 
 public class Stemmer {
@@ -68,10 +73,7 @@ public class Stemmer {
     
     public void add( char ch ) {
         if ( i == b.length ) {
-            char[] new_b = new char[i + INC];
-            for ( int c = 0; c < i; c++ )
-                new_b[c] = b[c];
-            b = new_b;
+            grow( i + 1 );
         }
         b[i++] = ch;
     }
@@ -82,14 +84,60 @@ public class Stemmer {
      */
     
     public void add( char[] w, int wLen ) {
-        if ( i + wLen >= b.length ) {
-            char[] new_b = new char[i + wLen + INC];
-            for ( int c = 0; c < i; c++ )
-                new_b[c] = b[c];
-            b = new_b;
+        add( w, 0, wLen );
+    }
+    
+    /**
+     * Adds the characters w[offset],...,w[offset + length - 1] to the word
+     * being stemmed.
+     */
+    
+    public void add( char[] w, int offset, int length ) {
+        if ( i + length > b.length ) {
+            grow( i + length );
+        }
+        System.arraycopy( w, offset, b, i, length );
+        i += length;
+    }
+    
+    /**
+     * Stems the word w[offset],...,w[offset + length - 1], discarding any
+     * characters added before. The word is expected in lower case.
+     * 
+     * @return The length of the stem, which is held by getResultBuffer().
+     */
+    
+    public int stem( char[] w, int offset, int length ) {
+        i = 0;
+        add( w, offset, length );
+        stem( );
+        return i_end;
+    }
+    
+    /**
+     * Stems the characters start,...,end - 1 of a char sequence, discarding any
+     * characters added before. The word is expected in lower case.
+     * 
+     * @return The length of the stem, which is held by getResultBuffer().
+     */
+    
+    public int stem( CharSequence w, int start, int end ) {
+        i = 0;
+        if ( end - start > b.length ) {
+            grow( end - start );
         }
-        for ( int c = 0; c < wLen; c++ )
-            b[i++] = w[c];
+        for ( int c = start; c < end; c++ )
+            b[i++] = w.charAt( c );
+        stem( );
+        return i_end;
+    }
+    
+    /* grow(n) makes room for at least n characters, doubling the buffer. */
+    
+    private void grow( int n ) {
+        char[] new_b = new char[Math.max( n, 2 * b.length )];
+        System.arraycopy( b, 0, new_b, 0, i );
+        b = new_b;
     }
     
     /**
@@ -0,0 +1,53 @@
+package common;
+
+import java.util.Arrays;
+
+
+
+/**
+ * Stores the terms of an analyzed text compactly in one char array, so that
+ * analyzing and indexing a text can be done by different threads.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class TokenList implements Analyzer.TokenConsumer {
+    
+    private char[] fChars = new char[256];
+    private int[] fEnds = new int[64]; // End offset of each term in fChars
+    private int fSize = 0;
+    
+    @Override
+    public void token( char[] buffer, int offset, int length ) {
+        int start = fSize == 0 ? 0 : fEnds[fSize - 1];
+        if ( start + length > fChars.length ) {
+            fChars = Arrays.copyOf( fChars, Math.max( start + length, fChars.length * 2 ) );
+        }
+        if ( fSize == fEnds.length ) {
+            fEnds = Arrays.copyOf( fEnds, fSize * 2 );
+        }
+        System.arraycopy( buffer, offset, fChars, start, length );
+        fEnds[fSize++] = start + length;
+    }
+    
+    /**
+     * Returns the number of terms.
+     */
+    public int size( ) {
+        return fSize;
+    }
+    
+    /**
+     * Passes all terms to a consumer again, in the order they were added.
+     * 
+     * @param consumer
+     *            Receives the terms.
+     */
+    public void replay( Analyzer.TokenConsumer consumer ) {
+        int start = 0;
+        for ( int i = 0; i < fSize; i++ ) {
+            consumer.token( fChars, start, fEnds[i] - start );
+            start = fEnds[i];
+        }
+    }
+    
+}
@@ -1,16 +1,26 @@
 package gui;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.SortedMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 
+import index.CorpusLoader;
+import index.IndexFile;
+import index.InvertedIndex;
+import index.SegmentedIndex;
 import model.BooleanModel;
 import model.Document;
+import model.FusedEvaluator;
 import model.ProbabilisticModel;
+import model.TopDocuments;
 import model.VectorModel;
 
 import org.eclipse.jface.window.ApplicationWindow;
@@ -24,7 +34,9 @@ import org.eclipse.swt.widgets.Shell;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Table;
 import org.eclipse.jface.dialogs.MessageDialog;
-import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.dialogs.ProgressMonitorDialog;
+import org.eclipse.jface.operation.IRunnableWithProgress;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.viewers.ColumnLabelProvider;
 import org.eclipse.jface.viewers.TableViewer;
 import org.eclipse.swt.widgets.Label;
@@ -35,6 +47,8 @@ import org.eclipse.swt.widgets.Text;
 import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.events.SelectionAdapter;
 import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.events.ModifyEvent;
+import org.eclipse.swt.events.ModifyListener;
 
 import common.Helpers;
 
@@ -49,16 +63,52 @@ import common.Helpers;
  */
 public class MainWindow extends ApplicationWindow {
     
+    private static final String INDEX_FILE_PREFIX = ".irmodels-"; // Index files in the corpus directory
+    private static final String CACHE_DIR = ".irmodels"; // In the user's home, for read-only corpus directories
+    
+    /**
+     * The three models working on one analysis of the corpus.
+     */
+    private static class Models {
+        
+        private Document[] fDocuments = null;
+        private InvertedIndex fIndex = null;
+        private boolean fTfidf = false;
+        private BooleanModel fBooleanModel = null;
+        private VectorModel fVectorModel = null;
+        private ProbabilisticModel fProbabilisticModel = null;
+        private FusedEvaluator fEvaluator = null; // Evaluates the three models in one pass
+        
+        Models( InvertedIndex index, boolean tfidf ) {
+            fIndex = index;
+            fDocuments = index.getDocuments( );
+            fBooleanModel = new BooleanModel( fDocuments, index );
+            fProbabilisticModel = new ProbabilisticModel( fDocuments, index );
+            setTfidf( tfidf );
+        }
+        
+        void setTfidf( boolean tfidf ) {
+            fTfidf = tfidf;
+            fVectorModel = new VectorModel( fDocuments, fIndex, tfidf );
+            fEvaluator = new FusedEvaluator( fBooleanModel, fVectorModel, fProbabilisticModel );
+        }
+        
+    }
+    
     private Table fTblModels = null;
     private Text fTxtCorpus = null;
     private Text fTxtQuery = null;
     
     private Document[] fDocuments = null;
+    private InvertedIndex fIndex = null; // Unstemmed terms, the stemmed index is derived from it
+    private Models[] fModels = null; // Without and with stemming, built on first use
+    private File fCorpusDir = null;
+    private SegmentedIndex fCorpus = null; // Updated when fCorpusDir is loaded again, null if read from an index file
+    private Map<String,String> fStamps = null; // Name of each file in fCorpus -> its size and modification time
     
-    private List<ResultsLine> results = null;
-    private BooleanModel fBooleanModel = null;
-    private VectorModel fVectorModel = null;
-    private ProbabilisticModel fProbabilisticModel = null;
+    private FusedEvaluator fEvaluator = null;
+    private SearchExecutor fSearches = null;
+    private ResultsContentProvider fResults = null;
     private TableViewer fTvwModels;
     private Button fBtnStem;
     private Button fBtnTfidf;
@@ -79,6 +129,8 @@ public class MainWindow extends ApplicationWindow {
      */
     @Override
     protected Control createContents( Composite parent ) {
+        fSearches = new SearchExecutor( parent.getDisplay( ), 3 );
+        
         Composite container = new Composite( parent, SWT.NONE );
         container.setLayout( new GridLayout( 8, false ) );
         
@@ -98,16 +150,7 @@ public class MainWindow extends ApplicationWindow {
                 String dir = dirDlg.open( );
                 if ( dir != null ) {
                     fTxtCorpus.setText( dir );
-                    Collection<Document> documents = new LinkedList<Document>( );
-                    for ( File file : new File( dir ).listFiles( ) ) {
-                        if ( file.isFile( ) ) {
-                            documents.add( new Document( file.getName( ), Helpers.readFile( file.getAbsolutePath( ) ), fBtnStem.getSelection( ) ) );
-                        }
-                    }
-                    fDocuments = documents.toArray( new Document[documents.size( )] );
-                    fBooleanModel = new BooleanModel( fDocuments );
-                    updateVectorModel( );
-                    fProbabilisticModel = new ProbabilisticModel( fDocuments );
+                    loadCorpus( dir );
                 }
             }
         } );
@@ -119,15 +162,22 @@ public class MainWindow extends ApplicationWindow {
         lblQuery.setText( "Query" );
         
         fTxtQuery = new Text( container, SWT.BORDER );
+        fTxtQuery.addModifyListener( new ModifyListener( ) {
+            
+            @Override
+            public void modifyText( ModifyEvent e ) {
+                // The results shown no longer belong to the query
+                fResults.cancel( );
+            }
+        } );
         fTxtQuery.setLayoutData( new GridData( SWT.FILL, SWT.CENTER, true, false, 6, 1 ) );
         
         Button btnSearch = new Button( container, SWT.NONE );
         btnSearch.addSelectionListener( new SelectionAdapter( ) {
             
-            @SuppressWarnings("unchecked")
             @Override
             public void widgetSelected( SelectionEvent e ) {
-                if ( fBooleanModel == null ) {
+                if ( fEvaluator == null ) {
                     MessageDialog.openError( getShell( ), "No corpus selected", "You have to select a corpus first." );
                     return;
                 }
@@ -136,20 +186,7 @@ public class MainWindow extends ApplicationWindow {
                     return;
                 }
                 
-                // Retrieve results
-                results = new ArrayList<ResultsLine>( );
-                
-                SortedMap<Document,Double> booleanResult = fBooleanModel.getDocuments( fTxtQuery.getText( ), fBtnStem.getSelection( ) );
-                SortedMap<Document,Double> vectorResult = fVectorModel.getDocuments( fTxtQuery.getText( ), fBtnStem.getSelection( ) );
-                SortedMap<Document,Double> probabilisticResult = fProbabilisticModel.getDocuments( fTxtQuery.getText( ), Double.valueOf( fTxtK.getText( ) ), Double.valueOf( fTxtB.getText( ) ), fBtnStem.getSelection( ) );
-                
-                Object[] booleanDocuments = booleanResult.entrySet( ).toArray( );
-                Object[] vectorDocuments = vectorResult.entrySet( ).toArray( );
-                Object[] probabilisticDocuments = probabilisticResult.entrySet( ).toArray( );
-                for ( int i = 0; i < fDocuments.length; i++ ) {
-                    results.add( new ResultsLine( ( ( Entry<Document,Double> ) booleanDocuments[i] ).getKey( ), ( ( Entry<Document,Double> ) booleanDocuments[i] ).getValue( ), ( ( Entry<Document,Double> ) vectorDocuments[i] ).getKey( ), ( ( Entry<Document,Double> ) vectorDocuments[i] ).getValue( ), ( ( Entry<Document,Double> ) probabilisticDocuments[i] ).getKey( ), ( ( Entry<Document,Double> ) probabilisticDocuments[i] ).getValue( ) ) );
-                }
-                fTvwModels.setInput( results );
+                search( fTxtQuery.getText( ), fBtnStem.getSelection( ), Double.valueOf( fTxtK.getText( ) ), Double.valueOf( fTxtB.getText( ) ) );
             }
         } );
         btnSearch.setLayoutData( new GridData( SWT.FILL, SWT.CENTER, false, false, 1, 1 ) );
@@ -160,16 +197,7 @@ public class MainWindow extends ApplicationWindow {
             
             @Override
             public void widgetSelected( SelectionEvent e ) {
-                Collection<Document> documents = new LinkedList<Document>( );
-                for ( File file : new File( fTxtCorpus.getText( ) ).listFiles( ) ) {
-                    if ( file.isFile( ) ) {
-                        documents.add( new Document( file.getName( ), Helpers.readFile( file.getAbsolutePath( ) ), fBtnStem.getSelection( ) ) );
-                    }
-                }
-                fDocuments = documents.toArray( new Document[documents.size( )] );
-                fBooleanModel = new BooleanModel( fDocuments );
-                updateVectorModel( );
-                fProbabilisticModel = new ProbabilisticModel( fDocuments );
+                selectModels( );
             }
         } );
         fBtnStem.setLayoutData( new GridData( SWT.LEFT, SWT.CENTER, false, false, 2, 1 ) );
@@ -182,7 +210,7 @@ public class MainWindow extends ApplicationWindow {
             
             @Override
             public void widgetSelected( SelectionEvent e ) {
-                updateVectorModel( );
+                selectModels( );
             }
         } );
         fBtnTfidf.setSelection( true );
@@ -209,8 +237,9 @@ public class MainWindow extends ApplicationWindow {
         fTxtB.setText( "0.75" );
         new Label( container, SWT.NONE );
         
-        fTvwModels = new TableViewer( container, SWT.BORDER | SWT.FULL_SELECTION );
-        fTvwModels.setContentProvider( new ArrayContentProvider( ) );
+        fTvwModels = new TableViewer( container, SWT.BORDER | SWT.FULL_SELECTION | SWT.VIRTUAL );
+        fResults = new ResultsContentProvider( fTvwModels, fSearches );
+        fTvwModels.setContentProvider( fResults );
         fTblModels = fTvwModels.getTable( );
         fTblModels.setHeaderVisible( true );
         fTblModels.setLinesVisible( true );
@@ -270,6 +299,38 @@ public class MainWindow extends ApplicationWindow {
         return container;
     }
     
+    @Override
+    public boolean close( ) {
+        boolean closed = super.close( );
+        if ( closed && fSearches != null ) {
+            fSearches.shutdown( );
+        }
+        return closed;
+    }
+    
+    /**
+     * Shows the results of a query on all models. The results are computed in
+     * the background, page by page as the rows are shown; the results of the
+     * previous query stop loading. The three columns share one evaluation of
+     * the query, which is cached for the following pages.
+     */
+    private void search( final String query, final boolean stem, final double k, final double b ) {
+        final FusedEvaluator evaluator = fEvaluator;
+        ResultsContentProvider.PageSource[] sources = new ResultsContentProvider.PageSource[3];
+        for ( int column = 0; column < sources.length; column++ ) {
+            final int model = column == ResultsContentProvider.BOOLEAN_COLUMN ? FusedEvaluator.BOOLEAN : column == ResultsContentProvider.VECTOR_COLUMN ? FusedEvaluator.VECTOR : FusedEvaluator.PROBABILISTIC;
+            sources[column] = new ResultsContentProvider.PageSource( ) {
+                
+                @Override
+                public TopDocuments getDocumentsAfter( double afterScore, int afterDocId, int count ) {
+                    return evaluator.evaluate( query, k, b, stem ).getDocumentsAfter( model, afterScore, afterDocId, count );
+                }
+            };
+        }
+        // The vector and probabilistic models rank all documents
+        fResults.setSources( sources, fDocuments.length );
+    }
+    
     /**
      * Launch the application.
      * 
@@ -305,9 +366,228 @@ public class MainWindow extends ApplicationWindow {
         return new Point( 800, 600 );
     }
     
-    private void updateVectorModel( ) {
-        if ( fDocuments != null && fDocuments.length > 0 ) {
-            fVectorModel = new VectorModel( fDocuments, fBtnTfidf.getSelection( ) );
+    /**
+     * Loads a corpus and builds all models. The corpus is indexed without
+     * stemming; the stemmed index is derived from that index when needed, so
+     * toggling stemming does not reload the corpus. If an index file built
+     * from the current files exists, see getIndexFile, the index is mapped
+     * from that file; otherwise all files are read in parallel and the index
+     * file is (re)written for the next time, if possible. When the directory
+     * of the loaded corpus is loaded again, only new, changed and removed
+     * files are added to or deleted from the corpus. Loading runs in the
+     * background while a progress dialog is shown; if it is cancelled, the
+     * previous corpus stays loaded.
+     * 
+     * @param dir
+     *            The corpus directory.
+     */
+    private void loadCorpus( String dir ) {
+        final boolean stem = fBtnStem.getSelection( );
+        final boolean tfidf = fBtnTfidf.getSelection( );
+        final File corpusDir = new File( dir ).getAbsoluteFile( );
+        final SegmentedIndex previous = corpusDir.equals( fCorpusDir ) ? fCorpus : null;
+        final Map<String,String> previousStamps = fStamps;
+        final File indexFile = getIndexFile( new File( dir ) );
+        final List<File> files = new ArrayList<File>( );
+        for ( File file : new File( dir ).listFiles( ) ) {
+            if ( file.isFile( ) && !file.getName( ).startsWith( INDEX_FILE_PREFIX ) ) {
+                files.add( file );
+            }
+        }
+        final File[] sources = files.toArray( new File[files.size( )] );
+        
+        IRunnableWithProgress operation = new IRunnableWithProgress( ) {
+            
+            @Override
+            public void run( final IProgressMonitor monitor ) throws InterruptedException {
+                monitor.beginTask( "Loading corpus", 2 * files.size( ) + 1 );
+                String stamp = getStamp( sources );
+                InvertedIndex index = null;
+                SegmentedIndex corpus = previous;
+                Map<String,String> stamps = previousStamps;
+                boolean changed = true;
+                if ( corpus != null ) {
+                    monitor.subTask( "Updating corpus" );
+                    changed = update( corpus, stamps, sources, monitor ) > 0;
+                    index = corpus.getSnapshot( );
+                } else if ( IndexFile.isUpToDate( indexFile, sources ) ) {
+                    try {
+                        index = IndexFile.read( indexFile );
+                    } catch ( IOException e ) {
+                        // Damaged, the index is rebuilt
+                    }
+                }
+                if ( index == null ) {
+                    stamps = getStamps( sources );
+                    final CorpusLoader loader = new CorpusLoader( sources, false );
+                    loader.setProgressListener( new CorpusLoader.ProgressListener( ) {
+                        
+                        private String fStage = null;
+                        
+                        @Override
+                        public synchronized void progress( String stage, int done, int total ) {
+                            if ( !stage.equals( fStage ) ) {
+                                fStage = stage;
+                                monitor.subTask( stage );
+                            }
+                            monitor.worked( 1 );
+                            if ( monitor.isCanceled( ) ) {
+                                loader.cancel( );
+                            }
+                        }
+                    } );
+                    try {
+                        index = loader.load( );
+                    } catch ( CancellationException e ) {
+                        throw new InterruptedException( );
+                    }
+                    corpus = new SegmentedIndex( index );
+                }
+                if ( corpus != null && changed && getStamp( sources ).equals( stamp ) ) { // Else files changed while loading
+                    try {
+                        indexFile.getParentFile( ).mkdirs( );
+                        IndexFile.write( index, sources, indexFile );
+                    } catch ( IOException e ) {
+                        // Not writable, the corpus is read again next time
+                    }
+                }
+                
+                monitor.subTask( "Building models" );
+                Models[] models = new Models[2];
+                models[stem ? 1 : 0] = new Models( stem ? index.getStemmedIndex( ) : index, tfidf );
+                if ( monitor.isCanceled( ) ) {
+                    throw new InterruptedException( );
+                }
+                // The dialog is modal, so the window does not use the models meanwhile
+                if ( fCorpus != null && fCorpus != corpus ) {
+                    fCorpus.close( );
+                }
+                fIndex = index;
+                fModels = models;
+                fCorpusDir = corpusDir;
+                fCorpus = corpus;
+                fStamps = stamps;
+                monitor.done( );
+            }
+        };
+        try {
+            new ProgressMonitorDialog( getShell( ) ).run( true, true, operation );
+            selectModels( );
+        } catch ( InvocationTargetException e ) {
+            e.getCause( ).printStackTrace( );
+            MessageDialog.openError( getShell( ), "Loading failed", "The corpus could not be loaded: " + e.getCause( ) );
+        } catch ( InterruptedException e ) {
+            // Cancelled, the previous corpus stays loaded
+        }
+    }
+    
+    /**
+     * Returns the index file of a corpus directory: a hidden file in the
+     * directory itself, or a file in the user's cache directory if the corpus
+     * directory is not writable.
+     */
+    private static File getIndexFile( File dir ) {
+        if ( dir.canWrite( ) ) {
+            return new File( dir, INDEX_FILE_PREFIX + "plain.idx" );
+        }
+        String path = dir.getAbsolutePath( );
+        try {
+            path = dir.getCanonicalPath( );
+        } catch ( IOException e ) {
+            // Keep the absolute path
         }
+        // Index files of other directories with the same hash fail the up to date check
+        return new File( new File( System.getProperty( "user.home" ), CACHE_DIR ), Integer.toHexString( path.hashCode( ) ) + "-plain.idx" );
     }
+    
+    /**
+     * Applies the changes of a corpus directory since the corpus was loaded:
+     * the documents of new and changed files are added, those of removed
+     * files deleted. Only the changed files are read.
+     * 
+     * @param corpus
+     *            The loaded corpus.
+     * @param stamps
+     *            The stamps of the files in the corpus, see getStamp; updated
+     *            along with the corpus.
+     * @param sources
+     *            The files now in the corpus directory.
+     * @return The number of documents added or deleted.
+     */
+    private static int update( SegmentedIndex corpus, Map<String,String> stamps, File[] sources, IProgressMonitor monitor ) throws InterruptedException {
+        int changes = 0;
+        Set<String> names = new HashSet<String>( );
+        for ( File file : sources ) {
+            if ( monitor.isCanceled( ) ) {
+                throw new InterruptedException( ); // The corpus keeps the changes applied so far
+            }
+            String stamp = getStamp( file );
+            names.add( file.getName( ) );
+            if ( !stamp.equals( stamps.get( file.getName( ) ) ) ) {
+                corpus.updateDocument( new Document( file.getName( ), Helpers.readFile( file.getPath( ) ), false, corpus.getDictionary( ) ) );
+                stamps.put( file.getName( ), stamp );
+                changes++;
+            }
+            monitor.worked( 2 );
+        }
+        for ( Iterator<String> i = stamps.keySet( ).iterator( ); i.hasNext( ); ) {
+            String name = i.next( );
+            if ( !names.contains( name ) ) {
+                corpus.deleteDocument( name );
+                i.remove( );
+                changes++;
+            }
+        }
+        return changes;
+    }
+    
+    /**
+     * Returns the names, sizes and modification times of files as a string.
+     */
+    private static String getStamp( File[] files ) {
+        StringBuilder stamp = new StringBuilder( );
+        for ( File file : files ) {
+            stamp.append( getStamp( file ) ).append( '\n' );
+        }
+        return stamp.toString( );
+    }
+    
+    private static String getStamp( File file ) {
+        return file.getName( ) + '/' + file.length( ) + '/' + file.lastModified( );
+    }
+    
+    /**
+     * Returns the stamp of each file by its name.
+     */
+    private static Map<String,String> getStamps( File[] files ) {
+        Map<String,String> stamps = new HashMap<String,String>( );
+        for ( File file : files ) {
+            stamps.put( file.getName( ), getStamp( file ) );
+        }
+        return stamps;
+    }
+    
+    /**
+     * Makes the models for the current stemming setting the active ones,
+     * building them from the loaded index if they have not been used yet.
+     */
+    private void selectModels( ) {
+        // Results of the previous models are stale, a search for them may still be running
+        fResults.cancel( );
+        if ( fIndex == null ) {
+            return;
+        }
+        boolean stem = fBtnStem.getSelection( );
+        boolean tfidf = fBtnTfidf.getSelection( );
+        Models models = fModels[stem ? 1 : 0];
+        if ( models == null ) {
+            models = new Models( stem ? fIndex.getStemmedIndex( ) : fIndex, tfidf );
+            fModels[stem ? 1 : 0] = models;
+        } else if ( models.fTfidf != tfidf ) {
+            models.setTfidf( tfidf );
+        }
+        fDocuments = models.fDocuments;
+        fEvaluator = models.fEvaluator;
+    }
+    
 }
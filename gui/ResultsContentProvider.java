@@ -0,0 +1,216 @@
+package gui;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import common.Metrics;
+
+import model.Document;
+import model.TopDocuments;
+
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.viewers.ILazyContentProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.Viewer;
+
+
+
+/**
+ * The content provider of the virtual results table. It only asks the models
+ * for the rows the table is about to show: the ranking of each model is
+ * loaded page by page in the background, each page continuing after the last
+ * document of the previous one. So the first rows of a result appear as
+ * quickly for a large corpus as for a small one. Accessed on the UI thread
+ * only.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class ResultsContentProvider implements ILazyContentProvider {
+    
+    /**
+     * Computes pages of the ranking of one model for the current query.
+     * Called from the worker threads.
+     */
+    public interface PageSource {
+        
+        /**
+         * See model.AbstractModel.getDocumentsAfter.
+         */
+        TopDocuments getDocumentsAfter( double afterScore, int afterDocId, int k );
+        
+    }
+    
+    public static final int PAGE_SIZE = 100; // Rows loaded at least by one search
+    
+    public static final int BOOLEAN_COLUMN = 0;
+    public static final int VECTOR_COLUMN = 1;
+    public static final int PROBABILISTIC_COLUMN = 2;
+    
+    private TableViewer fViewer = null;
+    private SearchExecutor fSearches = null;
+    private Ranking[] fRankings = new Ranking[0]; // Indexed by column
+    private boolean fFailed = false; // A search of the current query failed
+    
+    /**
+     * @param viewer
+     *            The virtual table showing the results.
+     * @param searches
+     *            Runs the searches for the pages.
+     */
+    public ResultsContentProvider( TableViewer viewer, SearchExecutor searches ) {
+        fViewer = viewer;
+        fSearches = searches;
+    }
+    
+    /**
+     * Shows the results of a new query, abandoning the previous one.
+     * 
+     * @param sources
+     *            The rankings of the models, indexed by column.
+     * @param rowCount
+     *            The number of rows of the table, at least the length of the
+     *            longest ranking.
+     */
+    public void setSources( PageSource[] sources, int rowCount ) {
+        fSearches.cancel( );
+        fFailed = false;
+        fRankings = new Ranking[sources.length];
+        for ( int column = 0; column < sources.length; column++ ) {
+            fRankings[column] = new Ranking( sources[column] );
+        }
+        fViewer.setInput( sources );
+        fViewer.setItemCount( rowCount );
+    }
+    
+    /**
+     * Stops loading the results of the current query. Rows not loaded yet
+     * stay empty.
+     */
+    public void cancel( ) {
+        fSearches.cancel( );
+        for ( Ranking ranking : fRankings ) {
+            ranking.fComplete = true;
+        }
+    }
+    
+    @Override
+    public void updateElement( int index ) {
+        Metrics.Timer timer = Metrics.start( Metrics.RESULT_ASSEMBLY );
+        ResultsLine line = new ResultsLine( );
+        for ( int column = 0; column < fRankings.length; column++ ) {
+            Ranking ranking = fRankings[column];
+            if ( index >= ranking.fSize ) {
+                ranking.request( index );
+                continue;
+            }
+            if ( column == BOOLEAN_COLUMN ) {
+                line.setBool( ranking.fDocuments[index], ranking.fScores[index] );
+            } else if ( column == VECTOR_COLUMN ) {
+                line.setVect( ranking.fDocuments[index], ranking.fScores[index] );
+            } else {
+                line.setProb( ranking.fDocuments[index], ranking.fScores[index] );
+            }
+        }
+        fViewer.replace( line, index );
+        Metrics.stop( timer );
+    }
+    
+    @Override
+    public void dispose( ) {
+        cancel( );
+    }
+    
+    @Override
+    public void inputChanged( Viewer viewer, Object oldInput, Object newInput ) {
+    }
+    
+    /**
+     * The part of a model's ranking loaded so far.
+     */
+    private class Ranking {
+        
+        private PageSource fSource = null;
+        private Document[] fDocuments = new Document[0];
+        private int[] fDocIds = new int[0];
+        private double[] fScores = new double[0];
+        private int fSize = 0;
+        private int fRequested = 0; // The number of documents the table needs
+        private boolean fLoading = false;
+        private boolean fComplete = false; // No more documents to load
+        
+        Ranking( PageSource source ) {
+            fSource = source;
+        }
+        
+        /**
+         * Makes sure the page containing a given row gets loaded.
+         */
+        void request( int row ) {
+            fRequested = Math.max( fRequested, ( row / PAGE_SIZE + 1 ) * PAGE_SIZE );
+            load( );
+        }
+        
+        /**
+         * Loads all documents up to the last one requested with one search,
+         * continuing after the last document loaded. Only one search per
+         * ranking runs at a time, requests arriving meanwhile are served by
+         * the next one.
+         */
+        private void load( ) {
+            if ( fLoading || fComplete || fSize >= fRequested ) {
+                return;
+            }
+            fLoading = true;
+            final double afterScore = fSize == 0 ? Double.POSITIVE_INFINITY : fScores[fSize - 1];
+            final int afterDocId = fSize == 0 ? -1 : fDocIds[fSize - 1];
+            final int count = fRequested - fSize;
+            fSearches.submit( new Callable<TopDocuments>( ) {
+                
+                @Override
+                public TopDocuments call( ) {
+                    return fSource.getDocumentsAfter( afterScore, afterDocId, count );
+                }
+            }, new SearchExecutor.ResultListener( ) {
+                
+                @Override
+                public void resultAvailable( TopDocuments page ) {
+                    append( page );
+                    fComplete |= page.size( ) < count;
+                    fLoading = false;
+                    if ( !fViewer.getTable( ).isDisposed( ) ) {
+                        fViewer.refresh( ); // Shows the new rows if they are visible
+                    }
+                    load( );
+                }
+                
+                @Override
+                public void searchFailed( Throwable cause ) {
+                    fLoading = false;
+                    fComplete = true;
+                    if ( !fFailed && !fViewer.getTable( ).isDisposed( ) ) {
+                        fFailed = true; // Reported once per query
+                        MessageDialog.openError( fViewer.getTable( ).getShell( ), "Search failed", "The query could not be evaluated: " + cause );
+                    }
+                }
+            } );
+        }
+        
+        private void append( TopDocuments page ) {
+            Metrics.Timer timer = Metrics.start( Metrics.RESULT_ASSEMBLY );
+            if ( fSize + page.size( ) > fDocIds.length ) {
+                int capacity = Math.max( fSize + page.size( ), fDocIds.length * 2 );
+                fDocuments = Arrays.copyOf( fDocuments, capacity );
+                fDocIds = Arrays.copyOf( fDocIds, capacity );
+                fScores = Arrays.copyOf( fScores, capacity );
+            }
+            for ( int i = 0; i < page.size( ); i++ ) {
+                fDocuments[fSize] = page.getDocument( i );
+                fDocIds[fSize] = page.getDocId( i );
+                fScores[fSize++] = page.getScore( i );
+            }
+            Metrics.stop( timer );
+        }
+        
+    }
+    
+}
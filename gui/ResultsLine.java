@@ -31,6 +31,28 @@ public class ResultsLine {
         fProbSim = probSim;
     }
     
+    /**
+     * Creates an empty line, whose columns are filled as the results of the
+     * models arrive.
+     */
+    public ResultsLine( ) {
+    }
+    
+    public void setBool( Document boolDoc, double boolSim ) {
+        fBoolDoc = boolDoc;
+        fBoolSim = boolSim;
+    }
+    
+    public void setVect( Document vectDoc, double vectSim ) {
+        fVectDoc = vectDoc;
+        fVectSim = vectSim;
+    }
+    
+    public void setProb( Document probDoc, double probSim ) {
+        fProbDoc = probDoc;
+        fProbSim = probSim;
+    }
+    
     public Document getBoolDoc( ) {
         return fBoolDoc;
     }
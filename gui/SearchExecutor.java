@@ -0,0 +1,142 @@
+package gui;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.TopDocuments;
+
+import org.eclipse.swt.widgets.Display;
+
+
+
+/**
+ * Runs the searches of the IR models on worker threads, so that the UI thread
+ * stays responsive however large the corpus is. Searches run concurrently and
+ * the result of each is handed to the UI thread as soon as it is available.
+ * Calling cancel() abandons all searches in flight; their results are never
+ * delivered.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class SearchExecutor {
+    
+    /**
+     * Receives the results of the searches. Called on the UI thread.
+     */
+    public interface ResultListener {
+        
+        void resultAvailable( TopDocuments result );
+        
+        void searchFailed( Throwable cause );
+        
+    }
+    
+    private Display fDisplay = null;
+    private ExecutorService fWorkers = null;
+    private AtomicInteger fGeneration = new AtomicInteger( ); // Incremented by each cancel
+    private List<Future<?>> fRunning = new ArrayList<Future<?>>( );
+    
+    /**
+     * @param display
+     *            The display whose UI thread receives the results.
+     * @param threads
+     *            The number of searches running at the same time.
+     */
+    public SearchExecutor( Display display, int threads ) {
+        fDisplay = display;
+        fWorkers = Executors.newFixedThreadPool( threads, new ThreadFactory( ) {
+            
+            private AtomicInteger fCount = new AtomicInteger( );
+            
+            @Override
+            public Thread newThread( Runnable runnable ) {
+                Thread thread = new Thread( runnable, "Search worker " + fCount.incrementAndGet( ) );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+    }
+    
+    /**
+     * Starts a search.
+     * 
+     * @param search
+     *            Computes the result, e.g. a page of a model's ranking.
+     * @param listener
+     *            Receives the result, unless the search is cancelled before.
+     */
+    public synchronized void submit( final Callable<TopDocuments> search, final ResultListener listener ) {
+        final int generation = fGeneration.get( );
+        for ( Iterator<Future<?>> i = fRunning.iterator( ); i.hasNext( ); ) {
+            if ( i.next( ).isDone( ) ) {
+                i.remove( );
+            }
+        }
+        fRunning.add( fWorkers.submit( new Runnable( ) {
+            
+            @Override
+            public void run( ) {
+                if ( generation != fGeneration.get( ) ) {
+                    return;
+                }
+                TopDocuments result = null;
+                Throwable failure = null;
+                try {
+                    result = search.call( );
+                } catch ( Throwable e ) {
+                    failure = e;
+                }
+                publish( generation, result, failure, listener );
+            }
+        } ) );
+    }
+    
+    /**
+     * Abandons all searches in flight. Searches not yet started are dropped,
+     * running ones are interrupted and their results discarded.
+     */
+    public synchronized void cancel( ) {
+        fGeneration.incrementAndGet( );
+        for ( Future<?> future : fRunning ) {
+            future.cancel( true );
+        }
+        fRunning.clear( );
+    }
+    
+    /**
+     * Cancels all searches and stops the worker threads.
+     */
+    public void shutdown( ) {
+        cancel( );
+        fWorkers.shutdownNow( );
+    }
+    
+    private void publish( final int generation, final TopDocuments result, final Throwable failure, final ResultListener listener ) {
+        if ( generation != fGeneration.get( ) || fDisplay.isDisposed( ) ) {
+            return;
+        }
+        fDisplay.asyncExec( new Runnable( ) {
+            
+            @Override
+            public void run( ) {
+                // Checked again, the search may have been cancelled meanwhile
+                if ( generation != fGeneration.get( ) ) {
+                    return;
+                }
+                if ( failure != null ) {
+                    listener.searchFailed( failure );
+                } else {
+                    listener.resultAvailable( result );
+                }
+            }
+        } );
+    }
+    
+}
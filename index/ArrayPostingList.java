@@ -0,0 +1,59 @@
+package index;
+
+
+
+/**
+ * A posting list held in growable int arrays on the heap, used while an index
+ * is built in memory.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class ArrayPostingList extends PostingList {
+    
+    private int fSize = 0;
+    private int[] fDocIds = null;
+    private int[] fFreqs = null;
+    
+    public ArrayPostingList( ) {
+        fDocIds = new int[4];
+        fFreqs = new int[4];
+    }
+    
+    /**
+     * Appends a posting. Document ids have to be added in ascending order.
+     * 
+     * @param docId
+     *            The id of a document containing the term.
+     * @param freq
+     *            The frequency of the term in that document.
+     */
+    void add( int docId, int freq ) {
+        if ( fSize == fDocIds.length ) {
+            int[] docIds = new int[fSize * 2];
+            int[] freqs = new int[fSize * 2];
+            System.arraycopy( fDocIds, 0, docIds, 0, fSize );
+            System.arraycopy( fFreqs, 0, freqs, 0, fSize );
+            fDocIds = docIds;
+            fFreqs = freqs;
+        }
+        fDocIds[fSize] = docId;
+        fFreqs[fSize] = freq;
+        fSize++;
+    }
+    
+    @Override
+    public int size( ) {
+        return fSize;
+    }
+    
+    @Override
+    public int getDocId( int i ) {
+        return fDocIds[i];
+    }
+    
+    @Override
+    public int getFrequency( int i ) {
+        return fFreqs[i];
+    }
+    
+}
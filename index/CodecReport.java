@@ -0,0 +1,86 @@
+package index;
+
+
+
+/**
+ * The result of measuring a PostingsCodec on an index: how well it compresses
+ * the postings and how fast they can be decoded again.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class CodecReport {
+    
+    private String fCodecName = null;
+    private long fPostingCount = 0;
+    private long fRawBytes = 0;
+    private long fCompressedBytes = 0;
+    private long fDecodeNanos = 0;
+    private long fChecksum = 0;
+    
+    CodecReport( String codecName, long postingCount, long rawBytes, long compressedBytes, long decodeNanos, long checksum ) {
+        fCodecName = codecName;
+        fPostingCount = postingCount;
+        fRawBytes = rawBytes;
+        fCompressedBytes = compressedBytes;
+        fDecodeNanos = decodeNanos;
+        fChecksum = checksum;
+    }
+    
+    public String getCodecName( ) {
+        return fCodecName;
+    }
+    
+    public long getPostingCount( ) {
+        return fPostingCount;
+    }
+    
+    /**
+     * Returns the size of the postings stored as plain int arrays.
+     */
+    public long getRawBytes( ) {
+        return fRawBytes;
+    }
+    
+    public long getCompressedBytes( ) {
+        return fCompressedBytes;
+    }
+    
+    /**
+     * Returns the raw size divided by the compressed size.
+     */
+    public double getCompressionRatio( ) {
+        return fCompressedBytes == 0 ? 1.0 : ( double ) fRawBytes / fCompressedBytes;
+    }
+    
+    public double getBitsPerPosting( ) {
+        return fPostingCount == 0 ? 0.0 : 8.0 * fCompressedBytes / fPostingCount;
+    }
+    
+    public long getDecodeNanos( ) {
+        return fDecodeNanos;
+    }
+    
+    /**
+     * Returns the number of postings decoded per second when all posting lists
+     * are read sequentially.
+     */
+    public double getPostingsPerSecond( ) {
+        return fDecodeNanos == 0 ? 0.0 : fPostingCount * 1e9 / fDecodeNanos;
+    }
+    
+    /**
+     * Returns the sum of all decoded document ids and frequencies, which keeps
+     * the decoding from being optimized away.
+     */
+    public long getChecksum( ) {
+        return fChecksum;
+    }
+    
+    @Override
+    public String toString( ) {
+        return String.format( "%s: %d postings, %d -> %d bytes (ratio %.2f, %.2f bits/posting), decoded at %.1f M postings/s",
+                fCodecName, fPostingCount, fRawBytes, fCompressedBytes, getCompressionRatio( ), getBitsPerPosting( ),
+                getPostingsPerSecond( ) / 1e6 );
+    }
+    
+}
@@ -0,0 +1,150 @@
+package index;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+
+/**
+ * A posting list held in the compressed form produced by a PostingsCodec.
+ * Postings are decoded one block at a time into buffers of the reading
+ * thread: a small table of recently decoded blocks per thread, whose arrays
+ * are reused. Sequential access thus decodes every block only once without
+ * allocating, cursors of a query alternating between lists keep their blocks,
+ * and threads reading the same list do not evict each other's blocks.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+class CompressedPostingList extends PostingList {
+    
+    private static final int SLOTS = 64; // Blocks kept per thread, a power of two
+    private static final AtomicLong NEXT_ID = new AtomicLong( );
+    
+    /**
+     * The blocks decoded by one thread, in a direct-mapped table indexed by
+     * list and block. Lists are identified by ids rather than referenced, so
+     * the table keeps no list alive.
+     */
+    private static final class DecodeBuffers {
+        
+        final long[] fListIds = new long[SLOTS];
+        final int[] fBlocks = new int[SLOTS];
+        final int[][] fDocIds = new int[SLOTS][PostingsCodec.BLOCK_SIZE];
+        final int[][] fFreqs = new int[SLOTS][PostingsCodec.BLOCK_SIZE];
+        
+        DecodeBuffers( ) {
+            Arrays.fill( fListIds, -1 );
+        }
+        
+    }
+    
+    private static final ThreadLocal<DecodeBuffers> BUFFERS = new ThreadLocal<DecodeBuffers>( ) {
+        
+        @Override
+        protected DecodeBuffers initialValue( ) {
+            return new DecodeBuffers( );
+        }
+    };
+    
+    private long fId = NEXT_ID.getAndIncrement( );
+    private PostingsCodec fCodec = null;
+    private byte[] fData = null;
+    private int[] fBlockOffsets = null;
+    private int[] fBlockLastDocIds = null; // Skip data: the largest document id of each block
+    private int fSize = 0;
+    
+    CompressedPostingList( PostingsCodec codec, byte[] data, int[] blockOffsets, int[] blockLastDocIds, int size ) {
+        fCodec = codec;
+        fData = data;
+        fBlockOffsets = blockOffsets;
+        fBlockLastDocIds = blockLastDocIds;
+        fSize = size;
+    }
+    
+    /**
+     * Returns the size of the compressed postings and skip data.
+     */
+    public long getSizeInBytes( ) {
+        return fData.length + 8L * fBlockOffsets.length;
+    }
+    
+    @Override
+    public int size( ) {
+        return fSize;
+    }
+    
+    @Override
+    public int getDocId( int i ) {
+        DecodeBuffers buffers = BUFFERS.get( );
+        return buffers.fDocIds[getSlot( buffers, i / PostingsCodec.BLOCK_SIZE )][i % PostingsCodec.BLOCK_SIZE];
+    }
+    
+    @Override
+    public int getFrequency( int i ) {
+        DecodeBuffers buffers = BUFFERS.get( );
+        return buffers.fFreqs[getSlot( buffers, i / PostingsCodec.BLOCK_SIZE )][i % PostingsCodec.BLOCK_SIZE];
+    }
+    
+    /**
+     * Finds the first posting at or after a given position whose document id
+     * is at least a given target. Blocks are skipped using their largest
+     * document id, so only the block containing the result is decoded.
+     */
+    @Override
+    public int advance( int position, int target ) {
+        if ( position >= fSize ) {
+            return position;
+        }
+        int low = position / PostingsCodec.BLOCK_SIZE;
+        if ( fBlockLastDocIds[low] < target ) {
+            int high = fBlockLastDocIds.length;
+            low++;
+            // Binary search for the first block whose last document id reaches the target
+            while ( low < high ) {
+                int middle = ( low + high ) >>> 1;
+                if ( fBlockLastDocIds[middle] < target ) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            if ( low == fBlockLastDocIds.length ) {
+                return fSize;
+            }
+            position = low * PostingsCodec.BLOCK_SIZE;
+        }
+        DecodeBuffers buffers = BUFFERS.get( );
+        int[] docIds = buffers.fDocIds[getSlot( buffers, low )];
+        int i = position - low * PostingsCodec.BLOCK_SIZE;
+        while ( docIds[i] < target ) {
+            i++; // Stops within the block, as its last document id reaches the target
+        }
+        return low * PostingsCodec.BLOCK_SIZE + i;
+    }
+    
+    /**
+     * Returns the slot of the current thread's buffers holding a block of this
+     * list, decoding the block into it if needed.
+     */
+    private int getSlot( DecodeBuffers buffers, int index ) {
+        int slot = ( int ) ( fId * 31 + index ) & ( SLOTS - 1 );
+        if ( buffers.fListIds[slot] != fId || buffers.fBlocks[slot] != index ) {
+            int start = index * PostingsCodec.BLOCK_SIZE;
+            int count = Math.min( PostingsCodec.BLOCK_SIZE, fSize - start );
+            int[] docIds = buffers.fDocIds[slot];
+            int[] freqs = buffers.fFreqs[slot];
+            int offset = fCodec.decode( fData, fBlockOffsets[index], docIds, count );
+            fCodec.decode( fData, offset, freqs, count );
+            int docId = index == 0 ? -1 : fBlockLastDocIds[index - 1];
+            for ( int i = 0; i < count; i++ ) {
+                docId += docIds[i] + 1;
+                docIds[i] = docId;
+                freqs[i]++;
+            }
+            buffers.fListIds[slot] = fId;
+            buffers.fBlocks[slot] = index;
+        }
+        return slot;
+    }
+    
+}
@@ -0,0 +1,74 @@
+package index;
+
+import java.util.Arrays;
+
+
+
+/**
+ * Joins the posting lists of a term in several segments into one. The
+ * document ids of each part are shifted by the number of documents in the
+ * segments before it.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+class ConcatenatedPostingList extends PostingList {
+    
+    private PostingList[] fParts = null;
+    private int[] fBases = null; // Added to the document ids of each part
+    private int[] fStarts = null; // Position of the first posting of each part, plus the total size
+    
+    ConcatenatedPostingList( PostingList[] parts, int[] bases ) {
+        fParts = parts;
+        fBases = bases;
+        fStarts = new int[parts.length + 1];
+        for ( int part = 0; part < parts.length; part++ ) {
+            fStarts[part + 1] = fStarts[part] + parts[part].size( );
+        }
+    }
+    
+    @Override
+    public int size( ) {
+        return fStarts[fParts.length];
+    }
+    
+    @Override
+    public int getDocId( int i ) {
+        int part = getPart( i );
+        return fBases[part] + fParts[part].getDocId( i - fStarts[part] );
+    }
+    
+    @Override
+    public int getFrequency( int i ) {
+        int part = getPart( i );
+        return fParts[part].getFrequency( i - fStarts[part] );
+    }
+    
+    /**
+     * Finds the first posting at or after a given position whose document id
+     * is at least a given target, searching part by part.
+     */
+    @Override
+    public int advance( int position, int target ) {
+        if ( position >= size( ) ) {
+            return position;
+        }
+        for ( int part = getPart( position ); part < fParts.length; part++ ) {
+            int start = Math.max( position, fStarts[part] ) - fStarts[part];
+            int found = fParts[part].advance( start, target - fBases[part] );
+            if ( found < fParts[part].size( ) ) {
+                return fStarts[part] + found;
+            }
+        }
+        return size( );
+    }
+    
+    /**
+     * Returns the part holding a given position by a binary search over the
+     * starts of the parts, which are strictly ascending as no part is empty.
+     */
+    private int getPart( int i ) {
+        int part = Arrays.binarySearch( fStarts, 0, fParts.length, i );
+        return part >= 0 ? part : -part - 2;
+    }
+    
+}
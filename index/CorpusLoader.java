@@ -0,0 +1,197 @@
+package index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.Document;
+
+import common.Analyzer;
+import common.Helpers;
+import common.Metrics;
+import common.TokenList;
+
+
+
+/**
+ * Reads a corpus and builds its index in stages. Files are streamed through
+ * analyzers (tokenized and optionally stemmed) in parallel on a fork-join
+ * pool; the analyzed documents are then merged into the term dictionary and
+ * the index in file order, so term ids and document ids are the same as when
+ * loading the files one by one. Loading reports its progress and can be
+ * cancelled from any thread.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class CorpusLoader {
+    
+    /**
+     * Receives the progress of a CorpusLoader. Called from the loading
+     * threads.
+     */
+    public interface ProgressListener {
+        
+        /**
+         * @param stage
+         *            A description of the current stage.
+         * @param done
+         *            The number of documents finished in this stage.
+         * @param total
+         *            The number of documents in the corpus.
+         */
+        void progress( String stage, int done, int total );
+        
+    }
+    
+    private static final int BATCH_SIZE = 16; // Files analyzed by one fork-join task
+    
+    private File[] fFiles = null;
+    private boolean fStem = false;
+    private TermDictionary fDictionary = null;
+    private Charset fCharset = Helpers.DEFAULT_CHARSET;
+    private int fParallelism = Runtime.getRuntime( ).availableProcessors( );
+    private ProgressListener fListener = null;
+    private volatile boolean fCancelled = false;
+    
+    /**
+     * @param files
+     *            The files of the corpus. The position of a file in this array
+     *            becomes the id of its document.
+     * @param stem
+     *            Optionally stems terms.
+     */
+    public CorpusLoader( File[] files, boolean stem ) {
+        fFiles = files;
+        fStem = stem;
+        fDictionary = new TermDictionary( );
+    }
+    
+    public void setDictionary( TermDictionary dictionary ) {
+        fDictionary = dictionary;
+    }
+    
+    /**
+     * Sets the encoding of the files, by default UTF-8.
+     */
+    public void setCharset( Charset charset ) {
+        fCharset = charset;
+    }
+    
+    /**
+     * Sets the number of threads reading and analyzing files, by default the
+     * number of available processors.
+     */
+    public void setParallelism( int parallelism ) {
+        fParallelism = Math.max( 1, parallelism );
+    }
+    
+    public void setProgressListener( ProgressListener listener ) {
+        fListener = listener;
+    }
+    
+    /**
+     * Stops loading as soon as possible; load() then throws a
+     * CancellationException.
+     */
+    public void cancel( ) {
+        fCancelled = true;
+    }
+    
+    public boolean isCancelled( ) {
+        return fCancelled;
+    }
+    
+    /**
+     * Loads the corpus.
+     * 
+     * @return The index of the corpus.
+     * @throws CancellationException
+     *             If loading has been cancelled.
+     */
+    public InvertedIndex load( ) {
+        // Read and analyze all files in parallel
+        TokenList[] terms = new TokenList[fFiles.length];
+        ForkJoinPool pool = new ForkJoinPool( fParallelism );
+        try {
+            pool.invoke( new AnalyzeTask( terms, 0, fFiles.length, new AtomicInteger( ) ) );
+        } finally {
+            pool.shutdown( );
+        }
+        checkCancelled( );
+        
+        // Assign term ids in file order
+        Document[] documents = new Document[fFiles.length];
+        for ( int i = 0; i < documents.length; i++ ) {
+            checkCancelled( );
+            documents[i] = new Document( fFiles[i].getName( ), terms[i], fDictionary );
+            terms[i] = null;
+            report( "Indexing", i + 1 );
+        }
+        InvertedIndex index = new InvertedIndex( documents, fDictionary );
+        checkCancelled( );
+        return index;
+    }
+    
+    private void checkCancelled( ) {
+        if ( fCancelled ) {
+            throw new CancellationException( );
+        }
+    }
+    
+    private void report( String stage, int done ) {
+        ProgressListener listener = fListener;
+        if ( listener != null ) {
+            listener.progress( stage, done, fFiles.length );
+        }
+    }
+    
+    /**
+     * Reads and analyzes a range of files, splitting it among workers.
+     */
+    private class AnalyzeTask extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private TokenList[] fTerms = null;
+        private int fFrom = 0;
+        private int fTo = 0;
+        private AtomicInteger fDone = null;
+        
+        AnalyzeTask( TokenList[] terms, int from, int to, AtomicInteger done ) {
+            fTerms = terms;
+            fFrom = from;
+            fTo = to;
+            fDone = done;
+        }
+        
+        @Override
+        protected void compute( ) {
+            if ( fTo - fFrom > BATCH_SIZE ) {
+                int middle = ( fFrom + fTo ) >>> 1;
+                invokeAll( new AnalyzeTask( fTerms, fFrom, middle, fDone ), new AnalyzeTask( fTerms, middle, fTo, fDone ) );
+                return;
+            }
+            Analyzer analyzer = new Analyzer( fStem );
+            for ( int i = fFrom; i < fTo && !fCancelled; i++ ) {
+                fTerms[i] = new TokenList( );
+                Metrics.Timer timer = Metrics.start( Metrics.READ_FILE ); // Files are analyzed while they are read
+                try {
+                    analyzer.analyze( fFiles[i], fCharset, fTerms[i] );
+                } catch ( IOException e ) {
+                    e.printStackTrace( );
+                    fTerms[i] = new TokenList( );
+                    analyzer.analyze( "", fTerms[i] ); // Unreadable files are indexed as empty documents
+                } finally {
+                    Metrics.stop( timer );
+                }
+                report( "Reading and analyzing", fDone.incrementAndGet( ) );
+            }
+        }
+        
+    }
+    
+}
@@ -0,0 +1,170 @@
+package index;
+
+import java.util.Arrays;
+
+import model.Document;
+
+
+
+/**
+ * Statistics of a corpus needed for term weighting: the number of documents,
+ * the document frequency of each term and the length and maximum term
+ * frequency of each document. All values are collected in a single pass over
+ * the corpus and afterwards available in constant time.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class CorpusStatistics {
+    
+    private int fDocumentCount = 0;
+    private long fTotalLength = 0;
+    private int[] fLengths = null;
+    private int[] fMaxFreqs = null;
+    private double[] fNorms = null;
+    private TermDictionary fDictionary = null;
+    private int[] fDocumentFrequencies = null; // Indexed by term id
+    
+    CorpusStatistics( TermDictionary dictionary, int capacity ) {
+        fDictionary = dictionary;
+        fLengths = new int[capacity];
+        fMaxFreqs = new int[capacity];
+        fNorms = new double[capacity];
+        fDocumentFrequencies = new int[dictionary.size( )];
+    }
+    
+    /**
+     * Creates statistics from already collected values, e.g. when reading an
+     * index file.
+     */
+    CorpusStatistics( TermDictionary dictionary, int documentCount, long totalLength, int[] lengths, int[] maxFreqs, double[] norms, int[] documentFrequencies ) {
+        fDictionary = dictionary;
+        fDocumentCount = documentCount;
+        fTotalLength = totalLength;
+        fLengths = lengths;
+        fMaxFreqs = maxFreqs;
+        fNorms = norms;
+        fDocumentFrequencies = documentFrequencies;
+    }
+    
+    /**
+     * Collects the statistics of a corpus.
+     * 
+     * @param documents
+     *            The base corpus. The position of a document in this array is
+     *            used as its id.
+     */
+    public CorpusStatistics( Document[] documents ) {
+        this( documents.length > 0 ? documents[0].getDictionary( ) : TermDictionary.getDefault( ), documents.length );
+        for ( Document document : documents ) {
+            add( document );
+        }
+    }
+    
+    /**
+     * Adds a document to the statistics. The document gets the next free id.
+     * 
+     * @param document
+     *            The document to add.
+     */
+    void add( Document document ) {
+        if ( fDocumentCount == fLengths.length ) {
+            int[] lengths = new int[fDocumentCount * 2 + 1];
+            int[] maxFreqs = new int[fDocumentCount * 2 + 1];
+            double[] norms = new double[fDocumentCount * 2 + 1];
+            System.arraycopy( fLengths, 0, lengths, 0, fDocumentCount );
+            System.arraycopy( fMaxFreqs, 0, maxFreqs, 0, fDocumentCount );
+            System.arraycopy( fNorms, 0, norms, 0, fDocumentCount );
+            fLengths = lengths;
+            fMaxFreqs = maxFreqs;
+            fNorms = norms;
+        }
+        fLengths[fDocumentCount] = document.getLength( );
+        fMaxFreqs[fDocumentCount] = document.getMaxFreq( );
+        fTotalLength += document.getLength( );
+        double norm = 0.0;
+        for ( int i = 0; i < document.getTermCount( ); i++ ) {
+            double freq = document.getFrequencyAt( i );
+            norm += freq * freq;
+        }
+        fNorms[fDocumentCount] = Math.sqrt( norm );
+        fDocumentCount++;
+        for ( int i = 0; i < document.getTermCount( ); i++ ) {
+            int termId = document.getTermId( i );
+            if ( termId >= fDocumentFrequencies.length ) {
+                fDocumentFrequencies = Arrays.copyOf( fDocumentFrequencies, Math.max( termId + 1, fDocumentFrequencies.length * 2 ) );
+            }
+            fDocumentFrequencies[termId]++;
+        }
+    }
+    
+    public int getDocumentCount( ) {
+        return fDocumentCount;
+    }
+    
+    public long getTotalLength( ) {
+        return fTotalLength;
+    }
+    
+    /**
+     * Returns the average document length, or 0 for an empty corpus.
+     */
+    public double getAverageLength( ) {
+        return fDocumentCount == 0 ? 0.0 : ( double ) fTotalLength / fDocumentCount;
+    }
+    
+    /**
+     * Returns the number of terms of a document.
+     * 
+     * @param docId
+     *            The id of a document.
+     * @return The length of the document.
+     */
+    public int getLength( int docId ) {
+        return fLengths[docId];
+    }
+    
+    /**
+     * Returns the highest term frequency within a document.
+     * 
+     * @param docId
+     *            The id of a document.
+     * @return The maximum frequency of any term in the document.
+     */
+    public int getMaxFreq( int docId ) {
+        return fMaxFreqs[docId];
+    }
+    
+    /**
+     * Returns the euclidean length of a document's term frequency vector.
+     * 
+     * @param docId
+     *            The id of a document.
+     * @return The L2 norm of the document's raw term frequencies.
+     */
+    public double getNorm( int docId ) {
+        return fNorms[docId];
+    }
+    
+    /**
+     * Returns the number of documents containing a given term.
+     * 
+     * @param term
+     *            A term.
+     * @return The document frequency of the term or 0, if not present.
+     */
+    public int getDocumentFrequency( String term ) {
+        return term == null ? 0 : getDocumentFrequency( fDictionary.lookup( term ) );
+    }
+    
+    /**
+     * Returns the number of documents containing a given term.
+     * 
+     * @param termId
+     *            A term id.
+     * @return The document frequency of the term or 0, if not present.
+     */
+    public int getDocumentFrequency( int termId ) {
+        return termId < 0 || termId >= fDocumentFrequencies.length ? 0 : fDocumentFrequencies[termId];
+    }
+    
+}
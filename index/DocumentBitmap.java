@@ -0,0 +1,426 @@
+package index;
+
+import java.util.Arrays;
+
+
+
+/**
+ * An immutable compressed set of document ids in the style of Roaring bitmaps.
+ * 
+ * The id space is split into chunks of 65536 ids, keyed by the upper 16 bits
+ * of an id. A chunk holding few ids stores their lower 16 bits as a sorted
+ * char array, a dense chunk stores them as a bitmap of 1024 words. Set
+ * operations work chunk by chunk; dense chunks are combined word by word.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class DocumentBitmap {
+    
+    private static final int ARRAY_LIMIT = 4096; // Largest cardinality stored as an array
+    private static final int WORDS = 1024; // Words of a bitmap container
+    
+    public static final DocumentBitmap EMPTY = new DocumentBitmap( new char[0], new Object[0], new int[0], 0 );
+    
+    private int fSize = 0; // Number of chunks
+    private char[] fKeys = null; // Upper 16 bits of the ids in each chunk, ascending
+    private Object[] fContainers = null; // Per chunk, a char[] of lower bits or a long[] bitmap
+    private int[] fCardinalities = null;
+    
+    protected DocumentBitmap( ) {
+        throw new UnsupportedOperationException( );
+    }
+    
+    private DocumentBitmap( char[] keys, Object[] containers, int[] cardinalities, int size ) {
+        fKeys = keys;
+        fContainers = containers;
+        fCardinalities = cardinalities;
+        fSize = size;
+    }
+    
+    /**
+     * Creates a bitmap from the document ids of a posting list.
+     * 
+     * @param postings
+     *            A posting list.
+     * @return A bitmap of all document ids in the postings.
+     */
+    public static DocumentBitmap of( PostingList postings ) {
+        int[] docIds = new int[postings.size( )];
+        for ( int i = 0; i < docIds.length; i++ ) {
+            docIds[i] = postings.getDocId( i );
+        }
+        return of( docIds, docIds.length );
+    }
+    
+    /**
+     * Creates a bitmap from document ids.
+     * 
+     * @param docIds
+     *            Distinct, non-negative document ids in ascending order.
+     * @param length
+     *            The number of document ids to use.
+     * @return A bitmap of the document ids.
+     */
+    public static DocumentBitmap of( int[] docIds, int length ) {
+        Builder builder = new Builder( );
+        int start = 0;
+        while ( start < length ) {
+            int key = docIds[start] >>> 16;
+            int end = start;
+            while ( end < length && docIds[end] >>> 16 == key ) {
+                end++;
+            }
+            char[] values = new char[end - start];
+            for ( int i = start; i < end; i++ ) {
+                values[i - start] = ( char ) docIds[i];
+            }
+            builder.add( key, values.length > ARRAY_LIMIT ? toBitmap( values, values.length ) : values, values.length );
+            start = end;
+        }
+        return builder.build( );
+    }
+    
+    /**
+     * Creates a bitmap holding all document ids from 0 to count - 1.
+     * 
+     * @param count
+     *            The number of documents.
+     * @return A bitmap of all document ids.
+     */
+    public static DocumentBitmap range( int count ) {
+        Builder builder = new Builder( );
+        for ( int key = 0; key << 16 < count && key <= Character.MAX_VALUE; key++ ) {
+            int cardinality = Math.min( count - ( key << 16 ), 1 << 16 );
+            long[] words = new long[WORDS];
+            Arrays.fill( words, 0, cardinality >>> 6, -1L );
+            if ( ( cardinality & 63 ) != 0 ) {
+                words[cardinality >>> 6] = ( 1L << cardinality ) - 1;
+            }
+            builder.add( key, cardinality > ARRAY_LIMIT ? words : toArray( words, cardinality ), cardinality );
+        }
+        return builder.build( );
+    }
+    
+    /**
+     * Returns the number of document ids in the bitmap.
+     */
+    public int getCardinality( ) {
+        int cardinality = 0;
+        for ( int i = 0; i < fSize; i++ ) {
+            cardinality += fCardinalities[i];
+        }
+        return cardinality;
+    }
+    
+    public boolean isEmpty( ) {
+        return fSize == 0;
+    }
+    
+    /**
+     * Returns the approximate memory used by the containers in bytes.
+     */
+    public long getSizeInBytes( ) {
+        long bytes = fSize * 8L;
+        for ( int i = 0; i < fSize; i++ ) {
+            bytes += fContainers[i] instanceof long[] ? WORDS * 8L : fCardinalities[i] * 2L;
+        }
+        return bytes;
+    }
+    
+    /**
+     * Checks whether a document id is contained in the bitmap.
+     * 
+     * @param docId
+     *            A document id.
+     * @return True, if the bitmap holds the id.
+     */
+    public boolean contains( int docId ) {
+        int chunk = Arrays.binarySearch( fKeys, 0, fSize, ( char ) ( docId >>> 16 ) );
+        if ( chunk < 0 ) {
+            return false;
+        }
+        char low = ( char ) docId;
+        Object container = fContainers[chunk];
+        if ( container instanceof long[] ) {
+            return ( ( ( long[] ) container )[low >>> 6] & ( 1L << low ) ) != 0;
+        }
+        return Arrays.binarySearch( ( char[] ) container, low ) >= 0;
+    }
+    
+    /**
+     * Returns all document ids of the bitmap.
+     * 
+     * @return The document ids in ascending order.
+     */
+    public int[] toArray( ) {
+        int[] docIds = new int[getCardinality( )];
+        int size = 0;
+        for ( int i = 0; i < fSize; i++ ) {
+            int high = fKeys[i] << 16;
+            Object container = fContainers[i];
+            if ( container instanceof long[] ) {
+                long[] words = ( long[] ) container;
+                for ( int w = 0; w < WORDS; w++ ) {
+                    long word = words[w];
+                    while ( word != 0 ) {
+                        docIds[size++] = high | ( w << 6 ) | Long.numberOfTrailingZeros( word );
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                for ( char low : ( char[] ) container ) {
+                    docIds[size++] = high | low;
+                }
+            }
+        }
+        return docIds;
+    }
+    
+    /**
+     * Intersects this bitmap with another one.
+     */
+    public DocumentBitmap and( DocumentBitmap other ) {
+        Builder builder = new Builder( );
+        int i = 0, j = 0;
+        while ( i < fSize && j < other.fSize ) {
+            if ( fKeys[i] < other.fKeys[j] ) {
+                i++;
+            } else if ( fKeys[i] > other.fKeys[j] ) {
+                j++;
+            } else {
+                builder.add( fKeys[i], and( fContainers[i], other.fContainers[j] ) );
+                i++;
+                j++;
+            }
+        }
+        return builder.build( );
+    }
+    
+    /**
+     * Unites this bitmap with another one.
+     */
+    public DocumentBitmap or( DocumentBitmap other ) {
+        Builder builder = new Builder( );
+        int i = 0, j = 0;
+        while ( i < fSize || j < other.fSize ) {
+            if ( j == other.fSize || ( i < fSize && fKeys[i] < other.fKeys[j] ) ) {
+                builder.add( fKeys[i], fContainers[i], fCardinalities[i] );
+                i++;
+            } else if ( i == fSize || fKeys[i] > other.fKeys[j] ) {
+                builder.add( other.fKeys[j], other.fContainers[j], other.fCardinalities[j] );
+                j++;
+            } else {
+                builder.add( fKeys[i], or( fContainers[i], other.fContainers[j] ) );
+                i++;
+                j++;
+            }
+        }
+        return builder.build( );
+    }
+    
+    /**
+     * Removes the document ids of another bitmap from this one.
+     */
+    public DocumentBitmap andNot( DocumentBitmap other ) {
+        Builder builder = new Builder( );
+        int i = 0, j = 0;
+        while ( i < fSize ) {
+            if ( j == other.fSize || fKeys[i] < other.fKeys[j] ) {
+                builder.add( fKeys[i], fContainers[i], fCardinalities[i] );
+                i++;
+            } else if ( fKeys[i] > other.fKeys[j] ) {
+                j++;
+            } else {
+                builder.add( fKeys[i], andNot( fContainers[i], other.fContainers[j] ) );
+                i++;
+                j++;
+            }
+        }
+        return builder.build( );
+    }
+    
+    private static Object and( Object a, Object b ) {
+        if ( a instanceof long[] && b instanceof long[] ) {
+            long[] x = ( long[] ) a, y = ( long[] ) b;
+            long[] words = new long[WORDS];
+            for ( int w = 0; w < WORDS; w++ ) {
+                words[w] = x[w] & y[w];
+            }
+            return words;
+        }
+        if ( a instanceof long[] ) {
+            return filter( ( char[] ) b, ( long[] ) a, true );
+        }
+        if ( b instanceof long[] ) {
+            return filter( ( char[] ) a, ( long[] ) b, true );
+        }
+        char[] x = ( char[] ) a, y = ( char[] ) b;
+        char[] values = new char[Math.min( x.length, y.length )];
+        int i = 0, j = 0, size = 0;
+        while ( i < x.length && j < y.length ) {
+            if ( x[i] < y[j] ) {
+                i++;
+            } else if ( x[i] > y[j] ) {
+                j++;
+            } else {
+                values[size++] = x[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf( values, size );
+    }
+    
+    private static Object or( Object a, Object b ) {
+        if ( a instanceof long[] || b instanceof long[] ) {
+            long[] words = a instanceof long[] ? ( ( long[] ) a ).clone( ) : toBitmap( ( char[] ) a, ( ( char[] ) a ).length );
+            if ( b instanceof long[] ) {
+                long[] y = ( long[] ) b;
+                for ( int w = 0; w < WORDS; w++ ) {
+                    words[w] |= y[w];
+                }
+            } else {
+                for ( char low : ( char[] ) b ) {
+                    words[low >>> 6] |= 1L << low;
+                }
+            }
+            return words;
+        }
+        char[] x = ( char[] ) a, y = ( char[] ) b;
+        char[] values = new char[x.length + y.length];
+        int i = 0, j = 0, size = 0;
+        while ( i < x.length || j < y.length ) {
+            if ( j == y.length || ( i < x.length && x[i] < y[j] ) ) {
+                values[size++] = x[i++];
+            } else if ( i == x.length || x[i] > y[j] ) {
+                values[size++] = y[j++];
+            } else {
+                values[size++] = x[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf( values, size );
+    }
+    
+    private static Object andNot( Object a, Object b ) {
+        if ( a instanceof long[] ) {
+            long[] words = ( ( long[] ) a ).clone( );
+            if ( b instanceof long[] ) {
+                long[] y = ( long[] ) b;
+                for ( int w = 0; w < WORDS; w++ ) {
+                    words[w] &= ~y[w];
+                }
+            } else {
+                for ( char low : ( char[] ) b ) {
+                    words[low >>> 6] &= ~( 1L << low );
+                }
+            }
+            return words;
+        }
+        if ( b instanceof long[] ) {
+            return filter( ( char[] ) a, ( long[] ) b, false );
+        }
+        char[] x = ( char[] ) a, y = ( char[] ) b;
+        char[] values = new char[x.length];
+        int i = 0, j = 0, size = 0;
+        while ( i < x.length ) {
+            if ( j == y.length || x[i] < y[j] ) {
+                values[size++] = x[i++];
+            } else if ( x[i] > y[j] ) {
+                j++;
+            } else {
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf( values, size );
+    }
+    
+    /**
+     * Keeps the values of an array container that are (or are not) set in a
+     * bitmap container.
+     */
+    private static char[] filter( char[] values, long[] words, boolean contained ) {
+        char[] result = new char[values.length];
+        int size = 0;
+        for ( char low : values ) {
+            if ( ( ( words[low >>> 6] & ( 1L << low ) ) != 0 ) == contained ) {
+                result[size++] = low;
+            }
+        }
+        return Arrays.copyOf( result, size );
+    }
+    
+    private static long[] toBitmap( char[] values, int length ) {
+        long[] words = new long[WORDS];
+        for ( int i = 0; i < length; i++ ) {
+            words[values[i] >>> 6] |= 1L << values[i];
+        }
+        return words;
+    }
+    
+    private static char[] toArray( long[] words, int cardinality ) {
+        char[] values = new char[cardinality];
+        int size = 0;
+        for ( int w = 0; w < WORDS; w++ ) {
+            long word = words[w];
+            while ( word != 0 ) {
+                values[size++] = ( char ) ( ( w << 6 ) | Long.numberOfTrailingZeros( word ) );
+                word &= word - 1;
+            }
+        }
+        return values;
+    }
+    
+    /**
+     * Assembles a bitmap from chunks added in ascending key order, choosing
+     * the cheaper container for each chunk and dropping empty ones.
+     */
+    private static class Builder {
+        
+        private int fSize = 0;
+        private char[] fKeys = new char[4];
+        private Object[] fContainers = new Object[4];
+        private int[] fCardinalities = new int[4];
+        
+        void add( int key, Object container ) {
+            int cardinality;
+            if ( container instanceof long[] ) {
+                cardinality = 0;
+                for ( long word : ( long[] ) container ) {
+                    cardinality += Long.bitCount( word );
+                }
+            } else {
+                cardinality = ( ( char[] ) container ).length;
+            }
+            add( key, container, cardinality );
+        }
+        
+        void add( int key, Object container, int cardinality ) {
+            if ( cardinality == 0 ) {
+                return;
+            }
+            if ( container instanceof long[] && cardinality <= ARRAY_LIMIT ) {
+                container = toArray( ( long[] ) container, cardinality );
+            } else if ( container instanceof char[] && cardinality > ARRAY_LIMIT ) {
+                container = toBitmap( ( char[] ) container, cardinality );
+            }
+            if ( fSize == fKeys.length ) {
+                fKeys = Arrays.copyOf( fKeys, fSize * 2 );
+                fContainers = Arrays.copyOf( fContainers, fSize * 2 );
+                fCardinalities = Arrays.copyOf( fCardinalities, fSize * 2 );
+            }
+            fKeys[fSize] = ( char ) key;
+            fContainers[fSize] = container;
+            fCardinalities[fSize] = cardinality;
+            fSize++;
+        }
+        
+        DocumentBitmap build( ) {
+            return new DocumentBitmap( fKeys, fContainers, fCardinalities, fSize );
+        }
+        
+    }
+    
+}
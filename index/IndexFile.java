@@ -0,0 +1,325 @@
+package index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import model.Document;
+
+
+
+/**
+ * Reads and writes inverted indexes in a versioned binary file format. An index
+ * file is read through a read-only memory mapping: the dictionary and the
+ * document statistics are copied to the heap, the postings stay in the mapped
+ * file and are paged in by the operating system on demand. The page cache is
+ * thus shared by all processes searching the same corpus.
+ * 
+ * Layout (all values big-endian):
+ * 
+ * <pre>
+ * header     int magic, int version, int documentCount, int termCount, long totalLength
+ * sources    int sourceCount, per source file: string name, long size, long lastModified
+ * documents  per document: string name, int length, int maxFreq, double norm
+ * terms      per term id:  string term, int documentFrequency, long postingsOffset
+ * postings   per term id:  int[df] docIds, int[df] freqs
+ * </pre>
+ * 
+ * Strings are stored as their UTF-8 length followed by the UTF-8 bytes,
+ * postings offsets are relative to the start of the postings section. The
+ * sources are the files the index was built from, so that isUpToDate can
+ * tell whether any of them has changed since.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class IndexFile {
+    
+    public static final int MAGIC = 0x4952494D; // "IRIM"
+    public static final int VERSION = 2;
+    
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
+    
+    protected IndexFile( ) {
+        throw new UnsupportedOperationException( );
+    }
+    
+    /**
+     * Writes an index to a file.
+     * 
+     * @param index
+     *            The index to write.
+     * @param file
+     *            The target file, which is overwritten.
+     * @throws IOException
+     *             If the file cannot be written.
+     */
+    public static void write( InvertedIndex index, File file ) throws IOException {
+        write( index, new File[0], file );
+    }
+    
+    /**
+     * Writes an index to a file, together with the names, sizes and
+     * modification times of the files it was built from. The index is written
+     * to a temporary file first, which then replaces the target, so a reader
+     * never sees a partly written file.
+     * 
+     * @param index
+     *            The index to write.
+     * @param sources
+     *            The files of the corpus.
+     * @param file
+     *            The target file, which is overwritten.
+     * @throws IOException
+     *             If the file cannot be written.
+     */
+    public static void write( InvertedIndex index, File[] sources, File file ) throws IOException {
+        File temp = new File( file.getPath( ) + ".tmp" );
+        try {
+            writeIndex( index, sources, temp );
+            try {
+                Files.move( temp.toPath( ), file.toPath( ), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            } catch ( AtomicMoveNotSupportedException e ) {
+                Files.move( temp.toPath( ), file.toPath( ), StandardCopyOption.REPLACE_EXISTING );
+            }
+        } finally {
+            temp.delete( ); // Left over only if writing failed
+        }
+    }
+    
+    /**
+     * Checks whether an index file was built from a given set of files, none
+     * of which has changed in size or modification time since. Only the header
+     * and the sources of the index file are read.
+     * 
+     * @param file
+     *            An index file.
+     * @param sources
+     *            The files of the corpus.
+     * @return True if the index file can be used for the files, false if it
+     *         is missing, unreadable, of another version or out of date.
+     */
+    public static boolean isUpToDate( File file, File[] sources ) {
+        if ( !file.isFile( ) ) {
+            return false;
+        }
+        try {
+            DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+            try {
+                if ( in.readInt( ) != MAGIC || in.readInt( ) != VERSION ) {
+                    return false;
+                }
+                in.readInt( ); // documentCount
+                in.readInt( ); // termCount
+                in.readLong( ); // totalLength
+                int sourceCount = in.readInt( );
+                if ( sourceCount != sources.length ) {
+                    return false;
+                }
+                Map<String,File> byName = new HashMap<String,File>( );
+                for ( File source : sources ) {
+                    byName.put( source.getName( ), source );
+                }
+                for ( int i = 0; i < sourceCount; i++ ) {
+                    int length = in.readInt( );
+                    if ( length < 0 || length > file.length( ) ) {
+                        return false; // Damaged
+                    }
+                    byte[] name = new byte[length];
+                    in.readFully( name );
+                    File source = byName.remove( new String( name, UTF8 ) );
+                    long size = in.readLong( );
+                    long lastModified = in.readLong( );
+                    if ( source == null || source.length( ) != size || source.lastModified( ) != lastModified ) {
+                        return false;
+                    }
+                }
+                return true;
+            } finally {
+                in.close( );
+            }
+        } catch ( IOException e ) {
+            return false; // Unreadable or truncated, the index has to be rebuilt
+        }
+    }
+    
+    private static void writeIndex( InvertedIndex index, File[] sources, File file ) throws IOException {
+        CorpusStatistics statistics = index.getStatistics( );
+        TermDictionary dictionary = index.getDictionary( );
+        int termCount = index.getTermIdLimit( );
+        DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ), 1 << 16 ) );
+        try {
+            out.writeInt( MAGIC );
+            out.writeInt( VERSION );
+            out.writeInt( index.getDocumentCount( ) );
+            out.writeInt( termCount );
+            out.writeLong( statistics.getTotalLength( ) );
+            out.writeInt( sources.length );
+            for ( File source : sources ) {
+                writeString( out, source.getName( ) );
+                out.writeLong( source.length( ) );
+                out.writeLong( source.lastModified( ) );
+            }
+            for ( int docId = 0; docId < index.getDocumentCount( ); docId++ ) {
+                writeString( out, index.getDocument( docId ).getName( ) );
+                out.writeInt( statistics.getLength( docId ) );
+                out.writeInt( statistics.getMaxFreq( docId ) );
+                out.writeDouble( statistics.getNorm( docId ) );
+            }
+            long offset = 0;
+            for ( int termId = 0; termId < termCount; termId++ ) {
+                PostingList postings = index.getPostings( termId );
+                writeString( out, dictionary.getTerm( termId ) );
+                out.writeInt( postings.size( ) );
+                out.writeLong( offset );
+                offset += postings.size( ) * 8L;
+            }
+            for ( int termId = 0; termId < termCount; termId++ ) {
+                PostingList postings = index.getPostings( termId );
+                for ( int i = 0; i < postings.size( ); i++ ) {
+                    out.writeInt( postings.getDocId( i ) );
+                }
+                for ( int i = 0; i < postings.size( ); i++ ) {
+                    out.writeInt( postings.getFrequency( i ) );
+                }
+            }
+        } finally {
+            out.close( );
+        }
+    }
+    
+    /**
+     * Opens an index file. The documents of the returned index only carry
+     * their names and statistics, see model.Document. The counts and offsets
+     * of the file are checked against its size, the postings are not read.
+     * 
+     * @param file
+     *            An index file written by write().
+     * @return The index, with its postings backed by the mapped file.
+     * @throws IOException
+     *             If the file cannot be read or is not a valid index file,
+     *             e.g. because it is truncated or damaged.
+     */
+    public static InvertedIndex read( File file ) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile( file, "r" );
+        MappedByteBuffer buffer;
+        try {
+            FileChannel channel = raf.getChannel( );
+            if ( channel.size( ) > Integer.MAX_VALUE ) {
+                throw new IOException( "Index file too large to be mapped: " + file );
+            }
+            buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size( ) );
+        } finally {
+            raf.close( ); // The mapping stays valid
+        }
+        if ( buffer.remaining( ) < 28 || buffer.getInt( ) != MAGIC ) {
+            throw new IOException( "Not an index file: " + file );
+        }
+        int version = buffer.getInt( );
+        if ( version != VERSION ) {
+            throw new IOException( "Unsupported index file version " + version + ": " + file );
+        }
+        try {
+            return readIndex( buffer, file );
+        } catch ( RuntimeException e ) {
+            // Decoding ran past the end of the buffer or out of bounds
+            throw new IOException( "Damaged index file: " + file, e );
+        }
+    }
+    
+    private static InvertedIndex readIndex( ByteBuffer buffer, File file ) throws IOException {
+        int documentCount = buffer.getInt( );
+        int termCount = buffer.getInt( );
+        long totalLength = buffer.getLong( );
+        int sourceCount = buffer.getInt( );
+        // Each source takes at least 20 bytes, each document 20 and each term 16
+        check( sourceCount >= 0 && sourceCount <= buffer.remaining( ) / 20, file );
+        check( documentCount >= 0 && termCount >= 0 && documentCount * 20L + termCount * 16L <= buffer.remaining( ), file );
+        for ( int i = 0; i < sourceCount; i++ ) {
+            readString( buffer );
+            buffer.getLong( ); // size
+            buffer.getLong( ); // lastModified
+        }
+        
+        TermDictionary dictionary = new TermDictionary( );
+        Document[] documents = new Document[documentCount];
+        int[] lengths = new int[documentCount];
+        int[] maxFreqs = new int[documentCount];
+        double[] norms = new double[documentCount];
+        for ( int docId = 0; docId < documentCount; docId++ ) {
+            String name = readString( buffer );
+            lengths[docId] = buffer.getInt( );
+            maxFreqs[docId] = buffer.getInt( );
+            norms[docId] = buffer.getDouble( );
+            documents[docId] = new Document( name, lengths[docId], maxFreqs[docId], dictionary );
+        }
+        int[] documentFrequencies = new int[termCount];
+        long[] offsets = new long[termCount];
+        for ( int termId = 0; termId < termCount; termId++ ) {
+            if ( dictionary.getId( readString( buffer ) ) != termId ) {
+                throw new IOException( "Duplicate term in index file: " + file );
+            }
+            documentFrequencies[termId] = buffer.getInt( );
+            offsets[termId] = buffer.getLong( );
+            check( documentFrequencies[termId] >= 0 && documentFrequencies[termId] <= documentCount, file );
+        }
+        int postingsStart = buffer.position( );
+        PostingList[] postings = new PostingList[termCount];
+        for ( int termId = 0; termId < termCount; termId++ ) {
+            int df = documentFrequencies[termId];
+            if ( df > 0 ) {
+                check( offsets[termId] >= 0 && postingsStart + offsets[termId] + df * 8L <= buffer.limit( ), file );
+                int start = ( int ) ( postingsStart + offsets[termId] );
+                postings[termId] = new MappedPostingList( slice( buffer, start, df ), slice( buffer, start + df * 4, df ) );
+            }
+        }
+        CorpusStatistics statistics = new CorpusStatistics( dictionary, documentCount, totalLength, lengths, maxFreqs, norms, documentFrequencies );
+        return new InvertedIndex( documents, dictionary, postings, statistics );
+    }
+    
+    private static void check( boolean valid, File file ) throws IOException {
+        if ( !valid ) {
+            throw new IOException( "Damaged index file: " + file );
+        }
+    }
+    
+    private static IntBuffer slice( ByteBuffer buffer, int start, int count ) {
+        ByteBuffer view = buffer.duplicate( );
+        view.position( start );
+        view.limit( start + count * 4 );
+        return view.slice( ).asIntBuffer( );
+    }
+    
+    private static void writeString( DataOutputStream out, String s ) throws IOException {
+        byte[] bytes = s.getBytes( UTF8 );
+        out.writeInt( bytes.length );
+        out.write( bytes );
+    }
+    
+    private static String readString( ByteBuffer buffer ) {
+        int length = buffer.getInt( );
+        if ( length < 0 || length > buffer.remaining( ) ) {
+            throw new BufferUnderflowException( );
+        }
+        byte[] bytes = new byte[length];
+        buffer.get( bytes );
+        return new String( bytes, UTF8 );
+    }
+    
+}
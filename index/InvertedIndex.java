@@ -0,0 +1,276 @@
+package index;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import model.Document;
+
+import common.Helpers;
+
+
+
+/**
+ * An inverted index mapping each term of a corpus to its postings. The index
+ * is built once from the document array and can be shared by all IR models
+ * working on the same corpus, so that the cost of a query depends on the
+ * postings of its terms rather than on the size of the corpus. Postings are
+ * addressed by the term ids of the corpus' term dictionary.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class InvertedIndex {
+    
+    private static final PostingList EMPTY = new ArrayPostingList( );
+    
+    private Document[] fDocuments = null;
+    private TermDictionary fDictionary = null;
+    private PostingList[] fPostings = null; // Indexed by term id
+    private CorpusStatistics fStatistics = null;
+    private InvertedIndex fStemmedIndex = null; // Derived on demand
+    
+    protected InvertedIndex( ) {
+        throw new UnsupportedOperationException( );
+    }
+    
+    /**
+     * Builds the index for a corpus, using the term dictionary of its
+     * documents.
+     * 
+     * @param documents
+     *            The base corpus. The position of a document in this array is
+     *            used as its id.
+     */
+    public InvertedIndex( Document[] documents ) {
+        this( documents, documents.length > 0 ? documents[0].getDictionary( ) : TermDictionary.getDefault( ) );
+    }
+    
+    /**
+     * Builds the index for a corpus.
+     * 
+     * @param documents
+     *            The base corpus. The position of a document in this array is
+     *            used as its id.
+     * @param dictionary
+     *            The term dictionary shared by all documents.
+     */
+    public InvertedIndex( Document[] documents, TermDictionary dictionary ) {
+        fDocuments = documents;
+        fDictionary = dictionary;
+        fPostings = new PostingList[dictionary.size( )];
+        fStatistics = new CorpusStatistics( dictionary, documents.length );
+        for ( int docId = 0; docId < documents.length; docId++ ) {
+            Document document = documents[docId];
+            fStatistics.add( document );
+            for ( int i = 0; i < document.getTermCount( ); i++ ) {
+                int termId = document.getTermId( i );
+                if ( termId >= fPostings.length ) {
+                    fPostings = Arrays.copyOf( fPostings, Math.max( termId + 1, fPostings.length * 2 ) );
+                }
+                ArrayPostingList postings = ( ArrayPostingList ) fPostings[termId];
+                if ( postings == null ) {
+                    postings = new ArrayPostingList( );
+                    fPostings[termId] = postings;
+                }
+                postings.add( docId, document.getFrequencyAt( i ) );
+            }
+        }
+    }
+    
+    /**
+     * Creates an index from already built parts, e.g. when reading an index
+     * file.
+     */
+    InvertedIndex( Document[] documents, TermDictionary dictionary, PostingList[] postings, CorpusStatistics statistics ) {
+        fDocuments = documents;
+        fDictionary = dictionary;
+        fPostings = postings;
+        fStatistics = statistics;
+    }
+    
+    /**
+     * Returns a copy of this index whose postings are compressed with a given
+     * codec. Documents, dictionary and statistics are shared with this index.
+     * 
+     * @param codec
+     *            The codec to compress the postings with.
+     * @return The compressed index.
+     */
+    public InvertedIndex compress( PostingsCodec codec ) {
+        PostingList[] postings = new PostingList[fPostings.length];
+        for ( int termId = 0; termId < postings.length; termId++ ) {
+            if ( fPostings[termId] != null ) {
+                postings[termId] = codec.encode( fPostings[termId] );
+            }
+        }
+        return new InvertedIndex( fDocuments, fDictionary, postings, fStatistics );
+    }
+    
+    /**
+     * Returns the index of the same corpus with stemmed terms, derived from
+     * this index of unstemmed terms without reading the documents again. The
+     * postings of all terms with the same stem are merged; a stem with a
+     * single surface form shares that form's posting list. The stemmed index
+     * has a term dictionary of its own holding just the stems, and is kept
+     * for subsequent calls.
+     * 
+     * @return The stemmed index.
+     */
+    public synchronized InvertedIndex getStemmedIndex( ) {
+        if ( fStemmedIndex == null ) {
+            fStemmedIndex = deriveStemmedIndex( );
+        }
+        return fStemmedIndex;
+    }
+    
+    /**
+     * Returns the statistics of the indexed corpus, which are collected while
+     * building the index.
+     */
+    public CorpusStatistics getStatistics( ) {
+        return fStatistics;
+    }
+    
+    public TermDictionary getDictionary( ) {
+        return fDictionary;
+    }
+    
+    public Document[] getDocuments( ) {
+        return fDocuments;
+    }
+    
+    public Document getDocument( int docId ) {
+        return fDocuments[docId];
+    }
+    
+    public int getDocumentCount( ) {
+        return fDocuments.length;
+    }
+    
+    /**
+     * Returns all terms of the corpus.
+     */
+    public Set<String> getTerms( ) {
+        Set<String> terms = new HashSet<String>( );
+        for ( int termId = 0; termId < fPostings.length; termId++ ) {
+            if ( fPostings[termId] != null ) {
+                terms.add( fDictionary.getTerm( termId ) );
+            }
+        }
+        return Collections.unmodifiableSet( terms );
+    }
+    
+    /**
+     * Returns the number of term ids the index holds postings for. All term ids
+     * of the corpus are smaller than this value.
+     */
+    public int getTermIdLimit( ) {
+        return fPostings.length;
+    }
+    
+    /**
+     * Returns the postings for a given term. If the term does not occur in the
+     * corpus, an empty posting list is returned.
+     * 
+     * @param term
+     *            A term.
+     * @return The postings of the term, ordered by document id.
+     */
+    public PostingList getPostings( String term ) {
+        return term == null ? EMPTY : getPostings( fDictionary.lookup( term ) );
+    }
+    
+    /**
+     * Returns the postings for a given term id. If the term does not occur in
+     * the corpus, an empty posting list is returned.
+     * 
+     * @param termId
+     *            A term id.
+     * @return The postings of the term, ordered by document id.
+     */
+    public PostingList getPostings( int termId ) {
+        PostingList postings = termId < 0 || termId >= fPostings.length ? null : fPostings[termId];
+        return postings == null ? EMPTY : postings;
+    }
+    
+    /**
+     * Returns the number of documents containing a given term.
+     * 
+     * @param term
+     *            A term.
+     * @return The document frequency of the term.
+     */
+    public int getDocumentFrequency( String term ) {
+        return getPostings( term ).size( );
+    }
+    
+    private InvertedIndex deriveStemmedIndex( ) {
+        // Merge the postings of the surface forms of each stem
+        TermDictionary stems = new TermDictionary( );
+        PostingList[] postings = new PostingList[1024];
+        for ( int termId = 0; termId < fPostings.length; termId++ ) {
+            if ( fPostings[termId] == null ) {
+                continue;
+            }
+            int stemId = stems.getId( Helpers.stem( fDictionary.getTerm( termId ) ) );
+            if ( stemId >= postings.length ) {
+                postings = Arrays.copyOf( postings, Math.max( stemId + 1, postings.length * 2 ) );
+            }
+            postings[stemId] = postings[stemId] == null ? fPostings[termId] : merge( postings[stemId], fPostings[termId] );
+        }
+        // Every id below the limit must have a term, see IndexFile.write
+        postings = Arrays.copyOf( postings, stems.size( ) );
+        
+        // Only the lengths of the documents stay the same
+        int documentCount = fDocuments.length;
+        int[] lengths = new int[documentCount];
+        int[] maxFreqs = new int[documentCount];
+        double[] norms = new double[documentCount];
+        int[] documentFrequencies = new int[postings.length];
+        for ( int stemId = 0; stemId < postings.length; stemId++ ) {
+            PostingList stemPostings = postings[stemId];
+            if ( stemPostings == null ) {
+                continue;
+            }
+            documentFrequencies[stemId] = stemPostings.size( );
+            for ( int i = 0; i < stemPostings.size( ); i++ ) {
+                int docId = stemPostings.getDocId( i );
+                int freq = stemPostings.getFrequency( i );
+                maxFreqs[docId] = Math.max( maxFreqs[docId], freq );
+                norms[docId] += ( double ) freq * freq;
+            }
+        }
+        Document[] documents = new Document[documentCount];
+        for ( int docId = 0; docId < documentCount; docId++ ) {
+            lengths[docId] = fStatistics.getLength( docId );
+            norms[docId] = Math.sqrt( norms[docId] );
+            documents[docId] = new Document( fDocuments[docId].getName( ), lengths[docId], maxFreqs[docId], stems );
+        }
+        CorpusStatistics statistics = new CorpusStatistics( stems, documentCount, fStatistics.getTotalLength( ), lengths, maxFreqs, norms, documentFrequencies );
+        return new InvertedIndex( documents, stems, postings, statistics );
+    }
+    
+    /**
+     * Merges two posting lists, adding up the frequencies of documents in
+     * both.
+     */
+    private static PostingList merge( PostingList a, PostingList b ) {
+        ArrayPostingList merged = new ArrayPostingList( );
+        int i = 0;
+        int j = 0;
+        while ( i < a.size( ) || j < b.size( ) ) {
+            int docIdA = i < a.size( ) ? a.getDocId( i ) : Integer.MAX_VALUE;
+            int docIdB = j < b.size( ) ? b.getDocId( j ) : Integer.MAX_VALUE;
+            if ( docIdA < docIdB ) {
+                merged.add( docIdA, a.getFrequency( i++ ) );
+            } else if ( docIdB < docIdA ) {
+                merged.add( docIdB, b.getFrequency( j++ ) );
+            } else {
+                merged.add( docIdA, a.getFrequency( i++ ) + b.getFrequency( j++ ) );
+            }
+        }
+        return merged;
+    }
+    
+}
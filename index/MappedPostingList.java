@@ -0,0 +1,37 @@
+package index;
+
+import java.nio.IntBuffer;
+
+
+
+/**
+ * A posting list read directly from a memory-mapped index file.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+class MappedPostingList extends PostingList {
+    
+    private IntBuffer fDocIds = null;
+    private IntBuffer fFreqs = null;
+    
+    MappedPostingList( IntBuffer docIds, IntBuffer freqs ) {
+        fDocIds = docIds;
+        fFreqs = freqs;
+    }
+    
+    @Override
+    public int size( ) {
+        return fDocIds.limit( );
+    }
+    
+    @Override
+    public int getDocId( int i ) {
+        return fDocIds.get( i );
+    }
+    
+    @Override
+    public int getFrequency( int i ) {
+        return fFreqs.get( i );
+    }
+    
+}
@@ -0,0 +1,119 @@
+package index;
+
+import java.io.ByteArrayOutputStream;
+
+
+
+/**
+ * Patched frame-of-reference encoding. All values of a block are packed with
+ * the same bit width, chosen so that most values fit; the high bits of the few
+ * values that do not fit are stored separately as exceptions and patched in
+ * after unpacking.
+ * 
+ * Block layout: byte bitWidth, vbyte exceptionCount, the packed low bits of
+ * all values, then per exception vbyte positionGap and vbyte highBits.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+class PforCodec extends PostingsCodec {
+    
+    private static final double COVERAGE = 0.9; // Share of values that must fit the bit width
+    
+    @Override
+    public String getName( ) {
+        return "pfor";
+    }
+    
+    @Override
+    void encode( int[] values, int count, ByteArrayOutputStream out ) {
+        // Choose the smallest bit width covering enough values
+        int[] histogram = new int[33];
+        for ( int i = 0; i < count; i++ ) {
+            histogram[32 - Integer.numberOfLeadingZeros( values[i] )]++;
+        }
+        int bits = 0;
+        int covered = histogram[0];
+        while ( bits < 32 && covered < COVERAGE * count ) {
+            bits++;
+            covered += histogram[bits];
+        }
+        int exceptions = count - covered;
+        out.write( bits );
+        writeVariableByte( exceptions, out );
+        
+        // Pack the low bits, least significant first
+        long mask = ( 1L << bits ) - 1;
+        long buffer = 0;
+        int buffered = 0;
+        for ( int i = 0; i < count; i++ ) {
+            buffer |= ( values[i] & mask ) << buffered;
+            buffered += bits;
+            while ( buffered >= 8 ) {
+                out.write( ( int ) buffer & 0xFF );
+                buffer >>>= 8;
+                buffered -= 8;
+            }
+        }
+        if ( buffered > 0 ) {
+            out.write( ( int ) buffer & 0xFF );
+        }
+        
+        if ( exceptions > 0 ) {
+            int previous = 0;
+            for ( int i = 0; i < count; i++ ) {
+                if ( 32 - Integer.numberOfLeadingZeros( values[i] ) > bits ) {
+                    writeVariableByte( i - previous, out );
+                    writeVariableByte( values[i] >>> bits, out );
+                    previous = i;
+                }
+            }
+        }
+    }
+    
+    @Override
+    int decode( byte[] data, int offset, int[] values, int count ) {
+        int bits = data[offset++];
+        int exceptions = 0;
+        int shift = 0;
+        int b;
+        while ( ( ( b = data[offset++] ) & 0x80 ) == 0 ) {
+            exceptions |= b << shift;
+            shift += 7;
+        }
+        exceptions |= ( b & 0x7F ) << shift;
+        
+        long mask = ( 1L << bits ) - 1;
+        long buffer = 0;
+        int buffered = 0;
+        for ( int i = 0; i < count; i++ ) {
+            while ( buffered < bits ) {
+                buffer |= ( data[offset++] & 0xFFL ) << buffered;
+                buffered += 8;
+            }
+            values[i] = ( int ) ( buffer & mask );
+            buffer >>>= bits;
+            buffered -= bits;
+        }
+        
+        int position = 0;
+        for ( int e = 0; e < exceptions; e++ ) {
+            int gap = 0;
+            shift = 0;
+            while ( ( ( b = data[offset++] ) & 0x80 ) == 0 ) {
+                gap |= b << shift;
+                shift += 7;
+            }
+            position += gap | ( ( b & 0x7F ) << shift );
+            int high = 0;
+            shift = 0;
+            while ( ( ( b = data[offset++] ) & 0x80 ) == 0 ) {
+                high |= b << shift;
+                shift += 7;
+            }
+            high |= ( b & 0x7F ) << shift;
+            values[position] |= high << bits;
+        }
+        return offset;
+    }
+    
+}
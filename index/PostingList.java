@@ -0,0 +1,65 @@
+package index;
+
+
+
+/**
+ * The postings of a single term: the ids of all documents containing the term
+ * together with the term's frequency in each of them. Document ids refer to
+ * positions in the document array the index was built from and are stored in
+ * ascending order.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public abstract class PostingList {
+    
+    /**
+     * Returns the number of postings, i.e. the document frequency of the term.
+     */
+    public abstract int size( );
+    
+    public abstract int getDocId( int i );
+    
+    public abstract int getFrequency( int i );
+    
+    /**
+     * Finds the first posting at or after a given position whose document id
+     * is at least a given target. The postings are searched with exponentially
+     * growing steps followed by a binary search, so skipping over many
+     * postings costs only logarithmic time.
+     * 
+     * @param position
+     *            The position to start searching from.
+     * @param target
+     *            The smallest document id to look for.
+     * @return The position of the posting found, or size() if all remaining
+     *         document ids are smaller than the target.
+     */
+    public int advance( int position, int target ) {
+        int size = size( );
+        if ( position >= size || getDocId( position ) >= target ) {
+            return position;
+        }
+        int low = position; // getDocId( low ) < target
+        int step = 1;
+        int high = position + step;
+        while ( high < size && getDocId( high ) < target ) {
+            low = high;
+            step <<= 1;
+            high = position + step;
+        }
+        if ( high > size ) {
+            high = size;
+        }
+        // getDocId( low ) < target <= getDocId( high ), if high < size
+        while ( high - low > 1 ) {
+            int middle = ( low + high ) >>> 1;
+            if ( getDocId( middle ) < target ) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return high;
+    }
+    
+}
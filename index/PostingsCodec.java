@@ -0,0 +1,139 @@
+package index;
+
+import java.io.ByteArrayOutputStream;
+
+
+
+/**
+ * Compresses posting lists. Postings are split into blocks of BLOCK_SIZE;
+ * within a block, document ids are stored as gaps to their predecessor and
+ * both gaps and frequencies are packed by the codec's integer encoding. Each
+ * block can be decoded on its own, so skipping needs no decoding.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public abstract class PostingsCodec {
+    
+    public static final int BLOCK_SIZE = 128;
+    
+    public static final PostingsCodec VARIABLE_BYTE = new VariableByteCodec( );
+    public static final PostingsCodec PFOR = new PforCodec( );
+    
+    /**
+     * Returns the codec with a given name.
+     * 
+     * @param name
+     *            "vbyte" or "pfor".
+     * @return The codec, or null if the name is unknown.
+     */
+    public static PostingsCodec forName( String name ) {
+        for ( PostingsCodec codec : new PostingsCodec[] { VARIABLE_BYTE, PFOR } ) {
+            if ( codec.getName( ).equalsIgnoreCase( name ) ) {
+                return codec;
+            }
+        }
+        return null;
+    }
+    
+    public abstract String getName( );
+    
+    /**
+     * Appends non-negative values to a stream.
+     * 
+     * @param values
+     *            The values to encode.
+     * @param count
+     *            The number of values to encode.
+     * @param out
+     *            The stream to append to.
+     */
+    abstract void encode( int[] values, int count, ByteArrayOutputStream out );
+    
+    /**
+     * Decodes values written by encode().
+     * 
+     * @param data
+     *            The encoded data.
+     * @param offset
+     *            The position of the first byte to decode.
+     * @param values
+     *            Receives the decoded values.
+     * @param count
+     *            The number of values to decode.
+     * @return The position after the last byte decoded.
+     */
+    abstract int decode( byte[] data, int offset, int[] values, int count );
+    
+    /**
+     * Compresses a posting list.
+     * 
+     * @param postings
+     *            The postings to compress.
+     * @return The compressed postings.
+     */
+    public PostingList encode( PostingList postings ) {
+        int size = postings.size( );
+        int blocks = ( size + BLOCK_SIZE - 1 ) / BLOCK_SIZE;
+        int[] blockOffsets = new int[blocks];
+        int[] blockLastDocIds = new int[blocks];
+        int[] gaps = new int[BLOCK_SIZE];
+        int[] freqs = new int[BLOCK_SIZE];
+        ByteArrayOutputStream out = new ByteArrayOutputStream( );
+        int previous = -1;
+        for ( int block = 0; block < blocks; block++ ) {
+            int start = block * BLOCK_SIZE;
+            int count = Math.min( BLOCK_SIZE, size - start );
+            for ( int i = 0; i < count; i++ ) {
+                int docId = postings.getDocId( start + i );
+                gaps[i] = docId - previous - 1;
+                freqs[i] = postings.getFrequency( start + i ) - 1;
+                previous = docId;
+            }
+            blockOffsets[block] = out.size( );
+            blockLastDocIds[block] = previous;
+            encode( gaps, count, out );
+            encode( freqs, count, out );
+        }
+        return new CompressedPostingList( this, out.toByteArray( ), blockOffsets, blockLastDocIds, size );
+    }
+    
+    /**
+     * Compresses all postings of an index and measures the result.
+     * 
+     * @param index
+     *            An index.
+     * @return The compression ratio and decoding speed of this codec.
+     */
+    public CodecReport measure( InvertedIndex index ) {
+        long postingCount = 0;
+        long compressedBytes = 0;
+        PostingList[] compressed = new PostingList[index.getTermIdLimit( )];
+        for ( int termId = 0; termId < compressed.length; termId++ ) {
+            compressed[termId] = encode( index.getPostings( termId ) );
+            postingCount += compressed[termId].size( );
+            compressedBytes += ( ( CompressedPostingList ) compressed[termId] ).getSizeInBytes( );
+        }
+        long checksum = 0;
+        long start = System.nanoTime( );
+        for ( PostingList postings : compressed ) {
+            for ( int i = 0; i < postings.size( ); i++ ) {
+                checksum += postings.getDocId( i ) + postings.getFrequency( i );
+            }
+        }
+        long decodeNanos = System.nanoTime( ) - start;
+        return new CodecReport( getName( ), postingCount, postingCount * 8, compressedBytes, decodeNanos, checksum );
+    }
+    
+    /**
+     * Appends a value in variable-byte encoding: seven bits per byte, lowest
+     * bits first, with the high bit marking the last byte.
+     */
+    static void writeVariableByte( int value, ByteArrayOutputStream out ) {
+        while ( ( value & ~0x7F ) != 0 ) {
+            out.write( value & 0x7F );
+            value >>>= 7;
+        }
+        out.write( value | 0x80 );
+    }
+    
+}
@@ -0,0 +1,146 @@
+package index;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import model.Document;
+
+
+
+/**
+ * A part of a SegmentedIndex: a small immutable inverted index over some of
+ * the documents, together with tombstones marking the ones deleted since.
+ * Deleting a document yields a new version of the segment with the same id,
+ * so indexes built from earlier versions are not affected.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+class Segment {
+    
+    private int fId = 0;
+    private InvertedIndex fIndex = null; // Uses local document ids
+    private Map<String,Integer> fLocalIds = null; // Shared by all versions
+    private int[] fTermIds = null; // The terms occurring in the segment, shared by all versions
+    private long[] fDeleted = null; // Tombstones, null if there are none
+    private int fDeletedCount = 0;
+    private int[] fLiveIds = null; // Local id -> rank among the live documents
+    private PostingList[] fLivePostings = null; // Postings of the live documents by term id
+    
+    Segment( int id, InvertedIndex index ) {
+        fId = id;
+        fIndex = index;
+        fLocalIds = new HashMap<String,Integer>( );
+        for ( int localId = 0; localId < index.getDocumentCount( ); localId++ ) {
+            fLocalIds.put( index.getDocument( localId ).getName( ), localId );
+        }
+        int count = 0;
+        fTermIds = new int[index.getTermIdLimit( )];
+        for ( int termId = 0; termId < fTermIds.length; termId++ ) {
+            if ( index.getPostings( termId ).size( ) > 0 ) {
+                fTermIds[count++] = termId;
+            }
+        }
+        fTermIds = Arrays.copyOf( fTermIds, count );
+    }
+    
+    private Segment( Segment segment, long[] deleted, int deletedCount ) {
+        fId = segment.fId;
+        fIndex = segment.fIndex;
+        fLocalIds = segment.fLocalIds;
+        fTermIds = segment.fTermIds;
+        fDeleted = deleted;
+        fDeletedCount = deletedCount;
+    }
+    
+    int getId( ) {
+        return fId;
+    }
+    
+    InvertedIndex getIndex( ) {
+        return fIndex;
+    }
+    
+    /**
+     * Returns the ids of the terms occurring in the segment, including terms
+     * occurring in deleted documents only.
+     */
+    int[] getTermIds( ) {
+        return fTermIds;
+    }
+    
+    /**
+     * Returns the number of documents including the deleted ones.
+     */
+    int getDocumentCount( ) {
+        return fIndex.getDocumentCount( );
+    }
+    
+    int getDeletedCount( ) {
+        return fDeletedCount;
+    }
+    
+    int getLiveCount( ) {
+        return fIndex.getDocumentCount( ) - fDeletedCount;
+    }
+    
+    /**
+     * Returns the local id of the document with a given name, or -1.
+     */
+    int indexOf( String name ) {
+        Integer localId = fLocalIds.get( name );
+        return localId == null ? -1 : localId;
+    }
+    
+    boolean isDeleted( int localId ) {
+        return fDeleted != null && ( fDeleted[localId >>> 6] & ( 1L << localId ) ) != 0;
+    }
+    
+    /**
+     * Returns a version of this segment in which a document is deleted.
+     */
+    Segment delete( int localId ) {
+        if ( isDeleted( localId ) ) {
+            return this;
+        }
+        long[] deleted = fDeleted == null ? new long[( getDocumentCount( ) + 63 ) >>> 6] : fDeleted.clone( );
+        deleted[localId >>> 6] |= 1L << localId;
+        return new Segment( this, deleted, fDeletedCount + 1 );
+    }
+    
+    /**
+     * Returns the postings of a term restricted to the live documents, whose
+     * ids are renumbered densely. Without deletions these are the postings of
+     * the segment; otherwise they are filtered when first requested.
+     */
+    synchronized PostingList getLivePostings( int termId ) {
+        PostingList postings = fIndex.getPostings( termId );
+        if ( fDeleted == null || postings.size( ) == 0 ) {
+            return postings;
+        }
+        if ( fLivePostings == null ) {
+            fLiveIds = new int[getDocumentCount( )];
+            int liveId = 0;
+            for ( int localId = 0; localId < fLiveIds.length; localId++ ) {
+                fLiveIds[localId] = isDeleted( localId ) ? -1 : liveId++;
+            }
+            fLivePostings = new PostingList[fIndex.getTermIdLimit( )];
+        }
+        if ( fLivePostings[termId] == null ) {
+            ArrayPostingList live = new ArrayPostingList( );
+            for ( int i = 0; i < postings.size( ); i++ ) {
+                int liveId = fLiveIds[postings.getDocId( i )];
+                if ( liveId >= 0 ) {
+                    live.add( liveId, postings.getFrequency( i ) );
+                }
+            }
+            fLivePostings[termId] = live;
+        }
+        return fLivePostings[termId];
+    }
+    
+    Document getDocument( int localId ) {
+        return fIndex.getDocument( localId );
+    }
+    
+}
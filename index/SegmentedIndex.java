@@ -0,0 +1,498 @@
+package index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import model.Document;
+
+
+
+/**
+ * An index of a changing corpus. Added documents are buffered and written
+ * into small new segments; deleted documents are marked by tombstones in their
+ * segment. Document frequencies and lengths are kept up to date on every
+ * change, so nothing has to be recomputed for the whole corpus. In the
+ * background, segments are merged following a log-size merge policy: whenever
+ * mergeFactor adjacent segments of about the same size exist they are merged
+ * into one, and segments with many deletions are rewritten without them.
+ * 
+ * Documents are identified by their names and need their term vectors, so
+ * documents restored from an index file cannot be added. The models work on
+ * snapshots, plain InvertedIndex views of the current live documents, whose
+ * ids are assigned densely in segment order.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class SegmentedIndex {
+    
+    private TermDictionary fDictionary = null;
+    private List<Segment> fSegments = null; // In document id order
+    private Map<String,Document> fBuffer = null; // Added documents not yet in a segment
+    private Map<String,Integer> fSegmentIds = null; // Name of each live document -> id of its segment
+    private int fNextSegmentId = 0;
+    
+    // Statistics of the live documents
+    private int[] fDocumentFrequencies = null; // Indexed by term id
+    private long fTotalLength = 0;
+    private int fLiveCount = 0;
+    
+    private int fMaxBufferedDocuments = 64;
+    private int fMergeFactor = 10;
+    private double fMaxDeletedRatio = 0.3;
+    private Set<Integer> fMerging = null; // Ids of the segments being merged
+    private ExecutorService fMerger = null;
+    private InvertedIndex fSnapshot = null; // Cached until the next change
+    private List<Segment> fSnapshotSegments = null; // The segments of the last snapshot
+    private PostingList[] fSnapshotPostings = null; // The postings of the last snapshot
+    private int fChangedFrom = 0; // Position of the first segment changed since the last snapshot
+    
+    /**
+     * Creates an empty index.
+     * 
+     * @param dictionary
+     *            The term dictionary all added documents have to use.
+     */
+    public SegmentedIndex( TermDictionary dictionary ) {
+        fDictionary = dictionary;
+        fSegments = new ArrayList<Segment>( );
+        fSnapshotSegments = new ArrayList<Segment>( );
+        fSnapshotPostings = new PostingList[0];
+        fBuffer = new LinkedHashMap<String,Document>( );
+        fSegmentIds = new HashMap<String,Integer>( );
+        fDocumentFrequencies = new int[dictionary.size( )];
+        fMerging = new HashSet<Integer>( );
+        fMerger = Executors.newSingleThreadExecutor( new ThreadFactory( ) {
+            
+            @Override
+            public Thread newThread( Runnable runnable ) {
+                Thread thread = new Thread( runnable, "Segment merger" );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+    }
+    
+    /**
+     * Creates an index holding a loaded corpus as its first segment, so that
+     * changes to the corpus are applied without indexing it again.
+     * 
+     * @param index
+     *            The index of the corpus. Its documents need their term
+     *            vectors, which documents read from an index file lack.
+     */
+    public SegmentedIndex( InvertedIndex index ) {
+        this( index.getDictionary( ) );
+        CorpusStatistics statistics = index.getStatistics( );
+        for ( int docId = 0; docId < index.getDocumentCount( ); docId++ ) {
+            Document document = index.getDocument( docId );
+            if ( document.getTermCount( ) == 0 && statistics.getLength( docId ) > 0 ) {
+                throw new IllegalArgumentException( "Document " + document.getName( ) + " has no term vector" );
+            }
+        }
+        if ( index.getDocumentCount( ) == 0 ) {
+            return;
+        }
+        Segment segment = new Segment( fNextSegmentId++, index );
+        fSegments.add( segment );
+        for ( Document document : index.getDocuments( ) ) {
+            fSegmentIds.put( document.getName( ), segment.getId( ) );
+        }
+        for ( int termId = 0; termId < fDocumentFrequencies.length; termId++ ) {
+            fDocumentFrequencies[termId] = statistics.getDocumentFrequency( termId );
+        }
+        fTotalLength = statistics.getTotalLength( );
+        fLiveCount = index.getDocumentCount( );
+    }
+    
+    public TermDictionary getDictionary( ) {
+        return fDictionary;
+    }
+    
+    /**
+     * Sets the number of added documents buffered before they are written into
+     * a new segment, by default 64.
+     */
+    public synchronized void setMaxBufferedDocuments( int maxBufferedDocuments ) {
+        fMaxBufferedDocuments = Math.max( 1, maxBufferedDocuments );
+    }
+    
+    /**
+     * Sets the number of segments of about the same size that are merged into
+     * one, by default 10.
+     */
+    public synchronized void setMergeFactor( int mergeFactor ) {
+        fMergeFactor = Math.max( 2, mergeFactor );
+    }
+    
+    /**
+     * Sets the share of deleted documents above which a segment is rewritten,
+     * by default 0.3.
+     */
+    public synchronized void setMaxDeletedRatio( double maxDeletedRatio ) {
+        fMaxDeletedRatio = maxDeletedRatio;
+    }
+    
+    /**
+     * Adds a document. If a document with the same name exists, it is
+     * replaced.
+     * 
+     * @param document
+     *            A document created with the dictionary of this index.
+     */
+    public synchronized void addDocument( Document document ) {
+        if ( document.getDictionary( ) != fDictionary ) {
+            throw new IllegalArgumentException( "Document " + document.getName( ) + " uses another term dictionary" );
+        }
+        deleteDocument( document.getName( ) );
+        fBuffer.put( document.getName( ), document );
+        for ( int i = 0; i < document.getTermCount( ); i++ ) {
+            int termId = document.getTermId( i );
+            if ( termId >= fDocumentFrequencies.length ) {
+                fDocumentFrequencies = Arrays.copyOf( fDocumentFrequencies, Math.max( termId + 1, fDocumentFrequencies.length * 2 ) );
+            }
+            fDocumentFrequencies[termId]++;
+        }
+        fTotalLength += document.getLength( );
+        fLiveCount++;
+        fSnapshot = null;
+        if ( fBuffer.size( ) >= fMaxBufferedDocuments ) {
+            flush( );
+        }
+    }
+    
+    /**
+     * Replaces the document with the same name as a given one, or adds it.
+     * 
+     * @param document
+     *            A document created with the dictionary of this index.
+     */
+    public void updateDocument( Document document ) {
+        addDocument( document );
+    }
+    
+    /**
+     * Deletes a document.
+     * 
+     * @param name
+     *            The name of the document.
+     * @return True if the document existed.
+     */
+    public synchronized boolean deleteDocument( String name ) {
+        Document document = fBuffer.remove( name );
+        if ( document == null ) {
+            Integer segmentId = fSegmentIds.remove( name );
+            if ( segmentId == null ) {
+                return false;
+            }
+            int position = indexOf( segmentId );
+            Segment segment = fSegments.get( position );
+            int localId = segment.indexOf( name );
+            document = segment.getDocument( localId );
+            fSegments.set( position, segment.delete( localId ) );
+            fChangedFrom = Math.min( fChangedFrom, position );
+        }
+        for ( int i = 0; i < document.getTermCount( ); i++ ) {
+            fDocumentFrequencies[document.getTermId( i )]--;
+        }
+        fTotalLength -= document.getLength( );
+        fLiveCount--;
+        fSnapshot = null;
+        maybeMerge( );
+        return true;
+    }
+    
+    /**
+     * Returns the number of live documents.
+     */
+    public synchronized int getDocumentCount( ) {
+        return fLiveCount;
+    }
+    
+    public synchronized int getSegmentCount( ) {
+        return fSegments.size( );
+    }
+    
+    /**
+     * Returns the number of documents containing a given term.
+     * 
+     * @param termId
+     *            A term id.
+     * @return The document frequency of the term among the live documents.
+     */
+    public synchronized int getDocumentFrequency( int termId ) {
+        return termId < 0 || termId >= fDocumentFrequencies.length ? 0 : fDocumentFrequencies[termId];
+    }
+    
+    /**
+     * Returns the average length of the live documents, or 0 if there are
+     * none.
+     */
+    public synchronized double getAverageLength( ) {
+        return fLiveCount == 0 ? 0.0 : ( double ) fTotalLength / fLiveCount;
+    }
+    
+    /**
+     * Writes the buffered documents into a new segment.
+     */
+    public synchronized void flush( ) {
+        if ( fBuffer.isEmpty( ) ) {
+            return;
+        }
+        Document[] documents = fBuffer.values( ).toArray( new Document[fBuffer.size( )] );
+        fBuffer.clear( );
+        Segment segment = new Segment( fNextSegmentId++, new InvertedIndex( documents, fDictionary ) );
+        fChangedFrom = Math.min( fChangedFrom, fSegments.size( ) );
+        fSegments.add( segment );
+        for ( Document document : documents ) {
+            fSegmentIds.put( document.getName( ), segment.getId( ) );
+        }
+        maybeMerge( );
+    }
+    
+    /**
+     * Returns an index of the live documents as of now, flushing buffered
+     * documents first. The snapshot does not change when this index does; it
+     * shares the postings of segments without deletions and is cached until
+     * the next change. A new snapshot is derived from the last one: only the
+     * postings of terms occurring in segments changed since then are joined
+     * anew, the others are taken over.
+     */
+    public synchronized InvertedIndex getSnapshot( ) {
+        flush( );
+        if ( fSnapshot != null ) {
+            return fSnapshot;
+        }
+        Document[] documents = new Document[fLiveCount];
+        int[] lengths = new int[fLiveCount];
+        int[] maxFreqs = new int[fLiveCount];
+        double[] norms = new double[fLiveCount];
+        int[] bases = new int[fSegments.size( )];
+        int docId = 0;
+        for ( int s = 0; s < bases.length; s++ ) {
+            Segment segment = fSegments.get( s );
+            CorpusStatistics statistics = segment.getIndex( ).getStatistics( );
+            bases[s] = docId;
+            for ( int localId = 0; localId < segment.getDocumentCount( ); localId++ ) {
+                if ( !segment.isDeleted( localId ) ) {
+                    documents[docId] = segment.getDocument( localId );
+                    lengths[docId] = statistics.getLength( localId );
+                    maxFreqs[docId] = statistics.getMaxFreq( localId );
+                    norms[docId] = statistics.getNorm( localId );
+                    docId++;
+                }
+            }
+        }
+        
+        // The segments before the first changed one keep their postings and
+        // document ids, so only terms of changed segments, before or after
+        // the change, are affected
+        BitSet changed = new BitSet( );
+        for ( int s = fChangedFrom; s < fSnapshotSegments.size( ); s++ ) {
+            for ( int termId : fSnapshotSegments.get( s ).getTermIds( ) ) {
+                changed.set( termId );
+            }
+        }
+        for ( int s = fChangedFrom; s < fSegments.size( ); s++ ) {
+            for ( int termId : fSegments.get( s ).getTermIds( ) ) {
+                changed.set( termId );
+            }
+        }
+        PostingList[] postings = Arrays.copyOf( fSnapshotPostings, fDictionary.size( ) ); // Every id below the limit has a term, see IndexFile.write
+        PostingList[] parts = new PostingList[fSegments.size( )];
+        int[] partBases = new int[fSegments.size( )];
+        for ( int termId = changed.nextSetBit( 0 ); termId >= 0; termId = changed.nextSetBit( termId + 1 ) ) {
+            postings[termId] = null;
+            if ( fDocumentFrequencies[termId] == 0 ) {
+                continue;
+            }
+            int count = 0;
+            for ( int s = 0; s < bases.length; s++ ) {
+                PostingList part = fSegments.get( s ).getLivePostings( termId );
+                if ( part.size( ) > 0 ) {
+                    parts[count] = part;
+                    partBases[count] = bases[s];
+                    count++;
+                }
+            }
+            postings[termId] = count == 1 && partBases[0] == 0 ? parts[0] : new ConcatenatedPostingList( Arrays.copyOf( parts, count ), Arrays.copyOf( partBases, count ) );
+        }
+        fSnapshotSegments = new ArrayList<Segment>( fSegments );
+        fSnapshotPostings = postings;
+        fChangedFrom = fSegments.size( );
+        
+        CorpusStatistics statistics = new CorpusStatistics( fDictionary, fLiveCount, fTotalLength, lengths, maxFreqs, norms, fDocumentFrequencies.clone( ) );
+        fSnapshot = new InvertedIndex( documents, fDictionary, postings, statistics );
+        return fSnapshot;
+    }
+    
+    /**
+     * Waits until all pending merges are done.
+     * 
+     * @throws InterruptedException
+     *             If interrupted while waiting.
+     */
+    public void waitForMerges( ) throws InterruptedException {
+        synchronized ( this ) {
+            while ( !fMerging.isEmpty( ) ) {
+                wait( );
+            }
+        }
+    }
+    
+    /**
+     * Stops merging in the background. Running merges are completed.
+     */
+    public void close( ) throws InterruptedException {
+        fMerger.shutdown( );
+        fMerger.awaitTermination( Long.MAX_VALUE, TimeUnit.MILLISECONDS );
+    }
+    
+    private int indexOf( int segmentId ) {
+        for ( int position = 0; position < fSegments.size( ); position++ ) {
+            if ( fSegments.get( position ).getId( ) == segmentId ) {
+                return position;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Starts a merge if the merge policy finds one and no merge is running.
+     */
+    private void maybeMerge( ) {
+        if ( !fMerging.isEmpty( ) || fMerger.isShutdown( ) ) {
+            return;
+        }
+        final List<Segment> merge = findMerge( );
+        if ( merge == null ) {
+            return;
+        }
+        for ( Segment segment : merge ) {
+            fMerging.add( segment.getId( ) );
+        }
+        fMerger.execute( new Runnable( ) {
+            
+            @Override
+            public void run( ) {
+                try {
+                    merge( merge );
+                } catch ( RuntimeException e ) {
+                    synchronized ( SegmentedIndex.this ) {
+                        fMerging.clear( );
+                        SegmentedIndex.this.notifyAll( );
+                    }
+                    throw e;
+                }
+            }
+        } );
+    }
+    
+    /**
+     * The merge policy. A segment with too many deletions is rewritten on its
+     * own. Otherwise segments are grouped into levels by their size: level l
+     * holds the segments with less than maxBufferedDocuments * mergeFactor^l
+     * live documents. Starting at the first segment, the segments up to the
+     * last one of the highest level among them form a range, the next range
+     * starts after it. The first range holding mergeFactor segments has its
+     * first mergeFactor segments merged, including smaller ones between them.
+     * Only adjacent segments are merged and the merged segment takes their
+     * place, so documents keep the order in which they were added.
+     * 
+     * @return The segments to merge, or null.
+     */
+    private List<Segment> findMerge( ) {
+        for ( Segment segment : fSegments ) {
+            if ( segment.getDeletedCount( ) > 0 && segment.getDeletedCount( ) >= fMaxDeletedRatio * segment.getDocumentCount( ) ) {
+                List<Segment> merge = new ArrayList<Segment>( );
+                merge.add( segment );
+                return merge;
+            }
+        }
+        int[] levels = new int[fSegments.size( )];
+        for ( int s = 0; s < levels.length; s++ ) {
+            for ( long limit = fMaxBufferedDocuments; fSegments.get( s ).getLiveCount( ) >= limit; limit *= fMergeFactor ) {
+                levels[s]++;
+            }
+        }
+        for ( int start = 0; start < levels.length; ) {
+            int maxLevel = 0;
+            for ( int s = start; s < levels.length; s++ ) {
+                maxLevel = Math.max( maxLevel, levels[s] );
+            }
+            int end = start;
+            for ( int s = start; s < levels.length; s++ ) {
+                if ( levels[s] == maxLevel ) {
+                    end = s + 1;
+                }
+            }
+            if ( end - start >= fMergeFactor ) {
+                return new ArrayList<Segment>( fSegments.subList( start, start + fMergeFactor ) );
+            }
+            start = end;
+        }
+        return null;
+    }
+    
+    /**
+     * Merges segments into one, carrying over deletions made meanwhile.
+     */
+    private void merge( List<Segment> sources ) {
+        // Build the new segment without holding the lock
+        List<Document> documents = new ArrayList<Document>( );
+        for ( Segment source : sources ) {
+            for ( int localId = 0; localId < source.getDocumentCount( ); localId++ ) {
+                if ( !source.isDeleted( localId ) ) {
+                    documents.add( source.getDocument( localId ) );
+                }
+            }
+        }
+        InvertedIndex index = new InvertedIndex( documents.toArray( new Document[documents.size( )] ), fDictionary );
+        
+        synchronized ( this ) {
+            Segment merged = new Segment( fNextSegmentId++, index );
+            int localId = 0;
+            int position = -1;
+            for ( Segment source : sources ) {
+                int sourcePosition = indexOf( source.getId( ) );
+                Segment current = fSegments.get( sourcePosition );
+                for ( int sourceId = 0; sourceId < source.getDocumentCount( ); sourceId++ ) {
+                    if ( !source.isDeleted( sourceId ) ) {
+                        if ( current.isDeleted( sourceId ) ) {
+                            merged = merged.delete( localId );
+                        } else {
+                            fSegmentIds.put( current.getDocument( sourceId ).getName( ), merged.getId( ) );
+                        }
+                        localId++;
+                    }
+                }
+                if ( position < 0 ) {
+                    position = sourcePosition; // The merged segment takes the place of the first source
+                } else {
+                    fSegments.remove( sourcePosition );
+                }
+                fMerging.remove( source.getId( ) );
+            }
+            fChangedFrom = Math.min( fChangedFrom, position );
+            if ( merged.getLiveCount( ) == 0 ) {
+                fSegments.remove( position );
+            } else {
+                fSegments.set( position, merged );
+            }
+            fSnapshot = null;
+            notifyAll( );
+            maybeMerge( );
+        }
+    }
+    
+}
@@ -0,0 +1,215 @@
+package index;
+
+import java.util.Arrays;
+
+import common.Analyzer;
+import common.TokenList;
+
+
+
+/**
+ * Assigns dense integer ids to terms, so that documents and indexes can refer
+ * to terms by int instead of by String. Ids are handed out in the order terms
+ * are first seen, starting with 0, and never change.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class TermDictionary {
+    
+    private static final TermDictionary DEFAULT = new TermDictionary( );
+    
+    private String[] fTerms = null; // Indexed by id
+    private int[] fHashes = null; // Indexed by id
+    private int[] fSlots = null; // Open addressing hash table of id + 1, 0 if free
+    private int fSize = 0;
+    
+    public TermDictionary( ) {
+        fTerms = new String[1024];
+        fHashes = new int[1024];
+        fSlots = new int[2048];
+    }
+    
+    /**
+     * Returns the dictionary shared by all documents not created with a
+     * dictionary of their own.
+     */
+    public static TermDictionary getDefault( ) {
+        return DEFAULT;
+    }
+    
+    /**
+     * Returns the id of a term, assigning a new one if the term is unknown.
+     * 
+     * @param term
+     *            A term.
+     * @return The id of the term.
+     */
+    public synchronized int getId( String term ) {
+        int hash = term.hashCode( );
+        int slot = findSlot( hash, term );
+        return fSlots[slot] != 0 ? fSlots[slot] - 1 : add( slot, hash, term );
+    }
+    
+    /**
+     * Returns the id of a term given as a range of characters, assigning a new
+     * one if the term is unknown. A String is only created for new terms.
+     * 
+     * @param buffer
+     *            The characters of the term.
+     * @param offset
+     *            The position of the first character.
+     * @param length
+     *            The number of characters.
+     * @return The id of the term.
+     */
+    public synchronized int getId( char[] buffer, int offset, int length ) {
+        int hash = hash( buffer, offset, length );
+        int slot = findSlot( hash, buffer, offset, length );
+        return fSlots[slot] != 0 ? fSlots[slot] - 1 : add( slot, hash, new String( buffer, offset, length ) );
+    }
+    
+    /**
+     * Returns the id of a term without assigning a new one.
+     * 
+     * @param term
+     *            A term.
+     * @return The id of the term, or -1 if the term is unknown.
+     */
+    public synchronized int lookup( String term ) {
+        return term == null ? -1 : fSlots[findSlot( term.hashCode( ), term )] - 1;
+    }
+    
+    /**
+     * Returns the id of a term given as a range of characters without
+     * assigning a new one.
+     * 
+     * @param buffer
+     *            The characters of the term.
+     * @param offset
+     *            The position of the first character.
+     * @param length
+     *            The number of characters.
+     * @return The id of the term, or -1 if the term is unknown.
+     */
+    public synchronized int lookup( char[] buffer, int offset, int length ) {
+        return fSlots[findSlot( hash( buffer, offset, length ), buffer, offset, length )] - 1;
+    }
+    
+    /**
+     * Returns the ids of all terms of an analyzed text without assigning new
+     * ones, taking the lock once instead of once per term.
+     * 
+     * @param tokens
+     *            The terms of a text, e.g. a query.
+     * @return The ids of the terms in text order, -1 for unknown terms.
+     */
+    public synchronized int[] lookup( TokenList tokens ) {
+        final int[] ids = new int[tokens.size( )];
+        tokens.replay( new Analyzer.TokenConsumer( ) {
+            
+            private int fCount = 0;
+            
+            @Override
+            public void token( char[] buffer, int offset, int length ) {
+                ids[fCount++] = fSlots[findSlot( hash( buffer, offset, length ), buffer, offset, length )] - 1;
+            }
+        } );
+        return ids;
+    }
+    
+    /**
+     * Returns the term with a given id.
+     * 
+     * @param id
+     *            A term id.
+     * @return The term.
+     */
+    public synchronized String getTerm( int id ) {
+        return fTerms[id];
+    }
+    
+    /**
+     * Returns the number of terms, which is also the smallest unused id.
+     */
+    public synchronized int size( ) {
+        return fSize;
+    }
+    
+    /**
+     * Computes the same hash code as String.hashCode().
+     */
+    private static int hash( char[] buffer, int offset, int length ) {
+        int hash = 0;
+        for ( int i = offset; i < offset + length; i++ ) {
+            hash = 31 * hash + buffer[i];
+        }
+        return hash;
+    }
+    
+    private int firstSlot( int hash ) {
+        return ( hash ^ ( hash >>> 16 ) ) & ( fSlots.length - 1 );
+    }
+    
+    /**
+     * Returns the slot holding a term, or the free slot where it belongs.
+     */
+    private int findSlot( int hash, String term ) {
+        int slot = firstSlot( hash );
+        while ( fSlots[slot] != 0 ) {
+            int id = fSlots[slot] - 1;
+            if ( fHashes[id] == hash && fTerms[id].equals( term ) ) {
+                break;
+            }
+            slot = ( slot + 1 ) & ( fSlots.length - 1 );
+        }
+        return slot;
+    }
+    
+    private int findSlot( int hash, char[] buffer, int offset, int length ) {
+        int slot = firstSlot( hash );
+        while ( fSlots[slot] != 0 ) {
+            int id = fSlots[slot] - 1;
+            if ( fHashes[id] == hash && equals( fTerms[id], buffer, offset, length ) ) {
+                break;
+            }
+            slot = ( slot + 1 ) & ( fSlots.length - 1 );
+        }
+        return slot;
+    }
+    
+    private static boolean equals( String term, char[] buffer, int offset, int length ) {
+        if ( term.length( ) != length ) {
+            return false;
+        }
+        for ( int i = 0; i < length; i++ ) {
+            if ( term.charAt( i ) != buffer[offset + i] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private int add( int slot, int hash, String term ) {
+        if ( fSize == fTerms.length ) {
+            fTerms = Arrays.copyOf( fTerms, fSize * 2 );
+            fHashes = Arrays.copyOf( fHashes, fSize * 2 );
+        }
+        int id = fSize++;
+        fTerms[id] = term;
+        fHashes[id] = hash;
+        fSlots[slot] = id + 1;
+        if ( 2 * fSize > fSlots.length ) {
+            // Keep the table at most half full
+            fSlots = new int[fSlots.length * 2];
+            for ( int i = 0; i < fSize; i++ ) {
+                int free = firstSlot( fHashes[i] );
+                while ( fSlots[free] != 0 ) {
+                    free = ( free + 1 ) & ( fSlots.length - 1 );
+                }
+                fSlots[free] = i + 1;
+            }
+        }
+        return id;
+    }
+    
+}
@@ -0,0 +1,42 @@
+package index;
+
+import java.io.ByteArrayOutputStream;
+
+
+
+/**
+ * Encodes each value in as many bytes as its significant bits require, seven
+ * bits per byte.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+class VariableByteCodec extends PostingsCodec {
+    
+    @Override
+    public String getName( ) {
+        return "vbyte";
+    }
+    
+    @Override
+    void encode( int[] values, int count, ByteArrayOutputStream out ) {
+        for ( int i = 0; i < count; i++ ) {
+            writeVariableByte( values[i], out );
+        }
+    }
+    
+    @Override
+    int decode( byte[] data, int offset, int[] values, int count ) {
+        for ( int i = 0; i < count; i++ ) {
+            int value = 0;
+            int shift = 0;
+            int b;
+            while ( ( ( b = data[offset++] ) & 0x80 ) == 0 ) {
+                value |= b << shift;
+                shift += 7;
+            }
+            values[i] = value | ( ( b & 0x7F ) << shift );
+        }
+        return offset;
+    }
+    
+}
@@ -1,12 +1,18 @@
 package model;
 
+import index.InvertedIndex;
+
 import java.util.SortedMap;
+import java.util.concurrent.CancellationException;
 
 
 
 /**
  * An abstract super class for all IR models.
  * 
+ * Evaluating a query stops with a CancellationException when the thread is
+ * interrupted, see checkCancelled.
+ * 
  * @author Eric Hildebrand
  * 
  *         Part of the Information Retrieval 2012 Basic IR models project.
@@ -14,13 +20,85 @@ import java.util.SortedMap;
 public abstract class AbstractModel {
     
     protected Document[] fDocuments = null;
+    protected InvertedIndex fIndex = null;
+    private QueryCache fCache = new QueryCache( );
     
     public AbstractModel( ) {
         super( );
     }
     
     public AbstractModel( Document[] documents ) {
+        this( documents, new InvertedIndex( documents ) );
+    }
+    
+    /**
+     * Creates a model working on an already built index, so that several
+     * models can share the same index.
+     * 
+     * @param documents
+     *            The base corpus.
+     * @param index
+     *            The inverted index built from the base corpus.
+     */
+    public AbstractModel( Document[] documents, InvertedIndex index ) {
         fDocuments = documents;
+        fIndex = index;
+    }
+    
+    public InvertedIndex getIndex( ) {
+        return fIndex;
+    }
+    
+    /**
+     * Sets the cache for the results of this model's queries; null disables
+     * caching. By default, each model has a cache of its own.
+     */
+    public void setQueryCache( QueryCache cache ) {
+        fCache = cache;
+    }
+    
+    public QueryCache getQueryCache( ) {
+        return fCache;
+    }
+    
+    /**
+     * Returns the cached result for a key, computing it if it is not cached.
+     */
+    <V> V getCached( String key, QueryCache.Loader<V> loader ) {
+        QueryCache cache = fCache;
+        return cache == null ? loader.load( ) : cache.get( key, loader );
+    }
+    
+    /**
+     * Stops the evaluation of a query whose search was cancelled, e.g. by
+     * SearchExecutor.cancel, which interrupts the searching thread. Checked
+     * between the terms of a query, so that a cancelled search soon frees its
+     * thread.
+     * 
+     * @throws CancellationException
+     *             If the current thread was interrupted.
+     */
+    static void checkCancelled( ) {
+        if ( Thread.interrupted( ) ) {
+            throw new CancellationException( );
+        }
+    }
+    
+    /**
+     * Returns a key for the analysis of a query: the ids and frequencies of
+     * its terms, in the order they are scored, followed by the frequencies of
+     * the terms missing in the corpus, which change the length of the query
+     * vector.
+     */
+    static String getKey( Document query ) {
+        StringBuilder key = new StringBuilder( );
+        for ( int i = 0; i < query.getTermCount( ); i++ ) {
+            key.append( ' ' ).append( query.getTermId( i ) ).append( ':' ).append( query.getFrequencyAt( i ) );
+        }
+        for ( int freq : query.getUnknownFrequencies( ) ) {
+            key.append( " ?:" ).append( freq );
+        }
+        return key.toString( );
     }
     
     /**
@@ -36,4 +114,42 @@ public abstract class AbstractModel {
      */
     public abstract SortedMap<Document,Double> getDocuments( String queryString, boolean stem );
     
+    /**
+     * Returns the k best ranked documents for a query. Only documents sharing
+     * at least one term with the query are ranked. Must be implemented by all
+     * inherited classes.
+     * 
+     * @param queryString
+     *            The search query.
+     * @param k
+     *            The maximum number of documents to return.
+     * @param stem
+     *            Use stemming?
+     * @return The best ranked documents ordered by descending similarity.
+     */
+    public abstract TopDocuments getTopDocuments( String queryString, int k, boolean stem );
+    
+    /**
+     * Returns a page of the ranking of getDocuments: the k documents ranking
+     * right after a given one (search after). Pages can be fetched one after
+     * the other without ranking the documents of the preceding pages again.
+     * Among equally similar documents, the one with the lower id ranks
+     * higher. Must be implemented by all inherited classes.
+     * 
+     * @param queryString
+     *            The search query.
+     * @param afterScore
+     *            The similarity of the last document of the previous page, or
+     *            positive infinity for the first page.
+     * @param afterDocId
+     *            The id of the last document of the previous page, or -1 for
+     *            the first page.
+     * @param k
+     *            The maximum number of documents to return.
+     * @param stem
+     *            Use stemming?
+     * @return The documents of the page ordered by descending similarity.
+     */
+    public abstract TopDocuments getDocumentsAfter( String queryString, double afterScore, int afterDocId, int k, boolean stem );
+    
 }
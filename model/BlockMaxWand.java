@@ -0,0 +1,264 @@
+package model;
+
+import index.CorpusStatistics;
+import index.PostingList;
+
+import common.Metrics;
+
+
+
+/**
+ * Evaluates BM25 queries using the Block-Max WAND dynamic pruning strategy.
+ * 
+ * Every query term gets a cursor over its postings together with an upper
+ * bound of its BM25 contribution, both for the whole posting list and for each
+ * block of BLOCK_SIZE postings. The bound of a block is the score of its
+ * highest term frequency in its shortest document; as these do not depend on
+ * the BM25 parameters, they are computed once per term. Documents whose summed
+ * bounds cannot exceed the score of the current k-th best document are skipped
+ * without being scored. The remaining documents are scored exactly like the
+ * exhaustive evaluation, so both return the same top k documents with the
+ * same scores.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+class BlockMaxWand {
+    
+    static final int BLOCK_SIZE = 64;
+    
+    private static final int END = Integer.MAX_VALUE;
+    private static final int CANCEL_CHECK_INTERVAL = 256; // Pivots between checks for cancellation
+    
+    // Relative slack for upper bounds, covering rounding differences between
+    // summing the bounds and summing the actual contributions of the terms
+    private static final double MARGIN = 1e-9;
+    
+    /**
+     * The highest term frequency and the shortest document length within each
+     * block of the postings of a term. BM25 scores grow with the frequency and
+     * shrink with the length for all parameters the pruning is applicable to,
+     * so these bound the scores of each block.
+     */
+    static class BlockBounds {
+        
+        // Final, so that bounds are safely shared between threads without a lock
+        private final int[] fMaxFreqs;
+        private final int[] fMinLengths;
+        
+        BlockBounds( PostingList postings, CorpusStatistics statistics ) {
+            int blocks = ( postings.size( ) + BLOCK_SIZE - 1 ) / BLOCK_SIZE;
+            fMaxFreqs = new int[blocks];
+            fMinLengths = new int[blocks];
+            for ( int i = 0; i < postings.size( ); i++ ) {
+                int block = i / BLOCK_SIZE;
+                int length = statistics.getLength( postings.getDocId( i ) );
+                fMaxFreqs[block] = Math.max( fMaxFreqs[block], postings.getFrequency( i ) );
+                fMinLengths[block] = i % BLOCK_SIZE == 0 ? length : Math.min( fMinLengths[block], length );
+            }
+        }
+        
+    }
+    
+    /**
+     * A position in the postings of a query term.
+     */
+    static class TermCursor {
+        
+        private PostingList fPostings = null;
+        private double fIdf = 0.0;
+        private double fMaxScore = 0.0;
+        private double[] fBlockMaxScores = null;
+        private int fPosition = 0;
+        private int fDocId = END;
+        
+        TermCursor( PostingList postings, double idf, double[] blockMaxScores ) {
+            fPostings = postings;
+            fIdf = idf;
+            fBlockMaxScores = blockMaxScores;
+            for ( double score : blockMaxScores ) {
+                fMaxScore = Math.max( fMaxScore, score );
+            }
+            fDocId = postings.size( ) > 0 ? postings.getDocId( 0 ) : END;
+        }
+        
+        /**
+         * Moves the cursor to the first posting with a document id of at least
+         * the target.
+         */
+        void advance( int target ) {
+            fPosition = fPostings.advance( fPosition, target );
+            fDocId = fPosition < fPostings.size( ) ? fPostings.getDocId( fPosition ) : END;
+        }
+        
+        /**
+         * Returns the block holding the first posting with a document id of at
+         * least the target, or -1 if there is no such posting. The cursor is
+         * not moved.
+         */
+        int getBlock( int target ) {
+            int position = fPostings.advance( fPosition, target );
+            return position < fPostings.size( ) ? position / BLOCK_SIZE : -1;
+        }
+        
+        double getBlockMaxScore( int block ) {
+            return block < 0 ? 0.0 : fBlockMaxScores[block];
+        }
+        
+        /**
+         * Returns the last document id of a block.
+         */
+        int getBlockEnd( int block ) {
+            return block < 0 ? END : fPostings.getDocId( Math.min( ( block + 1 ) * BLOCK_SIZE, fPostings.size( ) ) - 1 );
+        }
+        
+    }
+    
+    private double fK = 0.0;
+    private double fB = 0.0;
+    private double fAvgDocLen = 0.0;
+    private CorpusStatistics fStatistics = null;
+    
+    BlockMaxWand( CorpusStatistics statistics, double avgDocLen, double k, double b ) {
+        fStatistics = statistics;
+        fAvgDocLen = avgDocLen;
+        fK = k;
+        fB = b;
+    }
+    
+    /**
+     * Returns true, if the pruning is safe for the given BM25 parameters, i.e.
+     * no term can contribute a negative score.
+     */
+    static boolean isApplicable( double k, double b ) {
+        return k >= 0 && b >= 0 && b <= 1;
+    }
+    
+    /**
+     * Calculates the upper bounds of the contribution of a term for each block
+     * of its postings.
+     * 
+     * @param bounds
+     *            The bounds of the term's postings.
+     * @param idf
+     *            The idf of the term.
+     * @return A bound of the score of the term within each block.
+     */
+    double[] getBlockMaxScores( BlockBounds bounds, double idf ) {
+        double[] blockMaxScores = new double[bounds.fMaxFreqs.length];
+        for ( int block = 0; block < blockMaxScores.length; block++ ) {
+            blockMaxScores[block] = ProbabilisticModel.getTermScore( idf, bounds.fMaxFreqs[block], fK, fB, bounds.fMinLengths[block], fAvgDocLen );
+        }
+        return blockMaxScores;
+    }
+    
+    /**
+     * Collects the best scored documents for a query. Only the postings of
+     * the documents scored count as touched.
+     * 
+     * @param cursors
+     *            The cursors of the query terms in query order.
+     * @param collector
+     *            Receives all documents that may belong to the top k.
+     */
+    void search( TermCursor[] cursors, TopKCollector collector ) {
+        TermCursor[] sorted = cursors.clone( );
+        int postings = 0;
+        int scored = 0;
+        for ( int pivots = 1;; pivots++ ) {
+            if ( pivots % CANCEL_CHECK_INTERVAL == 0 ) {
+                AbstractModel.checkCancelled( );
+            }
+            sortByDocId( sorted );
+            double threshold = collector.getThreshold( );
+            
+            // Find the pivot, the first document whose bounds could reach the top k
+            int pivot = -1;
+            double bound = 0.0;
+            for ( int i = 0; i < sorted.length && sorted[i].fDocId != END; i++ ) {
+                bound += sorted[i].fMaxScore;
+                if ( exceeds( bound, threshold ) ) {
+                    pivot = i;
+                    break;
+                }
+            }
+            if ( pivot < 0 ) {
+                break; // No remaining document can enter the top k
+            }
+            int pivotDoc = sorted[pivot].fDocId;
+            while ( pivot + 1 < sorted.length && sorted[pivot + 1].fDocId == pivotDoc ) {
+                pivot++;
+            }
+            
+            // Refine the bound with the maxima of the blocks holding the pivot
+            double blockBound = 0.0;
+            int next = END;
+            for ( int i = 0; i <= pivot; i++ ) {
+                int block = sorted[i].getBlock( pivotDoc );
+                blockBound += sorted[i].getBlockMaxScore( block );
+                int blockEnd = sorted[i].getBlockEnd( block );
+                if ( blockEnd < END && blockEnd + 1 < next ) {
+                    next = blockEnd + 1;
+                }
+            }
+            
+            if ( exceeds( blockBound, threshold ) ) {
+                if ( sorted[0].fDocId == pivotDoc ) {
+                    // Score the pivot, summing in query order like the exhaustive evaluation
+                    double score = 0.0;
+                    for ( TermCursor cursor : cursors ) {
+                        if ( cursor.fDocId == pivotDoc ) {
+                            score += ProbabilisticModel.getTermScore( cursor.fIdf, cursor.fPostings.getFrequency( cursor.fPosition ), fK, fB, fStatistics.getLength( pivotDoc ), fAvgDocLen );
+                            postings++;
+                        }
+                    }
+                    collector.collect( pivotDoc, score );
+                    scored++;
+                    for ( int i = 0; i <= pivot; i++ ) {
+                        sorted[i].advance( pivotDoc + 1 );
+                    }
+                } else {
+                    // Documents before the pivot cannot reach the top k
+                    for ( int i = 0; i < pivot && sorted[i].fDocId < pivotDoc; i++ ) {
+                        sorted[i].advance( pivotDoc );
+                    }
+                }
+            } else {
+                // No document up to the end of the current blocks can reach
+                // the top k, unless it also contains a term beyond the pivot
+                if ( pivot + 1 < sorted.length && sorted[pivot + 1].fDocId < next ) {
+                    next = sorted[pivot + 1].fDocId;
+                }
+                if ( next == END ) {
+                    break;
+                }
+                for ( int i = 0; i <= pivot; i++ ) {
+                    sorted[i].advance( next );
+                }
+            }
+        }
+        Metrics.countPostings( postings );
+        Metrics.countDocumentsScored( scored );
+    }
+    
+    /**
+     * Returns true, if a document with the given score bound might enter the
+     * top k. Documents are visited in ascending id order and ties are broken
+     * in favor of lower ids, so a later document has to exceed the threshold.
+     */
+    private static boolean exceeds( double bound, double threshold ) {
+        return bound * ( 1 + MARGIN ) > threshold;
+    }
+    
+    private static void sortByDocId( TermCursor[] cursors ) {
+        for ( int i = 1; i < cursors.length; i++ ) {
+            TermCursor cursor = cursors[i];
+            int j = i - 1;
+            while ( j >= 0 && cursors[j].fDocId > cursor.fDocId ) {
+                cursors[j + 1] = cursors[j];
+                j--;
+            }
+            cursors[j + 1] = cursor;
+        }
+    }
+    
+}
@@ -1,55 +1,432 @@
 package model;
 
+import index.DocumentBitmap;
+import index.InvertedIndex;
+import index.PostingList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
+import common.Metrics;
+
 
 
 /**
  * A simple implementation of the boolean IR model.
  * 
+ * Queries are evaluated on the sorted posting lists of their terms: the
+ * positive terms of a conjunction are intersected starting with the rarest
+ * one, negated terms are subtracted and the results of all conjunctions are
+ * merged. Skipping through the longer lists uses galloping search, so a
+ * selective conjunction only touches a small part of the postings.
+ * 
+ * Alternatively, queries can be evaluated on compressed document bitmaps of
+ * their terms, which bounds the cost of negations and wide disjunctions by
+ * the size of the corpus in bits. The bitmaps of the most recently used
+ * terms are kept.
+ * 
  * @author Eric Hildebrand
  * 
  *         Part of the Information Retrieval 2012 Basic IR models project.
  */
 public class BooleanModel extends AbstractModel {
     
+    private static final int BITMAP_CACHE_TERMS = 1024;
+    
+    private volatile boolean fBitmaps = false;
+    private Map<String,DocumentBitmap> fTermBitmaps = new LinkedHashMap<String,DocumentBitmap>( 16, 0.75f, true ) { // Least recently used first
+        
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<String,DocumentBitmap> eldest ) {
+            return size( ) > BITMAP_CACHE_TERMS;
+        }
+    };
+    private DocumentBitmap fAllDocuments = null;
+    
     public BooleanModel( Document[] documents ) {
         super( documents );
     }
     
+    public BooleanModel( Document[] documents, InvertedIndex index ) {
+        super( documents, index );
+    }
+    
+    /**
+     * Switches between evaluation on posting lists and on document bitmaps.
+     * Bitmaps pay off for queries with negated terms or many disjunctions.
+     * Switching back to posting lists frees the bitmaps kept.
+     * 
+     * @param bitmaps
+     *            Evaluate queries on compressed document bitmaps?
+     */
+    public void setBitmapMode( boolean bitmaps ) {
+        fBitmaps = bitmaps;
+        if ( !bitmaps ) {
+            synchronized ( this ) {
+                fTermBitmaps.clear( );
+            }
+        }
+    }
+    
+    public boolean isBitmapMode( ) {
+        return fBitmaps;
+    }
+    
+    /**
+     * Returns the set of documents matching a query as a compressed bitmap of
+     * their ids, evaluated with word-level bit operations.
+     * 
+     * @param queryString
+     *            The search query in disjunctive normal form.
+     * @param stem
+     *            Use stemming?
+     * @return The ids of the matching documents.
+     */
+    public DocumentBitmap getMatchingDocuments( String queryString, boolean stem ) {
+        return getMatchingDocuments( new DisjunctiveNormalForm( queryString, stem ) );
+    }
+    
+    private DocumentBitmap getMatchingDocuments( DisjunctiveNormalForm dnf ) {
+        DocumentBitmap matches = DocumentBitmap.EMPTY;
+        for ( Map<String,Boolean> conjunction : dnf ) {
+            List<DocumentBitmap> positives = new ArrayList<DocumentBitmap>( );
+            DocumentBitmap negatives = DocumentBitmap.EMPTY;
+            for ( String term : conjunction.keySet( ) ) {
+                checkCancelled( );
+                DocumentBitmap bitmap = getBitmap( term );
+                if ( conjunction.get( term ) ) {
+                    positives.add( bitmap );
+                } else {
+                    negatives = negatives.or( bitmap );
+                }
+                if ( Metrics.isEnabled( ) ) {
+                    Metrics.countPostings( bitmap.getCardinality( ) ); // Not kept by the bitmap
+                }
+            }
+            Collections.sort( positives, new Comparator<DocumentBitmap>( ) {
+                
+                @Override
+                public int compare( DocumentBitmap a, DocumentBitmap b ) {
+                    return a.getCardinality( ) - b.getCardinality( );
+                }
+            } );
+            DocumentBitmap conjunctionMatches = positives.isEmpty( ) ? getAllDocuments( ) : positives.get( 0 );
+            for ( int j = 1; j < positives.size( ) && !conjunctionMatches.isEmpty( ); j++ ) {
+                conjunctionMatches = conjunctionMatches.and( positives.get( j ) );
+            }
+            matches = matches.or( conjunctionMatches.andNot( negatives ) );
+        }
+        return matches;
+    }
+    
+    /**
+     * Returns the bitmap of the documents containing a term, creating it from
+     * the term's postings unless it is among the most recently used ones.
+     * Bitmaps are created outside the lock, so racing threads may both create
+     * the same one.
+     */
+    private DocumentBitmap getBitmap( String term ) {
+        synchronized ( this ) {
+            DocumentBitmap bitmap = fTermBitmaps.get( term );
+            if ( bitmap != null ) {
+                return bitmap;
+            }
+        }
+        DocumentBitmap bitmap = DocumentBitmap.of( fIndex.getPostings( term ) );
+        synchronized ( this ) {
+            fTermBitmaps.put( term, bitmap );
+        }
+        return bitmap;
+    }
+    
+    private synchronized DocumentBitmap getAllDocuments( ) {
+        if ( fAllDocuments == null ) {
+            fAllDocuments = DocumentBitmap.range( fDocuments.length );
+        }
+        return fAllDocuments;
+    }
+    
+    /**
+     * Returns the documents matching a query, all with similarity 1. Documents
+     * not matching the query are not included. Results are cached, the map
+     * returned cannot be modified.
+     */
     @Override
     public SortedMap<Document,Double> getDocuments( String queryString, boolean stem ) {
-        
-        DisjunctiveNormalForm dnf = new DisjunctiveNormalForm( queryString, stem );
-        HashMap<Document,Double> map = new HashMap<Document,Double>( );
-        Comparator<Document> comparator = new ValueComparator( map );
-        SortedMap<Document,Double> result = new TreeMap<Document,Double>( comparator );
-        
-        // Initialize all documents with similarity of 0
-        // For each document, check if any conjunction of the query's dnf is satisfied
-        // If so, update the documents similarity to 1
-        for ( Document document : fDocuments ) {
-            map.put( document, 0.0 );
-            for ( Map<String,Boolean> conjunction : dnf ) {
-                boolean match = true;
-                for ( String term : conjunction.keySet( ) ) {
-                    if ( ( conjunction.get( term ) && document.getFrequency( term ) == 0 ) || ( !conjunction.get( term ) && document.getFrequency( term ) > 0 ) ) {
-                        match = false;
-                        break; // Leave term loop
+        Metrics.Query probe = Metrics.beginQuery( "boolean", queryString );
+        Metrics.Timer timer = Metrics.start( Metrics.QUERY_ANALYSIS );
+        try {
+            final DisjunctiveNormalForm dnf = new DisjunctiveNormalForm( queryString, stem );
+            Metrics.stop( timer );
+            return getCached( "documents" + getKey( dnf, stem ), new QueryCache.Loader<SortedMap<Document,Double>>( ) {
+                
+                @Override
+                SortedMap<Document,Double> load( ) {
+                    Metrics.Timer timer = Metrics.start( Metrics.SCORING );
+                    try {
+                        int[] matches = evaluate( dnf );
+                        Metrics.stop( timer );
+                        timer = Metrics.start( Metrics.RANKING );
+                        HashMap<Document,Double> map = new HashMap<Document,Double>( );
+                        Comparator<Document> comparator = new ValueComparator( map );
+                        SortedMap<Document,Double> result = new TreeMap<Document,Double>( comparator );
+                        
+                        for ( int docId : matches ) {
+                            map.put( fDocuments[docId], 1.0 );
+                        }
+                        result.putAll( map );
+                        return Collections.unmodifiableSortedMap( result );
+                    } finally {
+                        Metrics.stop( timer );
                     }
                 }
-                if ( match ) { // Conjunction satisfied
-                    map.put( document, 1.0 );
-                    break; // Leave conjunction loop
+                
+                @Override
+                long getSize( SortedMap<Document,Double> documents ) {
+                    return QueryCache.getSize( documents );
                 }
+            } );
+        } finally {
+            Metrics.stop( timer );
+            Metrics.endQuery( probe );
+        }
+    }
+    
+    @Override
+    public TopDocuments getTopDocuments( String queryString, int k, boolean stem ) {
+        Metrics.Query probe = Metrics.beginQuery( "boolean", queryString );
+        Metrics.Timer timer = Metrics.start( Metrics.QUERY_ANALYSIS );
+        try {
+            DisjunctiveNormalForm dnf = new DisjunctiveNormalForm( queryString, stem );
+            Metrics.stop( timer );
+            timer = Metrics.start( Metrics.SCORING );
+            // All matches are equally similar, so the ones with the lowest ids rank first
+            int[] matches = evaluate( dnf );
+            Metrics.stop( timer );
+            int[] docIds = Arrays.copyOf( matches, Math.max( 0, Math.min( k, matches.length ) ) );
+            double[] scores = new double[docIds.length];
+            Arrays.fill( scores, 1.0 );
+            return new TopDocuments( fDocuments, docIds, scores );
+        } finally {
+            Metrics.stop( timer );
+            Metrics.endQuery( probe );
+        }
+    }
+    
+    @Override
+    public TopDocuments getDocumentsAfter( String queryString, double afterScore, int afterDocId, int k, boolean stem ) {
+        // All matches score 1, so a page continues after the preceding document's id
+        final DisjunctiveNormalForm dnf = new DisjunctiveNormalForm( queryString, stem );
+        int[] matches = getCached( "matches" + getKey( dnf, stem ), new QueryCache.Loader<int[]>( ) {
+            
+            @Override
+            int[] load( ) {
+                return evaluate( dnf );
+            }
+            
+            @Override
+            long getSize( int[] matches ) {
+                return 16 + 4L * matches.length;
+            }
+        } );
+        return getPage( fDocuments, matches, afterScore, afterDocId, k );
+    }
+    
+    /**
+     * Returns a page of the documents matching a query, see
+     * getDocumentsAfter.
+     * 
+     * @param matches
+     *            The ids of the matching documents in ascending order.
+     */
+    static TopDocuments getPage( Document[] documents, int[] matches, double afterScore, int afterDocId, int k ) {
+        int from = 0;
+        if ( afterScore < 1.0 ) {
+            from = matches.length;
+        } else if ( afterScore == 1.0 ) {
+            from = Arrays.binarySearch( matches, afterDocId + 1 );
+            if ( from < 0 ) {
+                from = -from - 1;
+            }
+        }
+        int[] docIds = Arrays.copyOfRange( matches, from, from + Math.max( 0, Math.min( k, matches.length - from ) ) );
+        double[] scores = new double[docIds.length];
+        Arrays.fill( scores, 1.0 );
+        return new TopDocuments( documents, docIds, scores );
+    }
+    
+    /**
+     * Returns a key for a query that does not depend on the order of its
+     * conjunctions and terms.
+     */
+    static String getKey( DisjunctiveNormalForm dnf, boolean stem ) {
+        List<String> conjunctions = new ArrayList<String>( );
+        for ( Map<String,Boolean> conjunction : dnf ) {
+            List<String> terms = new ArrayList<String>( );
+            for ( Map.Entry<String,Boolean> term : conjunction.entrySet( ) ) {
+                terms.add( ( term.getValue( ) ? "+" : "-" ) + term.getKey( ) );
+            }
+            Collections.sort( terms );
+            StringBuilder key = new StringBuilder( );
+            for ( String term : terms ) {
+                key.append( ' ' ).append( term );
+            }
+            conjunctions.add( key.toString( ) );
+        }
+        Collections.sort( conjunctions );
+        StringBuilder key = new StringBuilder( " stem=" ).append( stem );
+        for ( String conjunction : conjunctions ) {
+            key.append( " |" ).append( conjunction );
+        }
+        return key.toString( );
+    }
+    
+    /**
+     * Determines the documents satisfying a query.
+     * 
+     * @param dnf
+     *            The query.
+     * @return The ids of the matching documents in ascending order.
+     */
+    int[] evaluate( DisjunctiveNormalForm dnf ) {
+        int[] matches = new int[0];
+        if ( fBitmaps ) {
+            matches = getMatchingDocuments( dnf ).toArray( );
+        } else {
+            for ( Map<String,Boolean> conjunction : dnf ) {
+                checkCancelled( );
+                matches = union( matches, evaluate( conjunction ) );
+            }
+        }
+        Metrics.countDocumentsScored( matches.length );
+        return matches;
+    }
+    
+    /**
+     * Determines the documents satisfying a conjunction.
+     * 
+     * @param conjunction
+     *            A conjunction of (possibly negated) terms.
+     * @return The ids of the matching documents in ascending order.
+     */
+    private int[] evaluate( Map<String,Boolean> conjunction ) {
+        List<PostingList> positives = new ArrayList<PostingList>( );
+        List<PostingList> negatives = new ArrayList<PostingList>( );
+        for ( String term : conjunction.keySet( ) ) {
+            PostingList postings = fIndex.getPostings( term );
+            ( conjunction.get( term ) ? positives : negatives ).add( postings );
+            Metrics.countPostings( postings.size( ) );
+        }
+        // Rarest term first, so the intermediate results stay as small as possible
+        Collections.sort( positives, new Comparator<PostingList>( ) {
+            
+            @Override
+            public int compare( PostingList a, PostingList b ) {
+                return a.size( ) - b.size( );
+            }
+        } );
+        
+        int[] docIds;
+        int size;
+        if ( positives.isEmpty( ) ) { // Only negated terms, every document is a candidate
+            size = fDocuments.length;
+            docIds = new int[size];
+            for ( int docId = 0; docId < size; docId++ ) {
+                docIds[docId] = docId;
+            }
+        } else {
+            PostingList rarest = positives.get( 0 );
+            size = rarest.size( );
+            docIds = new int[size];
+            for ( int i = 0; i < size; i++ ) {
+                docIds[i] = rarest.getDocId( i );
+            }
+        }
+        for ( int j = 1; j < positives.size( ) && size > 0; j++ ) {
+            checkCancelled( );
+            size = filter( docIds, size, positives.get( j ), true );
+        }
+        for ( int j = 0; j < negatives.size( ) && size > 0; j++ ) {
+            checkCancelled( );
+            size = filter( docIds, size, negatives.get( j ), false );
+        }
+        return Arrays.copyOf( docIds, size );
+    }
+    
+    /**
+     * Keeps only those documents that are (or are not) contained in a posting
+     * list. The documents are filtered in place.
+     * 
+     * @param docIds
+     *            Document ids in ascending order.
+     * @param size
+     *            The number of valid document ids.
+     * @param postings
+     *            The posting list to look the documents up in.
+     * @param contained
+     *            Keep the contained documents (intersection) or the missing
+     *            ones (difference)?
+     * @return The number of remaining document ids.
+     */
+    private static int filter( int[] docIds, int size, PostingList postings, boolean contained ) {
+        int kept = 0;
+        int position = 0;
+        for ( int i = 0; i < size; i++ ) {
+            position = postings.advance( position, docIds[i] );
+            boolean found = position < postings.size( ) && postings.getDocId( position ) == docIds[i];
+            if ( found == contained ) {
+                docIds[kept++] = docIds[i];
             }
+            if ( position == postings.size( ) ) {
+                if ( !contained ) { // All remaining documents are missing from the postings
+                    System.arraycopy( docIds, i + 1, docIds, kept, size - i - 1 );
+                    kept += size - i - 1;
+                }
+                break;
+            }
+        }
+        return kept;
+    }
+    
+    /**
+     * Merges two ascending lists of document ids.
+     */
+    private static int[] union( int[] a, int[] b ) {
+        if ( a.length == 0 ) {
+            return b;
+        }
+        if ( b.length == 0 ) {
+            return a;
+        }
+        int[] result = new int[a.length + b.length];
+        int i = 0, j = 0, size = 0;
+        while ( i < a.length && j < b.length ) {
+            if ( a[i] < b[j] ) {
+                result[size++] = a[i++];
+            } else if ( a[i] > b[j] ) {
+                result[size++] = b[j++];
+            } else {
+                result[size++] = a[i++];
+                j++;
+            }
+        }
+        while ( i < a.length ) {
+            result[size++] = a[i++];
+        }
+        while ( j < b.length ) {
+            result[size++] = b[j++];
         }
-        result.putAll( map );
-        return result;
+        return Arrays.copyOf( result, size );
     }
     
 }
@@ -5,6 +5,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 import common.Helpers;
 
@@ -19,6 +20,10 @@ import common.Helpers;
  */
 public class DisjunctiveNormalForm implements Iterable<Map<String,Boolean>> {
     
+    // Operators together with the surrounding blanks and parentheses
+    private static final Pattern OR = Pattern.compile( "[^\\-\\w\\d]*\\|[^\\-\\w\\d]*" );
+    private static final Pattern AND = Pattern.compile( "[^\\-\\w\\d]*&[^\\-\\w\\d]*" );
+    
     private Set<Map<String,Boolean>> fDisjunctiveTerms = null; // { {A:true,B:false,C:true}, {A:false,B:true,C:true}, ... }
     
     protected DisjunctiveNormalForm( ) {
@@ -36,10 +41,10 @@ public class DisjunctiveNormalForm implements Iterable<Map<String,Boolean>> {
      */
     public DisjunctiveNormalForm( String formula, boolean stem ) {
         fDisjunctiveTerms = new HashSet<Map<String,Boolean>>( );
-        for ( String conjunction : formula.split( "[^\\-\\w\\d]*\\|[^\\-\\w\\d]*" ) ) {
+        for ( String conjunction : OR.split( formula ) ) {
             Map<String,Boolean> terms = new HashMap<String,Boolean>( );
             boolean contradiction = false;
-            for ( String term : conjunction.replaceAll( "[\\(\\)]", " " ).trim( ).toLowerCase( ).split( "[^\\-\\w\\d]*&[^\\-\\w\\d]*" ) ) {
+            for ( String term : AND.split( conjunction.replace( '(', ' ' ).replace( ')', ' ' ).trim( ).toLowerCase( ) ) ) {
                 if ( term.startsWith( "-" ) ) {
                     term = term.substring( 1 );
                     if ( stem ) {
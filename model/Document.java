@@ -1,19 +1,29 @@
 package model;
 
-import java.util.HashMap;
+import index.TermDictionary;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
-import common.Helpers;
+import common.Analyzer;
+import common.Metrics;
+import common.TokenList;
 
 
 
 /**
  * A representation for a document. 
  * 
- * Term "vectors" are realized with mappings from terms to frequencies or weights,
- * respectively. Missing terms are considered to have frequency and weight 0.
- * Frequencies are abolute, weights could be relative term frequencies, 
- * tf/idf or any other weighting functions.
+ * Term "vectors" are realized as parallel arrays of term ids, frequencies and
+ * weights, sorted by term id. Term ids are assigned by a term dictionary that
+ * is shared by all documents of a corpus. Missing terms are considered to have
+ * frequency and weight 0. Frequencies are abolute, weights could be relative
+ * term frequencies, tf/idf or any other weighting functions.
+ * 
+ * Only queries carry weights. The weights of corpus documents depend on the
+ * whole corpus, so the models compute them from the index instead of storing
+ * them in each document.
  * 
  * @author Eric Hildebrand
  * 
@@ -24,15 +34,21 @@ public class Document {
     private int fLength = 0; // Number of terms
     private int fMaxFreq = 0;
     private String fName = null;
-    private Map<String,Integer> fFreqs = null; // The term frequency "vector"
-    private Map<String,Double> fWeights = null; // The term weight "vector"
+    private TermDictionary fDictionary = null;
+    private int[] fTermIds = null; // The distinct terms, ascending
+    private int[] fFreqs = null; // The term frequency "vector"
+    private float[] fWeights = null; // The term weight "vector"
+    private int[] fUnknownFreqs = null; // Of a query: the frequencies of the terms missing in the dictionary
+    private boolean fQuery = false;
     
     protected Document( ) {
         throw new UnsupportedOperationException( );
     }
     
     /**
-     * Creates a new document.
+     * Creates a new document using the default term dictionary. All its
+     * terms are added to the default dictionary for good, so queries are
+     * created with createQuery instead.
      * 
      * @param name
      *            An identifier for the document.
@@ -42,21 +58,190 @@ public class Document {
      *            Optionally stems terms.
      */
     public Document( String name, String text, boolean stem ) {
+        this( name, text, stem, TermDictionary.getDefault( ) );
+    }
+    
+    /**
+     * Creates a new document of a corpus. Terms not yet in the dictionary are
+     * added to it.
+     * 
+     * @param name
+     *            An identifier for the document.
+     * @param text
+     *            The text included in the document.
+     * @param stem
+     *            Optionally stems terms.
+     * @param dictionary
+     *            The term dictionary of the corpus.
+     */
+    public Document( String name, String text, boolean stem, TermDictionary dictionary ) {
+        Metrics.Timer timer = Metrics.start( Metrics.DOCUMENT );
+        try {
+            fName = name;
+            fDictionary = dictionary;
+            TermIdCollector ids = new TermIdCollector( dictionary );
+            new Analyzer( stem ).analyze( text, ids ); // Preprocessing
+            setTerms( ids.fIds, ids.fCount );
+        } finally {
+            Metrics.stop( timer );
+        }
+    }
+    
+    /**
+     * Creates a new document from a text that has already been analyzed, e.g.
+     * on a worker thread.
+     * 
+     * @param name
+     *            An identifier for the document.
+     * @param tokens
+     *            The terms of the document in text order.
+     * @param dictionary
+     *            The term dictionary of the corpus.
+     */
+    public Document( String name, TokenList tokens, TermDictionary dictionary ) {
+        Metrics.Timer timer = Metrics.start( Metrics.DOCUMENT );
+        try {
+            fName = name;
+            fDictionary = dictionary;
+            TermIdCollector ids = new TermIdCollector( dictionary );
+            tokens.replay( ids );
+            setTerms( ids.fIds, ids.fCount );
+        } finally {
+            Metrics.stop( timer );
+        }
+    }
+    
+    /**
+     * Creates a document restored from an index file. Only the name and the
+     * statistics of the document are known, its term vector is empty; the
+     * models take everything else from the index.
+     * 
+     * @param name
+     *            An identifier for the document.
+     * @param length
+     *            The number of terms in the document.
+     * @param maxFreq
+     *            The highest frequency of any term in the document.
+     * @param dictionary
+     *            The term dictionary of the corpus.
+     */
+    public Document( String name, int length, int maxFreq, TermDictionary dictionary ) {
+        fName = name;
+        fLength = length;
+        fMaxFreq = maxFreq;
+        fDictionary = dictionary;
+        fTermIds = new int[0];
+        fFreqs = new int[0];
+    }
+    
+    private Document( String name, int[] ids, int count, TermDictionary dictionary ) {
         fName = name;
-        String[] terms = text.replaceAll( "[^\\w\\d\\s]+", " " ).trim( ).toLowerCase( ).split( "\\s+" ); // Preprocessing
-        if ( stem ) {
-            for ( int i = 0; i < terms.length; i++ ) {
-                terms[i] = Helpers.stem( terms[i] );
+        fDictionary = dictionary;
+        setTerms( ids, count );
+    }
+    
+    /**
+     * Creates the document of a query. Unlike corpus documents, queries leave
+     * the dictionary unchanged: terms the dictionary does not know cannot
+     * occur in the corpus and are left out of the term vector. They still
+     * count towards the length and maximum term frequency of the query, and
+     * their frequencies are kept, see getUnknownFrequencies. The models time
+     * creating a query as their query analysis stage.
+     * 
+     * @param text
+     *            The text of the query.
+     * @param stem
+     *            Optionally stems terms.
+     * @param dictionary
+     *            The term dictionary of the corpus.
+     * @return The query document, named "query".
+     */
+    public static Document createQuery( String text, boolean stem, TermDictionary dictionary ) {
+        TokenList tokens = new TokenList( );
+        new Analyzer( stem ).analyze( text, tokens );
+        final int[] ids = dictionary.lookup( tokens );
+        int count = 0;
+        for ( int id : ids ) {
+            if ( id >= 0 ) {
+                count++;
+            }
+        }
+        final Map<String,Integer> unknown = new LinkedHashMap<String,Integer>( );
+        if ( count < ids.length ) {
+            tokens.replay( new Analyzer.TokenConsumer( ) {
+                
+                private int fPosition = 0;
+                
+                @Override
+                public void token( char[] buffer, int offset, int length ) {
+                    if ( ids[fPosition++] < 0 ) {
+                        String term = new String( buffer, offset, length );
+                        Integer freq = unknown.get( term );
+                        unknown.put( term, freq == null ? 1 : freq + 1 );
+                    }
+                }
+            } );
+        }
+        count = 0;
+        for ( int id : ids ) {
+            if ( id >= 0 ) {
+                ids[count++] = id;
+            }
+        }
+        Document query = new Document( "query", ids, count, dictionary );
+        query.fQuery = true;
+        query.fLength = ids.length;
+        query.fUnknownFreqs = new int[unknown.size( )];
+        int i = 0;
+        for ( int freq : unknown.values( ) ) {
+            query.fUnknownFreqs[i++] = freq;
+            query.fMaxFreq = Math.max( query.fMaxFreq, freq );
+        }
+        return query;
+    }
+    
+    /**
+     * Collects the term ids of the tokens of a text.
+     */
+    private static class TermIdCollector implements Analyzer.TokenConsumer {
+        
+        private TermDictionary fDictionary = null;
+        private int[] fIds = new int[64];
+        private int fCount = 0;
+        
+        TermIdCollector( TermDictionary dictionary ) {
+            fDictionary = dictionary;
+        }
+        
+        @Override
+        public void token( char[] buffer, int offset, int length ) {
+            if ( fCount == fIds.length ) {
+                fIds = Arrays.copyOf( fIds, fCount * 2 );
             }
+            fIds[fCount++] = fDictionary.getId( buffer, offset, length );
         }
-        fFreqs = new HashMap<String,Integer>( );
-        for ( String term : terms ) {
-            fLength++;
-            if ( !fFreqs.containsKey( term ) ) {
-                fFreqs.put( term, 0 ); // Init term frequency
+        
+    }
+    
+    private void setTerms( int[] ids, int count ) {
+        fLength = count;
+        
+        // Count the frequencies of the sorted term ids
+        Arrays.sort( ids, 0, count );
+        int distinct = 0;
+        for ( int i = 0; i < count; i++ ) {
+            if ( i == 0 || ids[i] != ids[i - 1] ) {
+                distinct++;
             }
-            int freq = fFreqs.get( term ) + 1;
-            fFreqs.put( term, freq ); // Update term frequency
+        }
+        fTermIds = new int[distinct];
+        fFreqs = new int[distinct];
+        int term = -1;
+        for ( int i = 0; i < count; i++ ) {
+            if ( i == 0 || ids[i] != ids[i - 1] ) {
+                fTermIds[++term] = ids[i];
+            }
+            int freq = ++fFreqs[term]; // Update term frequency
             if ( freq > fMaxFreq ) {
                 fMaxFreq = freq; // Update maximum frequency
             }
@@ -71,8 +256,94 @@ public class Document {
         return fName;
     }
     
+    public TermDictionary getDictionary( ) {
+        return fDictionary;
+    }
+    
+    /**
+     * Returns the distinct terms of the document as strings. Model inner loops
+     * should iterate over getTermCount() and getTermId(int) instead.
+     */
     public String[] getTerms( ) {
-        return fFreqs.keySet( ).toArray( new String[fFreqs.keySet( ).size( )] );
+        String[] terms = new String[fTermIds.length];
+        for ( int i = 0; i < terms.length; i++ ) {
+            terms[i] = fDictionary.getTerm( fTermIds[i] );
+        }
+        return terms;
+    }
+    
+    /**
+     * Returns the number of distinct terms in the document.
+     */
+    public int getTermCount( ) {
+        return fTermIds.length;
+    }
+    
+    /**
+     * Returns the id of the i-th distinct term. Term ids are ascending in i.
+     */
+    public int getTermId( int i ) {
+        return fTermIds[i];
+    }
+    
+    /**
+     * Returns the (absolute) frequency of the i-th distinct term.
+     */
+    public int getFrequencyAt( int i ) {
+        return fFreqs[i];
+    }
+    
+    /**
+     * Returns the frequencies of the distinct terms of a query that the
+     * dictionary does not know, in the order of their first occurrence. They
+     * match no document, but a vector space model counts them towards the
+     * length of the query vector.
+     */
+    public int[] getUnknownFrequencies( ) {
+        return fUnknownFreqs == null ? new int[0] : fUnknownFreqs;
+    }
+    
+    /**
+     * Returns true, if the document was created by createQuery.
+     */
+    public boolean isQuery( ) {
+        return fQuery;
+    }
+    
+    /**
+     * Returns the weight of the i-th distinct term of a query.
+     * 
+     * @throws IllegalStateException
+     *             If the document is not a query.
+     */
+    public double getWeightAt( int i ) {
+        checkQuery( );
+        return fWeights == null ? 0.0 : fWeights[i];
+    }
+    
+    /**
+     * Updates the weight of the i-th distinct term of a query.
+     * 
+     * @throws IllegalStateException
+     *             If the document is not a query.
+     */
+    public void setWeightAt( int i, double weight ) {
+        checkQuery( );
+        if ( fWeights == null ) {
+            fWeights = new float[fTermIds.length];
+        }
+        fWeights[i] = ( float ) weight;
+    }
+    
+    /**
+     * Returns the position of a term among the distinct terms of the document.
+     * 
+     * @param termId
+     *            A term id.
+     * @return The position of the term, or a negative value if not present.
+     */
+    public int indexOf( int termId ) {
+        return Arrays.binarySearch( fTermIds, termId );
     }
     
     public int getMaxFreq( ) {
@@ -88,40 +359,75 @@ public class Document {
      * @return The frequency of the term in the document of 0, if not present.
      */
     public int getFrequency( String term ) {
-        if ( term != null && fFreqs != null && fFreqs.containsKey( term ) ) {
-            return fFreqs.get( term );
-        }
-        return 0;
+        return term == null ? 0 : getFrequency( fDictionary.lookup( term ) );
     }
     
     /**
-     * Updates the weight for a given term
+     * Returns the (absolute) frequency for a given term id in the document.
+     * 
+     * @param termId
+     *            A term id.
+     * @return The frequency of the term in the document of 0, if not present.
+     */
+    public int getFrequency( int termId ) {
+        int i = termId < 0 ? -1 : indexOf( termId );
+        return i < 0 ? 0 : fFreqs[i];
+    }
+    
+    /**
+     * Updates the weight for a given term of a query. Terms not present in the
+     * query always have weight 0, so setting their weight has no effect.
      * 
      * @param term
      *            A term.
      * @param weight
      *            The new value for the term weight.
+     * @throws IllegalStateException
+     *             If the document is not a query.
      */
     public void setWeight( String term, double weight ) {
-        if ( fWeights == null ) {
-            fWeights = new HashMap<String,Double>( );
+        checkQuery( );
+        int i = term == null ? -1 : fDictionary.lookup( term );
+        i = i < 0 ? -1 : indexOf( i );
+        if ( i >= 0 ) {
+            setWeightAt( i, weight );
         }
-        fWeights.put( term, weight );
     }
     
     /**
-     * Returns the weight for a given term in the document. If the term is
-     * not present in the weight mapping, 0 is returned.
+     * Returns the weight for a given term in a query. If the term is not
+     * present in the weight mapping, 0 is returned.
      * 
      * @param term
      *            A term
-     * @return The weight of the term in the document of 0, if not present.
+     * @return The weight of the term in the query of 0, if not present.
+     * @throws IllegalStateException
+     *             If the document is not a query.
      */
-    public Double getWeight( String term ) {
-        if ( term != null && fWeights != null && fWeights.containsKey( term ) ) {
-            return fWeights.get( term );
+    public double getWeight( String term ) {
+        checkQuery( );
+        return term == null ? 0.0 : getWeight( fDictionary.lookup( term ) );
+    }
+    
+    /**
+     * Returns the weight for a given term id in a query.
+     * 
+     * @param termId
+     *            A term id.
+     * @return The weight of the term in the query of 0, if not present.
+     * @throws IllegalStateException
+     *             If the document is not a query.
+     */
+    public double getWeight( int termId ) {
+        checkQuery( );
+        int i = termId < 0 ? -1 : indexOf( termId );
+        return i < 0 ? 0.0 : getWeightAt( i );
+    }
+    
+    private void checkQuery( ) {
+        if ( !fQuery ) {
+            throw new IllegalStateException( "Document " + fName + " is not a query, its weights are computed by the models" );
         }
-        return 0.0;
     }
     
     @Override
@@ -0,0 +1,297 @@
+package model;
+
+import index.CorpusStatistics;
+import index.InvertedIndex;
+import index.PostingList;
+import index.TermDictionary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import common.Metrics;
+
+
+
+/**
+ * Evaluates a query on the boolean, the vector space and the probabilistic
+ * model at once. The query is analyzed once and the postings of each of its
+ * terms are traversed once, filling the cosine and the BM25 scores and the
+ * terms present in each document for the boolean model in the same pass.
+ * The rankings are the same as those of the single models.
+ * 
+ * Boolean queries are matched against a bit mask of the query terms a
+ * document contains, so the boolean model is evaluated separately for
+ * queries with more than 64 distinct terms.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class FusedEvaluator {
+    
+    public static final int BOOLEAN = 0;
+    public static final int VECTOR = 1;
+    public static final int PROBABILISTIC = 2;
+    
+    /**
+     * The rankings of a query on all three models.
+     */
+    public static class Rankings {
+        
+        private Document[] fDocuments = null;
+        private int[] fMatches = null; // Ascending document ids
+        private ScoreAccumulator fSimilarities = null;
+        private ScoreAccumulator fScores = null;
+        
+        Rankings( Document[] documents, int[] matches, ScoreAccumulator similarities, ScoreAccumulator scores ) {
+            fDocuments = documents;
+            fMatches = matches;
+            fSimilarities = similarities;
+            fScores = scores;
+        }
+        
+        /**
+         * Returns a page of the ranking of a model, see
+         * AbstractModel.getDocumentsAfter.
+         * 
+         * @param model
+         *            BOOLEAN, VECTOR or PROBABILISTIC.
+         */
+        public TopDocuments getDocumentsAfter( int model, double afterScore, int afterDocId, int k ) {
+            if ( model == BOOLEAN ) {
+                return BooleanModel.getPage( fDocuments, fMatches, afterScore, afterDocId, k );
+            }
+            return ( model == VECTOR ? fSimilarities : fScores ).getPage( fDocuments, afterScore, afterDocId, k );
+        }
+        
+        /**
+         * Returns the number of documents matching the boolean query.
+         */
+        public int getMatchCount( ) {
+            return fMatches.length;
+        }
+        
+        long getSizeInBytes( ) {
+            return fSimilarities.getSizeInBytes( ) + 8L * fDocuments.length + 4L * fMatches.length;
+        }
+        
+    }
+    
+    private BooleanModel fBooleanModel = null;
+    private VectorModel fVectorModel = null;
+    private ProbabilisticModel fProbabilisticModel = null;
+    private InvertedIndex fIndex = null;
+    private QueryCache fCache = new QueryCache( );
+    
+    protected FusedEvaluator( ) {
+        throw new UnsupportedOperationException( );
+    }
+    
+    /**
+     * Creates an evaluator for three models working on the same index.
+     */
+    public FusedEvaluator( BooleanModel booleanModel, VectorModel vectorModel, ProbabilisticModel probabilisticModel ) {
+        if ( booleanModel.getIndex( ) != vectorModel.getIndex( ) || vectorModel.getIndex( ) != probabilisticModel.getIndex( ) ) {
+            throw new IllegalArgumentException( "The models do not share an index" );
+        }
+        fBooleanModel = booleanModel;
+        fVectorModel = vectorModel;
+        fProbabilisticModel = probabilisticModel;
+        fIndex = vectorModel.getIndex( );
+    }
+    
+    /**
+     * Sets the cache for the rankings of queries; null disables caching.
+     */
+    public void setQueryCache( QueryCache cache ) {
+        fCache = cache;
+    }
+    
+    public QueryCache getQueryCache( ) {
+        return fCache;
+    }
+    
+    /**
+     * Evaluates a query on all three models.
+     * 
+     * @param queryString
+     *            The search query, in disjunctive normal form for the boolean
+     *            model.
+     * @param k1
+     *            The BM25 term frequency saturation parameter.
+     * @param b
+     *            The BM25 document length normalization parameter.
+     * @param stem
+     *            Use stemming?
+     * @return The rankings of all models.
+     * @throws java.util.concurrent.CancellationException
+     *             If the thread is interrupted. The rankings are not cached
+     *             then.
+     */
+    public Rankings evaluate( String queryString, final double k1, final double b, boolean stem ) {
+        Metrics.Query probe = Metrics.beginQuery( "fused", queryString );
+        Metrics.Timer timer = Metrics.start( Metrics.QUERY_ANALYSIS );
+        try {
+            final Document query = fVectorModel.getQuery( queryString, stem );
+            final DisjunctiveNormalForm dnf = new DisjunctiveNormalForm( queryString, stem );
+            Metrics.stop( timer );
+            QueryCache.Loader<Rankings> loader = new QueryCache.Loader<Rankings>( ) {
+                
+                @Override
+                Rankings load( ) {
+                    Metrics.Timer timer = Metrics.start( Metrics.SCORING );
+                    try {
+                        return evaluate( query, dnf, k1, b );
+                    } finally {
+                        Metrics.stop( timer );
+                    }
+                }
+                
+                @Override
+                long getSize( Rankings rankings ) {
+                    return rankings.getSizeInBytes( );
+                }
+            };
+            QueryCache cache = fCache;
+            if ( cache == null ) {
+                return loader.load( );
+            }
+            String key = "rankings tfidf=" + fVectorModel.isTfidf( ) + " k=" + k1 + " b=" + b + " stem=" + stem + AbstractModel.getKey( query ) + BooleanModel.getKey( dnf, stem );
+            return cache.get( key, loader );
+        } finally {
+            Metrics.stop( timer );
+            Metrics.endQuery( probe );
+        }
+    }
+    
+    private Rankings evaluate( Document query, DisjunctiveNormalForm dnf, double k1, double b ) {
+        Document[] documents = fVectorModel.fDocuments;
+        CorpusStatistics statistics = fIndex.getStatistics( );
+        double avgDocLen = statistics.getAverageLength( );
+        
+        // Give each term of the boolean query a bit
+        TermDictionary dictionary = fIndex.getDictionary( );
+        Map<String,Integer> bits = new HashMap<String,Integer>( );
+        List<Integer> booleanTermIds = new ArrayList<Integer>( );
+        List<long[]> conjunctions = new ArrayList<long[]>( ); // Masks of the positive and negated terms
+        for ( Map<String,Boolean> conjunction : dnf ) {
+            long[] masks = new long[2];
+            for ( Map.Entry<String,Boolean> term : conjunction.entrySet( ) ) {
+                Integer bit = bits.get( term.getKey( ) );
+                if ( bit == null ) {
+                    bit = bits.size( );
+                    bits.put( term.getKey( ), bit );
+                    booleanTermIds.add( dictionary.lookup( term.getKey( ) ) );
+                }
+                masks[term.getValue( ) ? 0 : 1] |= 1L << bit;
+            }
+            conjunctions.add( masks );
+        }
+        boolean fused = bits.size( ) <= 64;
+        
+        // The terms of the query in the order the single models score them,
+        // followed by the terms only occurring in the boolean query
+        int termCount = query.getTermCount( );
+        int[] termIds = new int[termCount + booleanTermIds.size( )];
+        long[] termBits = new long[termIds.length];
+        for ( int j = 0; j < termCount; j++ ) {
+            termIds[j] = query.getTermId( j );
+        }
+        for ( int bit = 0; fused && bit < booleanTermIds.size( ); bit++ ) {
+            int termId = booleanTermIds.get( bit );
+            if ( termId < 0 ) {
+                continue; // Never contained in a document
+            }
+            int j = query.indexOf( termId );
+            if ( j < 0 ) {
+                j = termCount;
+                termIds[termCount++] = termId;
+            }
+            termBits[j] |= 1L << bit;
+        }
+        
+        // One pass over the postings of each term
+        ScoreAccumulator similarities = new ScoreAccumulator( documents.length );
+        double[] scores = new double[documents.length];
+        long[] documentBits = fused ? new long[documents.length] : null;
+        BitSet candidates = new BitSet( documents.length ); // Documents containing a term of the boolean query
+        for ( int j = 0; j < termCount; j++ ) {
+            AbstractModel.checkCancelled( );
+            int termId = termIds[j];
+            PostingList postings = fIndex.getPostings( termId );
+            long bit = termBits[j];
+            Metrics.countPostings( postings.size( ) );
+            if ( j >= query.getTermCount( ) ) {
+                for ( int i = 0; i < postings.size( ); i++ ) {
+                    int docId = postings.getDocId( i );
+                    candidates.set( docId );
+                    documentBits[docId] |= bit;
+                }
+                continue;
+            }
+            double queryWeight = fVectorModel.getWeightAt( query, j );
+            double idf = fVectorModel.getIdf( termId );
+            double probabilisticIdf = fProbabilisticModel.getIdf( termId );
+            for ( int i = 0; i < postings.size( ); i++ ) {
+                int docId = postings.getDocId( i );
+                similarities.add( docId, fVectorModel.getWeight( postings, i, idf ) * queryWeight );
+                scores[docId] += ProbabilisticModel.getTermScore( probabilisticIdf, postings.getFrequency( i ), k1, b, statistics.getLength( docId ), avgDocLen );
+                if ( bit != 0 ) {
+                    candidates.set( docId );
+                    documentBits[docId] |= bit;
+                }
+            }
+        }
+        fVectorModel.normalize( similarities, query );
+        Metrics.countDocumentsScored( similarities.size( ) );
+        
+        int[] matches = fused ? match( documentBits, conjunctions, candidates ) : fBooleanModel.evaluate( dnf );
+        return new Rankings( documents, matches, similarities, new ScoreAccumulator( similarities, scores ) );
+    }
+    
+    /**
+     * Determines the documents matching a boolean query from the bit masks of
+     * the query terms they contain.
+     * 
+     * @param candidates
+     *            The documents containing a term of the query; all documents
+     *            are added if a conjunction has no positive term.
+     * @return The ids of the matching documents in ascending order.
+     */
+    private static int[] match( long[] documentBits, List<long[]> conjunctions, BitSet candidates ) {
+        long[] positives = new long[conjunctions.size( )];
+        long[] negatives = new long[conjunctions.size( )];
+        boolean matchesNone = false; // A document without any query term matches
+        for ( int c = 0; c < positives.length; c++ ) {
+            positives[c] = conjunctions.get( c )[0];
+            negatives[c] = conjunctions.get( c )[1];
+            matchesNone |= positives[c] == 0;
+        }
+        int[] matches = new int[16];
+        int count = 0;
+        if ( matchesNone ) {
+            candidates.set( 0, documentBits.length ); // Documents without a query term are no candidates otherwise
+        }
+        for ( int docId = candidates.nextSetBit( 0 ); docId >= 0; docId = candidates.nextSetBit( docId + 1 ) ) {
+            if ( matches( documentBits[docId], positives, negatives ) ) {
+                if ( count == matches.length ) {
+                    matches = Arrays.copyOf( matches, count * 2 );
+                }
+                matches[count++] = docId;
+            }
+        }
+        return Arrays.copyOf( matches, count );
+    }
+    
+    private static boolean matches( long bits, long[] positives, long[] negatives ) {
+        for ( int c = 0; c < positives.length; c++ ) {
+            if ( ( bits & positives[c] ) == positives[c] && ( bits & negatives[c] ) == 0 ) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+}
@@ -1,9 +1,17 @@
 package model;
 
+import index.CorpusStatistics;
+import index.InvertedIndex;
+import index.PostingList;
+
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import common.Metrics;
 
 
 
@@ -17,14 +25,37 @@ import java.util.TreeMap;
 public class ProbabilisticModel extends AbstractModel {
     
     private double fAvgDocLen = 0.0;
+    private CorpusStatistics fStatistics = null;
+    private volatile boolean fDynamicPruning = true;
+    
+    private AtomicReferenceArray<BlockMaxWand.BlockBounds> fBlockBounds = null; // Indexed by term id, computed on first use
     
     public ProbabilisticModel( Document[] documents ) {
-        super( documents );
-        for ( Document document : fDocuments ) {
-            fAvgDocLen += document.getLength( );
-        }
-        fAvgDocLen /= fDocuments.length;
-        
+        this( documents, new InvertedIndex( documents ) );
+    }
+    
+    public ProbabilisticModel( Document[] documents, InvertedIndex index ) {
+        super( documents, index );
+        fStatistics = fIndex.getStatistics( );
+        fAvgDocLen = fStatistics.getAverageLength( );
+        fBlockBounds = new AtomicReferenceArray<BlockMaxWand.BlockBounds>( fIndex.getTermIdLimit( ) );
+    }
+    
+    /**
+     * Enables or disables dynamic pruning for top k queries. With pruning,
+     * documents that cannot reach the top k are skipped using per-term and
+     * per-block upper bounds of their scores. Both modes return the same
+     * documents and scores.
+     * 
+     * @param dynamicPruning
+     *            Use Block-Max WAND pruning?
+     */
+    public void setDynamicPruning( boolean dynamicPruning ) {
+        fDynamicPruning = dynamicPruning;
+    }
+    
+    public boolean isDynamicPruning( ) {
+        return fDynamicPruning;
     }
     
     @Override
@@ -32,33 +63,221 @@ public class ProbabilisticModel extends AbstractModel {
         return getDocuments( queryString, 1.2, 0.75, stem );
     }
     
-    public SortedMap<Document,Double> getDocuments( String queryString, double k, double b, boolean stem ) {
-        
-        Document query = new Document( "query", queryString, stem );
-        Map<Document,Double> map = new HashMap<Document,Double>( );
-        SortedMap<Document,Double> result = new TreeMap<Document,Double>( new ValueComparator( map ) );
-        
-        for ( Document document : fDocuments ) {
-            double score = 0.0;
-            for ( String term : query.getTerms( ) ) {
-                int n = 0;
-                for ( Document doc : fDocuments ) {
-                    if ( doc.getFrequency( term ) > 0 ) {
-                        n++;
+    /**
+     * Returns all documents for a query, ranked by their BM25 score. Results
+     * are cached, the map returned cannot be modified.
+     * 
+     * @param k
+     *            The BM25 term frequency saturation parameter.
+     * @param b
+     *            The BM25 document length normalization parameter.
+     */
+    public SortedMap<Document,Double> getDocuments( String queryString, final double k, final double b, boolean stem ) {
+        Metrics.Query probe = Metrics.beginQuery( "probabilistic", queryString );
+        Metrics.Timer timer = Metrics.start( Metrics.QUERY_ANALYSIS );
+        try {
+            final Document query = Document.createQuery( queryString, stem, fIndex.getDictionary( ) );
+            Metrics.stop( timer );
+            return getCached( "documents" + getKey( query, k, b, stem ), new QueryCache.Loader<SortedMap<Document,Double>>( ) {
+                
+                @Override
+                SortedMap<Document,Double> load( ) {
+                    Map<Document,Double> map = new HashMap<Document,Double>( );
+                    SortedMap<Document,Double> result = new TreeMap<Document,Double>( new ValueComparator( map ) );
+                    
+                    Metrics.Timer timer = Metrics.start( Metrics.SCORING );
+                    try {
+                        ScoreAccumulator scores = score( query, k, b );
+                        Metrics.stop( timer );
+                        timer = Metrics.start( Metrics.RANKING );
+                        for ( int docId = 0; docId < fDocuments.length; docId++ ) {
+                            map.put( fDocuments[docId], scores.getScore( docId ) );
+                        }
+                        result.putAll( map );
+                        return Collections.unmodifiableSortedMap( result );
+                    } finally {
+                        Metrics.stop( timer );
                     }
                 }
-                double idf = Math.log( ( fDocuments.length - n + 0.5 ) / ( n + 0.5 ) ) / Math.log( 2 );
-                if ( idf < 0 ) {
-                    idf = 0.05;
+                
+                @Override
+                long getSize( SortedMap<Document,Double> documents ) {
+                    return QueryCache.getSize( documents );
                 }
-                double numerator = idf * document.getFrequency( term ) * ( k + 1 );
-                double denominator = document.getFrequency( term ) + k * ( 1 - b + b * ( document.getLength( ) / fAvgDocLen ) );
-                score += numerator / denominator;
+            } );
+        } finally {
+            Metrics.stop( timer );
+            Metrics.endQuery( probe );
+        }
+    }
+    
+    @Override
+    public TopDocuments getTopDocuments( String queryString, int k, boolean stem ) {
+        return getTopDocuments( queryString, k, 1.2, 0.75, stem );
+    }
+    
+    /**
+     * Returns the k best ranked documents for a query.
+     * 
+     * @param queryString
+     *            The search query.
+     * @param k
+     *            The maximum number of documents to return.
+     * @param k1
+     *            The BM25 term frequency saturation parameter.
+     * @param b
+     *            The BM25 document length normalization parameter.
+     * @param stem
+     *            Use stemming?
+     * @return The best ranked documents ordered by descending score.
+     */
+    public TopDocuments getTopDocuments( String queryString, int k, double k1, double b, boolean stem ) {
+        Metrics.Query probe = Metrics.beginQuery( "probabilistic", queryString );
+        Metrics.Timer timer = Metrics.start( Metrics.QUERY_ANALYSIS );
+        try {
+            Document query = Document.createQuery( queryString, stem, fIndex.getDictionary( ) );
+            Metrics.stop( timer );
+            timer = Metrics.start( Metrics.SCORING );
+            TopKCollector collector = new TopKCollector( k );
+            if ( fDynamicPruning && BlockMaxWand.isApplicable( k1, b ) ) {
+                BlockMaxWand wand = new BlockMaxWand( fStatistics, fAvgDocLen, k1, b );
+                BlockMaxWand.TermCursor[] cursors = new BlockMaxWand.TermCursor[query.getTermCount( )];
+                for ( int i = 0; i < cursors.length; i++ ) {
+                    int termId = query.getTermId( i );
+                    PostingList postings = fIndex.getPostings( termId );
+                    double idf = getIdf( termId );
+                    cursors[i] = new BlockMaxWand.TermCursor( postings, idf, wand.getBlockMaxScores( getBlockBounds( termId, postings ), idf ) );
+                }
+                wand.search( cursors, collector );
+            } else {
+                score( query, k1, b ).collect( collector );
             }
-            map.put( document, score );
+            Metrics.stop( timer );
+            return collector.getTopDocuments( fDocuments );
+        } finally {
+            Metrics.stop( timer );
+            Metrics.endQuery( probe );
+        }
+    }
+    
+    @Override
+    public TopDocuments getDocumentsAfter( String queryString, double afterScore, int afterDocId, int k, boolean stem ) {
+        return getDocumentsAfter( queryString, afterScore, afterDocId, k, 1.2, 0.75, stem );
+    }
+    
+    /**
+     * Returns a page of the ranking of getDocuments, see
+     * AbstractModel.getDocumentsAfter.
+     * 
+     * @param k1
+     *            The BM25 term frequency saturation parameter.
+     * @param b
+     *            The BM25 document length normalization parameter.
+     */
+    public TopDocuments getDocumentsAfter( String queryString, double afterScore, int afterDocId, int k, final double k1, final double b, boolean stem ) {
+        final Document query = Document.createQuery( queryString, stem, fIndex.getDictionary( ) );
+        ScoreAccumulator scores = getCached( "scores" + getKey( query, k1, b, stem ), new QueryCache.Loader<ScoreAccumulator>( ) {
+            
+            @Override
+            ScoreAccumulator load( ) {
+                return score( query, k1, b );
+            }
+            
+            @Override
+            long getSize( ScoreAccumulator scores ) {
+                return scores.getSizeInBytes( );
+            }
+        } );
+        return scores.getPage( fDocuments, afterScore, afterDocId, k );
+    }
+    
+    private static String getKey( Document query, double k, double b, boolean stem ) {
+        return " k=" + k + " b=" + b + " stem=" + stem + getKey( query );
+    }
+    
+    /**
+     * Calculates the BM25 scores of all documents for a query. Documents not
+     * containing a query term score 0, so only the postings of the query terms
+     * have to be visited.
+     * 
+     * @param query
+     *            The query document.
+     * @param k
+     *            The BM25 term frequency saturation parameter.
+     * @param b
+     *            The BM25 document length normalization parameter.
+     * @return The scores of all documents containing a query term.
+     */
+    private ScoreAccumulator score( Document query, double k, double b ) {
+        ScoreAccumulator scores = new ScoreAccumulator( fDocuments.length );
+        for ( int j = 0; j < query.getTermCount( ); j++ ) {
+            checkCancelled( );
+            PostingList postings = fIndex.getPostings( query.getTermId( j ) );
+            double idf = getIdf( query.getTermId( j ) );
+            for ( int i = 0; i < postings.size( ); i++ ) {
+                int docId = postings.getDocId( i );
+                scores.add( docId, getTermScore( idf, postings.getFrequency( i ), k, b, fStatistics.getLength( docId ), fAvgDocLen ) );
+            }
+            Metrics.countPostings( postings.size( ) );
+        }
+        Metrics.countDocumentsScored( scores.size( ) );
+        return scores;
+    }
+    
+    /**
+     * Calculates the idf of a term.
+     * 
+     * @param termId
+     *            A term id.
+     * @return The idf of the term, at least 0.05 for very frequent terms.
+     */
+    double getIdf( int termId ) {
+        int n = fStatistics.getDocumentFrequency( termId );
+        double idf = Math.log( ( fDocuments.length - n + 0.5 ) / ( n + 0.5 ) ) / Math.log( 2 );
+        if ( idf < 0 ) {
+            idf = 0.05;
+        }
+        return idf;
+    }
+    
+    /**
+     * Calculates the BM25 contribution of a term to the score of a document.
+     * 
+     * @param idf
+     *            The idf of the term.
+     * @param freq
+     *            The frequency of the term in the document.
+     * @param k
+     *            The BM25 term frequency saturation parameter.
+     * @param b
+     *            The BM25 document length normalization parameter.
+     * @param length
+     *            The length of the document.
+     * @param avgDocLen
+     *            The average document length of the corpus.
+     * @return The score of the term for the document.
+     */
+    static double getTermScore( double idf, int freq, double k, double b, int length, double avgDocLen ) {
+        double numerator = idf * freq * ( k + 1 );
+        double denominator = freq + k * ( 1 - b + b * ( length / avgDocLen ) );
+        return numerator / denominator;
+    }
+    
+    /**
+     * Returns the per-block bounds of the postings of a term, which hold for
+     * all BM25 parameters, computing them on first use. Threads racing for the
+     * same term compute equal bounds.
+     */
+    private BlockMaxWand.BlockBounds getBlockBounds( int termId, PostingList postings ) {
+        if ( termId >= fBlockBounds.length( ) ) {
+            return new BlockMaxWand.BlockBounds( postings, fStatistics ); // Not in the corpus
+        }
+        BlockMaxWand.BlockBounds bounds = fBlockBounds.get( termId );
+        if ( bounds == null ) {
+            bounds = new BlockMaxWand.BlockBounds( postings, fStatistics );
+            fBlockBounds.set( termId, bounds );
         }
-        result.putAll( map );
-        return result;
+        return bounds;
     }
     
 }
@@ -0,0 +1,243 @@
+package model;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+
+
+
+/**
+ * Remembers the results of recent queries of a model, so that repeating a
+ * query does not evaluate it again. Results are keyed on the analyzed query
+ * and the parameters of the model, and kept for the most recently used
+ * queries as long as both their number and their estimated size stay within
+ * bounds. A result larger than the whole cache is evicted right away.
+ * 
+ * Concurrent requests for the same result are evaluated once (single flight):
+ * the first request computes it while the others wait for it. If the first
+ * request is cancelled, its entry is removed and a waiting request computes
+ * the result itself. Each model has its own cache, which only holds results
+ * computed on the model's index, so a changed corpus (a new index and new
+ * models) never sees results of the previous one.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class QueryCache {
+    
+    public static final int DEFAULT_ENTRIES = 256;
+    public static final long DEFAULT_BYTES = 32L << 20;
+    
+    private static final int MAP_ENTRY_BYTES = 120; // A document in a sorted result map
+    private static final int ENTRY_BYTES = 64; // The cache entry, without key and result
+    
+    /**
+     * Computes a result on a cache miss.
+     */
+    abstract static class Loader<V> {
+        
+        abstract V load( );
+        
+        /**
+         * Returns the estimated memory taken by a result, in bytes.
+         */
+        abstract long getSize( V value );
+        
+    }
+    
+    private static final class Entry {
+        
+        final FutureTask<Object> fTask;
+        long fSize = -1; // Not known while the result is computed
+        
+        Entry( FutureTask<Object> task ) {
+            fTask = task;
+        }
+        
+    }
+    
+    private int fMaxEntries = 0;
+    private long fMaxBytes = 0;
+    private LinkedHashMap<String,Entry> fEntries = new LinkedHashMap<String,Entry>( 16, 0.75f, true ); // Least recently used first
+    private long fBytes = 0;
+    private LongAdder fHits = new LongAdder( );
+    private LongAdder fMisses = new LongAdder( );
+    private LongAdder fEvictions = new LongAdder( );
+    
+    public QueryCache( ) {
+        this( DEFAULT_ENTRIES, DEFAULT_BYTES );
+    }
+    
+    /**
+     * @param maxEntries
+     *            The maximum number of results kept.
+     * @param maxBytes
+     *            The maximum estimated memory taken by the results kept.
+     */
+    public QueryCache( int maxEntries, long maxBytes ) {
+        fMaxEntries = Math.max( 1, maxEntries );
+        fMaxBytes = maxBytes;
+    }
+    
+    /**
+     * Returns the estimated memory taken by a result of getDocuments.
+     */
+    static long getSize( SortedMap<Document,Double> documents ) {
+        return ( long ) documents.size( ) * MAP_ENTRY_BYTES;
+    }
+    
+    /**
+     * Returns the cached result for a key, computing it if it is neither
+     * cached nor being computed by another thread. A request waiting for
+     * another thread's computation counts as a hit.
+     * 
+     * @param key
+     *            Identifies the query and the model parameters.
+     * @param loader
+     *            Computes the result.
+     * @return The result, shared by all requests for the key.
+     */
+    @SuppressWarnings("unchecked")
+    <V> V get( String key, final Loader<V> loader ) {
+        while ( true ) {
+            Entry entry = null;
+            boolean load = false;
+            synchronized ( this ) {
+                entry = fEntries.get( key );
+                if ( entry == null ) {
+                    entry = new Entry( new FutureTask<Object>( new Callable<Object>( ) {
+                        
+                        @Override
+                        public Object call( ) {
+                            return loader.load( );
+                        }
+                    } ) );
+                    fEntries.put( key, entry );
+                    load = true;
+                }
+            }
+            if ( load ) {
+                fMisses.increment( );
+                entry.fTask.run( );
+            } else {
+                fHits.increment( );
+            }
+            
+            V value = null;
+            try {
+                value = ( V ) entry.fTask.get( );
+            } catch ( ExecutionException e ) {
+                // Failed and cancelled results are not cached, the next
+                // request tries again
+                synchronized ( this ) {
+                    if ( fEntries.get( key ) == entry ) {
+                        fEntries.remove( key );
+                    }
+                }
+                if ( !load && e.getCause( ) instanceof CancellationException ) {
+                    continue; // The search computing the result was cancelled, but not this one
+                }
+                if ( e.getCause( ) instanceof RuntimeException ) {
+                    throw ( RuntimeException ) e.getCause( );
+                }
+                if ( e.getCause( ) instanceof Error ) {
+                    throw ( Error ) e.getCause( );
+                }
+                throw new RuntimeException( e.getCause( ) );
+            } catch ( InterruptedException e ) {
+                Thread.currentThread( ).interrupt( );
+                throw new CancellationException( );
+            }
+            if ( load ) {
+                long size = ENTRY_BYTES + 2L * key.length( ) + loader.getSize( value );
+                synchronized ( this ) {
+                    if ( fEntries.get( key ) != entry ) {
+                        // Removed by clear while it was computed
+                    } else if ( size > fMaxBytes ) {
+                        fEntries.remove( key ); // Would evict all other results
+                        fEvictions.increment( );
+                    } else {
+                        entry.fSize = size;
+                        fBytes += size;
+                        evict( );
+                    }
+                }
+            }
+            return value;
+        }
+    }
+    
+    public long getHits( ) {
+        return fHits.sum( );
+    }
+    
+    public long getMisses( ) {
+        return fMisses.sum( );
+    }
+    
+    public long getEvictions( ) {
+        return fEvictions.sum( );
+    }
+    
+    /**
+     * Returns the share of requests answered from the cache.
+     */
+    public double getHitRate( ) {
+        long hits = fHits.sum( );
+        long requests = hits + fMisses.sum( );
+        return requests == 0 ? 0.0 : ( double ) hits / requests;
+    }
+    
+    /**
+     * Returns the number of results kept.
+     */
+    public synchronized int size( ) {
+        return fEntries.size( );
+    }
+    
+    /**
+     * Returns the estimated memory taken by the results kept, in bytes.
+     */
+    public synchronized long getSizeInBytes( ) {
+        return fBytes;
+    }
+    
+    /**
+     * Removes all results and resets the counters. Results being computed are
+     * still handed to the requests waiting for them, but not kept.
+     */
+    public synchronized void clear( ) {
+        fEntries.clear( );
+        fBytes = 0;
+        fHits.reset( );
+        fMisses.reset( );
+        fEvictions.reset( );
+    }
+    
+    @Override
+    public String toString( ) {
+        return String.format( "%d results, %d KB, %d hits, %d misses (hit rate %.1f%%), %d evictions", size( ), getSizeInBytes( ) >> 10, getHits( ), getMisses( ), 100 * getHitRate( ), getEvictions( ) );
+    }
+    
+    /**
+     * Removes the least recently used results until the bounds are met.
+     * Results still being computed are skipped.
+     */
+    private void evict( ) {
+        Iterator<Map.Entry<String,Entry>> i = fEntries.entrySet( ).iterator( );
+        while ( ( fEntries.size( ) > fMaxEntries || fBytes > fMaxBytes ) && i.hasNext( ) ) {
+            Entry entry = i.next( ).getValue( );
+            if ( entry.fSize >= 0 ) {
+                i.remove( );
+                fBytes -= entry.fSize;
+                fEvictions.increment( );
+            }
+        }
+    }
+    
+}
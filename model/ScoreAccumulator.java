@@ -0,0 +1,149 @@
+package model;
+
+import java.util.Arrays;
+
+
+
+/**
+ * Accumulates partial scores of documents while the postings of a query are
+ * traversed. Besides the score of every document, it keeps the ids of the
+ * documents touched so far, so that only those have to be visited afterwards.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+class ScoreAccumulator {
+    
+    private double[] fScores = null;
+    private boolean[] fTouched = null;
+    private int[] fDocIds = null;
+    private int fSize = 0;
+    
+    ScoreAccumulator( int documentCount ) {
+        fScores = new double[documentCount];
+        fTouched = new boolean[documentCount];
+        fDocIds = new int[Math.min( documentCount, 64 )];
+    }
+    
+    /**
+     * Creates an accumulator for other scores of the documents touched by a
+     * given accumulator, e.g. of a second model evaluated in the same pass.
+     * The given accumulator must not touch further documents afterwards.
+     * 
+     * @param touched
+     *            The accumulator whose touched documents are shared.
+     * @param scores
+     *            The scores of all documents, indexed by document id.
+     */
+    ScoreAccumulator( ScoreAccumulator touched, double[] scores ) {
+        fScores = scores;
+        fTouched = touched.fTouched;
+        fDocIds = touched.fDocIds;
+        fSize = touched.fSize;
+    }
+    
+    /**
+     * Adds to the score of a document and marks it as touched.
+     */
+    void add( int docId, double score ) {
+        if ( !fTouched[docId] ) {
+            fTouched[docId] = true;
+            if ( fSize == fDocIds.length ) {
+                fDocIds = Arrays.copyOf( fDocIds, Math.min( fScores.length, fSize * 2 ) );
+            }
+            fDocIds[fSize++] = docId;
+        }
+        fScores[docId] += score;
+    }
+    
+    double getScore( int docId ) {
+        return fScores[docId];
+    }
+    
+    void setScore( int docId, double score ) {
+        fScores[docId] = score;
+    }
+    
+    boolean isTouched( int docId ) {
+        return fTouched[docId];
+    }
+    
+    /**
+     * Returns the estimated memory taken by the accumulator, in bytes.
+     */
+    long getSizeInBytes( ) {
+        return 9L * fScores.length + 4L * fDocIds.length;
+    }
+    
+    /**
+     * Returns the number of documents touched.
+     */
+    int size( ) {
+        return fSize;
+    }
+    
+    /**
+     * Returns the id of the i-th touched document, in the order they were
+     * first touched.
+     */
+    int getDocId( int i ) {
+        return fDocIds[i];
+    }
+    
+    /**
+     * Returns a page of the ranking of all documents, touched or not: the k
+     * documents ranking right after a given one. Documents are ranked by
+     * descending score and, among equal scores, by ascending id; documents
+     * not touched score 0. Scores must not be negative.
+     * 
+     * @param documents
+     *            The documents the ids refer to.
+     * @param afterScore
+     *            The score of the document preceding the page, or positive
+     *            infinity for the first page.
+     * @param afterDocId
+     *            The id of the document preceding the page, or -1 for the
+     *            first page.
+     * @param k
+     *            The maximum number of documents on the page.
+     * @return The documents of the page.
+     */
+    TopDocuments getPage( Document[] documents, double afterScore, int afterDocId, int k ) {
+        TopKCollector collector = new TopKCollector( k );
+        for ( int i = 0; i < fSize; i++ ) {
+            int docId = fDocIds[i];
+            double score = fScores[docId];
+            if ( score > 0.0 && ( score < afterScore || ( score == afterScore && docId > afterDocId ) ) ) {
+                collector.collect( docId, score );
+            }
+        }
+        TopDocuments top = collector.getTopDocuments( documents );
+        if ( top.size( ) == k ) {
+            return top;
+        }
+        
+        // The page continues with the documents scoring 0, in id order
+        int[] docIds = new int[Math.min( k, fScores.length )];
+        double[] scores = new double[docIds.length];
+        int size = top.size( );
+        for ( int i = 0; i < size; i++ ) {
+            docIds[i] = top.getDocId( i );
+            scores[i] = top.getScore( i );
+        }
+        for ( int docId = afterScore > 0.0 ? 0 : afterDocId + 1; docId < fScores.length && size < docIds.length; docId++ ) {
+            if ( fScores[docId] == 0.0 ) {
+                docIds[size++] = docId;
+            }
+        }
+        return new TopDocuments( documents, Arrays.copyOf( docIds, size ), Arrays.copyOf( scores, size ) );
+    }
+    
+    /**
+     * Offers all touched documents to a collector.
+     */
+    void collect( TopKCollector collector ) {
+        for ( int i = 0; i < fSize; i++ ) {
+            collector.collect( fDocIds[i], fScores[fDocIds[i]] );
+        }
+    }
+    
+}
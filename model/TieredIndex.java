@@ -0,0 +1,104 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+
+
+/**
+ * A tiered index of champion lists. For each term, the documents containing
+ * it are ordered by the term's weight in them and split into tiers: the first
+ * tier holds the documents with the highest weights, the following tiers the
+ * next ones and the last tier all remaining documents.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class TieredIndex {
+    
+    private static final int[] EMPTY = new int[0];
+    
+    private int[] fTierSizes = null;
+    private int[][][] fTiers = null; // Per term id and tier, the document ids in ascending order
+    
+    protected TieredIndex( ) {
+        throw new UnsupportedOperationException( );
+    }
+    
+    /**
+     * Creates an empty tiered index.
+     * 
+     * @param tierSizes
+     *            The maximum number of documents per term in each tier but
+     *            the last, which holds all remaining documents.
+     */
+    public TieredIndex( int[] tierSizes ) {
+        fTierSizes = tierSizes.clone( );
+        fTiers = new int[0][][];
+    }
+    
+    /**
+     * Adds the tiers of a term.
+     * 
+     * @param termId
+     *            A term id.
+     * @param docIds
+     *            The ids of all documents containing the term.
+     * @param weights
+     *            The weights of the term in these documents.
+     */
+    void add( int termId, int[] docIds, final double[] weights ) {
+        Integer[] order = new Integer[docIds.length];
+        for ( int i = 0; i < order.length; i++ ) {
+            order[i] = i;
+        }
+        Arrays.sort( order, new Comparator<Integer>( ) {
+            
+            @Override
+            public int compare( Integer a, Integer b ) {
+                return Double.compare( weights[b], weights[a] );
+            }
+        } );
+        int[][] tiers = new int[fTierSizes.length + 1][];
+        int start = 0;
+        for ( int tier = 0; tier < tiers.length; tier++ ) {
+            int end = tier < fTierSizes.length ? Math.min( start + fTierSizes[tier], order.length ) : order.length;
+            tiers[tier] = new int[end - start];
+            for ( int i = start; i < end; i++ ) {
+                tiers[tier][i - start] = docIds[order[i]];
+            }
+            Arrays.sort( tiers[tier] );
+            start = end;
+        }
+        if ( termId >= fTiers.length ) {
+            fTiers = Arrays.copyOf( fTiers, Math.max( termId + 1, fTiers.length * 2 ) );
+        }
+        fTiers[termId] = tiers;
+    }
+    
+    /**
+     * Returns the number of tiers, including the last one holding all
+     * remaining documents.
+     */
+    public int getTierCount( ) {
+        return fTierSizes.length + 1;
+    }
+    
+    public int[] getTierSizes( ) {
+        return fTierSizes.clone( );
+    }
+    
+    /**
+     * Returns the documents of a term within a tier.
+     * 
+     * @param termId
+     *            A term id.
+     * @param tier
+     *            The number of the tier, starting with 0 for the champions.
+     * @return The ids of the documents in the tier in ascending order.
+     */
+    public int[] getTier( int termId, int tier ) {
+        int[][] tiers = termId < 0 || termId >= fTiers.length ? null : fTiers[termId];
+        return tiers == null ? EMPTY : tiers[tier];
+    }
+    
+}
@@ -0,0 +1,52 @@
+package model;
+
+
+
+/**
+ * The best ranked documents of a query, ordered by descending score.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class TopDocuments {
+    
+    private Document[] fDocuments = null;
+    private int[] fDocIds = null;
+    private double[] fScores = null;
+    
+    protected TopDocuments( ) {
+        throw new UnsupportedOperationException( );
+    }
+    
+    /**
+     * Creates a new result.
+     * 
+     * @param documents
+     *            The documents the ids refer to.
+     * @param docIds
+     *            The ids of the ranked documents.
+     * @param scores
+     *            The scores of the ranked documents.
+     */
+    public TopDocuments( Document[] documents, int[] docIds, double[] scores ) {
+        fDocuments = documents;
+        fDocIds = docIds;
+        fScores = scores;
+    }
+    
+    public int size( ) {
+        return fDocIds.length;
+    }
+    
+    public int getDocId( int rank ) {
+        return fDocIds[rank];
+    }
+    
+    public Document getDocument( int rank ) {
+        return fDocuments[fDocIds[rank]];
+    }
+    
+    public double getScore( int rank ) {
+        return fScores[rank];
+    }
+    
+}
@@ -0,0 +1,153 @@
+package model;
+
+
+
+/**
+ * Collects the k best scored documents of a query in a bounded min-heap of
+ * primitive document ids and scores. Collecting n documents takes O(n log k)
+ * time and O(k) memory.
+ * 
+ * Documents are ranked by descending score; among equal scores, the document
+ * with the lower id ranks higher.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class TopKCollector {
+    
+    private int fK = 0;
+    private int fSize = 0;
+    private int[] fDocIds = null; // The heap, its root is the worst document collected
+    private double[] fScores = null;
+    
+    protected TopKCollector( ) {
+        throw new UnsupportedOperationException( );
+    }
+    
+    /**
+     * Creates a new collector.
+     * 
+     * @param k
+     *            The maximum number of documents to keep.
+     */
+    public TopKCollector( int k ) {
+        fK = Math.max( k, 0 );
+        fDocIds = new int[Math.min( fK, 16 )];
+        fScores = new double[fDocIds.length];
+    }
+    
+    /**
+     * Offers a document to the collector. It is kept if it ranks higher than
+     * the worst of the k documents collected so far.
+     * 
+     * @param docId
+     *            The id of the document.
+     * @param score
+     *            The score of the document.
+     */
+    public void collect( int docId, double score ) {
+        if ( fSize < fK ) {
+            if ( fSize == fDocIds.length ) {
+                int capacity = ( int ) Math.min( fK, fSize * 2L );
+                int[] docIds = new int[capacity];
+                double[] scores = new double[capacity];
+                System.arraycopy( fDocIds, 0, docIds, 0, fSize );
+                System.arraycopy( fScores, 0, scores, 0, fSize );
+                fDocIds = docIds;
+                fScores = scores;
+            }
+            fDocIds[fSize] = docId;
+            fScores[fSize] = score;
+            siftUp( fSize++ );
+        } else if ( fK > 0 && isWorse( fScores[0], fDocIds[0], score, docId ) ) {
+            fDocIds[0] = docId;
+            fScores[0] = score;
+            siftDown( 0, fSize );
+        }
+    }
+    
+    /**
+     * Returns true, if k documents have been collected.
+     */
+    public boolean isFull( ) {
+        return fSize == fK;
+    }
+    
+    /**
+     * Returns the score a document has to exceed to enter the collected
+     * documents, or negative infinity if less than k documents have been
+     * collected so far.
+     */
+    public double getThreshold( ) {
+        return isFull( ) && fK > 0 ? fScores[0] : Double.NEGATIVE_INFINITY;
+    }
+    
+    public int size( ) {
+        return fSize;
+    }
+    
+    /**
+     * Returns the collected documents ranked by their score. The collector
+     * must not be used afterwards.
+     * 
+     * @param documents
+     *            The documents the collected ids refer to.
+     * @return The collected documents.
+     */
+    public TopDocuments getTopDocuments( Document[] documents ) {
+        int[] docIds = new int[fSize];
+        double[] scores = new double[fSize];
+        for ( int last = fSize - 1; last >= 0; last-- ) {
+            docIds[last] = fDocIds[0];
+            scores[last] = fScores[0];
+            swap( 0, last );
+            siftDown( 0, last );
+        }
+        fSize = 0;
+        return new TopDocuments( documents, docIds, scores );
+    }
+    
+    /**
+     * Returns true, if document a ranks lower than document b.
+     */
+    private static boolean isWorse( double scoreA, int docIdA, double scoreB, int docIdB ) {
+        return scoreA < scoreB || ( scoreA == scoreB && docIdA > docIdB );
+    }
+    
+    private void siftUp( int i ) {
+        while ( i > 0 ) {
+            int parent = ( i - 1 ) >>> 1;
+            if ( !isWorse( fScores[i], fDocIds[i], fScores[parent], fDocIds[parent] ) ) {
+                break;
+            }
+            swap( i, parent );
+            i = parent;
+        }
+    }
+    
+    private void siftDown( int i, int size ) {
+        while ( true ) {
+            int child = 2 * i + 1;
+            if ( child >= size ) {
+                break;
+            }
+            if ( child + 1 < size && isWorse( fScores[child + 1], fDocIds[child + 1], fScores[child], fDocIds[child] ) ) {
+                child++;
+            }
+            if ( !isWorse( fScores[child], fDocIds[child], fScores[i], fDocIds[i] ) ) {
+                break;
+            }
+            swap( i, child );
+            i = child;
+        }
+    }
+    
+    private void swap( int i, int j ) {
+        int docId = fDocIds[i];
+        fDocIds[i] = fDocIds[j];
+        fDocIds[j] = docId;
+        double score = fScores[i];
+        fScores[i] = fScores[j];
+        fScores[j] = score;
+    }
+    
+}
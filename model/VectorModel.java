@@ -1,13 +1,21 @@
 package model;
 
+import index.CorpusStatistics;
+import index.InvertedIndex;
+import index.PostingList;
+
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import common.Helpers;
+import common.Metrics;
 
 
 
@@ -21,6 +29,8 @@ import common.Helpers;
 public class VectorModel extends AbstractModel {
     
     private boolean fTfidf = false;
+    private TieredIndex fTieredIndex = null;
+    private AtomicLongArray fNorms = null; // The bits of the length of each document vector, NaN until computed
     
     protected VectorModel( ) {
         throw new UnsupportedOperationException( );
@@ -40,74 +50,431 @@ public class VectorModel extends AbstractModel {
      *            frequencies.
      */
     public VectorModel( Document[] documents, boolean tfidf ) {
+        this( documents, new InvertedIndex( documents ), tfidf );
+    }
+    
+    /**
+     * Creates a new vector space model working on an already built index.
+     * The tf/idf lengths of documents carrying term vectors are computed when
+     * a document is first scored, so creating a model for a new snapshot of
+     * a SegmentedIndex takes no pass over the corpus.
+     * 
+     * @param documents
+     *            The base corpus.
+     * @param index
+     *            The inverted index built from the base corpus.
+     * @param tfidf
+     *            Optionally uses tf/idf weights instead of simple term
+     *            frequencies.
+     */
+    public VectorModel( Document[] documents, InvertedIndex index, boolean tfidf ) {
+        super( documents, index );
         fTfidf = tfidf;
-        fDocuments = documents;
-        if ( fTfidf ) {
-            for ( Document document : fDocuments ) {
-                for ( String term : document.getTerms( ) ) {
-                    Helpers.setTfIdfWeight( document, term, documents );
+        CorpusStatistics statistics = fIndex.getStatistics( );
+        double[] norms = new double[fDocuments.length];
+        if ( fTfidf && hasTermVectors( ) ) {
+            Arrays.fill( norms, Double.NaN );
+        } else if ( fTfidf ) {
+            // Sum up the squared weights along the postings, as the documents
+            // carry no term vectors
+            for ( int termId = 0; termId < fIndex.getTermIdLimit( ); termId++ ) {
+                PostingList postings = fIndex.getPostings( termId );
+                double idf = getIdf( termId );
+                for ( int i = 0; i < postings.size( ); i++ ) {
+                    double weight = getWeight( postings, i, idf );
+                    norms[postings.getDocId( i )] += weight * weight;
                 }
             }
+            for ( int docId = 0; docId < fDocuments.length; docId++ ) {
+                norms[docId] = Math.sqrt( norms[docId] );
+            }
+        } else {
+            for ( int docId = 0; docId < fDocuments.length; docId++ ) {
+                norms[docId] = statistics.getNorm( docId );
+            }
+        }
+        fNorms = new AtomicLongArray( norms.length );
+        for ( int docId = 0; docId < norms.length; docId++ ) {
+            fNorms.set( docId, Double.doubleToRawLongBits( norms[docId] ) );
         }
     }
     
     /**
-     * Calculates the cosine similarity between two documents.
+     * Enables top k queries to be answered from a tiered index of champion
+     * lists, the documents with the highest length normalized weights of each
+     * term. For each query term, the documents of the first tier are scored
+     * first; lower tiers are only consulted while less than k candidates have
+     * been found. This trades recall for speed, see getTieredRecall.
+     * 
+     * @param tierSizes
+     *            The number of champions per term in each tier but the last,
+     *            e.g. { 20, 100 }. Null or an empty array disables the tiers.
+     */
+    public void setTierSizes( int[] tierSizes ) {
+        if ( tierSizes == null || tierSizes.length == 0 ) {
+            fTieredIndex = null;
+            return;
+        }
+        TieredIndex tieredIndex = new TieredIndex( tierSizes );
+        for ( int termId = 0; termId < fIndex.getTermIdLimit( ); termId++ ) {
+            PostingList postings = fIndex.getPostings( termId );
+            if ( postings.size( ) == 0 ) {
+                continue;
+            }
+            double idf = getIdf( termId );
+            int[] docIds = new int[postings.size( )];
+            double[] weights = new double[postings.size( )];
+            for ( int i = 0; i < docIds.length; i++ ) {
+                docIds[i] = postings.getDocId( i );
+                weights[i] = normalize( getWeight( postings, i, idf ), getNorm( docIds[i] ), 1.0 );
+            }
+            tieredIndex.add( termId, docIds, weights );
+        }
+        fTieredIndex = tieredIndex;
+    }
+    
+    /**
+     * Checks whether the documents carry their term vectors; documents read
+     * from an index file or of a derived stemmed index do not.
+     */
+    private boolean hasTermVectors( ) {
+        CorpusStatistics statistics = fIndex.getStatistics( );
+        for ( int docId = 0; docId < fDocuments.length; docId++ ) {
+            if ( fDocuments[docId].getTermCount( ) == 0 && statistics.getLength( docId ) > 0 ) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Returns the length of a document vector, computing the tf/idf length
+     * from the document's term vector on first use. The weights are the same
+     * as along the postings, see getWeight.
+     */
+    private double getNorm( int docId ) {
+        double norm = Double.longBitsToDouble( fNorms.get( docId ) );
+        if ( Double.isNaN( norm ) ) {
+            Document document = fDocuments[docId];
+            norm = 0.0;
+            for ( int i = 0; i < document.getTermCount( ); i++ ) {
+                double weight = ( float ) ( Helpers.getTf( document.getFrequencyAt( i ), fIndex.getStatistics( ).getMaxFreq( docId ) ) * getIdf( document.getTermId( i ) ) );
+                norm += weight * weight;
+            }
+            norm = Math.sqrt( norm );
+            fNorms.set( docId, Double.doubleToRawLongBits( norm ) ); // Racing threads store the same value
+        }
+        return norm;
+    }
+    
+    public boolean isTfidf( ) {
+        return fTfidf;
+    }
+    
+    public TieredIndex getTieredIndex( ) {
+        return fTieredIndex;
+    }
+    
+    /**
+     * Measures the recall of the tiered top k documents for a query, i.e. the
+     * share of the exhaustively determined top k documents also found by the
+     * tiered evaluation.
+     * 
+     * @param queryString
+     *            The search query.
+     * @param k
+     *            The number of documents to compare.
+     * @param stem
+     *            Use stemming?
+     * @return The recall between 0 and 1, or 1 if no tiers are used or the
+     *         query matches no document.
+     */
+    public double getTieredRecall( String queryString, int k, boolean stem ) {
+        if ( fTieredIndex == null ) {
+            return 1.0;
+        }
+        Document query = getQuery( queryString, stem );
+        TopDocuments exhaustive = getTopDocuments( query, k );
+        TopDocuments tiered = getTieredTopDocuments( query, k );
+        if ( exhaustive.size( ) == 0 ) {
+            return 1.0;
+        }
+        Set<Integer> relevant = new HashSet<Integer>( );
+        for ( int rank = 0; rank < exhaustive.size( ); rank++ ) {
+            relevant.add( exhaustive.getDocId( rank ) );
+        }
+        int found = 0;
+        for ( int rank = 0; rank < tiered.size( ); rank++ ) {
+            if ( relevant.contains( tiered.getDocId( rank ) ) ) {
+                found++;
+            }
+        }
+        return ( double ) found / exhaustive.size( );
+    }
+    
+    /**
+     * Returns the weight of the i-th distinct term of a query, depending on
+     * whether tf/idf weights or simple term frequencies are used.
+     */
+    double getWeightAt( Document query, int i ) {
+        return fTfidf ? query.getWeightAt( i ) : query.getFrequencyAt( i );
+    }
+    
+    /**
+     * Returns the weight of a term in the document of a posting, depending on
+     * whether tf/idf weights or simple term frequencies are used. The tf/idf
+     * weight has the same value as the document's stored (float) weight.
+     * 
+     * @param postings
+     *            The postings of the term.
+     * @param i
+     *            The position of the posting.
+     * @param idf
+     *            The idf of the term.
+     * @return The weight of the term in the document.
+     */
+    double getWeight( PostingList postings, int i, double idf ) {
+        int freq = postings.getFrequency( i );
+        if ( fTfidf ) {
+            return ( float ) ( Helpers.getTf( freq, fIndex.getStatistics( ).getMaxFreq( postings.getDocId( i ) ) ) * idf );
+        }
+        return freq;
+    }
+    
+    double getIdf( int termId ) {
+        CorpusStatistics statistics = fIndex.getStatistics( );
+        return Helpers.getIdf( statistics.getDocumentCount( ), statistics.getDocumentFrequency( termId ) );
+    }
+    
+    /**
+     * Calculates the length of a document vector. The terms of a query that
+     * do not occur in the corpus are included, weighted like those occurring
+     * in no document.
      * 
      * @param document
      *            A document.
+     * @return The euclidean length of the document's term vector.
+     */
+    double getLength( Document document ) {
+        double length = 0.0;
+        for ( int i = 0; i < document.getTermCount( ); i++ ) {
+            double weight = getWeightAt( document, i );
+            length += weight * weight;
+        }
+        for ( int freq : document.getUnknownFrequencies( ) ) {
+            double weight = fTfidf ? ( float ) Helpers.getTfIdfWeight( freq, document.getMaxFreq( ), fIndex.getStatistics( ).getDocumentCount( ) + 1, 1 ) : freq;
+            length += weight * weight;
+        }
+        return Math.sqrt( length );
+    }
+    
+    /**
+     * Creates the document vector of a query.
+     * 
+     * @param queryString
+     *            The search query.
+     * @param stem
+     *            Use stemming?
+     * @return The query document, weighted by tf/idf if required.
+     */
+    Document getQuery( String queryString, boolean stem ) {
+        Document query = Document.createQuery( queryString, stem, fIndex.getDictionary( ) );
+        if ( fTfidf ) {
+            // The query is weighted as if it were part of the corpus
+            CorpusStatistics statistics = fIndex.getStatistics( );
+            for ( int i = 0; i < query.getTermCount( ); i++ ) {
+                int n = statistics.getDocumentFrequency( query.getTermId( i ) );
+                query.setWeightAt( i, Helpers.getTfIdfWeight( query.getFrequencyAt( i ), query.getMaxFreq( ), statistics.getDocumentCount( ) + 1, n + 1 ) );
+            }
+        }
+        return query;
+    }
+    
+    /**
+     * Calculates the cosine similarities between a query and all documents.
+     * Only documents sharing a term with the query can have a similarity
+     * other than 0, so the dot products are accumulated along the postings of
+     * the query terms and normalized with the precomputed document lengths.
+     * 
      * @param query
-     *            Another document.
-     * @return The cosine similarity of the two document vectors.
-     */
-    private double getCosineSimilarity( Document document, Document query ) {
-        Set<String> terms = new HashSet<String>( );
-        for ( String term : document.getTerms( ) ) {
-            terms.add( term );
-        }
-        for ( String term : query.getTerms( ) ) {
-            terms.add( term );
-        }
-        double numerator = 0.0;
-        double denominator1 = 0.0;
-        double denominator2 = 0.0;
-        for ( String term : terms ) {
-            if ( fTfidf ) {
-                numerator += document.getWeight( term ) * query.getWeight( term );
-                denominator1 += document.getWeight( term ) * document.getWeight( term );
-                denominator2 += query.getWeight( term ) * query.getWeight( term );
-            } else {
-                numerator += document.getFrequency( term ) * query.getFrequency( term );
-                denominator1 += document.getFrequency( term ) * document.getFrequency( term );
-                denominator2 += query.getFrequency( term ) * query.getFrequency( term );
+     *            The query document.
+     * @return The similarities of all documents sharing a term with the query.
+     */
+    private ScoreAccumulator score( Document query ) {
+        ScoreAccumulator similarities = new ScoreAccumulator( fDocuments.length );
+        for ( int j = 0; j < query.getTermCount( ); j++ ) {
+            checkCancelled( );
+            int termId = query.getTermId( j );
+            double queryWeight = getWeightAt( query, j );
+            double idf = getIdf( termId );
+            PostingList postings = fIndex.getPostings( termId );
+            for ( int i = 0; i < postings.size( ); i++ ) {
+                similarities.add( postings.getDocId( i ), getWeight( postings, i, idf ) * queryWeight );
             }
+            Metrics.countPostings( postings.size( ) );
+        }
+        normalize( similarities, query );
+        Metrics.countDocumentsScored( similarities.size( ) );
+        return similarities;
+    }
+    
+    /**
+     * Turns the accumulated dot products of the documents touched by a query
+     * into cosine similarities.
+     */
+    void normalize( ScoreAccumulator similarities, Document query ) {
+        double queryLength = getLength( query );
+        for ( int i = 0; i < similarities.size( ); i++ ) {
+            int docId = similarities.getDocId( i );
+            similarities.setScore( docId, normalize( similarities.getScore( docId ), getNorm( docId ), queryLength ) );
         }
-        if ( denominator1 == 0 || denominator2 == 0 ) {
-            return 0;
+    }
+    
+    /**
+     * Turns a dot product into a cosine similarity.
+     */
+    private static double normalize( double dotProduct, double documentLength, double queryLength ) {
+        if ( documentLength == 0 || queryLength == 0 ) {
+            return 0.0;
         }
-        return numerator / ( Math.sqrt( denominator1 ) * Math.sqrt( denominator2 ) );
+        return dotProduct / ( documentLength * queryLength );
     }
     
+    /**
+     * Returns all documents for a query, ranked by their similarity. Results
+     * are cached, the map returned cannot be modified.
+     */
     @Override
     public SortedMap<Document,Double> getDocuments( String queryString, boolean stem ) {
-        
-        Document query = new Document( "query", queryString, stem );
-        if ( fTfidf ) {
-            Document[] documents = new Document[fDocuments.length + 1];
-            System.arraycopy( fDocuments, 0, documents, 0, fDocuments.length );
-            documents[documents.length - 1] = query;
-            for ( String term : query.getTerms( ) ) {
-                Helpers.setTfIdfWeight( query, term, documents );
+        Metrics.Query probe = Metrics.beginQuery( "vector", queryString );
+        Metrics.Timer timer = Metrics.start( Metrics.QUERY_ANALYSIS );
+        try {
+            final Document query = getQuery( queryString, stem );
+            Metrics.stop( timer );
+            return getCached( "documents" + getKey( query, stem ), new QueryCache.Loader<SortedMap<Document,Double>>( ) {
+                
+                @Override
+                SortedMap<Document,Double> load( ) {
+                    Map<Document,Double> map = new HashMap<Document,Double>( );
+                    SortedMap<Document,Double> result = new TreeMap<Document,Double>( new ValueComparator( map ) );
+                    
+                    Metrics.Timer timer = Metrics.start( Metrics.SCORING );
+                    try {
+                        ScoreAccumulator similarities = score( query );
+                        Metrics.stop( timer );
+                        timer = Metrics.start( Metrics.RANKING );
+                        for ( int docId = 0; docId < fDocuments.length; docId++ ) {
+                            map.put( fDocuments[docId], similarities.getScore( docId ) );
+                        }
+                        result.putAll( map );
+                        return Collections.unmodifiableSortedMap( result );
+                    } finally {
+                        Metrics.stop( timer );
+                    }
+                }
+                
+                @Override
+                long getSize( SortedMap<Document,Double> documents ) {
+                    return QueryCache.getSize( documents );
+                }
+            } );
+        } finally {
+            Metrics.stop( timer );
+            Metrics.endQuery( probe );
+        }
+    }
+    
+    @Override
+    public TopDocuments getTopDocuments( String queryString, int k, boolean stem ) {
+        Metrics.Query probe = Metrics.beginQuery( "vector", queryString );
+        Metrics.Timer timer = Metrics.start( Metrics.QUERY_ANALYSIS );
+        try {
+            Document query = getQuery( queryString, stem );
+            Metrics.stop( timer );
+            timer = Metrics.start( Metrics.SCORING );
+            TopDocuments top = fTieredIndex == null ? getTopDocuments( query, k ) : getTieredTopDocuments( query, k );
+            Metrics.stop( timer );
+            return top;
+        } finally {
+            Metrics.stop( timer );
+            Metrics.endQuery( probe );
+        }
+    }
+    
+    @Override
+    public TopDocuments getDocumentsAfter( String queryString, double afterScore, int afterDocId, int k, boolean stem ) {
+        final Document query = getQuery( queryString, stem );
+        ScoreAccumulator similarities = getCached( "scores" + getKey( query, stem ), new QueryCache.Loader<ScoreAccumulator>( ) {
+            
+            @Override
+            ScoreAccumulator load( ) {
+                return score( query );
+            }
+            
+            @Override
+            long getSize( ScoreAccumulator scores ) {
+                return scores.getSizeInBytes( );
+            }
+        } );
+        return similarities.getPage( fDocuments, afterScore, afterDocId, k );
+    }
+    
+    private String getKey( Document query, boolean stem ) {
+        return " tfidf=" + fTfidf + " stem=" + stem + getKey( query );
+    }
+    
+    /**
+     * Determines the top k documents for a query by scoring all documents
+     * sharing a term with it.
+     */
+    private TopDocuments getTopDocuments( Document query, int k ) {
+        TopKCollector collector = new TopKCollector( k );
+        score( query ).collect( collector );
+        return collector.getTopDocuments( fDocuments );
+    }
+    
+    /**
+     * Determines the top k documents for a query from the tiered index. The
+     * tiers of the query terms are merged into a candidate set tier by tier
+     * until it holds at least k documents; only the candidates are scored.
+     */
+    private TopDocuments getTieredTopDocuments( Document query, int k ) {
+        boolean[] seen = new boolean[fDocuments.length];
+        int[] candidates = new int[16];
+        int count = 0;
+        for ( int tier = 0; tier < fTieredIndex.getTierCount( ) && count < k; tier++ ) {
+            for ( int j = 0; j < query.getTermCount( ); j++ ) {
+                checkCancelled( );
+                for ( int docId : fTieredIndex.getTier( query.getTermId( j ), tier ) ) {
+                    if ( !seen[docId] ) {
+                        seen[docId] = true;
+                        if ( count == candidates.length ) {
+                            candidates = Arrays.copyOf( candidates, count * 2 );
+                        }
+                        candidates[count++] = docId;
+                    }
+                }
             }
         }
-        Map<Document,Double> map = new HashMap<Document,Double>( );
-        SortedMap<Document,Double> result = new TreeMap<Document,Double>( new ValueComparator( map ) );
-        
-        for ( Document document : fDocuments ) {
-            map.put( document, getCosineSimilarity( document, query ) );
+        double queryLength = getLength( query );
+        double[] idfs = new double[query.getTermCount( )];
+        for ( int j = 0; j < idfs.length; j++ ) {
+            idfs[j] = getIdf( query.getTermId( j ) );
+        }
+        TopKCollector collector = new TopKCollector( k );
+        for ( int c = 0; c < count; c++ ) {
+            double similarity = 0.0;
+            for ( int j = 0; j < query.getTermCount( ); j++ ) {
+                PostingList postings = fIndex.getPostings( query.getTermId( j ) );
+                int i = postings.advance( 0, candidates[c] );
+                if ( i < postings.size( ) && postings.getDocId( i ) == candidates[c] ) {
+                    similarity += getWeight( postings, i, idfs[j] ) * getWeightAt( query, j );
+                }
+            }
+            collector.collect( candidates[c], normalize( similarity, getNorm( candidates[c] ), queryLength ) );
         }
-        result.putAll( map );
-        return result;
+        Metrics.countDocumentsScored( count );
+        return collector.getTopDocuments( fDocuments );
     }
     
 }
@@ -0,0 +1,143 @@
+package batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import index.CorpusLoader;
+import index.InvertedIndex;
+import index.TestCorpora;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import model.BooleanModel;
+import model.Document;
+import model.ProbabilisticModel;
+import model.TopDocuments;
+import model.VectorModel;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+
+/**
+ * Checks that the rankings written by the batch runner, whose queries run
+ * concurrently with and without stemming, equal those of the models.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class BatchRunnerTest {
+    
+    private static final int DEPTH = 20;
+    
+    @Rule
+    public TemporaryFolder fFolder = new TemporaryFolder( );
+    
+    @Test
+    public void runsEqualTheRankingsOfTheModels( ) throws IOException {
+        File dir = fFolder.newFolder( "corpus" );
+        Random random = new Random( TestCorpora.SEED );
+        Charset utf8 = Charset.forName( "UTF-8" );
+        for ( int i = 0; i < 120; i++ ) {
+            Files.write( new File( dir, "doc" + i ).toPath( ), TestCorpora.getText( random, 1 + random.nextInt( 120 ) ).getBytes( utf8 ) );
+        }
+        Files.write( new File( dir, ".index" ).toPath( ), "hidden".getBytes( utf8 ) );
+        
+        String[] texts = TestCorpora.getQueries( 30 );
+        String[] booleanTexts = TestCorpora.getBooleanQueries( 10 );
+        List<String> lines = new ArrayList<String>( );
+        lines.add( "# id, query, model, k1, b, stem" );
+        for ( int q = 0; q < texts.length; q++ ) {
+            lines.add( "q" + q + "\t" + texts[q] + "\t-\t" + ( q % 3 == 0 ? "2.0\t0.5" : "\t" ) + "\t" + ( q % 2 == 0 ) );
+        }
+        for ( int q = 0; q < booleanTexts.length; q++ ) {
+            lines.add( "b" + q + "\t" + booleanTexts[q] + "\tboolean\t\t\t" + ( q % 2 == 0 ) );
+        }
+        File queryFile = fFolder.newFile( "queries" );
+        Files.write( queryFile.toPath( ), lines, utf8 );
+        File runFile = new File( fFolder.getRoot( ), "run" );
+        
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        ByteArrayOutputStream report = new ByteArrayOutputStream( );
+        System.setOut( new PrintStream( report, true ) );
+        System.setErr( new PrintStream( new ByteArrayOutputStream( ) ) );
+        try {
+            BatchRunner.main( new String[] { "-threads", "4", "-depth", String.valueOf( DEPTH ), "-tfidf", "-tag", "test", dir.getPath( ), queryFile.getPath( ), runFile.getPath( ) } );
+        } finally {
+            System.setOut( out );
+            System.setErr( err );
+        }
+        String[] reported = new String( report.toByteArray( ) ).split( "\\r?\\n" );
+        assertEquals( 4, reported.length );
+        assertTrue( reported[1], reported[1].matches( "boolean +40 .*" ) );
+        assertTrue( reported[3], reported[3].matches( "bm25 +30 .*" ) );
+        
+        Map<String,List<String>> runs = new HashMap<String,List<String>>( );
+        for ( String line : Files.readAllLines( runFile.toPath( ), utf8 ) ) {
+            String[] columns = line.split( " " );
+            String key = columns[0] + " " + columns[5];
+            if ( !runs.containsKey( key ) ) {
+                runs.put( key, new ArrayList<String>( ) );
+            }
+            assertEquals( line, runs.get( key ).size( ) + 1, Integer.parseInt( columns[3] ) );
+            runs.get( key ).add( columns[2] + " " + Double.parseDouble( columns[4] ) );
+        }
+        
+        List<File> files = new ArrayList<File>( );
+        for ( File file : dir.listFiles( ) ) {
+            if ( !file.getName( ).startsWith( "." ) ) {
+                files.add( file );
+            }
+        }
+        InvertedIndex plain = new CorpusLoader( files.toArray( new File[files.size( )] ), false ).load( );
+        InvertedIndex stemmed = plain.getStemmedIndex( );
+        for ( int q = 0; q < texts.length; q++ ) {
+            boolean stem = q % 2 == 0;
+            InvertedIndex index = stem ? stemmed : plain;
+            Document[] documents = index.getDocuments( );
+            double k1 = q % 3 == 0 ? 2.0 : 1.2;
+            double b = q % 3 == 0 ? 0.5 : 0.75;
+            assertRun( runs.get( "q" + q + " test-boolean" ), new BooleanModel( documents, index ).getTopDocuments( texts[q], DEPTH, stem ) );
+            assertRun( runs.get( "q" + q + " test-vector" ), new VectorModel( documents, index, true ).getTopDocuments( texts[q], DEPTH, stem ) );
+            assertRun( runs.get( "q" + q + " test-bm25" ), new ProbabilisticModel( documents, index ).getTopDocuments( texts[q], DEPTH, k1, b, stem ) );
+        }
+        for ( int q = 0; q < booleanTexts.length; q++ ) {
+            boolean stem = q % 2 == 0;
+            InvertedIndex index = stem ? stemmed : plain;
+            assertRun( runs.get( "b" + q + " test-boolean" ), new BooleanModel( index.getDocuments( ), index ).getTopDocuments( booleanTexts[q], DEPTH, stem ) );
+            assertEquals( null, runs.get( "b" + q + " test-vector" ) );
+        }
+    }
+    
+    @Test
+    public void percentilesAreNearestRanks( ) {
+        long[] sorted = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+        assertEquals( 5, BatchRunner.getPercentile( sorted, 0.5 ) );
+        assertEquals( 10, BatchRunner.getPercentile( sorted, 0.95 ) );
+        assertEquals( 10, BatchRunner.getPercentile( sorted, 0.999 ) );
+        assertEquals( 1, BatchRunner.getPercentile( sorted, 0.0 ) );
+        assertEquals( 7, BatchRunner.getPercentile( new long[] { 7 }, 0.99 ) );
+    }
+    
+    private static void assertRun( List<String> run, TopDocuments expected ) {
+        List<String> ranking = new ArrayList<String>( );
+        for ( int rank = 0; rank < expected.size( ); rank++ ) {
+            ranking.add( expected.getDocument( rank ).getName( ) + " " + expected.getScore( rank ) );
+        }
+        assertEquals( ranking, run == null ? Arrays.asList( ) : run );
+    }
+    
+}
@@ -0,0 +1,88 @@
+package benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+
+/**
+ * Checks which changes of the scores of a benchmark run the baseline
+ * comparison reports as regressions.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class BaselineComparisonTest {
+    
+    @Rule
+    public TemporaryFolder fFolder = new TemporaryFolder( );
+    
+    @Test
+    public void onlySignificantChangesBeyondTheThresholdRegress( ) throws IOException {
+        Map<String,BaselineComparison.Result> baseline = read( "baseline", //
+                result( "slower", "avgt", null, 100.0, 1.0 ), //
+                result( "noisy", "avgt", null, 100.0, 30.0 ), //
+                result( "fewer", "thrpt", null, 1000.0, 10.0 ), //
+                result( "faster", "avgt", null, 100.0, 1.0 ), //
+                result( "query", "avgt", "\"model\": \"bm25\", \"documents\": \"1000\"", 50.0, 1.0 ), //
+                result( "removed", "avgt", null, 1.0, 0.0 ) );
+        Map<String,BaselineComparison.Result> current = read( "current", //
+                result( "slower", "avgt", null, 118.0, 1.0 ), //
+                result( "noisy", "avgt", null, 150.0, 30.0 ), //
+                result( "fewer", "thrpt", null, 800.0, 10.0 ), //
+                result( "faster", "avgt", null, 50.0, 1.0 ), //
+                result( "query", "avgt", "\"documents\": \"1000\", \"model\": \"bm25\"", 52.0, "NaN" ), //
+                result( "added", "avgt", null, 1.0, 0.0 ) );
+        
+        ByteArrayOutputStream report = new ByteArrayOutputStream( );
+        assertEquals( 2, BaselineComparison.compare( baseline, current, 10.0, new PrintStream( report, true ) ) );
+        String text = new String( report.toByteArray( ) );
+        assertTrue( text, text.contains( "REGRESSION slower:" ) );
+        assertTrue( text, text.contains( "OK         noisy:" ) );
+        assertTrue( text, text.contains( "REGRESSION fewer:" ) );
+        assertTrue( text, text.contains( "IMPROVED   faster:" ) );
+        assertTrue( text, text.contains( "OK         query{documents=1000, model=bm25}:" ) );
+        assertTrue( text, text.contains( "NEW        added:" ) );
+        assertTrue( text, text.contains( "MISSING    removed" ) );
+        
+        assertEquals( 1, BaselineComparison.compare( baseline, current, 19.0, new PrintStream( new ByteArrayOutputStream( ) ) ) );
+    }
+    
+    @Test( expected = IOException.class )
+    public void otherFilesAreRejected( ) throws IOException {
+        File file = fFolder.newFile( "results" );
+        Files.write( file.toPath( ), "{ \"benchmark\": \"x\" }".getBytes( Charset.forName( "UTF-8" ) ) );
+        BaselineComparison.read( file.getPath( ) );
+    }
+    
+    private Map<String,BaselineComparison.Result> read( String name, String... results ) throws IOException {
+        StringBuilder json = new StringBuilder( "[" );
+        for ( String result : results ) {
+            json.append( json.length( ) > 1 ? ",\n" : "\n" ).append( result );
+        }
+        File file = fFolder.newFile( name );
+        Files.write( file.toPath( ), json.append( "\n]" ).toString( ).getBytes( Charset.forName( "UTF-8" ) ) );
+        return BaselineComparison.read( file.getPath( ) );
+    }
+    
+    /**
+     * Returns a benchmark result in the JSON format of JMH.
+     */
+    private static String result( String benchmark, String mode, String params, double score, Object error ) {
+        String unit = mode.equals( "thrpt" ) ? "ops/s" : "us/op";
+        return "{ \"benchmark\": \"" + benchmark + "\", \"mode\": \"" + mode + "\"" + ( params == null ? "" : ", \"params\": { " + params + " }" ) //
+                + ", \"primaryMetric\": { \"score\": " + score + ", \"scoreError\": " + ( error instanceof String ? "\"" + error + "\"" : error ) + ", \"scoreUnit\": \"" + unit + "\" } }";
+    }
+    
+}
@@ -0,0 +1,110 @@
+package common;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+
+/**
+ * Checks that the analyzer splits texts into the same terms as the former
+ * preprocessing by regular expressions.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class AnalyzerTest {
+    
+    private static final String CHARACTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789_ \t\n\r\f\u000B.,;:-'\"()!?&|\u00a0\u00e9\u00df\u0130\u4e2d\ud83d\ude00";
+    
+    @Rule
+    public TemporaryFolder fFolder = new TemporaryFolder( );
+    
+    @Test
+    public void termsEqualTheRegularExpressionPreprocessing( ) {
+        Random random = new Random( 20120417L );
+        for ( boolean stem : new boolean[] { false, true } ) {
+            Analyzer analyzer = new Analyzer( stem );
+            for ( int n = 0; n < 2000; n++ ) {
+                String text = getText( random, random.nextInt( 60 ) );
+                assertEquals( text, getExpectedTerms( text, stem ), getTerms( analyzer, text ) );
+            }
+        }
+    }
+    
+    @Test
+    public void textsWithoutTermsYieldAnEmptyTerm( ) {
+        Analyzer analyzer = new Analyzer( false );
+        for ( String text : new String[] { "", "   ", ".,;", "\u00e9\u00e9" } ) {
+            assertEquals( Arrays.asList( "" ), getTerms( analyzer, text ) );
+        }
+    }
+    
+    @Test
+    public void filesAreAnalyzedLikeTheirText( ) throws IOException {
+        Random random = new Random( 20120417L );
+        Analyzer analyzer = new Analyzer( true );
+        for ( Charset charset : new Charset[] { Charset.forName( "UTF-8" ), Charset.forName( "UTF-16" ), Charset.forName( "ISO-8859-1" ) } ) {
+            // Longer than the chunks the file is read in, so terms and characters span chunks
+            String text = getText( random, 300000 );
+            File file = fFolder.newFile( );
+            Files.write( file.toPath( ), text.getBytes( charset ) );
+            String decoded = new String( text.getBytes( charset ), charset );
+            List<String> terms = new ArrayList<String>( );
+            analyzer.analyze( file, charset, getCollector( terms ) );
+            assertEquals( charset.name( ), getTerms( analyzer, decoded ), terms );
+        }
+    }
+    
+    private static String getText( Random random, int length ) {
+        StringBuilder text = new StringBuilder( length );
+        for ( int i = 0; i < length; i++ ) {
+            // Mostly letters, so that terms are of varying length
+            text.append( random.nextInt( 3 ) > 0 ? CHARACTERS.charAt( random.nextInt( 52 ) ) : CHARACTERS.charAt( random.nextInt( CHARACTERS.length( ) ) ) );
+        }
+        return text.toString( );
+    }
+    
+    private static List<String> getExpectedTerms( String text, boolean stem ) {
+        List<String> terms = new ArrayList<String>( );
+        for ( String term : text.replaceAll( "[^\\w\\d\\s]+", " " ).trim( ).toLowerCase( ).split( "\\s+" ) ) {
+            if ( stem ) {
+                Stemmer stemmer = new Stemmer( );
+                for ( char letter : term.toCharArray( ) ) {
+                    stemmer.add( letter );
+                }
+                stemmer.stem( );
+                term = stemmer.toString( );
+            }
+            terms.add( term );
+        }
+        return terms;
+    }
+    
+    private static List<String> getTerms( Analyzer analyzer, String text ) {
+        List<String> terms = new ArrayList<String>( );
+        int count = analyzer.analyze( text, getCollector( terms ) );
+        assertEquals( terms.size( ), count );
+        return terms;
+    }
+    
+    private static Analyzer.TokenConsumer getCollector( final List<String> terms ) {
+        return new Analyzer.TokenConsumer( ) {
+            
+            public void token( char[] buffer, int offset, int length ) {
+                terms.add( new String( buffer, offset, length ) );
+            }
+        };
+    }
+    
+}
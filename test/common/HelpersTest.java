@@ -0,0 +1,73 @@
+package common;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+
+/**
+ * Checks that corpus files are decoded with the configured charset.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class HelpersTest {
+    
+    private static final String TEXT = "Gr\u00fc\u00dfe aus K\u00f6ln,\r\nna\u00efve caf\u00e9s \u2013 \u20ac 5\n\nlast line without a break";
+    
+    @Rule
+    public TemporaryFolder fFolder = new TemporaryFolder( );
+    
+    @Test
+    public void filesAreDecodedWithTheirCharset( ) throws Exception {
+        Charset[] charsets = { StandardCharsets.UTF_8, StandardCharsets.UTF_16, StandardCharsets.UTF_16LE };
+        for ( Charset charset : charsets ) {
+            File file = write( TEXT, charset );
+            assertEquals( charset.name( ), TEXT, Helpers.readFile( file.getPath( ), charset ) );
+        }
+        File latin = write( "na\u00efve caf\u00e9", StandardCharsets.ISO_8859_1 );
+        assertEquals( "na\u00efve caf\u00e9", Helpers.readFile( latin.getPath( ), StandardCharsets.ISO_8859_1 ) );
+    }
+    
+    @Test
+    public void filesAreUtf8ByDefault( ) throws Exception {
+        File file = write( TEXT, StandardCharsets.UTF_8 );
+        assertEquals( TEXT, Helpers.readFile( file.getPath( ) ) );
+    }
+    
+    @Test
+    public void largeFilesAreReadCompletely( ) throws Exception {
+        StringBuilder text = new StringBuilder( );
+        for ( int i = 0; text.length( ) < 1 << 20; i++ ) {
+            text.append( "line " ).append( i ).append( " \u00e4\u00f6\u00fc\n" );
+        }
+        File file = write( text.toString( ), StandardCharsets.UTF_8 );
+        assertEquals( text.toString( ), Helpers.readFile( file.getPath( ) ) );
+    }
+    
+    @Test
+    public void malformedInputIsReplaced( ) throws Exception {
+        File file = fFolder.newFile( );
+        Files.write( file.toPath( ), new byte[] { 'a', ( byte ) 0xff, 'b' } );
+        assertEquals( "a\ufffdb", Helpers.readFile( file.getPath( ) ) );
+    }
+    
+    @Test
+    public void missingFilesAreEmpty( ) {
+        assertEquals( "", Helpers.readFile( new File( fFolder.getRoot( ), "missing.txt" ).getPath( ) ) );
+    }
+    
+    private File write( String text, Charset charset ) throws Exception {
+        File file = fFolder.newFile( );
+        Files.write( file.toPath( ), text.getBytes( charset ) );
+        return file;
+    }
+    
+}
@@ -0,0 +1,116 @@
+package common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import index.InvertedIndex;
+import index.TestCorpora;
+
+import java.util.concurrent.CancellationException;
+
+import model.BooleanModel;
+import model.Document;
+import model.FusedEvaluator;
+import model.ProbabilisticModel;
+import model.VectorModel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+
+/**
+ * Checks that each stage of a query is timed once, also when the query is
+ * cancelled.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class MetricsTest {
+    
+    private static final String QUERY = "the connect of relation and general index";
+    
+    private boolean fEnabled = false;
+    
+    @Before
+    public void enable( ) {
+        fEnabled = Metrics.isEnabled( );
+        Metrics.setEnabled( true );
+    }
+    
+    @After
+    public void restore( ) {
+        Metrics.reset( );
+        Metrics.setEnabled( fEnabled );
+    }
+    
+    @Test
+    public void queriesAreAnalyzedOnce( ) {
+        InvertedIndex index = TestCorpora.getIndex( 300 );
+        Document[] documents = index.getDocuments( );
+        BooleanModel booleanModel = new BooleanModel( documents, index );
+        VectorModel vectorModel = new VectorModel( documents, index, true );
+        ProbabilisticModel probabilisticModel = new ProbabilisticModel( documents, index );
+        FusedEvaluator evaluator = new FusedEvaluator( booleanModel, vectorModel, probabilisticModel );
+        Metrics.reset( );
+        
+        booleanModel.getTopDocuments( QUERY, 10, false );
+        booleanModel.getDocuments( QUERY, false );
+        vectorModel.getTopDocuments( QUERY, 10, false );
+        vectorModel.getDocuments( QUERY, false );
+        probabilisticModel.getTopDocuments( QUERY, 10, false );
+        probabilisticModel.getDocuments( QUERY, false );
+        evaluator.evaluate( QUERY, 1.2, 0.75, false );
+        
+        assertEquals( 7, Metrics.getQueryCount( ) );
+        assertEquals( 7, Metrics.getHistogram( Metrics.QUERY_ANALYSIS ).getCount( ) );
+        assertEquals( 0, Metrics.getHistogram( Metrics.DOCUMENT ).getCount( ) );
+        assertEquals( 7, Metrics.getHistogram( Metrics.SCORING ).getCount( ) );
+        assertEquals( 3, Metrics.getHistogram( Metrics.RANKING ).getCount( ) );
+    }
+    
+    @Test
+    public void timersAreStoppedOnce( ) {
+        Metrics.Timer timer = Metrics.start( Metrics.STEM );
+        Metrics.stop( timer );
+        Metrics.stop( timer );
+        Metrics.stop( null );
+        assertEquals( 1, Metrics.getHistogram( Metrics.STEM ).getCount( ) );
+    }
+    
+    @Test
+    public void cancelledQueriesStopTheirStage( ) {
+        InvertedIndex index = TestCorpora.getIndex( 1000 );
+        Document[] documents = index.getDocuments( );
+        VectorModel vectorModel = new VectorModel( documents, index, true );
+        ProbabilisticModel probabilisticModel = new ProbabilisticModel( documents, index );
+        Metrics.reset( );
+        
+        Thread.currentThread( ).interrupt( );
+        try {
+            vectorModel.getTopDocuments( QUERY, 10, false );
+            fail( "An interrupted search ran to completion" );
+        } catch ( CancellationException e ) {
+            // Expected
+        }
+        Thread.currentThread( ).interrupt( );
+        try {
+            probabilisticModel.getDocuments( QUERY, false );
+            fail( "An interrupted search ran to completion" );
+        } catch ( CancellationException e ) {
+            // Expected
+        }
+        assertFalse( Thread.interrupted( ) );
+        assertEquals( 2, Metrics.getQueryCount( ) );
+        assertEquals( 2, Metrics.getHistogram( Metrics.QUERY_ANALYSIS ).getCount( ) );
+        assertEquals( 2, Metrics.getHistogram( Metrics.SCORING ).getCount( ) );
+        assertEquals( 0, Metrics.getHistogram( Metrics.RANKING ).getCount( ) );
+        
+        // The next query is not counted as part of a cancelled one
+        vectorModel.getTopDocuments( QUERY, 10, false );
+        assertEquals( 3, Metrics.getQueryCount( ) );
+        assertEquals( 3, Metrics.getHistogram( Metrics.SCORING ).getCount( ) );
+    }
+    
+}
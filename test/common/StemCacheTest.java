@@ -0,0 +1,117 @@
+package common;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+
+
+/**
+ * Checks that cached stems equal running the Porter algorithm, also when
+ * entries are evicted and when threads race for the same sets.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class StemCacheTest {
+    
+    private static final String[] SUFFIXES = { "", "s", "ed", "ing", "ion", "ational", "ness", "ly", "ies", "able" };
+    
+    @Test
+    public void cachedStemsEqualThePorterStemmer( ) {
+        StemCache cache = new StemCache( 64 ); // Smaller than the vocabulary, so words are evicted
+        String[] words = getWords( 500 );
+        Random random = new Random( 20120417L );
+        Stemmer stemmer = new Stemmer( );
+        for ( int n = 0; n < 20000; n++ ) {
+            String word = words[random.nextInt( words.length )];
+            assertEquals( word, stem( word ), cache.stem( word ) );
+            char[] buffer = ( "  " + word + " " ).toCharArray( );
+            assertEquals( word, stem( word ), new String( cache.stem( buffer, 2, word.length( ), stemmer ) ) );
+        }
+    }
+    
+    @Test
+    public void hitsAndMissesAreCounted( ) {
+        StemCache cache = new StemCache( 16 );
+        cache.stem( "connection" );
+        cache.stem( "connection" );
+        cache.stem( "connection".toCharArray( ), 0, 10, new Stemmer( ) );
+        cache.stem( "relational" );
+        assertEquals( 2, cache.getHits( ) );
+        assertEquals( 2, cache.getMisses( ) );
+        assertEquals( 0.5, cache.getHitRate( ), 0.0 );
+        cache.clear( );
+        assertEquals( 0, cache.getHits( ) );
+        assertEquals( 0.0, cache.getHitRate( ), 0.0 );
+        cache.stem( "connection" );
+        assertEquals( 1, cache.getMisses( ) );
+    }
+    
+    @Test
+    public void racingThreadsGetTheRightStems( ) throws Exception {
+        final StemCache cache = new StemCache( 32 );
+        final String[] words = getWords( 300 );
+        ExecutorService pool = Executors.newFixedThreadPool( 4 );
+        try {
+            List<Future<Integer>> wrong = new ArrayList<Future<Integer>>( );
+            for ( int task = 0; task < 8; task++ ) {
+                final int seed = task;
+                wrong.add( pool.submit( new Callable<Integer>( ) {
+                    
+                    public Integer call( ) {
+                        Random random = new Random( seed );
+                        Stemmer stemmer = new Stemmer( );
+                        int wrong = 0;
+                        for ( int n = 0; n < 50000; n++ ) {
+                            String word = words[random.nextInt( words.length )];
+                            String stem = n % 2 == 0 ? cache.stem( word ) : new String( cache.stem( word.toCharArray( ), 0, word.length( ), stemmer ) );
+                            if ( !stem.equals( stem( word ) ) ) {
+                                wrong++;
+                            }
+                        }
+                        return wrong;
+                    }
+                } ) );
+            }
+            for ( Future<Integer> result : wrong ) {
+                assertEquals( 0, result.get( ).intValue( ) );
+            }
+        } finally {
+            pool.shutdown( );
+        }
+    }
+    
+    private static String[] getWords( int count ) {
+        Random random = new Random( count );
+        String[] words = new String[count];
+        for ( int i = 0; i < count; i++ ) {
+            StringBuilder word = new StringBuilder( );
+            for ( int j = 2 + random.nextInt( 6 ); j > 0; j-- ) {
+                word.append( ( char ) ( 'a' + random.nextInt( 26 ) ) );
+            }
+            words[i] = word.append( SUFFIXES[random.nextInt( SUFFIXES.length )] ).toString( );
+        }
+        return words;
+    }
+    
+    /**
+     * Stems a word without the cache.
+     */
+    private static String stem( String word ) {
+        Stemmer stemmer = new Stemmer( );
+        for ( char letter : word.toCharArray( ) ) {
+            stemmer.add( letter );
+        }
+        stemmer.stem( );
+        return stemmer.toString( );
+    }
+    
+}
@@ -0,0 +1,75 @@
+package common;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+
+
+/**
+ * Checks the Stemmer against examples from the Porter paper, and that stemming
+ * a range of characters in the reused buffer stems like adding the word one
+ * character at a time.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class StemmerTest {
+    
+    private static final String[][] EXAMPLES = { { "caresses", "caress" }, { "ponies", "poni" }, { "ties", "ti" }, { "caress", "caress" }, { "cats", "cat" }, { "feed", "feed" }, { "agreed", "agre" }, { "plastered", "plaster" }, { "motoring", "motor" }, { "sing", "sing" }, { "conflated", "conflat" }, { "troubled", "troubl" }, { "sized", "size" }, { "hopping", "hop" }, { "tanned", "tan" }, { "falling", "fall" }, { "hissing", "hiss" }, { "fizzed", "fizz" }, { "failing", "fail" }, { "filing", "file" }, { "happy", "happi" }, { "relational", "relat" }, { "conditional", "condit" }, { "rational", "ration" }, { "generalization", "gener" }, { "oscillators", "oscil" }, { "connection", "connect" }, { "adjustable", "adjust" }, { "effective", "effect" }, { "is", "is" }, { "a", "a" }, { "", "" } };
+    
+    @Test
+    public void stemsAreThoseOfThePorterAlgorithm( ) {
+        for ( String[] example : EXAMPLES ) {
+            assertEquals( example[0], example[1], stem( example[0] ) );
+        }
+    }
+    
+    @Test
+    public void stemmingRangesEqualsAddingCharacters( ) {
+        Stemmer stemmer = new Stemmer( );
+        Random random = new Random( 20120417L );
+        for ( int n = 0; n < 20000; n++ ) {
+            // Long words grow the buffer, short ones after long ones must not
+            // see their remains
+            String word = getWord( random, n % 100 == 0 ? 60 + random.nextInt( 100 ) : 1 + random.nextInt( 14 ) );
+            String expected = stem( word );
+            String text = "x " + word + " y";
+            
+            int length = stemmer.stem( text.toCharArray( ), 2, word.length( ) );
+            assertEquals( word, expected, new String( stemmer.getResultBuffer( ), 0, length ) );
+            assertEquals( length, stemmer.getResultLength( ) );
+            assertEquals( word, expected, stemmer.toString( ) );
+            
+            length = stemmer.stem( new StringBuilder( text ), 2, 2 + word.length( ) );
+            assertEquals( word, expected, new String( stemmer.getResultBuffer( ), 0, length ) );
+            
+            stemmer.add( word.toCharArray( ), word.length( ) );
+            stemmer.stem( );
+            assertEquals( word, expected, stemmer.toString( ) );
+        }
+    }
+    
+    private static String getWord( Random random, int length ) {
+        String[] suffixes = { "", "s", "es", "ed", "ing", "ational", "ization", "fulness", "ement", "ly" };
+        StringBuilder word = new StringBuilder( );
+        for ( int i = 0; i < length; i++ ) {
+            word.append( ( char ) ( 'a' + random.nextInt( 26 ) ) );
+        }
+        return word.append( suffixes[random.nextInt( suffixes.length )] ).toString( );
+    }
+    
+    /**
+     * Stems a word in a new Stemmer, one character at a time.
+     */
+    private static String stem( String word ) {
+        Stemmer stemmer = new Stemmer( );
+        for ( char letter : word.toCharArray( ) ) {
+            stemmer.add( letter );
+        }
+        stemmer.stem( );
+        return stemmer.toString( );
+    }
+    
+}
@@ -0,0 +1,143 @@
+package index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.Document;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+
+/**
+ * Checks that loading a corpus in parallel assigns the same ids as building
+ * its documents one by one.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class CorpusLoaderTest {
+    
+    @Rule
+    public TemporaryFolder fFolder = new TemporaryFolder( );
+    
+    @Test
+    public void parallelLoadingEqualsBuildingOneByOne( ) throws IOException {
+        String[] texts = getTexts( 150 );
+        File[] files = write( texts, Charset.forName( "UTF-8" ) );
+        for ( boolean stem : new boolean[] { false, true } ) {
+            TermDictionary dictionary = new TermDictionary( );
+            Document[] documents = new Document[texts.length];
+            for ( int i = 0; i < texts.length; i++ ) {
+                documents[i] = new Document( files[i].getName( ), texts[i], stem, dictionary );
+            }
+            InvertedIndex expected = new InvertedIndex( documents );
+            for ( int parallelism : new int[] { 1, 4 } ) {
+                CorpusLoader loader = new CorpusLoader( files, stem );
+                loader.setParallelism( parallelism );
+                assertSameIndex( expected, loader.load( ) );
+            }
+        }
+    }
+    
+    @Test
+    public void filesAreReadInTheirEncoding( ) throws IOException {
+        // Read as UTF-8, the zero bytes of UTF-16 would separate every letter
+        File[] files = write( new String[] { "Index ranking" }, Charset.forName( "UTF-16" ) );
+        CorpusLoader loader = new CorpusLoader( files, false );
+        loader.setCharset( Charset.forName( "UTF-16" ) );
+        InvertedIndex index = loader.load( );
+        assertEquals( 1, index.getDocumentFrequency( "index" ) );
+        assertEquals( 1, index.getDocumentFrequency( "ranking" ) );
+        assertEquals( 2, index.getStatistics( ).getTotalLength( ) );
+    }
+    
+    @Test
+    public void unreadableFilesBecomeEmptyDocuments( ) throws IOException {
+        File[] files = write( new String[] { "index", "rank" }, Charset.forName( "UTF-8" ) );
+        files = new File[] { files[0], new File( fFolder.getRoot( ), "missing" ), files[1] };
+        InvertedIndex index = new CorpusLoader( files, false ).load( );
+        assertEquals( 3, index.getDocumentCount( ) );
+        assertEquals( "missing", index.getDocument( 1 ).getName( ) );
+        assertEquals( new Document( "missing", "", false, new TermDictionary( ) ).getLength( ), index.getStatistics( ).getLength( 1 ) );
+        assertEquals( 2, index.getPostings( "rank" ).getDocId( 0 ) );
+    }
+    
+    @Test
+    public void progressReachesAllDocuments( ) throws IOException {
+        File[] files = write( getTexts( 40 ), Charset.forName( "UTF-8" ) );
+        final AtomicInteger analyzed = new AtomicInteger( );
+        final AtomicInteger indexed = new AtomicInteger( );
+        CorpusLoader loader = new CorpusLoader( files, false );
+        loader.setProgressListener( new CorpusLoader.ProgressListener( ) {
+            
+            public void progress( String stage, int done, int total ) {
+                assertEquals( 40, total );
+                ( stage.equals( "Indexing" ) ? indexed : analyzed ).incrementAndGet( );
+            }
+        } );
+        loader.load( );
+        assertEquals( 40, analyzed.get( ) );
+        assertEquals( 40, indexed.get( ) );
+    }
+    
+    @Test( expected = CancellationException.class )
+    public void cancelledLoadingThrows( ) throws IOException {
+        final CorpusLoader loader = new CorpusLoader( write( getTexts( 40 ), Charset.forName( "UTF-8" ) ), false );
+        loader.setProgressListener( new CorpusLoader.ProgressListener( ) {
+            
+            public void progress( String stage, int done, int total ) {
+                loader.cancel( );
+            }
+        } );
+        loader.load( );
+    }
+    
+    private static String[] getTexts( int count ) {
+        Random random = new Random( TestCorpora.SEED );
+        String[] texts = new String[count];
+        for ( int i = 0; i < count; i++ ) {
+            texts[i] = TestCorpora.getText( random, random.nextInt( 200 ) );
+        }
+        return texts;
+    }
+    
+    private File[] write( String[] texts, Charset charset ) throws IOException {
+        File[] files = new File[texts.length];
+        for ( int i = 0; i < texts.length; i++ ) {
+            files[i] = fFolder.newFile( );
+            Files.write( files[i].toPath( ), texts[i].getBytes( charset ) );
+        }
+        return files;
+    }
+    
+    private static void assertSameIndex( InvertedIndex expected, InvertedIndex actual ) {
+        assertEquals( expected.getDocumentCount( ), actual.getDocumentCount( ) );
+        assertEquals( expected.getTermIdLimit( ), actual.getTermIdLimit( ) );
+        for ( int docId = 0; docId < expected.getDocumentCount( ); docId++ ) {
+            assertEquals( expected.getDocument( docId ).getName( ), actual.getDocument( docId ).getName( ) );
+            assertEquals( expected.getStatistics( ).getLength( docId ), actual.getStatistics( ).getLength( docId ) );
+        }
+        for ( int termId = 0; termId < expected.getTermIdLimit( ); termId++ ) {
+            assertEquals( expected.getDictionary( ).getTerm( termId ), actual.getDictionary( ).getTerm( termId ) );
+            PostingList postings = expected.getPostings( termId );
+            PostingList actualPostings = actual.getPostings( termId );
+            assertEquals( postings.size( ), actualPostings.size( ) );
+            for ( int i = 0; i < postings.size( ); i++ ) {
+                assertEquals( postings.getDocId( i ), actualPostings.getDocId( i ) );
+                assertEquals( postings.getFrequency( i ), actualPostings.getFrequency( i ) );
+            }
+        }
+        assertTrue( actual.getStatistics( ).getTotalLength( ) == expected.getStatistics( ).getTotalLength( ) );
+    }
+    
+}
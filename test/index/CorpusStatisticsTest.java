@@ -0,0 +1,69 @@
+package index;
+
+import static org.junit.Assert.assertEquals;
+
+import model.Document;
+
+import org.junit.Test;
+
+
+
+/**
+ * Checks the statistics collected in one pass against counting them on the
+ * documents.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class CorpusStatisticsTest {
+    
+    @Test
+    public void statisticsEqualCountingTheDocuments( ) {
+        InvertedIndex index = TestCorpora.getIndex( 300 );
+        Document[] documents = index.getDocuments( );
+        CorpusStatistics statistics = index.getStatistics( );
+        assertEquals( documents.length, statistics.getDocumentCount( ) );
+        long totalLength = 0;
+        for ( int docId = 0; docId < documents.length; docId++ ) {
+            Document document = documents[docId];
+            int maxFreq = 0;
+            double norm = 0.0;
+            for ( String term : document.getTerms( ) ) {
+                int freq = document.getFrequency( term );
+                maxFreq = Math.max( maxFreq, freq );
+                norm += freq * freq;
+            }
+            assertEquals( document.getLength( ), statistics.getLength( docId ) );
+            assertEquals( maxFreq, statistics.getMaxFreq( docId ) );
+            assertEquals( Math.sqrt( norm ), statistics.getNorm( docId ), 1e-12 );
+            totalLength += document.getLength( );
+        }
+        assertEquals( totalLength, statistics.getTotalLength( ) );
+        assertEquals( ( double ) totalLength / documents.length, statistics.getAverageLength( ), 1e-12 );
+        for ( String term : index.getTerms( ) ) {
+            int n = 0;
+            for ( Document document : documents ) {
+                if ( document.getFrequency( term ) > 0 ) {
+                    n++;
+                }
+            }
+            assertEquals( term, n, statistics.getDocumentFrequency( term ) );
+        }
+        assertEquals( 0, statistics.getDocumentFrequency( "unknown" ) );
+        assertEquals( 0, statistics.getDocumentFrequency( -1 ) );
+    }
+    
+    @Test
+    public void statisticsOfSeparatelyBuiltDocuments( ) {
+        Document[] documents = TestCorpora.getDocuments( 40, false, new TermDictionary( ) );
+        CorpusStatistics statistics = new CorpusStatistics( documents );
+        CorpusStatistics indexed = new InvertedIndex( documents ).getStatistics( );
+        for ( int docId = 0; docId < documents.length; docId++ ) {
+            assertEquals( indexed.getLength( docId ), statistics.getLength( docId ) );
+            assertEquals( indexed.getNorm( docId ), statistics.getNorm( docId ), 0.0 );
+        }
+        for ( int termId = 0; termId < documents[0].getDictionary( ).size( ); termId++ ) {
+            assertEquals( indexed.getDocumentFrequency( termId ), statistics.getDocumentFrequency( termId ) );
+        }
+    }
+    
+}
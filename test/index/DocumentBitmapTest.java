@@ -0,0 +1,124 @@
+package index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+
+
+/**
+ * Checks the set operations of document bitmaps against boolean arrays, for
+ * sparse chunks stored as arrays and dense ones stored as bitmaps.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class DocumentBitmapTest {
+    
+    private static final int LENGTH = 3 * 65536 + 1000;
+    private static final double[] DENSITIES = { 0.0, 0.0005, 0.03, 0.07, 0.5, 1.0 };
+    
+    @Test
+    public void bitmapsHoldTheirDocuments( ) {
+        Random random = new Random( TestCorpora.SEED );
+        for ( double density : DENSITIES ) {
+            boolean[] set = getSet( random, density );
+            DocumentBitmap bitmap = DocumentBitmap.of( toArray( set ), toArray( set ).length );
+            assertSet( set, bitmap );
+        }
+    }
+    
+    @Test
+    public void operationsEqualTheOperationsOnSets( ) {
+        Random random = new Random( TestCorpora.SEED + 1 );
+        for ( double densityA : DENSITIES ) {
+            for ( double densityB : DENSITIES ) {
+                boolean[] a = getSet( random, densityA );
+                boolean[] b = getSet( random, densityB );
+                DocumentBitmap bitmapA = DocumentBitmap.of( toArray( a ), toArray( a ).length );
+                DocumentBitmap bitmapB = DocumentBitmap.of( toArray( b ), toArray( b ).length );
+                boolean[] and = new boolean[LENGTH];
+                boolean[] or = new boolean[LENGTH];
+                boolean[] andNot = new boolean[LENGTH];
+                for ( int docId = 0; docId < LENGTH; docId++ ) {
+                    and[docId] = a[docId] && b[docId];
+                    or[docId] = a[docId] || b[docId];
+                    andNot[docId] = a[docId] && !b[docId];
+                }
+                assertSet( and, bitmapA.and( bitmapB ) );
+                assertSet( or, bitmapA.or( bitmapB ) );
+                assertSet( andNot, bitmapA.andNot( bitmapB ) );
+            }
+        }
+    }
+    
+    @Test
+    public void rangeHoldsAllDocuments( ) {
+        for ( int count : new int[] { 0, 1, 63, 64, 4096, 4097, 65536, 70000 } ) {
+            DocumentBitmap range = DocumentBitmap.range( count );
+            assertEquals( count, range.getCardinality( ) );
+            int[] docIds = range.toArray( );
+            for ( int docId = 0; docId < count; docId++ ) {
+                assertEquals( docId, docIds[docId] );
+            }
+            assertTrue( !range.contains( count ) );
+        }
+        assertTrue( DocumentBitmap.range( 0 ).isEmpty( ) );
+    }
+    
+    @Test
+    public void bitmapOfPostings( ) {
+        InvertedIndex index = TestCorpora.getIndex( 300 );
+        for ( int termId = 0; termId < index.getTermIdLimit( ); termId++ ) {
+            PostingList postings = index.getPostings( termId );
+            int[] docIds = new int[postings.size( )];
+            for ( int i = 0; i < docIds.length; i++ ) {
+                docIds[i] = postings.getDocId( i );
+            }
+            assertArrayEquals( docIds, DocumentBitmap.of( postings ).toArray( ) );
+        }
+    }
+    
+    private static void assertSet( boolean[] expected, DocumentBitmap actual ) {
+        int[] docIds = toArray( expected );
+        assertArrayEquals( docIds, actual.toArray( ) );
+        assertEquals( docIds.length, actual.getCardinality( ) );
+        assertEquals( docIds.length == 0, actual.isEmpty( ) );
+        for ( int docId = 0; docId < expected.length; docId += 7 ) {
+            assertEquals( expected[docId], actual.contains( docId ) );
+        }
+        assertTrue( !actual.contains( LENGTH + 1 ) );
+    }
+    
+    /**
+     * Draws a set of documents; the density varies between the chunks, so
+     * sets mix array and bitmap chunks.
+     */
+    private static boolean[] getSet( Random random, double density ) {
+        boolean[] set = new boolean[LENGTH];
+        for ( int docId = 0; docId < LENGTH; docId++ ) {
+            double chunkDensity = ( docId >>> 16 ) % 2 == 0 ? density : density / 10;
+            set[docId] = random.nextDouble( ) < chunkDensity;
+        }
+        return set;
+    }
+    
+    private static int[] toArray( boolean[] set ) {
+        int count = 0;
+        for ( boolean contained : set ) {
+            count += contained ? 1 : 0;
+        }
+        int[] docIds = new int[count];
+        count = 0;
+        for ( int docId = 0; docId < set.length; docId++ ) {
+            if ( set[docId] ) {
+                docIds[count++] = docId;
+            }
+        }
+        return docIds;
+    }
+    
+}
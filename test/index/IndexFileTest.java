@@ -0,0 +1,122 @@
+package index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+
+/**
+ * Checks that indexes survive writing and reading an index file, and that
+ * truncated or damaged files are rejected with an IOException, so that the
+ * index is rebuilt.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class IndexFileTest {
+    
+    @Rule
+    public TemporaryFolder fFolder = new TemporaryFolder( );
+    
+    @Test
+    public void indexSurvivesTheRoundTrip( ) throws IOException {
+        InvertedIndex index = TestCorpora.getIndex( 300 );
+        File file = fFolder.newFile( "index.idx" );
+        IndexFile.write( index, file );
+        assertSameIndex( index, IndexFile.read( file ) );
+        InvertedIndex stemmed = index.getStemmedIndex( );
+        IndexFile.write( stemmed, file );
+        assertSameIndex( stemmed, IndexFile.read( file ) );
+    }
+    
+    @Test
+    public void indexFileTracksItsSources( ) throws IOException {
+        File[] sources = { fFolder.newFile( "a.txt" ), fFolder.newFile( "b.txt" ) };
+        Files.write( sources[0].toPath( ), "connect relation".getBytes( "UTF-8" ) );
+        Files.write( sources[1].toPath( ), "index".getBytes( "UTF-8" ) );
+        File file = new File( fFolder.getRoot( ), ".index" );
+        assertFalse( IndexFile.isUpToDate( file, sources ) );
+        IndexFile.write( TestCorpora.getIndex( 20 ), sources, file );
+        assertTrue( IndexFile.isUpToDate( file, sources ) );
+        assertFalse( IndexFile.isUpToDate( file, new File[] { sources[0] } ) );
+        Files.write( sources[1].toPath( ), "index ranking".getBytes( "UTF-8" ) );
+        assertFalse( IndexFile.isUpToDate( file, sources ) );
+    }
+    
+    @Test
+    public void truncatedFilesAreRejected( ) throws IOException {
+        File file = fFolder.newFile( "index.idx" );
+        IndexFile.write( TestCorpora.getIndex( 50 ), file );
+        byte[] bytes = Files.readAllBytes( file.toPath( ) );
+        for ( int length = 0; length < bytes.length; length += 1 + length / 8 ) {
+            File truncated = fFolder.newFile( "truncated" + length + ".idx" );
+            Files.write( truncated.toPath( ), Arrays.copyOf( bytes, length ) );
+            try {
+                IndexFile.read( truncated );
+                fail( "Read a file truncated to " + length + " of " + bytes.length + " bytes" );
+            } catch ( IOException e ) {
+                // Rebuilt by the caller
+            }
+        }
+    }
+    
+    @Test
+    public void damagedFilesFailWithAnIOException( ) throws IOException {
+        File file = fFolder.newFile( "index.idx" );
+        IndexFile.write( TestCorpora.getIndex( 50 ), file );
+        byte[] bytes = Files.readAllBytes( file.toPath( ) );
+        Random random = new Random( TestCorpora.SEED );
+        for ( int i = 0; i < 300; i++ ) {
+            byte[] damaged = bytes.clone( );
+            // Damage the header, the documents and the terms more often than the postings
+            int position = random.nextInt( Math.min( damaged.length, 4096 ) );
+            damaged[position] = ( byte ) random.nextInt( 256 );
+            damaged[position ^ 3] ^= 0x80;
+            File damagedFile = fFolder.newFile( "damaged" + i + ".idx" );
+            Files.write( damagedFile.toPath( ), damaged );
+            IndexFile.isUpToDate( damagedFile, new File[0] );
+            try {
+                IndexFile.read( damagedFile );
+            } catch ( IOException e ) {
+                // Rebuilt by the caller
+            }
+        }
+    }
+    
+    private static void assertSameIndex( InvertedIndex expected, InvertedIndex actual ) {
+        assertEquals( expected.getDocumentCount( ), actual.getDocumentCount( ) );
+        assertEquals( expected.getTermIdLimit( ), actual.getTermIdLimit( ) );
+        CorpusStatistics expectedStatistics = expected.getStatistics( );
+        CorpusStatistics actualStatistics = actual.getStatistics( );
+        assertEquals( expectedStatistics.getTotalLength( ), actualStatistics.getTotalLength( ) );
+        for ( int docId = 0; docId < expected.getDocumentCount( ); docId++ ) {
+            assertEquals( expected.getDocument( docId ).getName( ), actual.getDocument( docId ).getName( ) );
+            assertEquals( expectedStatistics.getLength( docId ), actualStatistics.getLength( docId ) );
+            assertEquals( expectedStatistics.getMaxFreq( docId ), actualStatistics.getMaxFreq( docId ) );
+            assertEquals( expectedStatistics.getNorm( docId ), actualStatistics.getNorm( docId ), 0.0 );
+        }
+        for ( int termId = 0; termId < expected.getTermIdLimit( ); termId++ ) {
+            assertEquals( expected.getDictionary( ).getTerm( termId ), actual.getDictionary( ).getTerm( termId ) );
+            assertEquals( expectedStatistics.getDocumentFrequency( termId ), actualStatistics.getDocumentFrequency( termId ) );
+            PostingList postings = expected.getPostings( termId );
+            PostingList actualPostings = actual.getPostings( termId );
+            assertEquals( postings.size( ), actualPostings.size( ) );
+            for ( int i = 0; i < postings.size( ); i++ ) {
+                assertEquals( postings.getDocId( i ), actualPostings.getDocId( i ) );
+                assertEquals( postings.getFrequency( i ), actualPostings.getFrequency( i ) );
+            }
+        }
+    }
+    
+}
@@ -0,0 +1,93 @@
+package index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.SortedMap;
+
+import model.Document;
+import model.ProbabilisticModel;
+
+import org.junit.Test;
+
+
+
+/**
+ * Checks the inverted index against the documents it was built from, and that
+ * a model scoring along the postings ranks like scanning every document.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class InvertedIndexTest {
+    
+    @Test
+    public void postingsListTheDocumentsContainingATerm( ) {
+        InvertedIndex index = TestCorpora.getIndex( 300 );
+        Document[] documents = index.getDocuments( );
+        for ( int termId = 0; termId < index.getTermIdLimit( ); termId++ ) {
+            PostingList postings = index.getPostings( termId );
+            int i = 0;
+            for ( int docId = 0; docId < documents.length; docId++ ) {
+                int freq = documents[docId].getFrequency( termId );
+                if ( freq > 0 ) {
+                    assertTrue( "Missing posting", i < postings.size( ) );
+                    assertEquals( docId, postings.getDocId( i ) );
+                    assertEquals( freq, postings.getFrequency( i ) );
+                    i++;
+                }
+            }
+            assertEquals( "Postings of a term in no document", i, postings.size( ) );
+            assertEquals( i, index.getDocumentFrequency( index.getDictionary( ).getTerm( termId ) ) );
+        }
+    }
+    
+    @Test
+    public void unknownTermsHaveNoPostings( ) {
+        InvertedIndex index = TestCorpora.getIndex( 50 );
+        assertEquals( 0, index.getPostings( "unknown" ).size( ) );
+        assertEquals( 0, index.getPostings( index.getTermIdLimit( ) + 10 ).size( ) );
+        assertEquals( 0, index.getDocumentFrequency( "unknown" ) );
+    }
+    
+    @Test
+    public void probabilisticModelScoresLikeScanningAllDocuments( ) {
+        InvertedIndex index = TestCorpora.getIndex( 300 );
+        Document[] documents = index.getDocuments( );
+        ProbabilisticModel model = new ProbabilisticModel( documents, index );
+        double avgDocLen = 0.0;
+        for ( Document document : documents ) {
+            avgDocLen += document.getLength( );
+        }
+        avgDocLen /= documents.length;
+        for ( String queryString : TestCorpora.getQueries( 50 ) ) {
+            String[] terms = Document.createQuery( queryString, false, index.getDictionary( ) ).getTerms( );
+            SortedMap<Document,Double> ranking = model.getDocuments( queryString, 1.2, 0.75, false );
+            assertEquals( documents.length, ranking.size( ) );
+            double previous = Double.POSITIVE_INFINITY;
+            for ( Map.Entry<Document,Double> entry : ranking.entrySet( ) ) {
+                Document document = entry.getKey( );
+                double expected = 0.0;
+                for ( String term : terms ) {
+                    int n = 0;
+                    for ( Document other : documents ) {
+                        if ( other.getFrequency( term ) > 0 ) {
+                            n++;
+                        }
+                    }
+                    double idf = Math.log( ( documents.length - n + 0.5 ) / ( n + 0.5 ) ) / Math.log( 2 );
+                    if ( idf < 0 ) {
+                        idf = 0.05;
+                    }
+                    int freq = document.getFrequency( term );
+                    expected += idf * freq * 2.2 / ( freq + 1.2 * ( 0.25 + 0.75 * ( document.getLength( ) / avgDocLen ) ) );
+                }
+                double score = entry.getValue( );
+                assertEquals( queryString, expected, score, 1e-9 );
+                assertTrue( "Not ranked by descending score", score <= previous );
+                previous = score;
+            }
+        }
+    }
+    
+}
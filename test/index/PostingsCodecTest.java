@@ -0,0 +1,188 @@
+package index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import model.ProbabilisticModel;
+import model.TopDocuments;
+
+import org.junit.Test;
+
+
+
+/**
+ * Checks that compressed posting lists hold the same postings as the lists
+ * they were encoded from, for sequential, random and concurrent access.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class PostingsCodecTest {
+    
+    private static final PostingsCodec[] CODECS = { PostingsCodec.VARIABLE_BYTE, PostingsCodec.PFOR };
+    
+    @Test
+    public void codecsAreFoundByName( ) {
+        assertSame( PostingsCodec.VARIABLE_BYTE, PostingsCodec.forName( "vbyte" ) );
+        assertSame( PostingsCodec.PFOR, PostingsCodec.forName( "PFOR" ) );
+        assertNull( PostingsCodec.forName( "gzip" ) );
+    }
+    
+    @Test
+    public void postingsOfAnIndexSurviveTheRoundTrip( ) {
+        InvertedIndex index = TestCorpora.getIndex( 2000 );
+        for ( PostingsCodec codec : CODECS ) {
+            InvertedIndex compressed = index.compress( codec );
+            for ( int termId = 0; termId < index.getTermIdLimit( ); termId++ ) {
+                assertSamePostings( index.getPostings( termId ), compressed.getPostings( termId ) );
+            }
+        }
+    }
+    
+    @Test
+    public void extremeGapsAndFrequenciesSurviveTheRoundTrip( ) {
+        Random random = new Random( TestCorpora.SEED );
+        for ( int size : new int[] { 0, 1, PostingsCodec.BLOCK_SIZE - 1, PostingsCodec.BLOCK_SIZE, PostingsCodec.BLOCK_SIZE + 1, 1000 } ) {
+            ArrayPostingList postings = new ArrayPostingList( );
+            int docId = -1;
+            for ( int i = 0; i < size; i++ ) {
+                // Mostly small gaps and frequencies, with exceptions patched by PFOR
+                docId += random.nextInt( 10 ) == 0 ? 1 + random.nextInt( 1 << 20 ) : 1 + random.nextInt( 4 );
+                postings.add( docId, random.nextInt( 10 ) == 0 ? 1 + random.nextInt( 1 << 24 ) : 1 + random.nextInt( 3 ) );
+            }
+            for ( PostingsCodec codec : CODECS ) {
+                assertSamePostings( postings, codec.encode( postings ) );
+            }
+        }
+    }
+    
+    @Test
+    public void randomAccessAndSkipping( ) {
+        InvertedIndex index = TestCorpora.getIndex( 2000 );
+        Random random = new Random( TestCorpora.SEED );
+        for ( PostingsCodec codec : CODECS ) {
+            for ( int termId = 0; termId < index.getTermIdLimit( ); termId++ ) {
+                PostingList postings = index.getPostings( termId );
+                PostingList compressed = codec.encode( postings );
+                for ( int n = 0; n < 50 && postings.size( ) > 0; n++ ) {
+                    int i = random.nextInt( postings.size( ) );
+                    assertEquals( postings.getDocId( i ), compressed.getDocId( i ) );
+                    assertEquals( postings.getFrequency( i ), compressed.getFrequency( i ) );
+                    int position = random.nextInt( postings.size( ) + 1 );
+                    int target = random.nextInt( index.getDocumentCount( ) + 10 );
+                    assertEquals( postings.advance( position, target ), compressed.advance( position, target ) );
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void threadsReadTheSameListsConcurrently( ) throws Exception {
+        InvertedIndex index = TestCorpora.getIndex( 2000 );
+        for ( PostingsCodec codec : CODECS ) {
+            final InvertedIndex compressed = index.compress( codec );
+            ExecutorService pool = Executors.newFixedThreadPool( 4 );
+            try {
+                List<Future<long[]>> sums = new ArrayList<Future<long[]>>( );
+                for ( int task = 0; task < 16; task++ ) {
+                    final int seed = task;
+                    sums.add( pool.submit( new Callable<long[]>( ) {
+                        
+                        public long[] call( ) {
+                            // Alternating between the lists, as the cursors of a query do
+                            Random random = new Random( seed );
+                            long[] sums = new long[compressed.getTermIdLimit( )];
+                            for ( int n = 0; n < 20000; n++ ) {
+                                int termId = random.nextInt( sums.length );
+                                PostingList postings = compressed.getPostings( termId );
+                                if ( postings.size( ) > 0 ) {
+                                    int i = random.nextInt( postings.size( ) );
+                                    sums[termId] += postings.getDocId( i ) * 31L + postings.getFrequency( i );
+                                }
+                            }
+                            return sums;
+                        }
+                    } ) );
+                }
+                for ( int task = 0; task < sums.size( ); task++ ) {
+                    Random random = new Random( task );
+                    long[] expected = new long[index.getTermIdLimit( )];
+                    for ( int n = 0; n < 20000; n++ ) {
+                        int termId = random.nextInt( expected.length );
+                        PostingList postings = index.getPostings( termId );
+                        if ( postings.size( ) > 0 ) {
+                            int i = random.nextInt( postings.size( ) );
+                            expected[termId] += postings.getDocId( i ) * 31L + postings.getFrequency( i );
+                        }
+                    }
+                    long[] actual = sums.get( task ).get( );
+                    for ( int termId = 0; termId < expected.length; termId++ ) {
+                        assertEquals( expected[termId], actual[termId] );
+                    }
+                }
+            } finally {
+                pool.shutdown( );
+            }
+        }
+    }
+    
+    @Test
+    public void modelsRankAlikeOnCompressedPostings( ) {
+        InvertedIndex index = TestCorpora.getIndex( 2000 );
+        ProbabilisticModel plain = new ProbabilisticModel( index.getDocuments( ), index );
+        for ( PostingsCodec codec : CODECS ) {
+            InvertedIndex compressed = index.compress( codec );
+            ProbabilisticModel model = new ProbabilisticModel( compressed.getDocuments( ), compressed );
+            for ( String queryString : TestCorpora.getQueries( 50 ) ) {
+                TopDocuments expected = plain.getTopDocuments( queryString, 10, false );
+                TopDocuments actual = model.getTopDocuments( queryString, 10, false );
+                assertEquals( queryString, expected.size( ), actual.size( ) );
+                for ( int rank = 0; rank < expected.size( ); rank++ ) {
+                    assertEquals( queryString, expected.getDocId( rank ), actual.getDocId( rank ) );
+                    assertEquals( queryString, expected.getScore( rank ), actual.getScore( rank ), 0.0 );
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void measureReportsAllPostings( ) {
+        InvertedIndex index = TestCorpora.getIndex( 2000 );
+        long count = 0;
+        long checksum = 0;
+        for ( int termId = 0; termId < index.getTermIdLimit( ); termId++ ) {
+            PostingList postings = index.getPostings( termId );
+            for ( int i = 0; i < postings.size( ); i++ ) {
+                count++;
+                checksum += postings.getDocId( i ) + postings.getFrequency( i );
+            }
+        }
+        for ( PostingsCodec codec : CODECS ) {
+            CodecReport report = codec.measure( index );
+            assertEquals( codec.getName( ), report.getCodecName( ) );
+            assertEquals( count, report.getPostingCount( ) );
+            assertEquals( count * 8, report.getRawBytes( ) );
+            assertEquals( checksum, report.getChecksum( ) );
+            assertTrue( report.getCompressionRatio( ) > 1.0 );
+        }
+    }
+    
+    private static void assertSamePostings( PostingList expected, PostingList actual ) {
+        assertEquals( expected.size( ), actual.size( ) );
+        for ( int i = 0; i < expected.size( ); i++ ) {
+            assertEquals( expected.getDocId( i ), actual.getDocId( i ) );
+            assertEquals( expected.getFrequency( i ), actual.getFrequency( i ) );
+        }
+        assertEquals( expected.size( ), actual.advance( 0, Integer.MAX_VALUE ) );
+    }
+    
+}
@@ -0,0 +1,208 @@
+package index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import model.Document;
+import model.ProbabilisticModel;
+import model.TopDocuments;
+import model.VectorModel;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+
+/**
+ * Checks that snapshots of a segmented index equal the index of its live
+ * documents built at once, in the order the documents were added, while
+ * documents are added, updated and deleted and segments are merged in the
+ * background.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class SegmentedIndexTest {
+    
+    @Rule
+    public TemporaryFolder fFolder = new TemporaryFolder( );
+    
+    @Test
+    public void snapshotsEqualTheIndexBuiltAtOnce( ) throws InterruptedException {
+        TermDictionary dictionary = new TermDictionary( );
+        Document[] documents = TestCorpora.getDocuments( 600, false, dictionary );
+        SegmentedIndex segmented = new SegmentedIndex( dictionary );
+        segmented.setMaxBufferedDocuments( 7 );
+        segmented.setMergeFactor( 3 );
+        Map<String,Document> live = new LinkedHashMap<String,Document>( ); // In the order of adding
+        Random random = new Random( TestCorpora.SEED );
+        for ( int i = 0; i < documents.length; i++ ) {
+            segmented.addDocument( documents[i] );
+            live.put( documents[i].getName( ), documents[i] );
+            if ( i % 5 == 0 ) {
+                String name = "doc" + random.nextInt( i + 1 );
+                assertEquals( live.remove( name ) != null, segmented.deleteDocument( name ) );
+            }
+            if ( i % 7 == 0 ) {
+                Document updated = new Document( "doc" + random.nextInt( i + 1 ), TestCorpora.getText( random, 1 + random.nextInt( 50 ) ), false, dictionary );
+                live.remove( updated.getName( ) );
+                live.put( updated.getName( ), updated );
+                segmented.updateDocument( updated );
+            }
+            if ( i % 50 == 49 ) {
+                // Merges may be running
+                assertSameIndex( rebuild( live, dictionary ), segmented.getSnapshot( ) );
+            }
+        }
+        segmented.waitForMerges( );
+        assertTrue( "Segments were not merged", segmented.getSegmentCount( ) < 10 );
+        InvertedIndex expected = rebuild( live, dictionary );
+        InvertedIndex snapshot = segmented.getSnapshot( );
+        assertSameIndex( expected, snapshot );
+        assertEquals( expected.getDocumentCount( ), segmented.getDocumentCount( ) );
+        assertEquals( expected.getStatistics( ).getAverageLength( ), segmented.getAverageLength( ), 1e-12 );
+        for ( int termId = 0; termId < dictionary.size( ); termId++ ) {
+            assertEquals( expected.getStatistics( ).getDocumentFrequency( termId ), segmented.getDocumentFrequency( termId ) );
+        }
+        assertSameRankings( expected, snapshot );
+        segmented.close( );
+    }
+    
+    @Test
+    public void mergesKeepTheOrderOfAdding( ) throws InterruptedException {
+        TermDictionary dictionary = new TermDictionary( );
+        Document[] documents = TestCorpora.getDocuments( 14, false, dictionary );
+        SegmentedIndex segmented = new SegmentedIndex( dictionary );
+        segmented.setMaxBufferedDocuments( 4 );
+        segmented.setMergeFactor( 3 );
+        // A smaller segment between segments of the same level is merged
+        // along with them, not skipped
+        for ( int i = 0; i < documents.length; i++ ) {
+            segmented.addDocument( documents[i] );
+            if ( i == 5 ) {
+                segmented.flush( );
+            }
+        }
+        segmented.waitForMerges( );
+        InvertedIndex snapshot = segmented.getSnapshot( );
+        assertEquals( 2, segmented.getSegmentCount( ) );
+        for ( int docId = 0; docId < documents.length; docId++ ) {
+            assertEquals( documents[docId].getName( ), snapshot.getDocument( docId ).getName( ) );
+        }
+        segmented.close( );
+    }
+    
+    @Test
+    public void loadedCorporaAreUpdatedInPlace( ) throws InterruptedException {
+        InvertedIndex index = TestCorpora.getIndex( 200 );
+        TermDictionary dictionary = index.getDictionary( );
+        SegmentedIndex segmented = new SegmentedIndex( index );
+        assertSameIndex( index, segmented.getSnapshot( ) );
+        Map<String,Document> live = new LinkedHashMap<String,Document>( );
+        for ( Document document : index.getDocuments( ) ) {
+            live.put( document.getName( ), document );
+        }
+        Random random = new Random( TestCorpora.SEED );
+        for ( int i = 0; i < 100; i++ ) {
+            String name = "doc" + random.nextInt( 250 );
+            if ( i % 3 == 0 ) {
+                assertEquals( live.remove( name ) != null, segmented.deleteDocument( name ) );
+            } else {
+                Document document = new Document( name, TestCorpora.getText( random, 1 + random.nextInt( 80 ) ), false, dictionary );
+                live.remove( name );
+                live.put( name, document );
+                segmented.updateDocument( document );
+            }
+        }
+        segmented.waitForMerges( );
+        InvertedIndex expected = rebuild( live, dictionary );
+        assertSameIndex( expected, segmented.getSnapshot( ) );
+        assertSameRankings( expected, segmented.getSnapshot( ) );
+        segmented.close( );
+    }
+    
+    @Test
+    public void documentsReadFromAnIndexFileCannotBeUpdated( ) throws IOException {
+        File file = fFolder.newFile( "index.idx" );
+        IndexFile.write( TestCorpora.getIndex( 20 ), file );
+        try {
+            new SegmentedIndex( IndexFile.read( file ) );
+            fail( "Documents without term vectors were accepted" );
+        } catch ( IllegalArgumentException e ) {
+            // Expected
+        }
+    }
+    
+    @Test
+    public void emptyIndexesHaveNoAverageLength( ) throws InterruptedException {
+        TermDictionary dictionary = new TermDictionary( );
+        SegmentedIndex segmented = new SegmentedIndex( dictionary );
+        assertEquals( 0.0, segmented.getAverageLength( ), 0.0 );
+        segmented.addDocument( new Document( "doc", "connect relation", false, dictionary ) );
+        segmented.flush( );
+        assertEquals( 2.0, segmented.getAverageLength( ), 0.0 );
+        segmented.deleteDocument( "doc" );
+        assertEquals( 0.0, segmented.getAverageLength( ), 0.0 );
+        InvertedIndex snapshot = segmented.getSnapshot( );
+        assertEquals( 0, snapshot.getDocumentCount( ) );
+        assertEquals( 0.0, snapshot.getStatistics( ).getAverageLength( ), 0.0 );
+        assertEquals( 0.0, new CorpusStatistics( new Document[0] ).getAverageLength( ), 0.0 );
+        segmented.close( );
+    }
+    
+    private static InvertedIndex rebuild( Map<String,Document> live, TermDictionary dictionary ) {
+        return new InvertedIndex( live.values( ).toArray( new Document[live.size( )] ), dictionary );
+    }
+    
+    /**
+     * Checks that the vector and probabilistic models rank the documents of
+     * two indexes alike.
+     */
+    private static void assertSameRankings( InvertedIndex expected, InvertedIndex actual ) {
+        List<TopDocuments[]> rankings = new ArrayList<TopDocuments[]>( );
+        for ( String query : TestCorpora.getQueries( 30 ) ) {
+            rankings.add( new TopDocuments[] { new VectorModel( expected.getDocuments( ), expected, true ).getTopDocuments( query, 20, false ), new VectorModel( actual.getDocuments( ), actual, true ).getTopDocuments( query, 20, false ) } );
+            rankings.add( new TopDocuments[] { new ProbabilisticModel( expected.getDocuments( ), expected ).getTopDocuments( query, 20, false ), new ProbabilisticModel( actual.getDocuments( ), actual ).getTopDocuments( query, 20, false ) } );
+        }
+        for ( TopDocuments[] ranking : rankings ) {
+            assertEquals( ranking[0].size( ), ranking[1].size( ) );
+            for ( int rank = 0; rank < ranking[0].size( ); rank++ ) {
+                assertEquals( ranking[0].getDocument( rank ).getName( ), ranking[1].getDocument( rank ).getName( ) );
+                assertEquals( ranking[0].getScore( rank ), ranking[1].getScore( rank ), 1e-9 );
+            }
+        }
+    }
+    
+    private static void assertSameIndex( InvertedIndex expected, InvertedIndex actual ) {
+        assertEquals( expected.getDocumentCount( ), actual.getDocumentCount( ) );
+        CorpusStatistics expectedStatistics = expected.getStatistics( );
+        CorpusStatistics actualStatistics = actual.getStatistics( );
+        assertEquals( expectedStatistics.getTotalLength( ), actualStatistics.getTotalLength( ) );
+        for ( int docId = 0; docId < expected.getDocumentCount( ); docId++ ) {
+            assertEquals( expected.getDocument( docId ).getName( ), actual.getDocument( docId ).getName( ) );
+            assertEquals( expectedStatistics.getLength( docId ), actualStatistics.getLength( docId ) );
+            assertEquals( expectedStatistics.getMaxFreq( docId ), actualStatistics.getMaxFreq( docId ) );
+            assertEquals( expectedStatistics.getNorm( docId ), actualStatistics.getNorm( docId ), 1e-12 );
+        }
+        for ( int termId = 0; termId < Math.max( expected.getTermIdLimit( ), actual.getTermIdLimit( ) ); termId++ ) {
+            assertEquals( expectedStatistics.getDocumentFrequency( termId ), actualStatistics.getDocumentFrequency( termId ) );
+            PostingList postings = expected.getPostings( termId );
+            PostingList actualPostings = actual.getPostings( termId );
+            assertEquals( postings.size( ), actualPostings.size( ) );
+            for ( int i = 0; i < postings.size( ); i++ ) {
+                assertEquals( postings.getDocId( i ), actualPostings.getDocId( i ) );
+                assertEquals( postings.getFrequency( i ), actualPostings.getFrequency( i ) );
+            }
+        }
+    }
+    
+}
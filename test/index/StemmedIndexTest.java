@@ -0,0 +1,99 @@
+package index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+
+import model.Document;
+import model.ProbabilisticModel;
+import model.TopDocuments;
+import model.VectorModel;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+
+/**
+ * Checks that the stemmed index derived from the index of unstemmed terms
+ * equals the index of the corpus analyzed with stemming.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class StemmedIndexTest {
+    
+    @Rule
+    public TemporaryFolder fFolder = new TemporaryFolder( );
+    
+    @Test
+    public void derivedIndexEqualsIndexOfStemmedDocuments( ) {
+        InvertedIndex index = new InvertedIndex( TestCorpora.getDocuments( 300, false, new TermDictionary( ) ) );
+        InvertedIndex stemmed = new InvertedIndex( TestCorpora.getDocuments( 300, true, new TermDictionary( ) ) );
+        int terms = index.getDictionary( ).size( );
+        InvertedIndex derived = index.getStemmedIndex( );
+        assertSame( derived, index.getStemmedIndex( ) );
+        assertEquals( "Stems were added to the unstemmed dictionary", terms, index.getDictionary( ).size( ) );
+        assertSameIndex( stemmed, derived );
+    }
+    
+    @Test
+    public void derivedIndexSurvivesTheRoundTrip( ) throws IOException {
+        InvertedIndex derived = TestCorpora.getIndex( 200 ).getStemmedIndex( );
+        File file = fFolder.newFile( "stemmed.idx" );
+        IndexFile.write( derived, file );
+        assertSameIndex( derived, IndexFile.read( file ) );
+    }
+    
+    @Test
+    public void modelsRankAlikeOnBothIndexes( ) {
+        InvertedIndex derived = TestCorpora.getIndex( 300 ).getStemmedIndex( );
+        InvertedIndex stemmed = new InvertedIndex( TestCorpora.getDocuments( 300, true, new TermDictionary( ) ) );
+        VectorModel[] vectorModels = { new VectorModel( stemmed.getDocuments( ), stemmed, true ), new VectorModel( derived.getDocuments( ), derived, true ) };
+        ProbabilisticModel[] probabilisticModels = { new ProbabilisticModel( stemmed.getDocuments( ), stemmed ), new ProbabilisticModel( derived.getDocuments( ), derived ) };
+        for ( String query : TestCorpora.getQueries( 40 ) ) {
+            assertSameRanking( query, vectorModels[0].getTopDocuments( query, 20, true ), vectorModels[1].getTopDocuments( query, 20, true ) );
+            assertSameRanking( query, probabilisticModels[0].getTopDocuments( query, 20, true ), probabilisticModels[1].getTopDocuments( query, 20, true ) );
+        }
+    }
+    
+    private static void assertSameRanking( String query, TopDocuments expected, TopDocuments actual ) {
+        assertEquals( query, expected.size( ), actual.size( ) );
+        for ( int rank = 0; rank < expected.size( ); rank++ ) {
+            assertEquals( query, expected.getDocument( rank ).getName( ), actual.getDocument( rank ).getName( ) );
+            assertEquals( query, expected.getScore( rank ), actual.getScore( rank ), 1e-9 );
+        }
+    }
+    
+    /**
+     * Checks that two indexes hold the same documents, statistics and
+     * postings. Terms are compared by their text, as their ids may differ.
+     */
+    private static void assertSameIndex( InvertedIndex expected, InvertedIndex actual ) {
+        assertEquals( expected.getDocumentCount( ), actual.getDocumentCount( ) );
+        CorpusStatistics expectedStatistics = expected.getStatistics( );
+        CorpusStatistics actualStatistics = actual.getStatistics( );
+        assertEquals( expectedStatistics.getTotalLength( ), actualStatistics.getTotalLength( ) );
+        for ( int docId = 0; docId < expected.getDocumentCount( ); docId++ ) {
+            Document document = expected.getDocument( docId );
+            assertEquals( document.getName( ), actual.getDocument( docId ).getName( ) );
+            assertEquals( expectedStatistics.getLength( docId ), actualStatistics.getLength( docId ) );
+            assertEquals( expectedStatistics.getMaxFreq( docId ), actualStatistics.getMaxFreq( docId ) );
+            assertEquals( expectedStatistics.getNorm( docId ), actualStatistics.getNorm( docId ), 1e-12 );
+        }
+        assertEquals( expected.getTerms( ), actual.getTerms( ) );
+        for ( String term : expected.getTerms( ) ) {
+            assertEquals( term, expectedStatistics.getDocumentFrequency( term ), actualStatistics.getDocumentFrequency( term ) );
+            PostingList postings = expected.getPostings( term );
+            PostingList actualPostings = actual.getPostings( term );
+            assertEquals( term, postings.size( ), actualPostings.size( ) );
+            for ( int i = 0; i < postings.size( ); i++ ) {
+                assertEquals( term, postings.getDocId( i ), actualPostings.getDocId( i ) );
+                assertEquals( term, postings.getFrequency( i ), actualPostings.getFrequency( i ) );
+            }
+        }
+    }
+    
+}
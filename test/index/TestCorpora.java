@@ -0,0 +1,143 @@
+package index;
+
+import java.util.Random;
+
+import model.Document;
+
+
+
+/**
+ * Generates small corpora and queries for the tests. Texts are drawn from a
+ * vocabulary of inflected words with a skewed distribution, so postings
+ * lengths differ, stemming merges terms and some terms occur more than once
+ * per document. All generators are seeded, so every run sees the same input.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public final class TestCorpora {
+    
+    public static final long SEED = 20120417L;
+    
+    private static final String[] STEMS = { "connect", "relat", "general", "condition", "operat", "adjust", "differ", "agree", "measur", "observ", "report", "search", "index", "rank", "model", "retriev" };
+    private static final String[] SUFFIXES = { "", "s", "ed", "ing", "ion", "er", "ive", "ly", "ation", "ational" };
+    private static final String[] STOP_WORDS = { "the", "of", "and", "a", "to", "in", "is", "it" };
+    
+    private TestCorpora( ) {
+    }
+    
+    /**
+     * Returns the vocabulary, most frequent words first.
+     */
+    public static String[] getVocabulary( ) {
+        String[] words = new String[STOP_WORDS.length + STEMS.length * SUFFIXES.length];
+        System.arraycopy( STOP_WORDS, 0, words, 0, STOP_WORDS.length );
+        int i = STOP_WORDS.length;
+        for ( String suffix : SUFFIXES ) {
+            for ( String stem : STEMS ) {
+                words[i++] = stem + suffix;
+            }
+        }
+        return words;
+    }
+    
+    /**
+     * Generates a text with punctuation and upper case letters.
+     * 
+     * @param random
+     *            The source of the words.
+     * @param words
+     *            The number of words.
+     */
+    public static String getText( Random random, int words ) {
+        String[] vocabulary = getVocabulary( );
+        StringBuilder text = new StringBuilder( words * 8 );
+        for ( int i = 0; i < words; i++ ) {
+            if ( i > 0 ) {
+                text.append( i % 9 == 0 ? ". " : " " );
+            }
+            String word = vocabulary[getRank( random, vocabulary.length )];
+            text.append( i % 9 == 0 ? Character.toUpperCase( word.charAt( 0 ) ) + word.substring( 1 ) : word );
+        }
+        return text.toString( );
+    }
+    
+    /**
+     * Generates the documents of a corpus, of 1 to 120 words each.
+     * 
+     * @param count
+     *            The number of documents.
+     * @param stem
+     *            Stem the terms of the documents?
+     * @param dictionary
+     *            The term dictionary of the corpus.
+     */
+    public static Document[] getDocuments( int count, boolean stem, TermDictionary dictionary ) {
+        Random random = new Random( SEED + count );
+        Document[] documents = new Document[count];
+        for ( int i = 0; i < count; i++ ) {
+            documents[i] = new Document( "doc" + i, getText( random, 1 + random.nextInt( 120 ) ), stem, dictionary );
+        }
+        return documents;
+    }
+    
+    /**
+     * Indexes a generated corpus without stemming.
+     */
+    public static InvertedIndex getIndex( int count ) {
+        return new InvertedIndex( getDocuments( count, false, new TermDictionary( ) ) );
+    }
+    
+    /**
+     * Generates free text queries of 1 to 6 words, some of which do not occur
+     * in any corpus.
+     */
+    public static String[] getQueries( int count ) {
+        Random random = new Random( SEED - count );
+        String[] queries = new String[count];
+        for ( int q = 0; q < count; q++ ) {
+            queries[q] = getText( random, 1 + random.nextInt( 6 ) ) + ( q % 10 == 0 ? " unknown" : "" );
+        }
+        return queries;
+    }
+    
+    /**
+     * Generates boolean queries in disjunctive normal form: one to three
+     * conjunctions of one to three terms each, some of them negated.
+     */
+    public static String[] getBooleanQueries( int count ) {
+        Random random = new Random( SEED + 31 * count );
+        String[] vocabulary = getVocabulary( );
+        String[] queries = new String[count];
+        for ( int q = 0; q < count; q++ ) {
+            StringBuilder query = new StringBuilder( );
+            int conjunctions = 1 + random.nextInt( 3 );
+            for ( int c = 0; c < conjunctions; c++ ) {
+                if ( c > 0 ) {
+                    query.append( " | " );
+                }
+                int terms = 1 + random.nextInt( 3 );
+                for ( int t = 0; t < terms; t++ ) {
+                    if ( t > 0 ) {
+                        query.append( " & " );
+                    }
+                    if ( random.nextInt( 4 ) == 0 ) {
+                        query.append( '-' );
+                    }
+                    query.append( vocabulary[getRank( random, vocabulary.length )] );
+                }
+            }
+            queries[q] = query.toString( );
+        }
+        return queries;
+    }
+    
+    /**
+     * Draws a rank from a Zipf-like distribution.
+     */
+    private static int getRank( Random random, int size ) {
+        double harmonic = Math.log( size ) + 0.5772;
+        int rank = ( int ) Math.exp( random.nextDouble( ) * harmonic - 0.5772 );
+        return Math.min( size - 1, Math.max( 0, rank ) );
+    }
+    
+}
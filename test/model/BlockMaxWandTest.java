@@ -0,0 +1,90 @@
+package model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import index.InvertedIndex;
+import index.TestCorpora;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+
+
+/**
+ * Checks that Block-Max WAND pruning finds the same BM25 top documents with
+ * the same scores as scoring every document containing a query term.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class BlockMaxWandTest {
+    
+    private static final double[][] PARAMETERS = { { 1.2, 0.75 }, { 0.0, 0.5 }, { 2.0, 0.0 }, { 0.5, 1.0 }, { 1.2, 0.3 } };
+    
+    @Test
+    public void prunedTopDocumentsEqualExhaustiveOnes( ) {
+        // Enough documents for postings spanning several blocks
+        InvertedIndex index = TestCorpora.getIndex( 2000 );
+        ProbabilisticModel pruned = new ProbabilisticModel( index.getDocuments( ), index );
+        ProbabilisticModel exhaustive = new ProbabilisticModel( index.getDocuments( ), index );
+        exhaustive.setDynamicPruning( false );
+        assertTrue( pruned.isDynamicPruning( ) );
+        for ( double[] parameters : PARAMETERS ) {
+            for ( String queryString : TestCorpora.getQueries( 60 ) ) {
+                for ( int k : new int[] { 1, 10, 100 } ) {
+                    TopDocuments expected = exhaustive.getTopDocuments( queryString, k, parameters[0], parameters[1], false );
+                    assertSame( queryString, expected, pruned.getTopDocuments( queryString, k, parameters[0], parameters[1], false ) );
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void pruningIsThreadSafe( ) throws Exception {
+        InvertedIndex index = TestCorpora.getIndex( 2000 );
+        final ProbabilisticModel pruned = new ProbabilisticModel( index.getDocuments( ), index );
+        ProbabilisticModel exhaustive = new ProbabilisticModel( index.getDocuments( ), index );
+        exhaustive.setDynamicPruning( false );
+        final String[] queries = TestCorpora.getQueries( 100 );
+        ExecutorService pool = Executors.newFixedThreadPool( 4 );
+        try {
+            // The block bounds of the terms are computed by whichever thread needs them first
+            List<Future<TopDocuments>> results = new ArrayList<Future<TopDocuments>>( );
+            for ( final String queryString : queries ) {
+                results.add( pool.submit( new Callable<TopDocuments>( ) {
+                    
+                    public TopDocuments call( ) {
+                        return pruned.getTopDocuments( queryString, 10, false );
+                    }
+                } ) );
+            }
+            for ( int q = 0; q < queries.length; q++ ) {
+                assertSame( queries[q], exhaustive.getTopDocuments( queries[q], 10, false ), results.get( q ).get( ) );
+            }
+        } finally {
+            pool.shutdown( );
+        }
+    }
+    
+    @Test
+    public void pruningIsOnlyApplicableToBoundedParameters( ) {
+        assertTrue( BlockMaxWand.isApplicable( 1.2, 0.75 ) );
+        assertTrue( !BlockMaxWand.isApplicable( -1.0, 0.75 ) );
+        assertTrue( !BlockMaxWand.isApplicable( 1.2, 1.5 ) );
+    }
+    
+    private static void assertSame( String queryString, TopDocuments expected, TopDocuments actual ) {
+        assertEquals( queryString, expected.size( ), actual.size( ) );
+        for ( int rank = 0; rank < expected.size( ); rank++ ) {
+            assertEquals( queryString, expected.getDocId( rank ), actual.getDocId( rank ) );
+            assertEquals( queryString, expected.getScore( rank ), actual.getScore( rank ), 0.0 );
+        }
+    }
+    
+}
@@ -0,0 +1,126 @@
+package model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import index.InvertedIndex;
+import index.TermDictionary;
+import index.TestCorpora;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+
+
+/**
+ * Checks the boolean model, on posting lists and on bitmaps, against testing
+ * every document for each conjunction of a query.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class BooleanModelTest {
+    
+    private static final String[] QUERIES = { "connect", "-connect", "connect & -connect", "Connect & (Relat | index)", "(rank & -models) | (-rank & retrieving)", "unknown", "-unknown & search", "unknown | search" };
+    
+    @Test
+    public void matchesEqualTestingEveryDocument( ) {
+        InvertedIndex index = TestCorpora.getIndex( 300 );
+        assertMatches( index, new BooleanModel( index.getDocuments( ), index ), false );
+    }
+    
+    @Test
+    public void stemmedMatchesEqualTestingEveryDocument( ) {
+        InvertedIndex index = new InvertedIndex( TestCorpora.getDocuments( 300, true, new TermDictionary( ) ) );
+        assertMatches( index, new BooleanModel( index.getDocuments( ), index ), true );
+    }
+    
+    @Test
+    public void bitmapsMatchLikePostingLists( ) throws Exception {
+        InvertedIndex index = TestCorpora.getIndex( 300 );
+        final BooleanModel lists = new BooleanModel( index.getDocuments( ), index );
+        final BooleanModel bitmaps = new BooleanModel( index.getDocuments( ), index );
+        bitmaps.setBitmapMode( true );
+        assertTrue( bitmaps.isBitmapMode( ) );
+        assertMatches( index, bitmaps, false );
+        final String[] queries = TestCorpora.getBooleanQueries( 200 );
+        ExecutorService pool = Executors.newFixedThreadPool( 4 );
+        try {
+            // Threads racing for the bitmaps of the same terms
+            List<Future<int[]>> results = new ArrayList<Future<int[]>>( );
+            for ( final String queryString : queries ) {
+                results.add( pool.submit( new Callable<int[]>( ) {
+                    
+                    public int[] call( ) {
+                        return bitmaps.getMatchingDocuments( queryString, false ).toArray( );
+                    }
+                } ) );
+            }
+            for ( int q = 0; q < queries.length; q++ ) {
+                TopDocuments expected = lists.getTopDocuments( queries[q], index.getDocumentCount( ), false );
+                int[] actual = results.get( q ).get( );
+                assertEquals( queries[q], expected.size( ), actual.length );
+                for ( int rank = 0; rank < actual.length; rank++ ) {
+                    assertEquals( queries[q], expected.getDocId( rank ), actual[rank] );
+                }
+            }
+        } finally {
+            pool.shutdown( );
+        }
+        bitmaps.setBitmapMode( false );
+        assertMatches( index, bitmaps, false );
+    }
+    
+    private static void assertMatches( InvertedIndex index, BooleanModel model, boolean stem ) {
+        Document[] documents = index.getDocuments( );
+        List<String> queries = new ArrayList<String>( );
+        for ( String queryString : QUERIES ) {
+            queries.add( queryString );
+        }
+        for ( String queryString : TestCorpora.getBooleanQueries( 100 ) ) {
+            queries.add( queryString );
+        }
+        for ( String queryString : queries ) {
+            List<Integer> expected = new ArrayList<Integer>( );
+            DisjunctiveNormalForm dnf = new DisjunctiveNormalForm( queryString, stem );
+            for ( int docId = 0; docId < documents.length; docId++ ) {
+                if ( matches( documents[docId], dnf ) ) {
+                    expected.add( docId );
+                }
+            }
+            TopDocuments top = model.getTopDocuments( queryString, documents.length, stem );
+            assertEquals( queryString, expected.size( ), top.size( ) );
+            for ( int rank = 0; rank < top.size( ); rank++ ) {
+                assertEquals( queryString, expected.get( rank ).intValue( ), top.getDocId( rank ) );
+                assertEquals( queryString, 1.0, top.getScore( rank ), 0.0 );
+            }
+            Map<Document,Double> all = model.getDocuments( queryString, stem );
+            assertEquals( queryString, expected.size( ), all.size( ) );
+            for ( Map.Entry<Document,Double> entry : all.entrySet( ) ) {
+                assertEquals( queryString, 1.0, entry.getValue( ), 0.0 );
+            }
+            TopDocuments first = model.getTopDocuments( queryString, 3, stem );
+            assertEquals( queryString, Math.min( 3, expected.size( ) ), first.size( ) );
+        }
+    }
+    
+    private static boolean matches( Document document, DisjunctiveNormalForm dnf ) {
+        for ( Map<String,Boolean> conjunction : dnf ) {
+            boolean matches = true;
+            for ( Map.Entry<String,Boolean> term : conjunction.entrySet( ) ) {
+                matches &= ( document.getFrequency( term.getKey( ) ) > 0 ) == term.getValue( );
+            }
+            if ( matches ) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+}
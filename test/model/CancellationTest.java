@@ -0,0 +1,195 @@
+package model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import index.InvertedIndex;
+import index.TestCorpora;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+
+
+/**
+ * Checks that searches on an interrupted thread stop with a
+ * CancellationException and leave nothing behind in the query caches.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class CancellationTest {
+    
+    private static final String QUERY = "the connect of relation and general index";
+    private static final String BOOLEAN_QUERY = "connect & relat | -index & general | rank";
+    
+    @Test
+    public void interruptedModelsStopSearching( ) {
+        InvertedIndex index = TestCorpora.getIndex( 3000 );
+        final Document[] documents = index.getDocuments( );
+        final VectorModel vectorModel = new VectorModel( documents, index, true );
+        final ProbabilisticModel probabilisticModel = new ProbabilisticModel( documents, index );
+        final ProbabilisticModel exhaustiveModel = new ProbabilisticModel( documents, index );
+        exhaustiveModel.setDynamicPruning( false );
+        final BooleanModel booleanModel = new BooleanModel( documents, index );
+        final BooleanModel bitmapModel = new BooleanModel( documents, index );
+        bitmapModel.setBitmapMode( true );
+        
+        assertCancelled( vectorModel, new Callable<Integer>( ) {
+            
+            @Override
+            public Integer call( ) {
+                return vectorModel.getTopDocuments( QUERY, 10, false ).size( );
+            }
+        } );
+        // Block-Max WAND checks every few hundred pivots, each collected document is one
+        assertCancelled( probabilisticModel, new Callable<Integer>( ) {
+            
+            @Override
+            public Integer call( ) {
+                return probabilisticModel.getTopDocuments( QUERY, 1000, false ).size( );
+            }
+        } );
+        assertCancelled( exhaustiveModel, new Callable<Integer>( ) {
+            
+            @Override
+            public Integer call( ) {
+                return exhaustiveModel.getDocumentsAfter( QUERY, Double.POSITIVE_INFINITY, -1, 10, false ).size( );
+            }
+        } );
+        for ( final BooleanModel model : new BooleanModel[] { booleanModel, bitmapModel } ) {
+            assertCancelled( model, new Callable<Integer>( ) {
+                
+                @Override
+                public Integer call( ) {
+                    return model.getDocuments( BOOLEAN_QUERY, true ).size( );
+                }
+            } );
+        }
+    }
+    
+    @Test
+    public void interruptedEvaluationsAreNotCached( ) {
+        InvertedIndex index = TestCorpora.getIndex( 500 );
+        Document[] documents = index.getDocuments( );
+        FusedEvaluator evaluator = new FusedEvaluator( new BooleanModel( documents, index ), new VectorModel( documents, index, false ), new ProbabilisticModel( documents, index ) );
+        Thread.currentThread( ).interrupt( );
+        try {
+            evaluator.evaluate( QUERY, 1.2, 0.75, false );
+            fail( "An interrupted evaluation ran to completion" );
+        } catch ( CancellationException e ) {
+            // Expected
+        }
+        assertFalse( Thread.interrupted( ) );
+        assertEquals( 0, evaluator.getQueryCache( ).size( ) );
+        FusedEvaluator.Rankings rankings = evaluator.evaluate( QUERY, 1.2, 0.75, false );
+        assertEquals( 1, evaluator.getQueryCache( ).size( ) );
+        assertEquals( new VectorModel( documents, index, false ).getTopDocuments( QUERY, 10, false ).getDocId( 0 ), rankings.getDocumentsAfter( FusedEvaluator.VECTOR, Double.POSITIVE_INFINITY, -1, 10 ).getDocId( 0 ) );
+    }
+    
+    @Test
+    public void waitersOfACancelledSearchComputeTheResult( ) throws Exception {
+        final QueryCache cache = new QueryCache( );
+        final CountDownLatch started = new CountDownLatch( 1 );
+        final CountDownLatch never = new CountDownLatch( 1 );
+        final AtomicReference<Object> first = new AtomicReference<Object>( );
+        Thread cancelled = new Thread( new Runnable( ) {
+            
+            @Override
+            public void run( ) {
+                try {
+                    first.set( cache.get( "query", new Loader( "cancelled" ) {
+                        
+                        @Override
+                        String load( ) {
+                            started.countDown( );
+                            try {
+                                never.await( );
+                            } catch ( InterruptedException e ) {
+                                Thread.currentThread( ).interrupt( );
+                            }
+                            AbstractModel.checkCancelled( );
+                            return super.load( );
+                        }
+                    } ) );
+                } catch ( CancellationException e ) {
+                    first.set( e );
+                }
+            }
+        } );
+        cancelled.start( );
+        started.await( );
+        ExecutorService pool = Executors.newSingleThreadExecutor( );
+        try {
+            Future<String> waiter = pool.submit( new Callable<String>( ) {
+                
+                @Override
+                public String call( ) {
+                    return cache.get( "query", new Loader( "computed" ) );
+                }
+            } );
+            while ( cache.getHits( ) == 0 ) {
+                Thread.sleep( 1 ); // Until the waiter waits for the cancelled search
+            }
+            cancelled.interrupt( );
+            cancelled.join( );
+            assertEquals( CancellationException.class, first.get( ).getClass( ) );
+            assertEquals( "computed", waiter.get( ) );
+            assertEquals( "computed", cache.get( "query", new Loader( "again" ) ) );
+            assertEquals( 1, cache.size( ) );
+        } finally {
+            pool.shutdown( );
+        }
+    }
+    
+    /**
+     * Checks that a search on an interrupted thread is cancelled, not cached
+     * and clears the interrupt, and that the search then succeeds.
+     */
+    private static void assertCancelled( AbstractModel model, Callable<Integer> search ) {
+        Thread.currentThread( ).interrupt( );
+        try {
+            search.call( );
+            fail( model.getClass( ).getSimpleName( ) + ": an interrupted search ran to completion" );
+        } catch ( CancellationException e ) {
+            // Expected
+        } catch ( Exception e ) {
+            throw new AssertionError( e );
+        }
+        assertFalse( Thread.interrupted( ) );
+        assertEquals( 0, model.getQueryCache( ).size( ) );
+        try {
+            assertEquals( 1, Math.min( 1, search.call( ) ) );
+        } catch ( Exception e ) {
+            throw new AssertionError( e );
+        }
+    }
+    
+    private static class Loader extends QueryCache.Loader<String> {
+        
+        private String fValue = null;
+        
+        Loader( String value ) {
+            fValue = value;
+        }
+        
+        @Override
+        String load( ) {
+            return fValue;
+        }
+        
+        @Override
+        long getSize( String value ) {
+            return value.length( );
+        }
+        
+    }
+    
+}
@@ -0,0 +1,87 @@
+package model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import index.TermDictionary;
+
+import org.junit.Test;
+
+
+
+/**
+ * Checks the term vectors of documents and queries.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class DocumentTest {
+    
+    @Test
+    public void termVectorsAreSortedByTermId( ) {
+        TermDictionary dictionary = new TermDictionary( );
+        new Document( "first", "zebra yak", false, dictionary );
+        Document document = new Document( "second", "The yak, the zebra and THE ant.", false, dictionary );
+        assertEquals( 7, document.getLength( ) );
+        assertEquals( 3, document.getMaxFreq( ) );
+        assertEquals( 5, document.getTermCount( ) );
+        for ( int i = 1; i < document.getTermCount( ); i++ ) {
+            assertTrue( document.getTermId( i - 1 ) < document.getTermId( i ) );
+        }
+        assertEquals( 3, document.getFrequency( "the" ) );
+        assertEquals( 1, document.getFrequency( "zebra" ) );
+        assertEquals( 0, document.getFrequency( "unknown" ) );
+        assertEquals( 0, document.getFrequency( ( String ) null ) );
+        assertEquals( 0, document.getFrequency( -1 ) );
+        int i = document.indexOf( dictionary.lookup( "yak" ) );
+        assertEquals( 1, document.getFrequencyAt( i ) );
+        assertEquals( "yak", dictionary.getTerm( document.getTermId( i ) ) );
+        assertFalse( document.isQuery( ) );
+    }
+    
+    @Test
+    public void queriesLeaveTheDictionaryUnchanged( ) {
+        TermDictionary dictionary = new TermDictionary( );
+        new Document( "document", "yak zebra", false, dictionary );
+        int size = dictionary.size( );
+        Document query = Document.createQuery( "gnu Zebra gnu ant yak gnu", false, dictionary );
+        assertEquals( size, dictionary.size( ) );
+        assertEquals( -1, dictionary.lookup( "gnu" ) );
+        assertTrue( query.isQuery( ) );
+        assertEquals( 2, query.getTermCount( ) );
+        assertEquals( 6, query.getLength( ) );
+        assertEquals( 3, query.getMaxFreq( ) );
+        assertArrayEquals( new int[] { 3, 1 }, query.getUnknownFrequencies( ) );
+        assertEquals( 1, query.getFrequency( "zebra" ) );
+        assertEquals( 0, query.getFrequency( "gnu" ) );
+    }
+    
+    @Test
+    public void queriesCarryWeights( ) {
+        TermDictionary dictionary = new TermDictionary( );
+        new Document( "document", "yak zebra", false, dictionary );
+        Document query = Document.createQuery( "yak zebra ant", false, dictionary );
+        assertEquals( 0.0, query.getWeight( "yak" ), 0.0 );
+        query.setWeight( "yak", 0.5 );
+        query.setWeight( "ant", 2.0 );
+        query.setWeightAt( query.indexOf( dictionary.lookup( "zebra" ) ), 0.1 );
+        assertEquals( 0.5, query.getWeight( "yak" ), 0.0 );
+        assertEquals( 0.5, query.getWeight( dictionary.lookup( "yak" ) ), 0.0 );
+        assertEquals( ( float ) 0.1, query.getWeight( "zebra" ), 0.0 );
+        assertEquals( 0.0, query.getWeight( "ant" ), 0.0 );
+    }
+    
+    @Test( expected = IllegalStateException.class )
+    public void corpusDocumentsCarryNoWeights( ) {
+        Document document = new Document( "document", "yak zebra", false, new TermDictionary( ) );
+        document.getWeight( "yak" );
+    }
+    
+    @Test( expected = IllegalStateException.class )
+    public void corpusDocumentsCannotBeWeighted( ) {
+        Document document = new Document( "document", "yak zebra", false, new TermDictionary( ) );
+        document.setWeightAt( 0, 1.0 );
+    }
+    
+}
@@ -0,0 +1,105 @@
+package model;
+
+import static org.junit.Assert.assertEquals;
+
+import index.InvertedIndex;
+import index.TestCorpora;
+
+import org.junit.Test;
+
+import common.Metrics;
+
+
+
+/**
+ * Checks that the rankings of the fused evaluator equal those of the single
+ * models, and that it scores only the documents containing a ranked term.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class FusedEvaluatorTest {
+    
+    private static final double K1 = 1.5;
+    private static final double B = 0.6;
+    
+    @Test
+    public void rankingsEqualThoseOfTheSingleModels( ) {
+        InvertedIndex index = TestCorpora.getIndex( 300 );
+        Document[] documents = index.getDocuments( );
+        for ( boolean tfidf : new boolean[] { false, true } ) {
+            BooleanModel booleanModel = new BooleanModel( documents, index );
+            VectorModel vectorModel = new VectorModel( documents, index, tfidf );
+            ProbabilisticModel probabilisticModel = new ProbabilisticModel( documents, index );
+            FusedEvaluator evaluator = new FusedEvaluator( booleanModel, vectorModel, probabilisticModel );
+            for ( String[] queries : new String[][] { TestCorpora.getQueries( 20 ), TestCorpora.getBooleanQueries( 30 ) } ) {
+                for ( String query : queries ) {
+                    FusedEvaluator.Rankings rankings = evaluator.evaluate( query, K1, B, false );
+                    assertPagesEqual( query, booleanModel.getDocumentsAfter( query, Double.POSITIVE_INFINITY, -1, documents.length, false ), rankings.getDocumentsAfter( FusedEvaluator.BOOLEAN, Double.POSITIVE_INFINITY, -1, documents.length ) );
+                    assertEquals( query, booleanModel.getDocuments( query, false ).size( ), rankings.getMatchCount( ) );
+                    assertPagesEqual( query, vectorModel.getDocumentsAfter( query, Double.POSITIVE_INFINITY, -1, documents.length, false ), rankings.getDocumentsAfter( FusedEvaluator.VECTOR, Double.POSITIVE_INFINITY, -1, documents.length ) );
+                    assertPagesEqual( query, probabilisticModel.getDocumentsAfter( query, Double.POSITIVE_INFINITY, -1, documents.length, K1, B, false ), rankings.getDocumentsAfter( FusedEvaluator.PROBABILISTIC, Double.POSITIVE_INFINITY, -1, documents.length ) );
+                    
+                    // A page in the middle of the ranking
+                    TopDocuments page = vectorModel.getDocumentsAfter( query, Double.POSITIVE_INFINITY, -1, 10, false );
+                    if ( page.size( ) == 10 ) {
+                        assertPagesEqual( query, vectorModel.getDocumentsAfter( query, page.getScore( 9 ), page.getDocId( 9 ), 10, false ), rankings.getDocumentsAfter( FusedEvaluator.VECTOR, page.getScore( 9 ), page.getDocId( 9 ), 10 ) );
+                    }
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void queriesWithManyBooleanTermsAreMatchedSeparately( ) {
+        InvertedIndex index = TestCorpora.getIndex( 300 );
+        Document[] documents = index.getDocuments( );
+        BooleanModel booleanModel = new BooleanModel( documents, index );
+        FusedEvaluator evaluator = new FusedEvaluator( booleanModel, new VectorModel( documents, index, true ), new ProbabilisticModel( documents, index ) );
+        String[] vocabulary = TestCorpora.getVocabulary( );
+        StringBuilder query = new StringBuilder( );
+        for ( int i = 0; i < 70; i++ ) {
+            query.append( i == 0 ? "" : i % 2 == 0 ? " | " : " & -" ).append( vocabulary[i] );
+        }
+        FusedEvaluator.Rankings rankings = evaluator.evaluate( query.toString( ), K1, B, false );
+        assertPagesEqual( query.toString( ), booleanModel.getDocumentsAfter( query.toString( ), Double.POSITIVE_INFINITY, -1, documents.length, false ), rankings.getDocumentsAfter( FusedEvaluator.BOOLEAN, Double.POSITIVE_INFINITY, -1, documents.length ) );
+    }
+    
+    @Test
+    public void onlyDocumentsContainingARankedTermAreScored( ) {
+        InvertedIndex index = TestCorpora.getIndex( 300 );
+        Document[] documents = index.getDocuments( );
+        BooleanModel booleanModel = new BooleanModel( documents, index );
+        FusedEvaluator evaluator = new FusedEvaluator( booleanModel, new VectorModel( documents, index, false ), new ProbabilisticModel( documents, index ) );
+        evaluator.setQueryCache( null );
+        // The Kelvin sign lowercases to k in the boolean query, but separates
+        // terms in the ranked one, so rank is a term of the boolean query only
+        String query = "connect | RAN\u212A";
+        int rankingCount = index.getPostings( "connect" ).size( );
+        boolean enabled = Metrics.isEnabled( );
+        Metrics.setEnabled( true );
+        try {
+            Metrics.reset( );
+            FusedEvaluator.Rankings rankings = evaluator.evaluate( query, K1, B, false );
+            assertEquals( rankingCount, Metrics.getDocumentsScored( ) );
+            assertEquals( booleanModel.getDocuments( "connect | rank", false ).size( ), rankings.getMatchCount( ) );
+            assertEquals( true, rankings.getMatchCount( ) > rankingCount );
+            
+            // Documents without a ranked term still follow the scored ones
+            TopDocuments page = rankings.getDocumentsAfter( FusedEvaluator.VECTOR, Double.POSITIVE_INFINITY, -1, documents.length );
+            assertEquals( documents.length, page.size( ) );
+            assertEquals( 0.0, page.getScore( rankingCount ), 0.0 );
+        } finally {
+            Metrics.reset( );
+            Metrics.setEnabled( enabled );
+        }
+    }
+    
+    private static void assertPagesEqual( String query, TopDocuments expected, TopDocuments page ) {
+        assertEquals( query, expected.size( ), page.size( ) );
+        for ( int rank = 0; rank < page.size( ); rank++ ) {
+            assertEquals( query, expected.getDocId( rank ), page.getDocId( rank ) );
+            assertEquals( query, expected.getScore( rank ), page.getScore( rank ), 1e-9 );
+        }
+    }
+    
+}
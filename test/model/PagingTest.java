@@ -0,0 +1,117 @@
+package model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import index.InvertedIndex;
+import index.TermDictionary;
+import index.TestCorpora;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+
+
+/**
+ * Checks that fetching the ranking of a model page by page, each page
+ * continuing after the last document of the previous one, yields the full
+ * ranking of getDocuments.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class PagingTest {
+    
+    private static final int[] PAGE_SIZES = { 1, 7, 50 };
+    
+    @Test
+    public void pagesOfTheVectorModelFormTheRanking( ) {
+        InvertedIndex index = TestCorpora.getIndex( 200 );
+        for ( boolean tfidf : new boolean[] { false, true } ) {
+            VectorModel model = new VectorModel( index.getDocuments( ), index, tfidf );
+            for ( String query : TestCorpora.getQueries( 20 ) ) {
+                for ( int k : PAGE_SIZES ) {
+                    assertPagesFormRanking( model, query, k, index.getDocumentCount( ) );
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void pagesOfTheProbabilisticModelFormTheRanking( ) {
+        InvertedIndex index = TestCorpora.getIndex( 200 );
+        ProbabilisticModel model = new ProbabilisticModel( index.getDocuments( ), index );
+        for ( String query : TestCorpora.getQueries( 20 ) ) {
+            for ( int k : PAGE_SIZES ) {
+                assertPagesFormRanking( model, query, k, index.getDocumentCount( ) );
+            }
+        }
+    }
+    
+    @Test
+    public void pagesOfTheBooleanModelHoldTheMatches( ) {
+        InvertedIndex index = TestCorpora.getIndex( 200 );
+        BooleanModel model = new BooleanModel( index.getDocuments( ), index );
+        for ( String query : TestCorpora.getBooleanQueries( 20 ) ) {
+            for ( int k : PAGE_SIZES ) {
+                assertPagesFormRanking( model, query, k, model.getDocuments( query, false ).size( ) );
+            }
+        }
+    }
+    
+    @Test
+    public void emptyCorporaHaveNoPages( ) {
+        InvertedIndex index = new InvertedIndex( new Document[0], new TermDictionary( ) );
+        Document[] documents = index.getDocuments( );
+        BooleanModel booleanModel = new BooleanModel( documents, index );
+        VectorModel vectorModel = new VectorModel( documents, index, true );
+        ProbabilisticModel probabilisticModel = new ProbabilisticModel( documents, index );
+        FusedEvaluator evaluator = new FusedEvaluator( booleanModel, vectorModel, probabilisticModel );
+        for ( AbstractModel model : new AbstractModel[] { booleanModel, vectorModel, probabilisticModel } ) {
+            assertEquals( 0, model.getDocumentsAfter( "connect", Double.POSITIVE_INFINITY, -1, 10, false ).size( ) );
+            assertEquals( 0, model.getTopDocuments( "connect", 10, false ).size( ) );
+            assertEquals( 0, model.getDocuments( "connect", false ).size( ) );
+        }
+        FusedEvaluator.Rankings rankings = evaluator.evaluate( "connect | -relation", 1.2, 0.75, false );
+        for ( int model : new int[] { FusedEvaluator.BOOLEAN, FusedEvaluator.VECTOR, FusedEvaluator.PROBABILISTIC } ) {
+            assertEquals( 0, rankings.getDocumentsAfter( model, Double.POSITIVE_INFINITY, -1, 10 ).size( ) );
+        }
+    }
+    
+    /**
+     * Fetches all pages of a ranking and checks them against getDocuments:
+     * every ranked document occurs once with its score, ordered by descending
+     * score and, among equal scores, by ascending id.
+     */
+    private static void assertPagesFormRanking( AbstractModel model, String query, int k, int count ) {
+        Map<String,Double> expected = new HashMap<String,Double>( );
+        for ( Map.Entry<Document,Double> entry : model.getDocuments( query, false ).entrySet( ) ) {
+            expected.put( entry.getKey( ).getName( ), entry.getValue( ) );
+        }
+        Set<String> seen = new HashSet<String>( );
+        double afterScore = Double.POSITIVE_INFINITY;
+        int afterDocId = -1;
+        while ( true ) {
+            TopDocuments page = model.getDocumentsAfter( query, afterScore, afterDocId, k, false );
+            assertTrue( page.size( ) <= k );
+            for ( int rank = 0; rank < page.size( ); rank++ ) {
+                String name = page.getDocument( rank ).getName( );
+                double score = page.getScore( rank );
+                assertTrue( query + ": " + name + " ranked twice", seen.add( name ) );
+                assertTrue( query + ": " + name + " not ranked by getDocuments", expected.containsKey( name ) );
+                assertEquals( query, expected.get( name ), score, 1e-9 );
+                assertTrue( query + ": out of order", score < afterScore || ( score == afterScore && page.getDocId( rank ) > afterDocId ) );
+                afterScore = score;
+                afterDocId = page.getDocId( rank );
+            }
+            if ( page.size( ) < k ) {
+                break;
+            }
+        }
+        assertEquals( query, count, seen.size( ) );
+    }
+    
+}
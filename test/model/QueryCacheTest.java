@@ -0,0 +1,228 @@
+package model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import index.InvertedIndex;
+import index.TestCorpora;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+
+
+/**
+ * Checks the query cache: counting hits and misses, evicting the least
+ * recently used results, evaluating concurrent requests once, and the keys
+ * the models cache their results under.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class QueryCacheTest {
+    
+    @Test
+    public void hitsAndMissesAreCounted( ) {
+        QueryCache cache = new QueryCache( );
+        Loader a = new Loader( "a" );
+        assertEquals( "a", cache.get( "a", a ) );
+        assertEquals( "a", cache.get( "a", a ) );
+        assertEquals( "b", cache.get( "b", new Loader( "b" ) ) );
+        assertEquals( 1, a.fLoads.get( ) );
+        assertEquals( 1, cache.getHits( ) );
+        assertEquals( 2, cache.getMisses( ) );
+        assertEquals( 1.0 / 3, cache.getHitRate( ), 1e-12 );
+        assertEquals( 2, cache.size( ) );
+        
+        cache.clear( );
+        assertEquals( 0, cache.size( ) );
+        assertEquals( 0, cache.getSizeInBytes( ) );
+        assertEquals( 0, cache.getHits( ) );
+        assertEquals( 0, cache.getMisses( ) );
+        assertEquals( 0.0, cache.getHitRate( ), 0.0 );
+        assertEquals( "a", cache.get( "a", a ) );
+        assertEquals( 2, a.fLoads.get( ) );
+    }
+    
+    @Test
+    public void leastRecentlyUsedResultsAreEvicted( ) {
+        QueryCache cache = new QueryCache( 3, Long.MAX_VALUE );
+        for ( String key : new String[] { "a", "b", "c" } ) {
+            cache.get( key, new Loader( key ) );
+        }
+        cache.get( "a", new Loader( "a" ) ); // b is now the least recently used
+        cache.get( "d", new Loader( "d" ) );
+        assertEquals( 3, cache.size( ) );
+        assertEquals( 1, cache.getEvictions( ) );
+        assertCached( cache, "a", "c", "d" );
+        assertNotCached( cache, "b" );
+    }
+    
+    @Test
+    public void resultsAreEvictedByTheirSize( ) {
+        QueryCache cache = new QueryCache( 100, Long.MAX_VALUE );
+        cache.get( "a", new Loader( "a", 1000 ) );
+        long entryBytes = cache.getSizeInBytes( ) - 1000;
+        
+        cache = new QueryCache( 100, 2 * ( entryBytes + 1000 ) );
+        cache.get( "a", new Loader( "a", 1000 ) );
+        cache.get( "b", new Loader( "b", 1000 ) );
+        assertEquals( 2, cache.size( ) );
+        cache.get( "c", new Loader( "c", 1000 ) );
+        assertEquals( 2, cache.size( ) );
+        assertEquals( 1, cache.getEvictions( ) );
+        assertEquals( 2 * ( entryBytes + 1000 ), cache.getSizeInBytes( ) );
+        Loader a = new Loader( "a", 1000 );
+        cache.get( "a", a );
+        assertEquals( 1, a.fLoads.get( ) );
+        assertEquals( 2, cache.getEvictions( ) );
+        
+        // A result larger than the cache evicts only itself
+        cache.get( "huge", new Loader( "huge", 10000 ) );
+        Loader huge = new Loader( "huge", 10000 );
+        cache.get( "huge", huge );
+        assertEquals( 1, huge.fLoads.get( ) );
+        assertEquals( 2, cache.size( ) );
+        assertEquals( 4, cache.getEvictions( ) );
+    }
+    
+    @Test
+    public void concurrentRequestsAreEvaluatedOnce( ) throws Exception {
+        final QueryCache cache = new QueryCache( );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final Loader loader = new Loader( "result" ) {
+            
+            @Override
+            String load( ) {
+                try {
+                    release.await( );
+                } catch ( InterruptedException e ) {
+                    Thread.currentThread( ).interrupt( );
+                }
+                return super.load( );
+            }
+        };
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool( threads );
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>( );
+            for ( int i = 0; i < threads; i++ ) {
+                results.add( pool.submit( new Callable<String>( ) {
+                    
+                    @Override
+                    public String call( ) {
+                        return cache.get( "query", loader );
+                    }
+                } ) );
+            }
+            while ( cache.getHits( ) + cache.getMisses( ) < threads ) {
+                Thread.sleep( 1 ); // Until all requests wait for the first one
+            }
+            release.countDown( );
+            for ( Future<String> result : results ) {
+                assertSame( results.get( 0 ).get( ), result.get( ) );
+            }
+            assertEquals( 1, loader.fLoads.get( ) );
+            assertEquals( 1, cache.getMisses( ) );
+            assertEquals( threads - 1, cache.getHits( ) );
+        } finally {
+            pool.shutdown( );
+        }
+    }
+    
+    @Test
+    public void failedEvaluationsAreNotCached( ) {
+        QueryCache cache = new QueryCache( );
+        try {
+            cache.get( "query", new Loader( "result" ) {
+                
+                @Override
+                String load( ) {
+                    throw new IllegalStateException( "failed" );
+                }
+            } );
+            fail( "The failure was not passed on" );
+        } catch ( IllegalStateException e ) {
+            assertEquals( "failed", e.getMessage( ) );
+        }
+        assertEquals( 0, cache.size( ) );
+        assertEquals( "result", cache.get( "query", new Loader( "result" ) ) );
+    }
+    
+    @Test
+    public void modelsCacheByTheAnalyzedQueryAndTheirParameters( ) {
+        InvertedIndex index = TestCorpora.getIndex( 100 );
+        Document[] documents = index.getDocuments( );
+        ProbabilisticModel model = new ProbabilisticModel( documents, index );
+        SortedMap<Document,Double> ranking = model.getDocuments( "Connected relations", false );
+        assertSame( ranking, model.getDocuments( "connected, RELATIONS!", false ) );
+        assertNotSame( ranking, model.getDocuments( "connected relations", true ) );
+        assertNotSame( ranking, model.getDocuments( "connected relations", 2.0, 0.75, false ) );
+        assertEquals( 1, model.getQueryCache( ).getHits( ) );
+        assertEquals( 3, model.getQueryCache( ).getMisses( ) );
+        
+        VectorModel tf = new VectorModel( documents, index, false );
+        VectorModel tfidf = new VectorModel( documents, index, true );
+        QueryCache shared = new QueryCache( );
+        tf.setQueryCache( shared );
+        tfidf.setQueryCache( shared );
+        assertNotSame( tf.getDocuments( "connected relations", false ), tfidf.getDocuments( "connected relations", false ) );
+        assertEquals( 0, shared.getHits( ) );
+        
+        model.setQueryCache( null );
+        assertNotSame( model.getDocuments( "connected relations", false ), model.getDocuments( "connected relations", false ) );
+    }
+    
+    private static void assertCached( QueryCache cache, String... keys ) {
+        for ( String key : keys ) {
+            Loader loader = new Loader( key );
+            cache.get( key, loader );
+            assertEquals( key, 0, loader.fLoads.get( ) );
+        }
+    }
+    
+    private static void assertNotCached( QueryCache cache, String key ) {
+        Loader loader = new Loader( key );
+        cache.get( key, loader );
+        assertEquals( key, 1, loader.fLoads.get( ) );
+    }
+    
+    private static class Loader extends QueryCache.Loader<String> {
+        
+        final AtomicInteger fLoads = new AtomicInteger( );
+        private String fValue = null;
+        private long fSize = 0;
+        
+        Loader( String value ) {
+            this( value, value.length( ) );
+        }
+        
+        Loader( String value, long size ) {
+            fValue = value;
+            fSize = size;
+        }
+        
+        @Override
+        String load( ) {
+            fLoads.incrementAndGet( );
+            return new String( fValue );
+        }
+        
+        @Override
+        long getSize( String value ) {
+            return fSize;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,116 @@
+package model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import index.CorpusStatistics;
+import index.InvertedIndex;
+import index.PostingList;
+import index.TestCorpora;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+
+
+/**
+ * Checks the champion lists of the vector model and the top documents found
+ * from them.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class TieredIndexTest {
+    
+    @Test
+    public void tiersPartitionThePostingsByNormalizedWeight( ) {
+        InvertedIndex index = TestCorpora.getIndex( 500 );
+        CorpusStatistics statistics = index.getStatistics( );
+        VectorModel model = new VectorModel( index.getDocuments( ), index, false );
+        model.setTierSizes( new int[] { 5, 20 } );
+        TieredIndex tiers = model.getTieredIndex( );
+        assertEquals( 3, tiers.getTierCount( ) );
+        assertTrue( Arrays.equals( new int[] { 5, 20 }, tiers.getTierSizes( ) ) );
+        for ( int termId = 0; termId < index.getTermIdLimit( ); termId++ ) {
+            PostingList postings = index.getPostings( termId );
+            int[] docIds = new int[postings.size( )];
+            int count = 0;
+            double previousMin = Double.POSITIVE_INFINITY;
+            for ( int tier = 0; tier < tiers.getTierCount( ); tier++ ) {
+                int[] tierDocIds = tiers.getTier( termId, tier );
+                if ( tier < 2 ) {
+                    assertTrue( tierDocIds.length <= tiers.getTierSizes( )[tier] );
+                }
+                double min = Double.POSITIVE_INFINITY;
+                for ( int docId : tierDocIds ) {
+                    // The term frequency divided by the length of the document vector
+                    double weight = index.getDocument( docId ).getFrequency( termId ) / statistics.getNorm( docId );
+                    assertTrue( "Champion outranked by a lower tier", weight <= previousMin + 1e-12 );
+                    min = Math.min( min, weight );
+                    docIds[count++] = docId;
+                }
+                previousMin = Math.min( previousMin, min );
+            }
+            assertEquals( postings.size( ), count );
+            Arrays.sort( docIds );
+            for ( int i = 0; i < docIds.length; i++ ) {
+                assertEquals( postings.getDocId( i ), docIds[i] );
+            }
+        }
+        assertEquals( 0, tiers.getTier( index.getTermIdLimit( ) + 1, 0 ).length );
+    }
+    
+    @Test
+    public void tiersHoldingAllDocumentsFindTheExhaustiveTopDocuments( ) {
+        InvertedIndex index = TestCorpora.getIndex( 300 );
+        for ( boolean tfidf : new boolean[] { false, true } ) {
+            VectorModel exhaustive = new VectorModel( index.getDocuments( ), index, tfidf );
+            VectorModel tiered = new VectorModel( index.getDocuments( ), index, tfidf );
+            tiered.setTierSizes( new int[] { index.getDocumentCount( ) } );
+            for ( String queryString : TestCorpora.getQueries( 40 ) ) {
+                assertEquals( 1.0, tiered.getTieredRecall( queryString, 10, false ), 0.0 );
+                TopDocuments expected = exhaustive.getTopDocuments( queryString, 10, false );
+                TopDocuments actual = tiered.getTopDocuments( queryString, 10, false );
+                assertEquals( queryString, expected.size( ), actual.size( ) );
+                for ( int rank = 0; rank < expected.size( ); rank++ ) {
+                    assertEquals( queryString, expected.getDocId( rank ), actual.getDocId( rank ) );
+                    assertEquals( queryString, expected.getScore( rank ), actual.getScore( rank ), 1e-12 );
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void smallTiersScoreTheirCandidatesExactly( ) {
+        InvertedIndex index = TestCorpora.getIndex( 500 );
+        VectorModel exhaustive = new VectorModel( index.getDocuments( ), index, true );
+        VectorModel tiered = new VectorModel( index.getDocuments( ), index, true );
+        tiered.setTierSizes( new int[] { 2, 10 } );
+        for ( String queryString : TestCorpora.getQueries( 40 ) ) {
+            double recall = tiered.getTieredRecall( queryString, 20, false );
+            assertTrue( queryString, recall >= 0.0 && recall <= 1.0 );
+            TopDocuments all = exhaustive.getTopDocuments( queryString, index.getDocumentCount( ), false );
+            double[] scores = new double[index.getDocumentCount( )];
+            for ( int rank = 0; rank < all.size( ); rank++ ) {
+                scores[all.getDocId( rank )] = all.getScore( rank );
+            }
+            TopDocuments top = tiered.getTopDocuments( queryString, 20, false );
+            assertEquals( queryString, Math.min( 20, all.size( ) ), top.size( ) );
+            for ( int rank = 0; rank < top.size( ); rank++ ) {
+                assertEquals( queryString, scores[top.getDocId( rank )], top.getScore( rank ), 1e-12 );
+            }
+        }
+    }
+    
+    @Test
+    public void noTierSizesDisableTheTiers( ) {
+        InvertedIndex index = TestCorpora.getIndex( 50 );
+        VectorModel model = new VectorModel( index.getDocuments( ), index, false );
+        model.setTierSizes( new int[] { 3 } );
+        model.setTierSizes( null );
+        assertNull( model.getTieredIndex( ) );
+        assertEquals( 1.0, model.getTieredRecall( TestCorpora.getQueries( 1 )[0], 10, false ), 0.0 );
+    }
+    
+}
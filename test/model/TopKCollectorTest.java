@@ -0,0 +1,145 @@
+package model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import index.InvertedIndex;
+import index.TestCorpora;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+
+/**
+ * Checks that the bounded heap keeps the k best documents, and that the top-k
+ * results of every model are the head of its full ranking.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class TopKCollectorTest {
+    
+    @Test
+    public void collectorKeepsTheBestDocuments( ) {
+        Random random = new Random( TestCorpora.SEED );
+        for ( int k : new int[] { 0, 1, 7, 100, 1000 } ) {
+            int n = 500;
+            double[] scores = new double[n];
+            TopKCollector collector = new TopKCollector( k );
+            for ( int docId = 0; docId < n; docId++ ) {
+                // Few distinct scores, so ties have to be broken by id
+                scores[docId] = random.nextInt( 20 );
+                collector.collect( docId, scores[docId] );
+            }
+            assertEquals( Math.min( k, n ), collector.size( ) );
+            TopDocuments top = collector.getTopDocuments( new Document[n] );
+            Integer[] ranked = getRanking( scores );
+            assertEquals( Math.min( k, n ), top.size( ) );
+            for ( int rank = 0; rank < top.size( ); rank++ ) {
+                assertEquals( ranked[rank].intValue( ), top.getDocId( rank ) );
+                assertEquals( scores[ranked[rank]], top.getScore( rank ), 0.0 );
+            }
+        }
+    }
+    
+    @Test
+    public void thresholdIsTheWorstCollectedScore( ) {
+        TopKCollector collector = new TopKCollector( 2 );
+        assertEquals( Double.NEGATIVE_INFINITY, collector.getThreshold( ), 0.0 );
+        collector.collect( 0, 3.0 );
+        assertEquals( Double.NEGATIVE_INFINITY, collector.getThreshold( ), 0.0 );
+        collector.collect( 1, 1.0 );
+        assertTrue( collector.isFull( ) );
+        assertEquals( 1.0, collector.getThreshold( ), 0.0 );
+        collector.collect( 2, 2.0 );
+        assertEquals( 2.0, collector.getThreshold( ), 0.0 );
+    }
+    
+    @Test
+    public void topDocumentsAreTheHeadOfTheRanking( ) {
+        InvertedIndex index = TestCorpora.getIndex( 300 );
+        Document[] documents = index.getDocuments( );
+        AbstractModel[] models = { new VectorModel( documents, index, false ), new VectorModel( documents, index, true ), new ProbabilisticModel( documents, index ) };
+        for ( AbstractModel model : models ) {
+            for ( String queryString : TestCorpora.getQueries( 40 ) ) {
+                Map<String,Double> expected = getScores( model.getDocuments( queryString, false ) );
+                for ( int k : new int[] { 1, 10, 100 } ) {
+                    assertHead( queryString, documents, expected, model.getTopDocuments( queryString, k, false ), k );
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void topBooleanDocumentsAreTheFirstMatches( ) {
+        InvertedIndex index = TestCorpora.getIndex( 300 );
+        Document[] documents = index.getDocuments( );
+        BooleanModel model = new BooleanModel( documents, index );
+        for ( String queryString : TestCorpora.getBooleanQueries( 40 ) ) {
+            Map<String,Double> expected = getScores( model.getDocuments( queryString, false ) );
+            for ( int k : new int[] { 1, 10, 1000 } ) {
+                assertHead( queryString, documents, expected, model.getTopDocuments( queryString, k, false ), k );
+            }
+        }
+    }
+    
+    /**
+     * Asserts that the top documents are the k best of a full ranking, ties
+     * broken by the lower id. Documents that score 0 share no term with the
+     * query and are not collected.
+     */
+    private static void assertHead( String queryString, Document[] documents, Map<String,Double> expected, TopDocuments top, int k ) {
+        double[] scores = new double[documents.length];
+        for ( int docId = 0; docId < documents.length; docId++ ) {
+            Double score = expected.get( documents[docId].getName( ) );
+            scores[docId] = score == null ? 0.0 : score;
+        }
+        List<Integer> ranked = new ArrayList<Integer>( );
+        for ( Integer docId : getRanking( scores ) ) {
+            if ( scores[docId] > 0.0 ) {
+                ranked.add( docId );
+            }
+        }
+        assertEquals( queryString, Math.min( k, ranked.size( ) ), top.size( ) );
+        for ( int rank = 0; rank < top.size( ); rank++ ) {
+            assertEquals( queryString, scores[ranked.get( rank )], top.getScore( rank ), 1e-9 );
+            assertEquals( queryString, scores[top.getDocId( rank )], top.getScore( rank ), 1e-9 );
+            assertEquals( queryString, documents[top.getDocId( rank )].getName( ), top.getDocument( rank ).getName( ) );
+            if ( rank > 0 && top.getScore( rank - 1 ) == top.getScore( rank ) ) {
+                assertTrue( "Ties not broken by id", top.getDocId( rank - 1 ) < top.getDocId( rank ) );
+            }
+        }
+    }
+    
+    private static Map<String,Double> getScores( Map<Document,Double> ranking ) {
+        // The rankings are ordered by value, so only iterating them finds the documents
+        Map<String,Double> scores = new HashMap<String,Double>( );
+        for ( Map.Entry<Document,Double> entry : ranking.entrySet( ) ) {
+            scores.put( entry.getKey( ).getName( ), entry.getValue( ) );
+        }
+        return scores;
+    }
+    
+    private static Integer[] getRanking( final double[] scores ) {
+        Integer[] docIds = new Integer[scores.length];
+        for ( int docId = 0; docId < docIds.length; docId++ ) {
+            docIds[docId] = docId;
+        }
+        Arrays.sort( docIds, new Comparator<Integer>( ) {
+            
+            public int compare( Integer a, Integer b ) {
+                int c = Double.compare( scores[b], scores[a] );
+                return c != 0 ? c : a.compareTo( b );
+            }
+        } );
+        return docIds;
+    }
+    
+}
@@ -0,0 +1,129 @@
+package model;
+
+import static org.junit.Assert.assertEquals;
+
+import index.InvertedIndex;
+import index.TestCorpora;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+
+
+/**
+ * Checks the similarities of the vector space model.
+ * 
+ * Part of the Information Retrieval 2012 Basic IR models project.
+ */
+public class VectorModelTest {
+    
+    @Test
+    public void similaritiesEqualCosinesOfTermFrequencies( ) {
+        assertCosines( false );
+    }
+    
+    @Test
+    public void similaritiesEqualCosinesOfTfIdfWeights( ) {
+        assertCosines( true );
+    }
+    
+    /**
+     * Compares the similarities of all documents with the cosines of their
+     * full term vectors. The query is weighted as if it were part of the
+     * corpus; its terms unknown to the corpus count towards its length.
+     */
+    private static void assertCosines( boolean tfidf ) {
+        InvertedIndex index = TestCorpora.getIndex( 300 );
+        Document[] documents = index.getDocuments( );
+        int n = documents.length;
+        VectorModel model = new VectorModel( documents, index, tfidf );
+        for ( String queryString : TestCorpora.getQueries( 40 ) ) {
+            Document query = Document.createQuery( queryString, false, index.getDictionary( ) );
+            double[] queryWeights = new double[query.getTermCount( )];
+            double queryLength = 0.0;
+            for ( int j = 0; j < queryWeights.length; j++ ) {
+                int df = index.getDocumentFrequency( index.getDictionary( ).getTerm( query.getTermId( j ) ) );
+                queryWeights[j] = tfidf ? ( double ) query.getFrequencyAt( j ) / query.getMaxFreq( ) * log2( ( n + 1.0 ) / ( df + 1 ) ) : query.getFrequencyAt( j );
+                queryLength += queryWeights[j] * queryWeights[j];
+            }
+            for ( int freq : query.getUnknownFrequencies( ) ) {
+                double weight = tfidf ? ( double ) freq / query.getMaxFreq( ) * log2( n + 1.0 ) : freq;
+                queryLength += weight * weight;
+            }
+            queryLength = Math.sqrt( queryLength );
+            Map<String,Double> similarities = new HashMap<String,Double>( );
+            for ( Map.Entry<Document,Double> entry : model.getDocuments( queryString, false ).entrySet( ) ) {
+                similarities.put( entry.getKey( ).getName( ), entry.getValue( ) );
+            }
+            assertEquals( n, similarities.size( ) );
+            for ( Document document : documents ) {
+                double dotProduct = 0.0;
+                double length = 0.0;
+                for ( String term : document.getTerms( ) ) {
+                    double weight = getWeight( document, term, index, tfidf );
+                    length += weight * weight;
+                    int j = query.indexOf( index.getDictionary( ).lookup( term ) );
+                    if ( j >= 0 ) {
+                        dotProduct += weight * queryWeights[j];
+                    }
+                }
+                double expected = length == 0 || queryLength == 0 ? 0.0 : dotProduct / ( Math.sqrt( length ) * queryLength );
+                assertEquals( queryString, expected, similarities.get( document.getName( ) ), 1e-6 );
+            }
+        }
+    }
+    
+    private static double getWeight( Document document, String term, InvertedIndex index, boolean tfidf ) {
+        int freq = document.getFrequency( term );
+        if ( !tfidf ) {
+            return freq;
+        }
+        double idf = log2( ( double ) index.getDocumentCount( ) / index.getDocumentFrequency( term ) );
+        return ( double ) freq / document.getMaxFreq( ) * idf;
+    }
+    
+    private static double log2( double x ) {
+        return Math.log( x ) / Math.log( 2 );
+    }
+    
+    @Test
+    public void lazyLengthsAreThreadSafe( ) throws Exception {
+        InvertedIndex index = TestCorpora.getIndex( 1000 );
+        VectorModel expected = new VectorModel( index.getDocuments( ), index, true );
+        final VectorModel model = new VectorModel( index.getDocuments( ), index, true );
+        final String[] queries = TestCorpora.getQueries( 200 );
+        ExecutorService pool = Executors.newFixedThreadPool( 4 );
+        try {
+            // The tf/idf lengths of the documents are computed by whichever thread scores them first
+            List<Future<TopDocuments>> results = new ArrayList<Future<TopDocuments>>( );
+            for ( final String queryString : queries ) {
+                results.add( pool.submit( new Callable<TopDocuments>( ) {
+                    
+                    public TopDocuments call( ) {
+                        return model.getTopDocuments( queryString, 20, false );
+                    }
+                } ) );
+            }
+            for ( int q = 0; q < queries.length; q++ ) {
+                TopDocuments top = expected.getTopDocuments( queries[q], 20, false );
+                TopDocuments actual = results.get( q ).get( );
+                assertEquals( queries[q], top.size( ), actual.size( ) );
+                for ( int rank = 0; rank < top.size( ); rank++ ) {
+                    assertEquals( queries[q], top.getDocId( rank ), actual.getDocId( rank ) );
+                    assertEquals( queries[q], top.getScore( rank ), actual.getScore( rank ), 0.0 );
+                }
+            }
+        } finally {
+            pool.shutdown( );
+        }
+    }
+    
+}